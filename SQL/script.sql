@@ -24,4 +24,41 @@ CREATE TABLE [accounts] (
     [balance] DECIMAL(18, 2) NOT NULL, 
     [created_at] DATETIME DEFAULT GETDATE(),
     [updated_at] DATETIME DEFAULT GETDATE(),
-    CONSTRAINT FK_Account_User FOREIGN KEY (user_id) REFERENCES [users] (id));
\ No newline at end of file
+    CONSTRAINT FK_Account_User FOREIGN KEY (user_id) REFERENCES [users] (id));
+
+-- Keyset pagination and top-N: every sort column is indexed with id as the tie breaker,
+-- per user and across all users.
+CREATE INDEX [IX_accounts_user_balance] ON [accounts] ([user_id], [balance], [id]);
+CREATE INDEX [IX_accounts_user_created_at] ON [accounts] ([user_id], [created_at], [id]);
+CREATE INDEX [IX_accounts_user_updated_at] ON [accounts] ([user_id], [updated_at], [id]);
+CREATE INDEX [IX_accounts_balance] ON [accounts] ([balance], [id]);
+CREATE INDEX [IX_accounts_created_at] ON [accounts] ([created_at], [id]);
+CREATE INDEX [IX_accounts_updated_at] ON [accounts] ([updated_at], [id]);
+
+
+-- Long-inactive users and their accounts are moved here by the archive job and moved back on activation.
+CREATE TABLE [users_archive] (
+    [id] UNIQUEIDENTIFIER PRIMARY KEY,
+    [first_name] NVARCHAR(50),
+    [last_name] NVARCHAR(50),
+    [username] NVARCHAR(50),
+    [email] NVARCHAR(100),
+    [phone_number] INT,
+    [address] NVARCHAR(255),
+    [firebase_uid] NVARCHAR(128),
+    [role] NVARCHAR(20),
+    [status] NVARCHAR(20),
+    [created_at] DATETIME,
+    [updated_at] DATETIME,
+    [archived_at] DATETIME
+);
+CREATE INDEX [IX_users_archive_email] ON [users_archive] ([email]);
+
+CREATE TABLE [accounts_archive] (
+    [id] UNIQUEIDENTIFIER PRIMARY KEY,
+    [user_id] UNIQUEIDENTIFIER NOT NULL,
+    [balance] DECIMAL(18, 2) NOT NULL,
+    [created_at] DATETIME,
+    [updated_at] DATETIME
+);
+CREATE INDEX [IX_accounts_archive_user_id] ON [accounts_archive] ([user_id]);
@@ -0,0 +1,52 @@
+#!/bin/bash
+# Compares balance change throughput on a single account updated directly and one written behind as a hot account.
+#
+# usage: scripts/benchmark-hot-account.sh <userId> <directAccountId> <hotAccountId>
+#   The application must be running with the hot account listed in hot-accounts.ids and the direct one not, both
+#   accounts owned by the user.
+#   BASE_URL     application URL     (default http://localhost:8080)
+#   TOKEN        bearer token        (required)
+#   REQUESTS     changes per account (default 20000)
+#   CONCURRENCY  parallel clients    (default 32)
+#
+# Every change adds 0.01, so after a run the balance has to have grown by exactly REQUESTS * 0.01.
+set -u
+
+USER_ID=${1:?userId required}
+DIRECT_ACCOUNT=${2:?direct account ID required}
+HOT_ACCOUNT=${3:?hot account ID required}
+BASE_URL=${BASE_URL:-http://localhost:8080}
+TOKEN=${TOKEN:?TOKEN required}
+REQUESTS=${REQUESTS:-20000}
+CONCURRENCY=${CONCURRENCY:-32}
+PER_CLIENT=$(( REQUESTS / CONCURRENCY ))
+REQUESTS=$(( PER_CLIENT * CONCURRENCY ))
+
+now_ms() { date +%s%3N; }
+
+balance() {
+    curl -s -H "Authorization: Bearer $TOKEN" "$BASE_URL/api/v1/accounts/$USER_ID/$1" \
+        | grep -o '"balance":[-0-9.]*' | cut -d: -f2
+}
+
+measure() {
+    local name=$1 account=$2
+    local url="$BASE_URL/api/v1/accounts/$USER_ID/$account/deltas"
+    local before; before=$(balance "$account")
+    local started; started=$(now_ms)
+    # Each client sends its share sequentially over one keep-alive connection, the query only makes the URLs differ
+    seq 1 "$CONCURRENCY" | xargs -P "$CONCURRENCY" -I{} curl -s -o /dev/null -w '%{http_code}\n' \
+        -X POST -H "Authorization: Bearer $TOKEN" -H 'Content-Type: application/json' \
+        -d '{"amount":0.01}' "$url?client={}&n=[1-$PER_CLIENT]" > "/tmp/benchmark-hot-account-$name.codes"
+    local elapsed=$(( $(now_ms) - started ))
+    local accepted; accepted=$(grep -c '^20[02]$' "/tmp/benchmark-hot-account-$name.codes")
+    # Give the write-behind flush time to apply the last deltas before reading the balance back
+    sleep 1
+    local after; after=$(balance "$account")
+    printf '%-6s %6d changes, %6d accepted in %6d ms: %8.0f changes/s, balance %s -> %s (expected %s)\n' \
+        "$name" "$REQUESTS" "$accepted" "$elapsed" "$(awk "BEGIN { print $accepted * 1000 / $elapsed }")" \
+        "$before" "$after" "$(awk "BEGIN { printf \"%.2f\", $before + $accepted * 0.01 }")"
+}
+
+measure direct "$DIRECT_ACCOUNT"
+measure hot "$HOT_ACCOUNT"
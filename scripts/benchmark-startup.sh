@@ -0,0 +1,55 @@
+#!/bin/bash
+# Compares time-to-first-request and resident memory of the JVM and the native build.
+#
+# usage: scripts/benchmark-startup.sh [runs] [-- extra application arguments]
+#   JAR     JVM build        (default target/user-account-manager-0.0.1-SNAPSHOT.jar, from ./mvnw package)
+#   NATIVE  native build     (default target/user-account-manager, from ./mvnw -Pnative native:compile)
+#   PORT    HTTP port        (default 18080)
+#
+# Time-to-first-request is measured from process start until the first HTTP answer of any status on /v3/api-docs,
+# RSS is read from /proc right after that answer and again after WARMUP requests.
+set -u
+cd "$(dirname "$0")/.."
+
+RUNS=${1:-5}
+shift $(( $# > 0 ? 1 : 0 ))
+[ "${1:-}" = "--" ] && shift
+JAR=${JAR:-target/user-account-manager-0.0.1-SNAPSHOT.jar}
+NATIVE=${NATIVE:-target/user-account-manager}
+PORT=${PORT:-18080}
+WARMUP=${WARMUP:-200}
+URL="http://localhost:${PORT}/v3/api-docs"
+
+now_ms() { date +%s%3N; }
+rss_mb() { awk '/VmRSS/ { printf "%.1f", $2 / 1024 }' "/proc/$1/status" 2>/dev/null; }
+
+measure() {
+    local name=$1; shift
+    local total=0
+    for run in $(seq 1 "$RUNS"); do
+        local started; started=$(now_ms)
+        "$@" --server.port="$PORT" "${EXTRA_ARGS[@]}" > "target/benchmark-${name}.log" 2>&1 &
+        local pid=$!
+        until curl -s -o /dev/null "$URL"; do
+            if ! kill -0 "$pid" 2>/dev/null; then
+                echo "$name exited during startup, see target/benchmark-${name}.log" >&2
+                return 1
+            fi
+            sleep 0.01
+        done
+        local elapsed=$(( $(now_ms) - started ))
+        local rss_first; rss_first=$(rss_mb "$pid")
+        for _ in $(seq 1 "$WARMUP"); do curl -s -o /dev/null "$URL"; done
+        local rss_warm; rss_warm=$(rss_mb "$pid")
+        kill "$pid"; wait "$pid" 2>/dev/null
+        total=$(( total + elapsed ))
+        printf '%-7s run %d: first request after %5d ms, RSS %7s MB, after %d requests %7s MB\n' \
+            "$name" "$run" "$elapsed" "$rss_first" "$WARMUP" "$rss_warm"
+    done
+    printf '%-7s average time to first request: %d ms\n\n' "$name" $(( total / RUNS ))
+}
+
+EXTRA_ARGS=("$@")
+mkdir -p target
+[ -f "$JAR" ] && measure jvm java -jar "$JAR" || echo "JVM build not found at $JAR"
+[ -x "$NATIVE" ] && measure native "$NATIVE" || echo "Native build not found at $NATIVE"
@@ -0,0 +1,107 @@
+package com.example.useraccountmanager;
+
+import com.example.useraccountmanager.logging.DropSummaryAsyncAppender;
+import com.example.useraccountmanager.logging.SqlTraceTurboFilter;
+import com.example.useraccountmanager.service.PasswordResetService;
+import com.google.api.client.util.GenericData;
+import com.google.api.client.util.Key;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.util.ClassUtils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reachability metadata for the native image, for what the AOT engine cannot infer from the bean definitions.
+ * <p>
+ * Registered when the native image is built, where classpath scanning still works:
+ * <ul>
+ *     <li>Request and response DTOs, which controllers return as {@code ResponseEntity<?>}, and the records written
+ *     to the local logs, for Jackson.</li>
+ *     <li>Entities with their {@code @PrePersist} and {@code @PreUpdate} callbacks, which Hibernate invokes
+ *     reflectively.</li>
+ *     <li>The JSON model classes of the Firebase SDK and the Google clients it uses, which are bound by reflection on
+ *     their {@code @Key} fields.</li>
+ *     <li>The custom Logback appender and turbo filter, which logback-spring.xml instantiates by class name.</li>
+ * </ul>
+ */
+public class NativeRuntimeHints implements RuntimeHintsRegistrar {
+
+    private static final String BASE_PACKAGE = "com.example.useraccountmanager";
+
+    private static final String[] GOOGLE_JSON_PACKAGES = {
+            "com.google.firebase.auth",
+            "com.google.firebase.internal",
+            "com.google.api.client.auth.oauth2",
+            "com.google.api.client.json.webtoken",
+            "com.google.auth.oauth2"
+    };
+
+    private final BindingReflectionHintsRegistrar bindingRegistrar = new BindingReflectionHintsRegistrar();
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> type : scan(classLoader, BASE_PACKAGE + ".dto")) {
+            bindingRegistrar.registerReflectionHints(hints.reflection(), type);
+        }
+        bindingRegistrar.registerReflectionHints(hints.reflection(), PasswordResetService.QueuedReset.class);
+
+        for (Class<?> type : scan(classLoader, BASE_PACKAGE + ".model")) {
+            hints.reflection().registerType(type, MemberCategory.DECLARED_FIELDS,
+                    MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
+        }
+
+        for (String googlePackage : GOOGLE_JSON_PACKAGES) {
+            for (Class<?> type : scan(classLoader, googlePackage)) {
+                if (GenericData.class.isAssignableFrom(type) || hasKeyFields(type)) {
+                    hints.reflection().registerType(type, MemberCategory.DECLARED_FIELDS,
+                            MemberCategory.INVOKE_DECLARED_CONSTRUCTORS);
+                }
+            }
+        }
+
+        hints.reflection().registerType(DropSummaryAsyncAppender.class,
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.reflection().registerType(SqlTraceTurboFilter.class,
+                MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS, MemberCategory.INVOKE_PUBLIC_METHODS);
+        hints.resources().registerPattern("logback-spring.xml");
+    }
+
+    private static boolean hasKeyFields(Class<?> type) {
+        for (Field field : type.getDeclaredFields()) {
+            if (field.isAnnotationPresent(Key.class)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds all top-level and static nested classes in a package and its subpackages.
+     */
+    private static List<Class<?>> scan(ClassLoader classLoader, String basePackage) {
+        ClassPathScanningCandidateComponentProvider scanner = new ClassPathScanningCandidateComponentProvider(false) {
+            @Override
+            protected boolean isCandidateComponent(AnnotatedBeanDefinition beanDefinition) {
+                return beanDefinition.getMetadata().isIndependent();
+            }
+        };
+        scanner.addIncludeFilter((metadataReader, metadataReaderFactory) -> true);
+        List<Class<?>> types = new ArrayList<>();
+        for (BeanDefinition candidate : scanner.findCandidateComponents(basePackage)) {
+            try {
+                types.add(ClassUtils.forName(candidate.getBeanClassName(), classLoader));
+            } catch (ClassNotFoundException | LinkageError e) {
+                // Optional dependencies of the scanned libraries may be missing, those classes are never used
+            }
+        }
+        return types;
+    }
+}
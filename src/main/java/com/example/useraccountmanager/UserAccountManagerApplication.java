@@ -12,7 +12,9 @@ import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ImportRuntimeHints;
 import org.springframework.core.env.Environment;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
@@ -20,6 +22,8 @@ import java.io.FileInputStream;
 
 @Slf4j
 @SpringBootApplication
+@EnableScheduling
+@ImportRuntimeHints(NativeRuntimeHints.class)
 @RequiredArgsConstructor
 public class UserAccountManagerApplication {
 
@@ -55,15 +59,18 @@ public class UserAccountManagerApplication {
 		return args -> {
 			try {
 				FileInputStream firebaseAccount = null;
-				firebaseAccount = new FileInputStream("src/main/resources/firebase-cred.json");
+				firebaseAccount = new FileInputStream(environment.getProperty("firebase.credentials-path",
+						"src/main/resources/firebase-cred.json"));
 //				firebaseAccount = new FileInputStream("/home/server/Documents/projects/java/kladionice-kvote/src/main/resources/firebase-cred.json");
 				FirebaseOptions options = FirebaseOptions.builder()
 						.setCredentials(GoogleCredentials.fromStream(firebaseAccount))
 						.build();
-				FirebaseApp.initializeApp(options);
+				// Tests start several application contexts in one JVM, the default app can only be initialized once
+				if (FirebaseApp.getApps().isEmpty()) {
+					FirebaseApp.initializeApp(options);
+				}
 			} catch (Exception e) {
-				e.printStackTrace();
-				log.error("ServerApplication :: commandLineRunner :: Firebase init failed");
+				log.error("ServerApplication :: commandLineRunner :: Firebase init failed", e);
 				System.exit(99);
 			}
 			userService.initSuperAdminIfNotExist(UserRequest
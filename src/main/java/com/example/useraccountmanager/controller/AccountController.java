@@ -1,11 +1,20 @@
 package com.example.useraccountmanager.controller;
 
 import com.example.useraccountmanager.dto.request.AccountRequest;
+import com.example.useraccountmanager.dto.request.BalanceDeltaRequest;
+import com.example.useraccountmanager.dto.request.BatchGetRequest;
+import com.example.useraccountmanager.service.AccountExportService;
 import com.example.useraccountmanager.service.AccountService;
+import com.example.useraccountmanager.service.BalanceHistoryService;
+import com.example.useraccountmanager.service.BalanceVerificationService;
+import com.example.useraccountmanager.service.IdempotencyService;
 import com.example.useraccountmanager.tools.RoleTools;
+import com.example.useraccountmanager.tools.enums.AccountSortEnum;
 import com.example.useraccountmanager.tools.enums.UserRoleEnum;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
@@ -13,6 +22,8 @@ import org.springframework.security.oauth2.jwt.Jwt;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Duration;
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -22,6 +33,70 @@ import java.util.List;
 public class AccountController {
 
     private final AccountService accountService;
+    private final IdempotencyService idempotencyService;
+    private final BalanceHistoryService balanceHistoryService;
+    private final BalanceVerificationService balanceVerificationService;
+    private final AccountExportService accountExportService;
+
+    /**
+     * Starts a verification of all account balances against their recorded balance history.
+     *
+     * @return ResponseEntity containing the report of the started run, or an error if a run is in progress.
+     */
+    @PostMapping("verification")
+    public ResponseEntity<?> startVerification(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return balanceVerificationService.startVerification();
+    }
+
+    /**
+     * Retrieves the progress and the mismatches found by the latest balance verification run.
+     *
+     * @return ResponseEntity containing the verification report or an error message if no run was started.
+     */
+    @GetMapping("verification")
+    public ResponseEntity<?> getVerificationReport(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return balanceVerificationService.getReport();
+    }
+
+    /**
+     * Starts or resumes today's CSV export of all accounts with the email and status of their users.
+     *
+     * @return ResponseEntity containing the progress of the export, or a message if it is running or already done.
+     */
+    @PostMapping("export")
+    public ResponseEntity<?> startExport(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return accountExportService.startExport();
+    }
+
+    /**
+     * Retrieves the progress of the latest account export.
+     *
+     * @return ResponseEntity containing the export progress or an error message if no export was started.
+     */
+    @GetMapping("export")
+    public ResponseEntity<?> getExportProgress(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return accountExportService.getProgress();
+    }
 
     /**
      * Retrieves the account associated with the provided user ID.
@@ -40,6 +115,30 @@ public class AccountController {
         return accountService.getAccount(userId, accountId);
     }
 
+    /**
+     * Retrieves the balance history of an account over a time window, optionally downsampled into buckets.
+     *
+     * @param userId    The ID of the user owning the account.
+     * @param accountId The ID of the account.
+     * @param from      Start of the window (ISO date-time), defaults to 30 days before the end.
+     * @param to        End of the window (ISO date-time), defaults to now.
+     * @param bucket    Optional bucket size (e.g. PT1H); each bucket returns its min, max and last balance.
+     * @return ResponseEntity containing the history points or an error message.
+     */
+    @GetMapping("{userId}/{accountId}/history")
+    public ResponseEntity<?> getBalanceHistory(@PathVariable String userId, @PathVariable String accountId,
+                                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+                                               @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+                                               @RequestParam(required = false) Duration bucket,
+                                               @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return balanceHistoryService.getHistory(userId, accountId, from, to, bucket);
+    }
+
     /**
      * Retrieves all accounts associated with the provided user ID.
      *
@@ -56,16 +155,63 @@ public class AccountController {
         return accountService.getAllAccounts(userId);
     }
 
+    /**
+     * Retrieves accounts page by page, of one user or of all users, sorted by balance, creation or update time.
+     *
+     * @param userId    Optional ID of the user whose accounts to list; all accounts are listed without it.
+     * @param sort      The property to sort by (BALANCE, CREATED_AT or UPDATED_AT).
+     * @param direction The sort direction (ASC or DESC).
+     * @param size      The number of accounts per page.
+     * @param cursor    The nextCursor of the previous page, omitted for the first page.
+     * @param jwt       The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the page of accounts and the cursor of the next page or an error message.
+     */
+    @GetMapping()
+    public ResponseEntity<?> getAccountsPage(@RequestParam(required = false) String userId,
+                                             @RequestParam(defaultValue = "CREATED_AT") AccountSortEnum sort,
+                                             @RequestParam(defaultValue = "ASC") Sort.Direction direction,
+                                             @RequestParam(defaultValue = "50") int size,
+                                             @RequestParam(required = false) String cursor,
+                                             @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return accountService.getAccountsPage(userId, sort, direction, size, cursor);
+    }
+
+    /**
+     * Retrieves the accounts with the highest balances.
+     *
+     * @param n   The number of accounts to return.
+     * @param jwt The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the accounts ordered by balance descending or an error message.
+     */
+    @GetMapping("top")
+    public ResponseEntity<?> getTopAccountsByBalance(@RequestParam(defaultValue = "10") int n, @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return accountService.getTopAccountsByBalance(n);
+    }
+
     /**
      * Creates a new account for the user based on the provided account request data.
      *
      * @param accountRequest DTO containing data for creating the account
      * @param bindingResult  Used to capture validation errors during request processing
+     * @param idempotencyKey Optional key making retries of the same request replay the first response instead of creating a duplicate
      * @return ResponseEntity containing the created account data or validation errors
      */
     @PostMapping()
-    public ResponseEntity<?> createAccount(@RequestBody @Valid AccountRequest accountRequest, BindingResult bindingResult) {
-        return accountService.createAccount(accountRequest, bindingResult);
+    public ResponseEntity<?> createAccount(@RequestBody @Valid AccountRequest accountRequest, BindingResult bindingResult,
+                                           @AuthenticationPrincipal Jwt jwt,
+                                           @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("accounts:" + jwt.getSubject(), idempotencyKey, accountRequest,
+                () -> accountService.createAccount(accountRequest, bindingResult));
     }
 
     /**
@@ -78,4 +224,40 @@ public class AccountController {
     public ResponseEntity<?> updateAccountBalance(@RequestBody AccountRequest accountRequest,@PathVariable String accountId){
         return accountService.updateAccountBalance(accountRequest,accountId);
     }
+
+    /**
+     * Adds an amount to the balance of an existing account, negative to take it off. Changes of hot accounts are
+     * accepted once they are durable and written to the account in batches shortly after.
+     *
+     * @param balanceDeltaRequest DTO containing the amount to add.
+     * @param bindingResult       Used to capture validation errors during request processing
+     * @param idempotencyKey      Optional key making retries of the same request replay the first response instead of applying the change twice
+     * @return ResponseEntity containing the updated account data, or an error message if the change fails.
+     */
+    @PostMapping("{userId}/{accountId}/deltas")
+    public ResponseEntity<?> addToBalance(@RequestBody @Valid BalanceDeltaRequest balanceDeltaRequest, BindingResult bindingResult,
+                                          @PathVariable String userId, @PathVariable String accountId,
+                                          @AuthenticationPrincipal Jwt jwt,
+                                          @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
+        return idempotencyService.execute("account-deltas:" + jwt.getSubject() + ":" + accountId, idempotencyKey, balanceDeltaRequest,
+                () -> accountService.addToBalance(userId, accountId, balanceDeltaRequest, bindingResult));
+    }
+
+    /**
+     * Fetch many accounts by their IDs in one request, instead of one request per ID.
+     *
+     * @param batchGetRequest The IDs of the accounts to be fetched.
+     * @param jwt             The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing one entry per requested ID in request order, IDs that do not exist are marked
+     * with a not found error; otherwise, returns an unauthorized error.
+     */
+    @PostMapping("batch")
+    public ResponseEntity<?> getAccountsBatch(@RequestBody BatchGetRequest batchGetRequest, @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return accountService.getAccountsBatch(batchGetRequest);
+    }
 }
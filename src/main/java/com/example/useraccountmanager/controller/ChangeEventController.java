@@ -0,0 +1,103 @@
+package com.example.useraccountmanager.controller;
+
+import com.example.useraccountmanager.service.ChangeEventService;
+import com.example.useraccountmanager.service.ChangeFeedService;
+import com.example.useraccountmanager.tools.RoleTools;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("api/v1/changes")
+public class ChangeEventController {
+
+    private final ChangeEventService changeEventService;
+    private final ChangeFeedService changeFeedService;
+
+    /**
+     * Reads user and account change events from the change log, starting at the given offset.
+     *
+     * @param offset Offset of the first event to read.
+     * @param limit  Maximum number of events to return.
+     * @param jwt    The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the events and the offset to continue from.
+     */
+    @GetMapping()
+    public ResponseEntity<?> getChanges(@RequestParam(defaultValue = "0") long offset,
+                                        @RequestParam(defaultValue = "500") int limit,
+                                        @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return changeEventService.getChanges(offset, limit);
+    }
+
+    /**
+     * Streams user and account changes as Server-Sent Events. Each event id is the eventId of the change, so a client
+     * reconnecting with the Last-Event-ID header (or the lastEventId parameter) resumes after the last event it saw,
+     * or gets a reset event if that position is no longer retained.
+     *
+     * @param lastEventIdHeader The Last-Event-ID header sent by EventSource clients on reconnect.
+     * @param lastEventId       Alternative to the header for clients that cannot set it.
+     * @param jwt               The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return The event stream, or an unauthorized error.
+     */
+    @GetMapping(value = "stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) Long lastEventIdHeader,
+                                           @RequestParam(required = false) Long lastEventId,
+                                           @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        SseEmitter emitter = changeFeedService.subscribe(lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+        return new ResponseEntity<>(emitter, HttpStatus.OK);
+    }
+
+    /**
+     * Retrieves the offset a consumer has committed.
+     *
+     * @param consumerId The name of the consumer.
+     * @return ResponseEntity containing the offset the consumer should continue from.
+     */
+    @GetMapping("consumers/{consumerId}")
+    public ResponseEntity<?> getConsumerOffset(@PathVariable String consumerId, @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return changeEventService.getConsumerOffset(consumerId);
+    }
+
+    /**
+     * Commits the offset a consumer has processed up to.
+     *
+     * @param consumerId The name of the consumer.
+     * @param offset     Offset of the next event the consumer wants to read.
+     * @return ResponseEntity containing the committed offset.
+     */
+    @PutMapping("consumers/{consumerId}")
+    public ResponseEntity<?> commitConsumerOffset(@PathVariable String consumerId, @RequestParam long offset,
+                                                  @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return changeEventService.commitConsumerOffset(consumerId, offset);
+    }
+}
@@ -1,12 +1,21 @@
 package com.example.useraccountmanager.controller;
 
+import com.example.useraccountmanager.dto.request.BatchGetRequest;
+import com.example.useraccountmanager.dto.request.BulkUserRequest;
 import com.example.useraccountmanager.dto.request.UserRequest;
+import com.example.useraccountmanager.service.EmailFilterService;
+import com.example.useraccountmanager.service.FirebaseReconciliationService;
+import com.example.useraccountmanager.service.IdempotencyService;
+import com.example.useraccountmanager.service.LookupCoalescingService;
+import com.example.useraccountmanager.service.PasswordResetService;
 import com.example.useraccountmanager.service.UserService;
 import com.example.useraccountmanager.tools.RoleTools;
 import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import com.fasterxml.jackson.databind.JsonNode;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.oauth2.jwt.Jwt;
@@ -22,6 +31,42 @@ import java.util.List;
 public class UserController {
 
     private final UserService userService;
+    private final IdempotencyService idempotencyService;
+    private final EmailFilterService emailFilterService;
+    private final LookupCoalescingService lookupCoalescingService;
+    private final PasswordResetService passwordResetService;
+    private final FirebaseReconciliationService firebaseReconciliationService;
+
+    /**
+     * Fetch the user the JWT token belongs to.
+     *
+     * @param jwt The JWT token of the currently authenticated user, used to verify their role and identify them.
+     * @return ResponseEntity containing the user data if the user has the required role;
+     * otherwise, returns an unauthorized error.
+     */
+    @GetMapping("me")
+    public ResponseEntity<?> getCurrentUser(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name(),
+                UserRoleEnum.USER.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return userService.getCurrentUser(jwt.getClaimAsString("email"), jwt.getSubject());
+    }
+
+    /**
+     * Request a password reset email.
+     * This endpoint is public; it only queues the email and answers the same way whether or not the email belongs to
+     * a user.
+     *
+     * @param email The email of the user who forgot their password.
+     * @return ResponseEntity with status 202 once the reset email is queued, or an error message.
+     */
+    @GetMapping("resetPassword/{email}")
+    public ResponseEntity<?> resetPassword(@PathVariable String email) {
+        return passwordResetService.requestReset(email);
+    }
 
     /**
      * Fetch a user by their unique ID.
@@ -61,24 +106,94 @@ public class UserController {
         return userService.getAllUsers();
     }
 
+    /**
+     * Fetch how many user and account lookups were coalesced with an identical lookup in flight, and how long the
+     * coalesced requests waited.
+     *
+     * @param jwt The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the coalescing statistics if the user has the required role;
+     * otherwise, returns an unauthorized error.
+     */
+    @GetMapping("lookups/stats")
+    public ResponseEntity<?> getLookupStats(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return lookupCoalescingService.getStats();
+    }
+
+    /**
+     * Fetch the size, memory use and false-positive rates of the email filter used to check email uniqueness.
+     *
+     * @param jwt The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the filter statistics if the user has the required role;
+     * otherwise, returns an unauthorized error.
+     */
+    @GetMapping("email-filter/stats")
+    public ResponseEntity<?> getEmailFilterStats(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return emailFilterService.getStats();
+    }
+
+    /**
+     * Runs the current reconciliation cycle between the database and Firebase Auth to its end, or starts a new one.
+     *
+     * @param jwt The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the report of the cycle, or an error if a run is in progress.
+     */
+    @PostMapping("reconciliation")
+    public ResponseEntity<?> startReconciliation(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return firebaseReconciliationService.startReconciliation();
+    }
+
+    /**
+     * Retrieves the progress and the issues found by the current or last reconciliation cycle with Firebase Auth.
+     *
+     * @param jwt The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the reconciliation report or an error message if no cycle was started.
+     */
+    @GetMapping("reconciliation")
+    public ResponseEntity<?> getReconciliationReport(@AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return firebaseReconciliationService.getReport();
+    }
+
     /**
      * Creates a new user in the system.
      *
      * @param userRequest   The DTO containing the data for the new user to be created.
      * @param jwt           The JWT token of the currently authenticated user, used to check their role and permissions.
      * @param bindingResult The BindingResult object to capture any validation errors for the incoming user request.
+     * @param idempotencyKey Optional key making retries of the same request replay the first response instead of creating a duplicate.
      * @return ResponseEntity containing the created user's data if the user has sufficient permissions and there are no validation errors;
      * otherwise, returns an appropriate error response.
      */
     @PostMapping()
-    public ResponseEntity<?> create(@RequestBody @Valid UserRequest userRequest, @AuthenticationPrincipal Jwt jwt, BindingResult bindingResult) {
+    public ResponseEntity<?> create(@RequestBody @Valid UserRequest userRequest, @AuthenticationPrincipal Jwt jwt, BindingResult bindingResult,
+                                    @RequestHeader(value = IdempotencyService.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey) {
         if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
                 UserRoleEnum.ADMIN.name(),
                 UserRoleEnum.USER.name()
         )))) {
             return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
         }
-        return userService.create(userRequest, bindingResult);
+        return idempotencyService.execute("users:" + jwt.getSubject(), idempotencyKey, userRequest,
+                () -> userService.create(userRequest, bindingResult));
     }
 
     /**
@@ -103,6 +218,28 @@ public class UserController {
         return userService.update(userId, userRequest);
     }
 
+    /**
+     * Partially update a user with a JSON Merge Patch (RFC 7396).
+     * Only the fields present in the patch are changed, a null value clears the field; a patch that changes nothing
+     * does not write to the database.
+     *
+     * @param userId The ID of the user to be patched.
+     * @param patch  The merge patch document.
+     * @param jwt    The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the patched user data if the user has the required role;
+     *         otherwise, returns an unauthorized error.
+     */
+    @PatchMapping(value = "{userId}", consumes = {"application/merge-patch+json", MediaType.APPLICATION_JSON_VALUE})
+    public ResponseEntity<?> patch(@PathVariable String userId, @RequestBody JsonNode patch, @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name(),
+                UserRoleEnum.USER.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return userService.patch(userId, patch);
+    }
+
     /**
      * Activate a user by their unique ID.
      *
@@ -120,6 +257,25 @@ public class UserController {
         return userService.activate(userId);
     }
 
+    /**
+     * Change the role of a user.
+     * The new role is picked up by authorization within seconds, without the user signing in again.
+     *
+     * @param userId The ID of the user.
+     * @param role   The new role of the user.
+     * @return ResponseEntity containing the updated user data or an error message.
+     */
+    @PutMapping("{userId}/role/{role}")
+    public ResponseEntity<?> changeRole(@PathVariable String userId, @PathVariable UserRoleEnum role,
+                                        @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return userService.changeRole(userId, role);
+    }
+
     /**
      * Delete a user by their unique ID.
      *
@@ -136,4 +292,56 @@ public class UserController {
         }
         return userService.deleteUser(userId);
     }
+
+    /**
+     * Deactivate many users at once, selected by a list of IDs or by a filter (status, email domain, created before).
+     *
+     * @param bulkUserRequest The IDs or the filter selecting the users.
+     * @param jwt             The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the number of selected and deactivated users or an error message.
+     */
+    @PostMapping("bulk/deactivate")
+    public ResponseEntity<?> bulkDeactivate(@RequestBody BulkUserRequest bulkUserRequest, @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return userService.bulkDeactivate(bulkUserRequest);
+    }
+
+    /**
+     * Delete many users and their accounts at once, selected by a list of IDs or by a filter.
+     *
+     * @param bulkUserRequest The IDs or the filter selecting the users.
+     * @param jwt             The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing the number of selected and deleted users or an error message.
+     */
+    @PostMapping("bulk/delete")
+    public ResponseEntity<?> bulkDelete(@RequestBody BulkUserRequest bulkUserRequest, @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return userService.bulkDelete(bulkUserRequest);
+    }
+
+    /**
+     * Fetch many users by their IDs in one request, instead of one request per ID.
+     *
+     * @param batchGetRequest The IDs of the users to be fetched.
+     * @param jwt             The JWT token of the currently authenticated user, used to verify their role and permissions.
+     * @return ResponseEntity containing one entry per requested ID in request order, IDs that do not exist are marked
+     * with a not found error; otherwise, returns an unauthorized error.
+     */
+    @PostMapping("batch")
+    public ResponseEntity<?> getUsersBatch(@RequestBody BatchGetRequest batchGetRequest, @AuthenticationPrincipal Jwt jwt) {
+        if (!RoleTools.hasAccess(jwt, new ArrayList<>(List.of(
+                UserRoleEnum.ADMIN.name()
+        )))) {
+            return new ResponseEntity<>(HttpStatus.UNAUTHORIZED);
+        }
+        return userService.getUsersBatch(batchGetRequest);
+    }
 }
@@ -1,16 +1,19 @@
 package com.example.useraccountmanager.dto.request;
 
+import com.example.useraccountmanager.tools.Money;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 
-import java.math.BigDecimal;
-
 @Data
 public class AccountRequest {
 
+    /**
+     * ID of an existing account when updating a user; accounts without an ID are created.
+     */
+    private String id;
     @NotNull
     private String userId;
     @NotNull
-    private BigDecimal balance;
+    private Money balance;
 
 }
@@ -0,0 +1,16 @@
+package com.example.useraccountmanager.dto.request;
+
+import com.example.useraccountmanager.tools.Money;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+
+/**
+ * An amount added to the balance of an account, negative to take it off.
+ */
+@Data
+public class BalanceDeltaRequest {
+
+    @NotNull
+    private Money amount;
+
+}
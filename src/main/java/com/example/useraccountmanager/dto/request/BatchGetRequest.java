@@ -0,0 +1,13 @@
+package com.example.useraccountmanager.dto.request;
+
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchGetRequest {
+
+    @NotEmpty
+    private List<String> ids;
+}
@@ -0,0 +1,24 @@
+package com.example.useraccountmanager.dto.request;
+
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Selects the users of a bulk operation, either by an explicit list of IDs or by a filter. At least one of them
+ * must be given; filter criteria that are set are combined with AND.
+ */
+@Data
+public class BulkUserRequest {
+
+    private List<String> userIds;
+    private UserStatusEnum status;
+    private String emailDomain;
+    private LocalDateTime createdBefore;
+
+    public boolean hasFilter() {
+        return status != null || (emailDomain != null && !emailDomain.isBlank()) || createdBefore != null;
+    }
+}
@@ -3,6 +3,7 @@ package com.example.useraccountmanager.dto.request;
 import com.example.useraccountmanager.tools.UserStatusEnum;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
@@ -12,6 +13,7 @@ import java.util.Set;
 @Data
 @Builder
 @RequiredArgsConstructor
+@AllArgsConstructor
 public class UserRequest {
 
     @NotNull
@@ -1,12 +1,12 @@
 package com.example.useraccountmanager.dto.response;
 
+import com.example.useraccountmanager.tools.Money;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.RequiredArgsConstructor;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
@@ -20,7 +20,7 @@ public class AccountResponse {
 
     private String id;
     private String userId;
-    private BigDecimal balance;
+    private Money balance;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
 
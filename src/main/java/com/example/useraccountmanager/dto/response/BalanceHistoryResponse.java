@@ -0,0 +1,46 @@
+package com.example.useraccountmanager.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class BalanceHistoryResponse {
+
+    private String accountId;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Duration bucket;
+
+    @Builder.Default
+    private List<String> info = new ArrayList<>();
+    @Builder.Default
+    private List<String> errors = new ArrayList<>();
+    @Builder.Default
+    private List<BalancePointResponse> data = new ArrayList<>();
+
+    public void addInfo(String info) {
+        if (this.info == null) {
+            this.info = new ArrayList<>();
+        }
+        this.info.add(info);
+    }
+
+    public void addError(String error) {
+        if (this.errors == null) {
+            this.errors = new ArrayList<>();
+        }
+        this.errors.add(error);
+    }
+}
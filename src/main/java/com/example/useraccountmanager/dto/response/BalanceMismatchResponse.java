@@ -0,0 +1,21 @@
+package com.example.useraccountmanager.dto.response;
+
+import com.example.useraccountmanager.tools.Money;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BalanceMismatchResponse {
+
+    private String accountId;
+    private String userId;
+    private Money balance;
+    private Money recordedBalance;
+}
@@ -0,0 +1,27 @@
+package com.example.useraccountmanager.dto.response;
+
+import com.example.useraccountmanager.tools.Money;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * One point of a balance history. For downsampled queries the point describes a bucket: timestamp is the bucket
+ * start, balance is the last value in the bucket, and min and max are its extremes.
+ */
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BalancePointResponse {
+
+    private LocalDateTime timestamp;
+    private Money balance;
+    private Money min;
+    private Money max;
+}
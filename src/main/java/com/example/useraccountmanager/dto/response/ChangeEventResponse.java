@@ -0,0 +1,52 @@
+package com.example.useraccountmanager.dto.response;
+
+import com.example.useraccountmanager.tools.enums.AggregateTypeEnum;
+import com.example.useraccountmanager.tools.enums.ChangeEventTypeEnum;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class ChangeEventResponse {
+
+    private Long offset;
+    private Long eventId;
+    private AggregateTypeEnum aggregateType;
+    private String aggregateId;
+    private String userId;
+    private ChangeEventTypeEnum eventType;
+    private LocalDateTime updatedAt;
+    private LocalDateTime occurredAt;
+    private Long nextOffset;
+
+    @Builder.Default
+    private List<String> info = new ArrayList<>();
+    @Builder.Default
+    private List<String> errors = new ArrayList<>();
+    @Builder.Default
+    private List<ChangeEventResponse> data = new ArrayList<>();
+
+    public void addInfo(String info) {
+        if (this.info == null) {
+            this.info = new ArrayList<>();
+        }
+        this.info.add(info);
+    }
+
+    public void addError(String error) {
+        if (this.errors == null) {
+            this.errors = new ArrayList<>();
+        }
+        this.errors.add(error);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.useraccountmanager.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class EmailFilterStatsResponse {
+
+    private long bitSize;
+    private long memoryBytes;
+    private int hashFunctions;
+    private long builtWithEmails;
+    private long approximateEmails;
+    private double expectedFalsePositiveRate;
+    private long checks;
+    private long definitelyAbsent;
+    private long falsePositives;
+    private double observedFalsePositiveRate;
+
+    @Builder.Default
+    private List<String> info = new ArrayList<>();
+    @Builder.Default
+    private List<String> errors = new ArrayList<>();
+
+    public void addInfo(String info) {
+        if (this.info == null) {
+            this.info = new ArrayList<>();
+        }
+        this.info.add(info);
+    }
+
+    public void addError(String error) {
+        if (this.errors == null) {
+            this.errors = new ArrayList<>();
+        }
+        this.errors.add(error);
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.useraccountmanager.dto.response;
+
+import com.example.useraccountmanager.tools.enums.LookupEnum;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LookupStatsResponse {
+
+    private LookupEnum lookup;
+    private String key;
+    private long loads;
+    private long coalesced;
+    private double averageWaitMillis;
+    private double maxWaitMillis;
+    private Integer inFlight;
+    private List<LookupStatsResponse> hotKeys;
+}
@@ -0,0 +1,24 @@
+package com.example.useraccountmanager.dto.response;
+
+import com.example.useraccountmanager.tools.enums.ReconciliationIssueEnum;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReconciliationIssueResponse {
+
+    private ReconciliationIssueEnum type;
+    private String userId;
+    private String firebaseUid;
+    private String email;
+    private String expected;
+    private String actual;
+    private Boolean repaired;
+}
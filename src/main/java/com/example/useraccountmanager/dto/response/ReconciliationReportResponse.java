@@ -0,0 +1,57 @@
+package com.example.useraccountmanager.dto.response;
+
+import com.example.useraccountmanager.tools.enums.JobStatusEnum;
+import com.example.useraccountmanager.tools.enums.ReconciliationPhaseEnum;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+@Data
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class ReconciliationReportResponse {
+
+    private String cycleId;
+    private JobStatusEnum status;
+    private ReconciliationPhaseEnum phase;
+    private LocalDateTime startedAt;
+    private LocalDateTime finishedAt;
+    private LocalDateTime updatedAt;
+    private long firebaseUsers;
+    private long databaseUsers;
+    private long missingInDatabase;
+    private long missingInFirebase;
+    private long unlinked;
+    private long statusMismatches;
+    private long claimMismatches;
+    private long repaired;
+    private long repairFailures;
+    private List<ReconciliationIssueResponse> issues;
+
+    @Builder.Default
+    private List<String> info = new ArrayList<>();
+    @Builder.Default
+    private List<String> errors = new ArrayList<>();
+
+    public void addInfo(String info) {
+        if (this.info == null) {
+            this.info = new ArrayList<>();
+        }
+        this.info.add(info);
+    }
+
+    public void addError(String error) {
+        if (this.errors == null) {
+            this.errors = new ArrayList<>();
+        }
+        this.errors.add(error);
+    }
+}
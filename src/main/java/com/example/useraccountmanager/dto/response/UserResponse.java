@@ -1,6 +1,7 @@
 package com.example.useraccountmanager.dto.response;
 
 import com.example.useraccountmanager.tools.UserStatusEnum;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -28,9 +29,11 @@ public class UserResponse {
     private Integer phoneNumber;
     private String address;
     private Set<String> accountIds;
+    private List<AccountResponse> accounts;
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
     private UserStatusEnum status;
+    private UserRoleEnum role;
 
     private List<String> info = new ArrayList<>();
     private List<String> errors = new ArrayList<>();
@@ -0,0 +1,71 @@
+package com.example.useraccountmanager.logging;
+
+import ch.qos.logback.classic.AsyncAppender;
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.LoggerContext;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.classic.spi.LoggingEvent;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Asynchronous appender that hands events to a background writer through logback's bounded queue and never blocks
+ * the logging thread. When the queue is full, or below the discarding threshold for events under WARN, events are
+ * dropped and counted; once the queue has drained to half its size a single WARN event reports how many were lost.
+ * <p>
+ * The count is approximate: an event that finds the queue filled between the check and the hand-off is dropped by
+ * logback without being counted.
+ */
+public class DropSummaryAsyncAppender extends AsyncAppender {
+
+    private final LongAdder dropped = new LongAdder();
+    private final AtomicLong lastSummaryNanos = new AtomicLong(System.nanoTime());
+    private long summaryIntervalMillis = 10_000;
+
+    @Override
+    public void start() {
+        setNeverBlock(true);
+        super.start();
+    }
+
+    @Override
+    protected void append(ILoggingEvent event) {
+        int remaining = getRemainingCapacity();
+        if (remaining == 0 || (remaining < getDiscardingThreshold() && isDiscardable(event))) {
+            dropped.increment();
+            return;
+        }
+        if (remaining > getQueueSize() / 2) {
+            reportDrops();
+        }
+        super.append(event);
+    }
+
+    public void setSummaryIntervalMillis(long summaryIntervalMillis) {
+        this.summaryIntervalMillis = summaryIntervalMillis;
+    }
+
+    private void reportDrops() {
+        if (dropped.sum() == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastSummaryNanos.get();
+        if (now - last < TimeUnit.MILLISECONDS.toNanos(summaryIntervalMillis) || !lastSummaryNanos.compareAndSet(last, now)) {
+            return;
+        }
+        long count = dropped.sumThenReset();
+        if (count > 0) {
+            LoggerContext loggerContext = (LoggerContext) getContext();
+            LoggingEvent summary = new LoggingEvent(DropSummaryAsyncAppender.class.getName(),
+                    loggerContext.getLogger(DropSummaryAsyncAppender.class), Level.WARN,
+                    "Dropped {} log events because the log queue was full", null, new Object[]{count});
+            // The summary does not belong to the request that happens to trigger it
+            summary.setMDCPropertyMap(Map.of());
+            super.append(summary);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.useraccountmanager.logging;
+
+import com.example.useraccountmanager.tools.TokenBucket;
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+
+/**
+ * Puts the request ID into the MDC once per request, so every log line of the request carries it through the log
+ * pattern without any string building at the call sites. Also decides whether the request's SQL is traced: a
+ * configurable share of requests is sampled, and if enabled an administrator can ask for it with the trace header,
+ * which {@link SqlTraceHeaderFilter} checks once the caller is authenticated. Traced requests are capped per second,
+ * so the header cannot be used to flood the log.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LoggingContextFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID_KEY = "requestId";
+    public static final String SQL_TRACE_KEY = "sqlTrace";
+    private static final String REQUEST_ID_HEADER = "X-Request-Id";
+    private static final Pattern VALID_REQUEST_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+    @Value("${logging.sql-trace.sample-rate:0.0}")
+    private double sampleRate;
+
+    @Value("${logging.sql-trace.header-enabled:false}")
+    private boolean headerEnabled;
+
+    @Value("${logging.sql-trace.header:X-Trace-Sql}")
+    private String traceHeader;
+
+    @Value("${logging.sql-trace.max-per-second:10}")
+    private double maxTracedPerSecond;
+
+    private TokenBucket tracedRequests;
+
+    @PostConstruct
+    void init() {
+        if (maxTracedPerSecond > 0) {
+            tracedRequests = new TokenBucket(Math.max(1, (long) maxTracedPerSecond), maxTracedPerSecond);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || !VALID_REQUEST_ID.matcher(requestId).matches()) {
+            requestId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        }
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        MDC.put(REQUEST_ID_KEY, requestId);
+        if (sampleRate > 0 && ThreadLocalRandom.current().nextDouble() < sampleRate && tryTrace()) {
+            MDC.put(SQL_TRACE_KEY, "true");
+        }
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            MDC.remove(REQUEST_ID_KEY);
+            MDC.remove(SQL_TRACE_KEY);
+        }
+    }
+
+    /**
+     * Returns whether the request asks for its SQL to be traced with the trace header, always false unless the header
+     * is enabled.
+     */
+    boolean isTraceRequested(HttpServletRequest request) {
+        return headerEnabled && "true".equalsIgnoreCase(request.getHeader(traceHeader));
+    }
+
+    /**
+     * Takes one traced request from the per second cap.
+     */
+    boolean tryTrace() {
+        return tracedRequests != null && tracedRequests.tryAcquire();
+    }
+}
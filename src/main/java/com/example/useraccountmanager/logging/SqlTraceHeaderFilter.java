@@ -0,0 +1,44 @@
+package com.example.useraccountmanager.logging;
+
+import com.example.useraccountmanager.tools.RoleTools;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Traces the SQL of a request sent with the trace header, for administrators only. {@link LoggingContextFilter} runs
+ * before the caller is authenticated, so the header is checked here, inside the security chain.
+ */
+public class SqlTraceHeaderFilter extends OncePerRequestFilter {
+
+    private final LoggingContextFilter loggingContextFilter;
+
+    public SqlTraceHeaderFilter(LoggingContextFilter loggingContextFilter) {
+        this.loggingContextFilter = loggingContextFilter;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        if (MDC.get(LoggingContextFilter.SQL_TRACE_KEY) == null && loggingContextFilter.isTraceRequested(request)
+                && isAdmin() && loggingContextFilter.tryTrace()) {
+            // Removed again by LoggingContextFilter when the request completes
+            MDC.put(LoggingContextFilter.SQL_TRACE_KEY, "true");
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private boolean isAdmin() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.isAuthenticated()
+                && RoleTools.getRoles(authentication).contains(UserRoleEnum.ADMIN.name());
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.useraccountmanager.logging;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.MDC;
+import org.slf4j.Marker;
+
+/**
+ * Enables Hibernate's SQL and bind-parameter logging only for requests sampled for SQL tracing by
+ * {@link LoggingContextFilter}. The SQL loggers stay above DEBUG in the configuration, so for every other request
+ * Hibernate's {@code isDebugEnabled()} and {@code isTraceEnabled()} checks fail and no statement text is built.
+ */
+public class SqlTraceTurboFilter extends TurboFilter {
+
+    private static final String SQL_LOGGER = "org.hibernate.SQL";
+    private static final String BIND_LOGGER = "org.hibernate.orm.jdbc.bind";
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        if (logger == null || level.toInt() > Level.DEBUG_INT) {
+            return FilterReply.NEUTRAL;
+        }
+        String name = logger.getName();
+        if ((SQL_LOGGER.equals(name) || BIND_LOGGER.equals(name)) && MDC.get(LoggingContextFilter.SQL_TRACE_KEY) != null) {
+            return FilterReply.ACCEPT;
+        }
+        return FilterReply.NEUTRAL;
+    }
+}
@@ -1,17 +1,25 @@
 package com.example.useraccountmanager.model;
 
+import com.example.useraccountmanager.sharding.ShardAwareId;
+import com.example.useraccountmanager.tools.Money;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.Hibernate;
-import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Type;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Objects;
 
 
 @Entity
-@Table(name = "accounts")
+@Table(name = "accounts", indexes = {
+        @Index(name = "IX_accounts_user_balance", columnList = "user_id, balance, id"),
+        @Index(name = "IX_accounts_user_created_at", columnList = "user_id, created_at, id"),
+        @Index(name = "IX_accounts_user_updated_at", columnList = "user_id, updated_at, id"),
+        @Index(name = "IX_accounts_balance", columnList = "balance, id"),
+        @Index(name = "IX_accounts_created_at", columnList = "created_at, id"),
+        @Index(name = "IX_accounts_updated_at", columnList = "updated_at, id")
+})
 @Getter
 @Setter
 @Builder
@@ -20,8 +28,7 @@ import java.util.Objects;
 public class Account {
 
     @Id
-    @GeneratedValue(generator = "system-uuid")
-    @GenericGenerator(name = "system-uuid", strategy = "uuid2")
+    @ShardAwareId
     @Column(name = "id", nullable = false)
     private String id;
 
@@ -30,9 +37,11 @@ public class Account {
     @JoinColumn(name = "user_id")
     private User user;
 
-    private BigDecimal balance;
+    @Column(name = "balance", precision = Money.PRECISION, scale = Money.SCALE)
+    @Type(MoneyType.class)
+    private Money balance;
 
-    @Column(updatable = false)
+    @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
 
     @Column(name = "updated_at")
@@ -54,7 +63,13 @@ public class Account {
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
-        User user = (User) o;
-        return getId() != null && Objects.equals(getId(), user.getId());
+        Account account = (Account) o;
+        return getId() != null && Objects.equals(getId(), account.getId());
+    }
+
+    @Override
+    public int hashCode() {
+        // Constant, as the ID is assigned at persist while a new account already sits in the accounts set of its user
+        return Hibernate.getClass(this).hashCode();
     }
 }
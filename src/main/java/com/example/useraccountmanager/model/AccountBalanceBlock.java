@@ -0,0 +1,58 @@
+package com.example.useraccountmanager.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+/**
+ * One time-partitioned block of an account's balance history. Points are stored delta-encoded in {@code data}
+ * (see {@code BalanceHistoryCodec}); the summary columns let range queries use whole blocks without decoding them.
+ * Timestamps are epoch milliseconds and values are minor currency units.
+ * <p>
+ * Balance changes are appended to small tail blocks; compaction merges the tail blocks of a partition into full
+ * blocks. The newest block of an account, by ID, is the one being appended to.
+ */
+@Entity
+@Table(name = "account_balance_blocks", indexes = {
+        @Index(name = "IX_account_balance_blocks_account_time", columnList = "account_id, first_timestamp"),
+        @Index(name = "IX_account_balance_blocks_tail", columnList = "tail, account_id")
+})
+@Getter
+@Setter
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+public class AccountBalanceBlock {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Column(name = "account_id", nullable = false)
+    private String accountId;
+
+    @Column(name = "first_timestamp", nullable = false)
+    private long firstTimestamp;
+
+    @Column(name = "last_timestamp", nullable = false)
+    private long lastTimestamp;
+
+    @Column(name = "point_count", nullable = false)
+    private int pointCount;
+
+    @Column(name = "min_value", nullable = false)
+    private long minValue;
+
+    @Column(name = "max_value", nullable = false)
+    private long maxValue;
+
+    @Column(name = "last_value", nullable = false)
+    private long lastValue;
+
+    @Column(name = "tail", nullable = false)
+    private boolean tail;
+
+    @Lob
+    @Column(name = "data", nullable = false)
+    private byte[] data;
+}
@@ -0,0 +1,40 @@
+package com.example.useraccountmanager.model;
+
+import com.example.useraccountmanager.tools.Money;
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Type;
+
+import java.time.LocalDateTime;
+
+/**
+ * An account of an archived user, moved out of the {@code accounts} table with its user.
+ */
+@Entity
+@Table(name = "accounts_archive", indexes = {
+        @Index(name = "IX_accounts_archive_user_id", columnList = "user_id")
+})
+@Getter
+@Setter
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+public class ArchivedAccount {
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private String id;
+
+    @Column(name = "user_id", nullable = false)
+    private String userId;
+
+    @Column(name = "balance", precision = Money.PRECISION, scale = Money.SCALE)
+    @Type(MoneyType.class)
+    private Money balance;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,65 @@
+package com.example.useraccountmanager.model;
+
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A long-inactive user moved out of the {@code users} table. Same columns as {@link User}, plus the time of archival.
+ */
+@Entity
+@Table(name = "users_archive", indexes = {
+        @Index(name = "IX_users_archive_email", columnList = "email")
+})
+@Getter
+@Setter
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+public class ArchivedUser {
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private String id;
+
+    @Column(name = "first_name")
+    private String firstName;
+
+    @Column(name = "last_name")
+    private String lastName;
+
+    @Column(name = "username")
+    private String username;
+
+    @Column(name = "email")
+    private String email;
+
+    @Column(name = "phone_number")
+    private Integer phoneNumber;
+
+    @Column(name = "address")
+    private String address;
+
+    @Column(name = "firebase_uid")
+    private String firebaseUid;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "role")
+    private UserRoleEnum userRole;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private UserStatusEnum userStatus;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "archived_at")
+    private LocalDateTime archivedAt;
+}
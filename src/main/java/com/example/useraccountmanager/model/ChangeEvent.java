@@ -0,0 +1,53 @@
+package com.example.useraccountmanager.model;
+
+import com.example.useraccountmanager.tools.enums.AggregateTypeEnum;
+import com.example.useraccountmanager.tools.enums.ChangeEventTypeEnum;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row describing one mutation of a user or an account. Rows are written in the same transaction as the
+ * mutation, read by the relay of every instance into its own change log and removed once they are older than the
+ * outbox retention.
+ */
+@Entity
+@Table(name = "change_events", indexes = @Index(name = "IX_change_events_created_at", columnList = "created_at"))
+@Getter
+@Setter
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+public class ChangeEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Column(name = "id", nullable = false)
+    private Long id;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "aggregate_type", nullable = false)
+    private AggregateTypeEnum aggregateType;
+
+    @Column(name = "aggregate_id", nullable = false)
+    private String aggregateId;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "event_type", nullable = false)
+    private ChangeEventTypeEnum eventType;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+
+    @PrePersist
+    private void prePersist() {
+        this.createdAt = LocalDateTime.now();
+    }
+}
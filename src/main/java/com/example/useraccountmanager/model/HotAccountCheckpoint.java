@@ -0,0 +1,30 @@
+package com.example.useraccountmanager.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * The last write-behind epoch of hot account deltas applied to a shard. It is updated in the same transaction as the
+ * balances, so after a crash the write-ahead log is replayed from the epoch following it. The id is the shard.
+ */
+@Entity
+@Table(name = "hot_account_checkpoints")
+@Getter
+@Setter
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+public class HotAccountCheckpoint {
+
+    @Id
+    @Column(name = "shard", nullable = false)
+    private Integer shard;
+
+    @Column(name = "epoch", nullable = false)
+    private long epoch;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,88 @@
+package com.example.useraccountmanager.model;
+
+import com.example.useraccountmanager.tools.Money;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.type.descriptor.jdbc.JdbcType;
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Maps {@link Money} to a {@code DECIMAL(18,2)} column. The JDBC drivers exchange decimals as {@link BigDecimal}, so
+ * the conversion happens once per value read or bound; entities, queries and responses only see the minor units.
+ */
+public class MoneyType implements UserType<Money> {
+
+    @Override
+    public int getSqlType() {
+        return Types.DECIMAL;
+    }
+
+    @Override
+    public Class<Money> returnedClass() {
+        return Money.class;
+    }
+
+    @Override
+    public boolean equals(Money x, Money y) {
+        return x == null ? y == null : x.equals(y);
+    }
+
+    @Override
+    public int hashCode(Money x) {
+        return x.hashCode();
+    }
+
+    @Override
+    public Money nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session, Object owner)
+            throws SQLException {
+        BigDecimal value = rs.getBigDecimal(position);
+        return value == null ? null : Money.of(value);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, Money value, int index, SharedSessionContractImplementor session)
+            throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.DECIMAL);
+        } else {
+            st.setBigDecimal(index, value.toBigDecimal());
+        }
+    }
+
+    @Override
+    public Money deepCopy(Money value) {
+        return value;
+    }
+
+    @Override
+    public boolean isMutable() {
+        return false;
+    }
+
+    @Override
+    public Serializable disassemble(Money value) {
+        return value;
+    }
+
+    @Override
+    public Money assemble(Serializable cached, Object owner) {
+        return (Money) cached;
+    }
+
+    @Override
+    public int getDefaultSqlPrecision(Dialect dialect, JdbcType jdbcType) {
+        return Money.PRECISION;
+    }
+
+    @Override
+    public int getDefaultSqlScale(Dialect dialect, JdbcType jdbcType) {
+        return Money.SCALE;
+    }
+}
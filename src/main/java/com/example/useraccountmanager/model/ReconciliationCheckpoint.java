@@ -0,0 +1,91 @@
+package com.example.useraccountmanager.model;
+
+import com.example.useraccountmanager.tools.enums.JobStatusEnum;
+import com.example.useraccountmanager.tools.enums.ReconciliationPhaseEnum;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Position and tallies of the current Firebase reconciliation cycle, saved after every page so a cycle can be
+ * continued by the next run. The id is the name of the job.
+ */
+@Entity
+@Table(name = "reconciliation_checkpoints")
+@Getter
+@Setter
+@Builder
+@RequiredArgsConstructor
+@AllArgsConstructor
+public class ReconciliationCheckpoint {
+
+    @Id
+    @Column(name = "id", nullable = false)
+    private String id;
+
+    @Column(name = "cycle_id")
+    private String cycleId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status")
+    private JobStatusEnum status;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "phase")
+    private ReconciliationPhaseEnum phase;
+
+    @Column(name = "page_token", length = 1024)
+    private String pageToken;
+
+    @Column(name = "after_uid")
+    private String afterUid;
+
+    @Column(name = "shard")
+    private int shard;
+
+    @Column(name = "after_id")
+    private String afterId;
+
+    @Column(name = "firebase_users")
+    private long firebaseUsers;
+
+    @Column(name = "database_users")
+    private long databaseUsers;
+
+    @Column(name = "missing_in_database")
+    private long missingInDatabase;
+
+    @Column(name = "missing_in_firebase")
+    private long missingInFirebase;
+
+    @Column(name = "unlinked")
+    private long unlinked;
+
+    @Column(name = "status_mismatches")
+    private long statusMismatches;
+
+    @Column(name = "claim_mismatches")
+    private long claimMismatches;
+
+    @Column(name = "repaired")
+    private long repaired;
+
+    @Column(name = "repair_failures")
+    private long repairFailures;
+
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    @PrePersist
+    @PreUpdate
+    private void touch() {
+        this.updatedAt = LocalDateTime.now();
+    }
+}
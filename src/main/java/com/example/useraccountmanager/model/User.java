@@ -1,11 +1,12 @@
 package com.example.useraccountmanager.model;
 
+import com.example.useraccountmanager.sharding.ShardAwareId;
 import com.example.useraccountmanager.tools.UserStatusEnum;
 import com.example.useraccountmanager.tools.enums.UserRoleEnum;
 import jakarta.persistence.*;
 import lombok.*;
 import org.hibernate.Hibernate;
-import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.DynamicUpdate;
 
 import java.time.LocalDateTime;
 import java.util.HashSet;
@@ -14,6 +15,7 @@ import java.util.Set;
 
 @Entity
 @Table(name = "users")
+@DynamicUpdate
 @Getter
 @Setter
 @Builder
@@ -22,8 +24,7 @@ import java.util.Set;
 public class User {
 
     @Id
-    @GeneratedValue(generator = "system-uuid")
-    @GenericGenerator(name = "system-uuid", strategy = "uuid2")
+    @ShardAwareId
     @Column(name = "id", nullable = false)
     private String id;
 
@@ -36,7 +37,7 @@ public class User {
     @Column(name = "username")
     private String username;
 
-    @Column(name = "email")
+    @Column(name = "email", unique = true)
     private String email;
 
     @Column(name = "phone_number")
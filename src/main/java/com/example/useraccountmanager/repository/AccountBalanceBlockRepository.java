@@ -0,0 +1,54 @@
+package com.example.useraccountmanager.repository;
+
+import com.example.useraccountmanager.model.AccountBalanceBlock;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AccountBalanceBlockRepository extends JpaRepository<AccountBalanceBlock, Long> {
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select b from AccountBalanceBlock b where b.accountId = ?1 order by b.id desc")
+    List<AccountBalanceBlock> findLatestForUpdate(String accountId, Pageable pageable);
+
+    @Query("select b from AccountBalanceBlock b where b.accountId = ?1 and b.firstTimestamp <= ?3 and b.lastTimestamp >= ?2 " +
+            "order by b.firstTimestamp, b.id")
+    List<AccountBalanceBlock> findOverlapping(String accountId, long from, long to);
+
+    /**
+     * Returns accountId and lastValue of the newest block of every given account.
+     */
+    @Query("select b.accountId, b.lastValue from AccountBalanceBlock b where b.accountId in ?1 and b.id = " +
+            "(select max(l.id) from AccountBalanceBlock l where l.accountId = b.accountId)")
+    List<Object[]> findLatestValues(Collection<String> accountIds);
+
+    /**
+     * Returns the tail blocks of an account that are no longer appended to, older than its newest block.
+     */
+    @Query("select b from AccountBalanceBlock b where b.accountId = ?1 and b.tail = true and b.id < ?2 order by b.id")
+    List<AccountBalanceBlock> findSealedTails(String accountId, long latestId);
+
+    /**
+     * Returns the IDs of accounts after the given one that have tail blocks other than their newest block.
+     */
+    @Query("select distinct b.accountId from AccountBalanceBlock b where b.tail = true and b.accountId > ?1 and b.id < " +
+            "(select max(l.id) from AccountBalanceBlock l where l.accountId = b.accountId) order by b.accountId")
+    List<String> findAccountsWithSealedTails(String afterAccountId, Limit limit);
+
+    @Modifying
+    @Query("delete from AccountBalanceBlock b where b.accountId in ?1")
+    int deleteByAccountIds(Collection<String> accountIds);
+
+    @Modifying
+    @Query("delete from AccountBalanceBlock b where b.accountId in (select a.id from Account a where a.user.id in ?1)")
+    int deleteByUserIds(Collection<String> userIds);
+}
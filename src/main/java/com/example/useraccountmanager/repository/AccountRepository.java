@@ -1,19 +1,57 @@
 package com.example.useraccountmanager.repository;
 
 import com.example.useraccountmanager.model.Account;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface AccountRepository extends JpaRepository<Account, String> {
+public interface AccountRepository extends JpaRepository<Account, String>, JpaSpecificationExecutor<Account> {
 
     @Query("select a from Account a where a.id = ?1 and a.user.id = ?2")
     Optional<Account> findByIdAndUserId(String accountId, String userId);
 
     @Query("select a from Account a where a.user.id = ?1")
     List<Account> findAllByUserId(String userId);
+
+    @Query("select a from Account a where a.user.id in ?1")
+    List<Account> findAllByUserIds(Collection<String> userIds);
+
+    @Query("select a.user.id, a.id, a.updatedAt from Account a where a.user.id in ?1")
+    List<Object[]> findVersionsByUserIds(Collection<String> userIds);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from Account a where a.id in ?1")
+    List<Account> lockAllByIds(Collection<String> accountIds);
+
+    /**
+     * Finds the next page of accounts of an ID range, ordered by ID. The range ends before upperId, or is open when
+     * upperId is null.
+     */
+    @Query("select a from Account a where a.id > ?1 and (?2 is null or a.id < ?2) order by a.id")
+    List<Account> findIdRangePage(String afterId, String upperId, Limit limit);
+
+    /**
+     * Finds the next page of an ID range for the export, as rows of account ID, user ID, email, user status, balance,
+     * created and updated time.
+     */
+    @Query("select a.id, u.id, u.email, u.userStatus, a.balance, a.createdAt, a.updatedAt from Account a join a.user u " +
+            "where a.id > ?1 and (?2 is null or a.id < ?2) order by a.id")
+    List<Object[]> findExportPage(String afterId, String upperId, Limit limit);
+
+    @Query("select a from Account a order by a.balance desc, a.id")
+    List<Account> findTopByBalance(Limit limit);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from Account a where a.user.id in ?1")
+    int deleteByUserIds(Collection<String> userIds);
 }
@@ -0,0 +1,35 @@
+package com.example.useraccountmanager.repository;
+
+import com.example.useraccountmanager.model.ArchivedAccount;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface ArchivedAccountRepository extends JpaRepository<ArchivedAccount, String> {
+
+    @Query("select a from ArchivedAccount a where a.id = ?1 and a.userId = ?2")
+    Optional<ArchivedAccount> findByIdAndUserId(String accountId, String userId);
+
+    @Query("select a from ArchivedAccount a where a.userId in ?1")
+    List<ArchivedAccount> findAllByUserIds(Collection<String> userIds);
+
+    @Modifying
+    @Query(value = "insert into accounts_archive (id, user_id, balance, created_at, updated_at) " +
+            "select id, user_id, balance, created_at, updated_at from accounts where user_id in ?1", nativeQuery = true)
+    int archiveAccountsOfUsers(Collection<String> userIds);
+
+    @Modifying
+    @Query(value = "insert into accounts (id, user_id, balance, created_at, updated_at) " +
+            "select id, user_id, balance, created_at, updated_at from accounts_archive where user_id in ?1", nativeQuery = true)
+    int restoreAccountsOfUsers(Collection<String> userIds);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from ArchivedAccount a where a.userId in ?1")
+    int deleteByUserIds(Collection<String> userIds);
+}
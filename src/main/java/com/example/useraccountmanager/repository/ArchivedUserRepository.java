@@ -0,0 +1,61 @@
+package com.example.useraccountmanager.repository;
+
+import com.example.useraccountmanager.model.ArchivedUser;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+@Repository
+public interface ArchivedUserRepository extends JpaRepository<ArchivedUser, String> {
+
+    @Query("select (count(u) > 0) from ArchivedUser u where u.email = ?1")
+    boolean existsByEmail(String email);
+
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.email from ArchivedUser u where u.email is not null")
+    Stream<String> streamAllEmails();
+
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.id, u.email, u.firebaseUid, u.userStatus, u.userRole from ArchivedUser u")
+    Stream<Object[]> streamDirectoryEntries();
+
+    @Query("select u.id, u.email, u.firebaseUid, u.userStatus, u.userRole from ArchivedUser u where u.id in ?1")
+    List<Object[]> findDirectoryEntries(Collection<String> userIds);
+
+    /**
+     * Finds the archived users not linked to a Firebase user among the given lower-case emails, as directory entries.
+     */
+    @Query("select u.id, u.email, u.firebaseUid, u.userStatus, u.userRole from ArchivedUser u " +
+            "where u.firebaseUid is null and lower(u.email) in ?1")
+    List<Object[]> findUnlinkedDirectoryEntriesByEmail(Collection<String> emails);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update ArchivedUser u set u.firebaseUid = ?2 where u.id = ?1 and u.firebaseUid is null")
+    int linkFirebaseUid(String userId, String firebaseUid);
+
+    @Modifying
+    @Query(value = "insert into users_archive (id, first_name, last_name, username, email, phone_number, address, " +
+            "firebase_uid, role, status, created_at, updated_at, archived_at) " +
+            "select id, first_name, last_name, username, email, phone_number, address, firebase_uid, role, status, " +
+            "created_at, updated_at, ?2 from users where id in ?1", nativeQuery = true)
+    int archiveUsers(Collection<String> userIds, LocalDateTime archivedAt);
+
+    @Modifying
+    @Query(value = "insert into users (id, first_name, last_name, username, email, phone_number, address, " +
+            "firebase_uid, role, status, created_at, updated_at) " +
+            "select id, first_name, last_name, username, email, phone_number, address, firebase_uid, role, status, " +
+            "created_at, updated_at from users_archive where id in ?1", nativeQuery = true)
+    int restoreUsers(Collection<String> userIds);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from ArchivedUser u where u.id in ?1")
+    int deleteByIds(Collection<String> userIds);
+}
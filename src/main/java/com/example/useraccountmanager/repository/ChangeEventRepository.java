@@ -0,0 +1,41 @@
+package com.example.useraccountmanager.repository;
+
+import com.example.useraccountmanager.model.ChangeEvent;
+import com.example.useraccountmanager.tools.enums.ChangeEventTypeEnum;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ChangeEventRepository extends JpaRepository<ChangeEvent, Long> {
+
+    @Query("select e from ChangeEvent e where e.id > ?1 order by e.id")
+    List<ChangeEvent> findAfter(long afterId, Limit limit);
+
+    @Query("select min(e.id) from ChangeEvent e")
+    Long findMinId();
+
+    @Transactional
+    @Modifying
+    @Query("delete from ChangeEvent e where e.createdAt < ?1")
+    int deleteCreatedBefore(LocalDateTime createdBefore);
+
+    @Modifying
+    @Query("insert into ChangeEvent (aggregateType, aggregateId, userId, eventType, updatedAt, createdAt) " +
+            "select com.example.useraccountmanager.tools.enums.AggregateTypeEnum.USER, u.id, u.id, ?2, ?3, ?3 " +
+            "from User u where u.id in ?1")
+    int insertUserEvents(Collection<String> userIds, ChangeEventTypeEnum eventType, LocalDateTime updatedAt);
+
+    @Modifying
+    @Query("insert into ChangeEvent (aggregateType, aggregateId, userId, eventType, updatedAt, createdAt) " +
+            "select com.example.useraccountmanager.tools.enums.AggregateTypeEnum.ACCOUNT, a.id, a.user.id, ?2, ?3, ?3 " +
+            "from Account a where a.user.id in ?1")
+    int insertAccountEventsOfUsers(Collection<String> userIds, ChangeEventTypeEnum eventType, LocalDateTime updatedAt);
+}
@@ -0,0 +1,46 @@
+package com.example.useraccountmanager.repository;
+
+import com.example.useraccountmanager.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+    /**
+     * Inserts a pending record, one without a status code, failing with a constraint violation if the key exists.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "insert into idempotency_keys (id, request_hash, created_at, expires_at) values (?1, ?2, ?3, ?4)",
+            nativeQuery = true)
+    int reserve(String id, String requestHash, LocalDateTime createdAt, LocalDateTime expiresAt);
+
+    @Transactional
+    @Modifying
+    @Query("update IdempotencyRecord r set r.statusCode = ?2, r.responseBody = ?3, r.expiresAt = ?4 where r.id = ?1")
+    int complete(String id, int statusCode, String responseBody, LocalDateTime expiresAt);
+
+    /**
+     * Deletes the record of a key if it is still pending, so that the request can be retried.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.id = ?1 and r.statusCode is null")
+    int release(String id);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.id = ?1 and r.expiresAt < ?2")
+    int deleteExpired(String id, LocalDateTime now);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotencyRecord r where r.expiresAt < ?1")
+    int deleteExpired(LocalDateTime now);
+}
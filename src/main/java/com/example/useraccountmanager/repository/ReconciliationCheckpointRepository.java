@@ -0,0 +1,9 @@
+package com.example.useraccountmanager.repository;
+
+import com.example.useraccountmanager.model.ReconciliationCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReconciliationCheckpointRepository extends JpaRepository<ReconciliationCheckpoint, String> {
+}
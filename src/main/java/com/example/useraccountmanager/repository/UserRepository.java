@@ -1,12 +1,24 @@
 package com.example.useraccountmanager.repository;
 
 import com.example.useraccountmanager.model.User;
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
 import jakarta.validation.constraints.Email;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, String> {
@@ -16,4 +28,68 @@ public interface UserRepository extends JpaRepository<User, String> {
 
 
     Optional<User> findUserByEmail(@Email String email);
+
+    Optional<User> findUserByFirebaseUid(String firebaseUid);
+
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.email from User u where u.email is not null")
+    Stream<String> streamAllEmails();
+
+    @QueryHints(@QueryHint(name = org.hibernate.jpa.HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("select u.id, u.email, u.firebaseUid, u.userStatus, u.userRole from User u")
+    Stream<Object[]> streamDirectoryEntries();
+
+    @Query("select u.id, u.email, u.firebaseUid, u.userStatus, u.userRole from User u where u.id in ?1")
+    List<Object[]> findDirectoryEntries(Collection<String> userIds);
+
+    /**
+     * Finds the next page of users not linked to a Firebase user, ordered by ID, as directory entries.
+     */
+    @Query("select u.id, u.email, u.firebaseUid, u.userStatus, u.userRole from User u " +
+            "where u.firebaseUid is null and u.id > ?1 order by u.id")
+    List<Object[]> findUnlinkedDirectoryEntries(String afterId, Limit limit);
+
+    /**
+     * Finds the users not linked to a Firebase user among the given lower-case emails, as directory entries.
+     */
+    @Query("select u.id, u.email, u.firebaseUid, u.userStatus, u.userRole from User u " +
+            "where u.firebaseUid is null and lower(u.email) in ?1")
+    List<Object[]> findUnlinkedDirectoryEntriesByEmail(Collection<String> emails);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update User u set u.firebaseUid = ?2, u.updatedAt = ?3 where u.id = ?1 and u.firebaseUid is null")
+    int linkFirebaseUid(String userId, String firebaseUid, LocalDateTime updatedAt);
+
+    @Query("select u.id from User u where u.id in ?1")
+    List<String> findExistingIds(Collection<String> userIds);
+
+    @Query("select u.id, u.updatedAt from User u where u.id in ?1")
+    List<Object[]> findVersions(Collection<String> userIds);
+
+    @Query("select u.id from User u where u.id in ?1 and (u.userStatus is null or u.userStatus <> ?2)")
+    List<String> findIdsWithStatusOtherThan(Collection<String> userIds, UserStatusEnum status);
+
+    /**
+     * Finds the next chunk of user IDs matching a filter, ordered by ID. Null criteria are ignored; afterId is the
+     * last ID of the previous chunk, or an empty string for the first one.
+     */
+    @Query("select u.id from User u where u.id > ?1 and (?2 is null or u.userStatus = ?2) " +
+            "and (?3 is null or u.email like ?3) and (?4 is null or u.createdAt < ?4) order by u.id")
+    List<String> findIdsByFilter(String afterId, UserStatusEnum status, String emailPattern, LocalDateTime createdBefore,
+                                 Pageable pageable);
+
+    @Query("select u.id from User u where u.userStatus = ?1 and u.updatedAt < ?2 and u.id > ?3 order by u.id")
+    List<String> findIdsToArchive(UserStatusEnum status, LocalDateTime updatedBefore, String afterId, Limit limit);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select u from User u where u.id in ?1 and u.userStatus = ?2 and u.updatedAt < ?3")
+    List<User> lockForArchive(Collection<String> userIds, UserStatusEnum status, LocalDateTime updatedBefore);
+
+    @Modifying(clearAutomatically = true)
+    @Query("update User u set u.userStatus = ?2, u.updatedAt = ?3 where u.id in ?1")
+    int updateStatusByIds(Collection<String> userIds, UserStatusEnum status, LocalDateTime updatedAt);
+
+    @Modifying(clearAutomatically = true)
+    @Query("delete from User u where u.id in ?1")
+    int deleteByIds(Collection<String> userIds);
 }
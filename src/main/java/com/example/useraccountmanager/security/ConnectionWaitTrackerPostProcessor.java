@@ -0,0 +1,45 @@
+package com.example.useraccountmanager.security;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Hooks a Hikari metrics tracker into every pooled datasource so that connection wait times reach the
+ * {@link LoadShedder}. The shedder is resolved lazily because post processors are created before regular beans.
+ */
+@Component
+public class ConnectionWaitTrackerPostProcessor implements BeanPostProcessor {
+
+    private final ObjectProvider<LoadShedder> loadShedder;
+
+    public ConnectionWaitTrackerPostProcessor(ObjectProvider<LoadShedder> loadShedder) {
+        this.loadShedder = loadShedder;
+    }
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof HikariDataSource dataSource) {
+            track(dataSource);
+        }
+        return bean;
+    }
+
+    /**
+     * Hooks the tracker into a pool that is not a bean of its own, such as a shard pool.
+     *
+     * @param dataSource The pool, before its first connection is requested.
+     */
+    public void track(HikariDataSource dataSource) {
+        if (dataSource.getMetricsTrackerFactory() == null) {
+            dataSource.setMetricsTrackerFactory((poolName, poolStats) -> new IMetricsTracker() {
+                @Override
+                public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                    loadShedder.getObject().recordConnectionWait(elapsedAcquiredNanos);
+                }
+            });
+        }
+    }
+}
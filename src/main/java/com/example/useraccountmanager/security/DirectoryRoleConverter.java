@@ -0,0 +1,78 @@
+package com.example.useraccountmanager.security;
+
+import com.example.useraccountmanager.service.UserDirectoryService;
+import com.example.useraccountmanager.tools.RoleTools;
+import com.example.useraccountmanager.tools.UserDirectory;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.convert.converter.Converter;
+import org.springframework.security.authentication.AbstractAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the roles of an authenticated token from the {@code role} column of its user instead of Firebase custom
+ * claims. The user is looked up by the Firebase UID in the subject, falling back to the email claim only when the
+ * token marks the email as verified, in the in-memory {@link UserDirectory}, which is loaded at startup and follows
+ * role changes through the change log. The directory only holds hashes, so the UID or email of a hit is compared on
+ * the stored user once before it grants a role; later requests with the same key never wait on the database or
+ * Firebase for their roles.
+ * <p>
+ * Every role implies {@code USER}, and a user stored without a role is a {@code USER}. Tokens of users missing from
+ * the directory get no roles, unless {@code security.roles.token-claim-fallback} is set, which keeps the
+ * {@code roles} claim working for users that only exist in Firebase while roles are being migrated.
+ */
+@Component
+public class DirectoryRoleConverter implements Converter<Jwt, AbstractAuthenticationToken> {
+
+    private final UserDirectoryService userDirectoryService;
+    private final boolean tokenClaimFallback;
+    private final Map<UserRoleEnum, List<GrantedAuthority>> authoritiesByRole = new EnumMap<>(UserRoleEnum.class);
+
+    public DirectoryRoleConverter(UserDirectoryService userDirectoryService,
+                                  @Value("${security.roles.token-claim-fallback:false}") boolean tokenClaimFallback) {
+        this.userDirectoryService = userDirectoryService;
+        this.tokenClaimFallback = tokenClaimFallback;
+        for (UserRoleEnum role : UserRoleEnum.values()) {
+            List<GrantedAuthority> authorities = new ArrayList<>();
+            authorities.add(new SimpleGrantedAuthority(RoleTools.ROLE_PREFIX + role.name()));
+            if (role != UserRoleEnum.USER) {
+                authorities.add(new SimpleGrantedAuthority(RoleTools.ROLE_PREFIX + UserRoleEnum.USER.name()));
+            }
+            authoritiesByRole.put(role, List.copyOf(authorities));
+        }
+    }
+
+    @Override
+    public AbstractAuthenticationToken convert(Jwt jwt) {
+        return new JwtAuthenticationToken(jwt, authoritiesOf(jwt));
+    }
+
+    private List<GrantedAuthority> authoritiesOf(Jwt jwt) {
+        UserDirectory.Entry entry = userDirectoryService.findConfirmedByFirebaseUid(jwt.getSubject());
+        if (entry == null && Boolean.TRUE.equals(jwt.getClaimAsBoolean("email_verified"))) {
+            entry = userDirectoryService.findConfirmedByEmail(jwt.getClaimAsString("email"));
+        }
+        if (entry != null) {
+            return authoritiesByRole.get(entry.role() != null ? entry.role() : UserRoleEnum.USER);
+        }
+        if (!tokenClaimFallback) {
+            return List.of();
+        }
+        List<String> claimedRoles = jwt.getClaimAsStringList("roles");
+        if (claimedRoles == null) {
+            return List.of();
+        }
+        return claimedRoles.stream()
+                .<GrantedAuthority>map(role -> new SimpleGrantedAuthority(RoleTools.ROLE_PREFIX + role))
+                .toList();
+    }
+}
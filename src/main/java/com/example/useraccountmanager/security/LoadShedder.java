@@ -0,0 +1,79 @@
+package com.example.useraccountmanager.security;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tracks how long requests wait for a pooled database connection and decides when sheddable requests should
+ * be rejected early. The wait time is kept as an exponentially weighted moving average that also decays while
+ * no connections are being acquired, so shedding stops on its own once the pool recovers.
+ */
+@Component
+@RequiredArgsConstructor
+public class LoadShedder {
+
+    private static final double SAMPLE_WEIGHT = 0.2;
+    private static final double DECAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final RateLimitProperties rateLimitProperties;
+
+    private final AtomicLong averageWaitBits = new AtomicLong(Double.doubleToRawLongBits(0));
+    private final AtomicLong lastSampleNanos = new AtomicLong(System.nanoTime());
+
+    /**
+     * Records the time one caller spent waiting for a connection.
+     *
+     * @param waitNanos Time spent in the pool before a connection was handed out.
+     */
+    public void recordConnectionWait(long waitNanos) {
+        long now = System.nanoTime();
+        long previous;
+        long next;
+        do {
+            previous = averageWaitBits.get();
+            double decayed = decay(Double.longBitsToDouble(previous), now);
+            next = Double.doubleToRawLongBits(decayed + SAMPLE_WEIGHT * (waitNanos - decayed));
+        } while (!averageWaitBits.compareAndSet(previous, next));
+        lastSampleNanos.set(now);
+    }
+
+    /**
+     * @return True if the current request should be rejected to protect the database.
+     */
+    public boolean shouldShed() {
+        RateLimitProperties.LoadShedding settings = rateLimitProperties.getLoadShedding();
+        if (!settings.isEnabled()) {
+            return false;
+        }
+        double average = decayedAverage(System.nanoTime());
+        double soft = settings.getSoftThreshold().toNanos();
+        double hard = settings.getHardThreshold().toNanos();
+        if (average <= soft) {
+            return false;
+        }
+        if (average >= hard) {
+            return true;
+        }
+        return ThreadLocalRandom.current().nextDouble() < (average - soft) / (hard - soft);
+    }
+
+    /**
+     * @return The current average connection wait in milliseconds.
+     */
+    public double getAverageConnectionWaitMillis() {
+        return decayedAverage(System.nanoTime()) / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    private double decayedAverage(long now) {
+        return decay(Double.longBitsToDouble(averageWaitBits.get()), now);
+    }
+
+    private double decay(double average, long now) {
+        long idle = now - lastSampleNanos.get();
+        return idle <= 0 ? average : average * Math.exp(-idle / DECAY_NANOS);
+    }
+}
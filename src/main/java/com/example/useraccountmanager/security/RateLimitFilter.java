@@ -0,0 +1,143 @@
+package com.example.useraccountmanager.security;
+
+import com.example.useraccountmanager.tools.JwtTools;
+import com.example.useraccountmanager.tools.RoleTools;
+import com.example.useraccountmanager.tools.TokenBucket;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-principal rate limiting for the configured endpoints. Each (endpoint, role, principal) triple gets its own
+ * lock-free {@link TokenBucket}; the principal is the email claim of the JWT, falling back to the subject, and the
+ * role is the one whose limit applies. A bucket keeps the limit it was created with, so a caller whose role changes
+ * gets a new bucket with the limit of the new role. Requests over the limit get 429, requests rejected by the
+ * {@link LoadShedder} get 503.
+ */
+@Slf4j
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimitProperties rateLimitProperties;
+    private final LoadShedder loadShedder;
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
+
+    public RateLimitFilter(RateLimitProperties rateLimitProperties, LoadShedder loadShedder) {
+        this.rateLimitProperties = rateLimitProperties;
+        this.loadShedder = loadShedder;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        RateLimitProperties.Rule rule = rateLimitProperties.isEnabled() ? matchRule(request) : null;
+        if (rule == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        if (rule.isSheddable() && loadShedder.shouldShed()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpStatus.SERVICE_UNAVAILABLE.value());
+            return;
+        }
+
+        Jwt jwt = currentJwt();
+        String principal = jwt != null ? principalOf(jwt) : request.getRemoteAddr();
+        UserRoleEnum role = limitingRole(rule, jwt);
+        RateLimitProperties.Limit limit = role != null ? rule.getLimits().get(role) : rule.getDefaultLimit();
+        TokenBucket bucket = buckets.computeIfAbsent(rule.getName() + "|" + role + "|" + principal,
+                key -> new TokenBucket(limit.getCapacity(), limit.getRefillPerSecond()));
+        if (!bucket.tryAcquire()) {
+            long retryAfter = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(bucket.nanosUntilAvailable(1)) + 1);
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            response.sendError(HttpStatus.TOO_MANY_REQUESTS.value());
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Drops buckets that have been full for a while so that the map only holds recently active principals.
+     */
+    @Scheduled(fixedDelayString = "${rate-limit.idle-bucket-ttl:PT10M}")
+    public void evictIdleBuckets() {
+        buckets.values().removeIf(TokenBucket::isIdle);
+    }
+
+    private RateLimitProperties.Rule matchRule(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        for (RateLimitProperties.Rule rule : rateLimitProperties.getRules()) {
+            if ((rule.getMethod() == null || rule.getMethod().equalsIgnoreCase(request.getMethod()))
+                    && pathMatcher.match(rule.getPattern(), path) && !isExcluded(rule, path)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    private boolean isExcluded(RateLimitProperties.Rule rule, String path) {
+        for (String excludedPattern : rule.getExcludedPatterns()) {
+            if (pathMatcher.match(excludedPattern, path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The role of the caller with the most generous limit, or null if the default limit applies.
+     */
+    private UserRoleEnum limitingRole(RateLimitProperties.Rule rule, Jwt jwt) {
+        UserRoleEnum bestRole = null;
+        RateLimitProperties.Limit best = rule.getDefaultLimit();
+        List<String> roles = RoleTools.getRoles(jwt);
+        for (String role : roles) {
+            UserRoleEnum userRole = toRole(role);
+            RateLimitProperties.Limit limit = rule.getLimits().get(userRole);
+            if (limit != null && limit.getRefillPerSecond() > best.getRefillPerSecond()) {
+                bestRole = userRole;
+                best = limit;
+            }
+        }
+        return bestRole;
+    }
+
+    private UserRoleEnum toRole(String role) {
+        try {
+            return UserRoleEnum.valueOf(role);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private String principalOf(Jwt jwt) {
+        try {
+            return JwtTools.getEmailFromOAuthToken(jwt);
+        } catch (Exception e) {
+            return jwt.getSubject();
+        }
+    }
+
+    private Jwt currentJwt() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication instanceof JwtAuthenticationToken token ? token.getToken() : null;
+    }
+}
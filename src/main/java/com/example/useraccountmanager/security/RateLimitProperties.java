@@ -0,0 +1,60 @@
+package com.example.useraccountmanager.security;
+
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rate limit and load shedding settings, bound from the {@code rate-limit.*} properties.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+    private List<Rule> rules = new ArrayList<>();
+    private Duration idleBucketTtl = Duration.ofMinutes(10);
+    private LoadShedding loadShedding = new LoadShedding();
+
+    /**
+     * Limit applied to one endpoint. The limit of the most generous role the caller holds wins,
+     * callers without a configured role get the default limit. Paths matching one of the excluded
+     * patterns are left to other rules, for literal paths the pattern would otherwise take as a variable.
+     */
+    @Data
+    public static class Rule {
+        private String name;
+        private String method;
+        private String pattern;
+        private List<String> excludedPatterns = new ArrayList<>();
+        private Limit defaultLimit = new Limit();
+        private Map<UserRoleEnum, Limit> limits = new EnumMap<>(UserRoleEnum.class);
+        private boolean sheddable = true;
+    }
+
+    @Data
+    public static class Limit {
+        private long capacity = 20;
+        private double refillPerSecond = 5;
+    }
+
+    /**
+     * Requests to sheddable endpoints are rejected with 503 once the average time spent waiting for a pooled
+     * database connection passes the soft threshold, with a rejection probability growing linearly up to
+     * the hard threshold where everything sheddable is rejected.
+     */
+    @Data
+    public static class LoadShedding {
+        private boolean enabled = true;
+        private Duration softThreshold = Duration.ofMillis(50);
+        private Duration hardThreshold = Duration.ofMillis(500);
+    }
+}
@@ -1,12 +1,16 @@
 package com.example.useraccountmanager.security;
 
+import com.example.useraccountmanager.logging.LoggingContextFilter;
+import com.example.useraccountmanager.logging.SqlTraceHeaderFilter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
 import org.springframework.security.config.Customizer;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
 import org.springframework.security.web.SecurityFilterChain;
 
 
@@ -16,16 +20,51 @@ import org.springframework.security.web.SecurityFilterChain;
 public class SecurityConfiguration {
 
     @Bean
-    public SecurityFilterChain filterChain(HttpSecurity http) throws Exception {
+    public SecurityFilterChain filterChain(HttpSecurity http, RateLimitFilter rateLimitFilter,
+                                           SqlTraceHeaderFilter sqlTraceHeaderFilter,
+                                           DirectoryRoleConverter directoryRoleConverter) throws Exception {
         http.csrf(Customizer.withDefaults());
         http.cors(Customizer.withDefaults());
         http.authorizeHttpRequests(authorize -> authorize
                         .requestMatchers(HttpMethod.GET, "/v3/api-docs", "/swagger-ui/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/v1/users/login").permitAll()
-                        .requestMatchers(HttpMethod.GET, "/v1/users/resetPassword/{email}").permitAll()
+                        .requestMatchers(HttpMethod.GET, "/api/v1/users/resetPassword/{email}").permitAll()
                         .anyRequest().authenticated())
                 .oauth2ResourceServer(oauth2 -> oauth2
-                        .jwt(Customizer.withDefaults()));
+                        .jwt(jwt -> jwt.jwtAuthenticationConverter(directoryRoleConverter)))
+                .addFilterAfter(rateLimitFilter, BearerTokenAuthenticationFilter.class)
+                .addFilterAfter(sqlTraceHeaderFilter, BearerTokenAuthenticationFilter.class);
         return http.build();
     }
+
+    @Bean
+    public RateLimitFilter rateLimitFilter(RateLimitProperties rateLimitProperties, LoadShedder loadShedder) {
+        return new RateLimitFilter(rateLimitProperties, loadShedder);
+    }
+
+    /**
+     * The rate limit filter only runs inside the security chain, after the JWT has been authenticated.
+     */
+    @Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter rateLimitFilter) {
+        FilterRegistrationBean<RateLimitFilter> registration = new FilterRegistrationBean<>(rateLimitFilter);
+        registration.setEnabled(false);
+        return registration;
+    }
+
+    @Bean
+    public SqlTraceHeaderFilter sqlTraceHeaderFilter(LoggingContextFilter loggingContextFilter) {
+        return new SqlTraceHeaderFilter(loggingContextFilter);
+    }
+
+    /**
+     * The SQL trace header is only honored for authenticated administrators, so its filter runs inside the security
+     * chain as well.
+     */
+    @Bean
+    public FilterRegistrationBean<SqlTraceHeaderFilter> sqlTraceHeaderFilterRegistration(SqlTraceHeaderFilter sqlTraceHeaderFilter) {
+        FilterRegistrationBean<SqlTraceHeaderFilter> registration = new FilterRegistrationBean<>(sqlTraceHeaderFilter);
+        registration.setEnabled(false);
+        return registration;
+    }
 }
@@ -0,0 +1,361 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.ExportProgressResponse;
+import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.ErrorMessage;
+import com.example.useraccountmanager.tools.IdRange;
+import com.example.useraccountmanager.tools.InfoMessage;
+import com.example.useraccountmanager.tools.Money;
+import com.example.useraccountmanager.tools.enums.JobStatusEnum;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Service that exports all accounts, joined with the email and status of their user, into one CSV file per day.
+ * <p>
+ * The ID space is split into ranges that are read in parallel, page by page in key order, and each range is written
+ * through a buffered {@link FileChannel} into its own part file. A part is written under a temporary name and renamed
+ * once complete, so an interrupted export is restarted by running it again: finished parts are kept and only the
+ * missing ones are read. When all parts exist they are concatenated into the final file and removed. Every range is
+ * read from each shard into a part of its own, so within a range the rows are in key order per shard.
+ * <p>
+ * Every page is read in its own short transaction, so the file is not a point-in-time snapshot; accounts changed
+ * while the export runs may appear with their old or new values.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class AccountExportService {
+
+    private static final String HEADER = "account_id,user_id,email,user_status,balance,created_at,updated_at\n";
+    private static final String PART_SUFFIX = ".csv";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final AccountRepository accountRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${export.directory:data/exports}")
+    private String directory;
+
+    @Value("${export.parallelism:0}")
+    private int parallelism;
+
+    @Value("${export.prefix-length:1}")
+    private int prefixLength;
+
+    @Value("${export.page-size:5000}")
+    private int pageSize;
+
+    @Value("${export.buffer-size:262144}")
+    private int bufferSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile ExportRun lastRun;
+
+    /**
+     * Starts the export of the accounts of the day in the maintenance window, on its own worker thread.
+     */
+    @Scheduled(cron = "${export.cron:0 30 2 * * *}")
+    public void scheduledExport() {
+        LocalDate day = LocalDate.now();
+        if (!Files.exists(exportFile(day)) && running.compareAndSet(false, true)) {
+            launch(new ExportRun(day, IdRange.partition(prefixLength)));
+        }
+    }
+
+    /**
+     * Starts or resumes the export of the current day in the background.
+     *
+     * @return ResponseEntity containing the progress of the started export, or a message if it is running or done.
+     */
+    public ResponseEntity<?> startExport() {
+        ExportProgressResponse progressResponse = new ExportProgressResponse();
+        LocalDate day = LocalDate.now();
+        if (Files.exists(exportFile(day))) {
+            progressResponse.setFile(exportFile(day).toString());
+            progressResponse.addInfo(InfoMessage.EXPORT_EXISTS);
+            return new ResponseEntity<>(progressResponse, HttpStatus.OK);
+        }
+        if (!running.compareAndSet(false, true)) {
+            progressResponse.addError(ErrorMessage.EXPORT_RUNNING);
+            return new ResponseEntity<>(progressResponse, HttpStatus.CONFLICT);
+        }
+        ExportRun run = new ExportRun(day, IdRange.partition(prefixLength));
+        launch(run);
+        progressResponse = toProgress(run);
+        progressResponse.addInfo(InfoMessage.SUCCESS);
+        return new ResponseEntity<>(progressResponse, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Retrieves the progress of the latest export.
+     *
+     * @return ResponseEntity containing the progress, or an error if no export has been started yet.
+     */
+    public ResponseEntity<?> getProgress() {
+        ExportRun run = lastRun;
+        if (run == null) {
+            ExportProgressResponse progressResponse = new ExportProgressResponse();
+            progressResponse.addError(ErrorMessage.NOT_FOUND);
+            return new ResponseEntity<>(progressResponse, HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(toProgress(run), HttpStatus.OK);
+    }
+
+    private void launch(ExportRun run) {
+        lastRun = run;
+        Thread worker = new Thread(() -> export(run), "account-export");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void export(ExportRun run) {
+        lastRun = run;
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            Path partsDirectory = Files.createDirectories(partsDirectory(run.day));
+            log.info("Account export of {} started over {} partitions of {} shards on {} threads", run.day, run.ranges.size(),
+                    shardRouter.shardCount(), threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (IdRange range : run.ranges) {
+                for (int shard : shardRouter.shards()) {
+                    futures.add(executor.submit(() -> {
+                        ShardContext.set(shard);
+                        try {
+                            exportPartition(run, partsDirectory, range, shard);
+                        } finally {
+                            ShardContext.clear();
+                        }
+                        return null;
+                    }));
+                }
+            }
+            // Let every partition finish, so a failed export keeps as many completed parts as possible
+            Exception failure = null;
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    failure = e.getCause() instanceof Exception cause ? cause : e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            merge(run, partsDirectory);
+            run.status = JobStatusEnum.COMPLETED;
+            log.info("Account export of {} wrote {} rows ({} bytes) to {} at {} rows/s", run.day, run.rows.get(),
+                    run.bytes.get(), exportFile(run.day), run.rowsPerSecond());
+        } catch (Exception e) {
+            run.status = JobStatusEnum.FAILED;
+            log.error("An error occurred during the account export of {} after {} partitions", run.day, run.partitionsDone.get(), e);
+        } finally {
+            run.finishedAt = LocalDateTime.now();
+            run.finishedNanos = System.nanoTime();
+            executor.shutdownNow();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Writes one ID range of the current shard into its part file, unless the part was completed by an earlier attempt.
+     */
+    private void exportPartition(ExportRun run, Path partsDirectory, IdRange range, int shard) throws IOException {
+        Path part = partsDirectory.resolve(partName(range, shard));
+        if (Files.exists(part)) {
+            run.partitionsReused.incrementAndGet();
+            run.partitionsDone.incrementAndGet();
+            return;
+        }
+        Path temp = partsDirectory.resolve(partName(range, shard) + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(bufferSize);
+            String afterId = range.afterId();
+            List<Object[]> page;
+            do {
+                String from = afterId;
+                page = transactionTemplate.execute(status ->
+                        accountRepository.findExportPage(from, range.upperId(), Limit.of(pageSize)));
+                if (page == null || page.isEmpty()) {
+                    break;
+                }
+                for (Object[] row : page) {
+                    write(channel, buffer, toCsvLine(row).getBytes(StandardCharsets.UTF_8));
+                }
+                afterId = (String) page.get(page.size() - 1)[0];
+                run.rows.addAndGet(page.size());
+            } while (page.size() == pageSize);
+            flush(channel, buffer);
+            channel.force(false);
+        }
+        Files.move(temp, part, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        run.partitionsDone.incrementAndGet();
+    }
+
+    private void write(FileChannel channel, ByteBuffer buffer, byte[] bytes) throws IOException {
+        if (buffer.remaining() < bytes.length) {
+            flush(channel, buffer);
+        }
+        if (bytes.length > buffer.capacity()) {
+            ByteBuffer large = ByteBuffer.wrap(bytes);
+            while (large.hasRemaining()) {
+                channel.write(large);
+            }
+        } else {
+            buffer.put(bytes);
+        }
+    }
+
+    private void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Concatenates the header and all parts in key order into the final file, then removes the parts.
+     */
+    private void merge(ExportRun run, Path partsDirectory) throws IOException {
+        Path file = exportFile(run.day);
+        Path temp = file.resolveSibling(file.getFileName() + TEMP_SUFFIX);
+        try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.wrap(HEADER.getBytes(StandardCharsets.UTF_8));
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            for (IdRange range : run.ranges) {
+                for (int shard : shardRouter.shards()) {
+                    try (FileChannel in = FileChannel.open(partsDirectory.resolve(partName(range, shard)), StandardOpenOption.READ)) {
+                        long size = in.size();
+                        long position = 0;
+                        while (position < size) {
+                            position += in.transferTo(position, size - position, out);
+                        }
+                    }
+                }
+            }
+            out.force(false);
+            run.bytes.set(out.size());
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        try (Stream<Path> parts = Files.list(partsDirectory)) {
+            for (Path part : parts.toList()) {
+                Files.delete(part);
+            }
+        }
+        Files.delete(partsDirectory);
+    }
+
+    private static String toCsvLine(Object[] row) {
+        StringBuilder line = new StringBuilder(160);
+        for (int i = 0; i < row.length; i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            if (row[i] instanceof Money amount) {
+                amount.appendTo(line);
+            } else if (row[i] != null) {
+                appendCsvValue(line, row[i].toString());
+            }
+        }
+        return line.append('\n').toString();
+    }
+
+    private static void appendCsvValue(StringBuilder line, String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            line.append(value);
+            return;
+        }
+        line.append('"').append(value.replace("\"", "\"\"")).append('"');
+    }
+
+    private Path exportFile(LocalDate day) {
+        return Paths.get(directory, "accounts-" + day + PART_SUFFIX);
+    }
+
+    private Path partsDirectory(LocalDate day) {
+        return Paths.get(directory, "accounts-" + day + ".parts");
+    }
+
+    private static String partName(IdRange range, int shard) {
+        return String.format("part-%05d-%03d%s", range.index(), shard, PART_SUFFIX);
+    }
+
+    private ExportProgressResponse toProgress(ExportRun run) {
+        return ExportProgressResponse.builder()
+                .file(exportFile(run.day).toString())
+                .status(run.status)
+                .startedAt(run.startedAt)
+                .finishedAt(run.finishedAt)
+                .partitions(run.ranges.size() * shardRouter.shardCount())
+                .partitionsDone(run.partitionsDone.get())
+                .partitionsReused(run.partitionsReused.get())
+                .rowsWritten(run.rows.get())
+                .bytesWritten(run.bytes.get())
+                .rowsPerSecond(run.rowsPerSecond())
+                .info(new ArrayList<>())
+                .errors(new ArrayList<>())
+                .build();
+    }
+
+    /**
+     * Progress of one export, updated concurrently by the partition workers.
+     */
+    private static final class ExportRun {
+        private final LocalDate day;
+        private final List<IdRange> ranges;
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final long startedNanos = System.nanoTime();
+        private final AtomicInteger partitionsDone = new AtomicInteger();
+        private final AtomicInteger partitionsReused = new AtomicInteger();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private volatile JobStatusEnum status = JobStatusEnum.RUNNING;
+        private volatile LocalDateTime finishedAt;
+        private volatile long finishedNanos;
+
+        private ExportRun(LocalDate day, List<IdRange> ranges) {
+            this.day = day;
+            this.ranges = ranges;
+        }
+
+        private long rowsPerSecond() {
+            long elapsedNanos = (finishedAt != null ? finishedNanos : System.nanoTime()) - startedNanos;
+            return elapsedNanos <= 0 ? 0 : rows.get() * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+    }
+}
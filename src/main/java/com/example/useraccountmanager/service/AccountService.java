@@ -1,22 +1,41 @@
 package com.example.useraccountmanager.service;
 
 import com.example.useraccountmanager.dto.request.AccountRequest;
+import com.example.useraccountmanager.dto.request.BalanceDeltaRequest;
+import com.example.useraccountmanager.dto.request.BatchGetRequest;
+import com.example.useraccountmanager.dto.response.AccountPageResponse;
 import com.example.useraccountmanager.dto.response.AccountResponse;
 import com.example.useraccountmanager.model.Account;
+import com.example.useraccountmanager.model.ArchivedAccount;
 import com.example.useraccountmanager.model.User;
 import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.repository.ArchivedAccountRepository;
 import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.CursorTools;
 import com.example.useraccountmanager.tools.ErrorMessage;
+import com.example.useraccountmanager.tools.InfoMessage;
+import com.example.useraccountmanager.tools.Money;
+import com.example.useraccountmanager.tools.enums.AccountSortEnum;
+import com.example.useraccountmanager.tools.enums.AggregateTypeEnum;
+import com.example.useraccountmanager.tools.enums.ChangeEventTypeEnum;
+import com.example.useraccountmanager.tools.enums.LookupEnum;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.*;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.validation.BindingResult;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Optional;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Function;
 
 /**
  * Service class for managing accounts. This class provides methods to perform CRUD operations on the Account entity.
@@ -27,16 +46,49 @@ import java.util.Optional;
 public class AccountService {
 
     private final AccountRepository accountRepository;
+    private final ArchivedAccountRepository archivedAccountRepository;
     private final UserRepository userRepository;
+    private final ChangeEventService changeEventService;
+    private final BalanceHistoryService balanceHistoryService;
+    private final LookupCoalescingService lookupCoalescingService;
+    private final ResponseCacheService responseCacheService;
+    private final HotAccountService hotAccountService;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${batch.max-ids:1000}")
+    private int batchMaxIds;
+
+    @Value("${batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    @Value("${account.page.max-size:200}")
+    private int maxPageSize;
+
+    @Value("${account.top.max-size:1000}")
+    private int maxTopSize;
 
     /**
-     * Retrieves an account by the associated user's ID.
+     * Retrieves an account by the associated user's ID. Accounts in the response cache are answered without a query,
+     * concurrent requests for the same account otherwise share one database lookup. Hot accounts are never cached, as
+     * their balance includes the changes not written yet.
      *
      * @param userId    The ID of the user whose account to retrieve.
      * @param accountId The exact ID of the account to retrieve.
      * @return ResponseEntity containing the AccountResponse if found, or an error message if not.
      */
     public ResponseEntity<?> getAccount(String userId, String accountId) {
+        AccountResponse cachedResponse = hotAccountService.isHot(accountId)
+                ? null
+                : responseCacheService.getAccount(userId, accountId);
+        if (cachedResponse != null) {
+            return new ResponseEntity<>(cachedResponse, HttpStatus.OK);
+        }
+        String key = userId == null || accountId == null ? null : userId + "/" + accountId;
+        return lookupCoalescingService.coalesce(LookupEnum.ACCOUNT, key, () -> loadAccount(userId, accountId));
+    }
+
+    private ResponseEntity<?> loadAccount(String userId, String accountId) {
         AccountResponse accountResponse = new AccountResponse();
         try {
             // Validate userId input
@@ -49,9 +101,15 @@ public class AccountService {
                 return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
             }
 
-            // Fetch the account associated with the user from the repository
+            // Fetch the account associated with the user from the user's shard, falling back to the archive
+            long cacheStamp = responseCacheService.stamp(userId);
+            shardRouter.useShardOf(userId);
             Optional<Account> optionalAccount = accountRepository.findByIdAndUserId(accountId, userId);
             if (optionalAccount.isEmpty()) {
+                Optional<ArchivedAccount> optionalArchivedAccount = archivedAccountRepository.findByIdAndUserId(accountId, userId);
+                if (optionalArchivedAccount.isPresent()) {
+                    return new ResponseEntity<>(mapToAccountDto(optionalArchivedAccount.get()), HttpStatus.OK);
+                }
                 accountResponse.addError(ErrorMessage.NOT_FOUND);
                 return new ResponseEntity<>(accountResponse, HttpStatus.NOT_FOUND);
             }
@@ -59,6 +117,9 @@ public class AccountService {
             // Map Account entity to AccountResponse DTO
             Account account = optionalAccount.get();
             accountResponse = mapToAccountDto(account);
+            if (!hotAccountService.isHot(accountId)) {
+                responseCacheService.putAccount(accountResponse, cacheStamp);
+            }
             return new ResponseEntity<>(accountResponse, HttpStatus.OK);
         } catch (Exception e) {
             log.error("An error occurred while retrieving the account with userId: {}", userId, e);
@@ -67,13 +128,18 @@ public class AccountService {
     }
 
     /**
-     * Retrieves all accounts associated with a specific user by their ID.
+     * Retrieves all accounts associated with a specific user by their ID. Concurrent requests for the same user share
+     * one database lookup.
      *
      * @param userId The ID of the user whose accounts are to be retrieved.
      * @return ResponseEntity containing a list of AccountResponse DTOs if found,
      * or an informational message if no accounts exist, or an error message if the input is invalid.
      */
     public ResponseEntity<?> getAllAccounts(String userId) {
+        return lookupCoalescingService.coalesce(LookupEnum.ACCOUNTS_OF_USER, userId, () -> loadAllAccounts(userId));
+    }
+
+    private ResponseEntity<?> loadAllAccounts(String userId) {
         AccountResponse accountResponse = new AccountResponse();
         try {
             // Validate userId input
@@ -82,9 +148,15 @@ public class AccountService {
                 return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
             }
 
-            // Fetch all accounts associated with the user from the repository
+            // Fetch all accounts associated with the user from the user's shard, falling back to the archive
+            shardRouter.useShardOf(userId);
             List<Account> accounts = accountRepository.findAllByUserId(userId);
             if (accounts.isEmpty()) {
+                List<ArchivedAccount> archivedAccounts = archivedAccountRepository.findAllByUserIds(List.of(userId));
+                if (!archivedAccounts.isEmpty()) {
+                    accountResponse.setData(archivedAccounts.stream().map(this::mapToAccountDto).toList());
+                    return new ResponseEntity<>(accountResponse, HttpStatus.OK);
+                }
                 accountResponse.addInfo("There are no accounts yet.");
                 accountResponse.setData(new ArrayList<>());
                 return new ResponseEntity<>(accountResponse, HttpStatus.OK);
@@ -103,6 +175,147 @@ public class AccountService {
         }
     }
 
+    /**
+     * Retrieves one page of accounts, of one user or of all users, using keyset pagination: the next page continues
+     * after the sort value and ID of the last returned account, so every page is a seek on the matching index
+     * instead of skipping over the previous pages. The accounts of one user are read from the user's shard; the
+     * accounts of all users are read as one page from every shard and merged.
+     *
+     * @param userId    The ID of the user whose accounts to list, or null to list the accounts of all users.
+     * @param sort      The property to sort by; the account ID breaks ties.
+     * @param direction The sort direction.
+     * @param size      The maximum number of accounts to return.
+     * @param cursor    The cursor returned with the previous page, or null for the first page.
+     * @return ResponseEntity containing the accounts and the cursor of the next page, or an error message.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getAccountsPage(String userId, AccountSortEnum sort, Sort.Direction direction, int size, String cursor) {
+        AccountPageResponse pageResponse = new AccountPageResponse();
+        try {
+            if ((userId != null && userId.isBlank()) || size < 1 || size > maxPageSize) {
+                pageResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(pageResponse, HttpStatus.BAD_REQUEST);
+            }
+            KeysetScrollPosition position = ScrollPosition.keyset();
+            if (cursor != null && !cursor.isBlank()) {
+                position = decodeCursor(cursor, sort, direction);
+                if (position == null) {
+                    pageResponse.addError(ErrorMessage.BAD_REQUEST);
+                    return new ResponseEntity<>(pageResponse, HttpStatus.BAD_REQUEST);
+                }
+            }
+
+            Specification<Account> ofUser = userId == null ? Specification.where(null)
+                    : (root, query, criteriaBuilder) -> criteriaBuilder.equal(root.get("user").get("id"), userId);
+            Sort order = Sort.by(direction, sort.getProperty()).and(Sort.by(direction, "id"));
+            KeysetScrollPosition start = position;
+            List<Integer> shards = userId == null ? shardRouter.shards() : List.of(shardRouter.shardOf(userId));
+            List<Window<Account>> windows = shardRouter.scatter(shards, shard ->
+                    accountRepository.findBy(ofUser, query -> query.sortBy(order).limit(size).scroll(start)));
+
+            // Every shard returned its first accounts after the cursor, the page is the first of all of them
+            Comparator<Account> comparator = Comparator.comparing((Account account) -> sortValue(account, sort),
+                    Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(Account::getId);
+            List<Account> merged = windows.stream()
+                    .flatMap(Window::stream)
+                    .sorted(direction.isAscending() ? comparator : comparator.reversed())
+                    .toList();
+            boolean hasNext = merged.size() > size || windows.stream().anyMatch(Window::hasNext);
+            List<Account> page = merged.subList(0, Math.min(size, merged.size()));
+
+            List<AccountResponse> accountResponses = page.stream().map(this::mapToAccountDto).toList();
+            pageResponse.setData(accountResponses);
+            pageResponse.setHasNext(hasNext);
+            if (hasNext) {
+                pageResponse.setNextCursor(encodeCursor(page.get(page.size() - 1), sort, direction));
+            }
+            return new ResponseEntity<>(pageResponse, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("An error occurred while retrieving a page of accounts with userId: {}", userId, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Retrieves the accounts with the highest balances. The query reads the first rows of the balance index in
+     * descending order and stops after n rows, so it does not scan or sort the accounts table. Every shard returns
+     * its top n accounts and the n highest of them are kept.
+     *
+     * @param n The number of accounts to return.
+     * @return ResponseEntity containing the accounts ordered by balance descending, or an error message.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getTopAccountsByBalance(int n) {
+        AccountResponse accountResponse = new AccountResponse();
+        try {
+            if (n < 1 || n > maxTopSize) {
+                accountResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
+            }
+            List<AccountResponse> accountResponses = shardRouter.scatter(shard -> accountRepository.findTopByBalance(Limit.of(n)))
+                    .stream()
+                    .flatMap(List::stream)
+                    .sorted(Comparator.comparing(Account::getBalance, Comparator.nullsFirst(Comparator.<Money>naturalOrder())).reversed())
+                    .limit(n)
+                    .map(this::mapToAccountDto)
+                    .toList();
+            accountResponse.setData(accountResponses);
+            return new ResponseEntity<>(accountResponse, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("An error occurred while retrieving the top {} accounts by balance", n, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Retrieves many accounts in one call, resolved with chunked IN queries instead of a lookup per account. The IDs
+     * of each shard are resolved on that shard, all shards in parallel.
+     *
+     * @param batchGetRequest The IDs of the accounts to retrieve.
+     * @return ResponseEntity containing one entry per requested ID in request order; IDs that do not exist get an
+     * entry carrying only the ID and a not found error.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getAccountsBatch(BatchGetRequest batchGetRequest) {
+        AccountResponse accountResponse = new AccountResponse();
+        try {
+            List<String> requestedIds = batchGetRequest.getIds();
+            if (requestedIds == null || requestedIds.isEmpty() || requestedIds.size() > batchMaxIds
+                    || requestedIds.stream().anyMatch(id -> id == null || id.isBlank())) {
+                accountResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
+            }
+
+            // Fetch the accounts shard by shard, chunk by chunk
+            List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(requestedIds));
+            SortedMap<Integer, List<String>> idsByShard = shardRouter.groupByShard(distinctIds, Function.identity());
+            Map<String, AccountResponse> found = new HashMap<>();
+            shardRouter.scatter(idsByShard.keySet(), shard -> {
+                List<String> shardIds = idsByShard.get(shard);
+                List<AccountResponse> shardAccounts = new ArrayList<>();
+                for (int from = 0; from < shardIds.size(); from += batchChunkSize) {
+                    List<String> chunk = shardIds.subList(from, Math.min(from + batchChunkSize, shardIds.size()));
+                    accountRepository.findAllById(chunk).forEach(account -> shardAccounts.add(mapToAccountDto(account)));
+                }
+                return shardAccounts;
+            }).forEach(shardAccounts -> shardAccounts.forEach(account -> found.put(account.getId(), account)));
+
+            // Answer in request order, marking the IDs that were not found
+            List<AccountResponse> accountResponses = requestedIds.stream()
+                    .map(id -> found.computeIfAbsent(id, missingId -> {
+                        AccountResponse notFound = AccountResponse.builder().id(missingId).build();
+                        notFound.addError(ErrorMessage.NOT_FOUND);
+                        return notFound;
+                    }))
+                    .toList();
+            accountResponse.setData(accountResponses);
+            return new ResponseEntity<>(accountResponse, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("An error occurred while retrieving a batch of accounts", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
     /**
      * Creates a new account.
      *
@@ -110,6 +323,7 @@ public class AccountService {
      * @param bindingResult  The BindingResult object that holds the result of the validation and binding and contains errors that may have occurred.
      * @return ResponseEntity containing the created AccountResponse or error message if the creation fails.
      */
+    @Transactional
     public ResponseEntity<?> createAccount(AccountRequest accountRequest, BindingResult bindingResult) {
         AccountResponse accountResponse = new AccountResponse();
 
@@ -128,7 +342,8 @@ public class AccountService {
                 return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
             }
 
-            // Fetch the user associated with the account
+            // Fetch the user associated with the account, the account is created on the user's shard
+            shardRouter.useShardOf(accountRequest.getUserId());
             Optional<User> optionalUser = userRepository.findById(accountRequest.getUserId());
             if (optionalUser.isEmpty()) {
                 accountResponse.addError(ErrorMessage.NOT_FOUND);
@@ -140,11 +355,14 @@ public class AccountService {
             account.setUser(optionalUser.get());
             account.setBalance(accountRequest.getBalance());
             accountRepository.save(account);
+            recordAccountEvent(account, ChangeEventTypeEnum.CREATED);
+            balanceHistoryService.record(account.getId(), account.getBalance(), account.getCreatedAt());
 
             // Map the newly created Account entity to AccountResponse DTO
             accountResponse = mapToAccountDto(account);
             return new ResponseEntity<>(accountResponse, HttpStatus.CREATED);
         } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("An error occurred while creating the account with userId: {}", accountRequest.getUserId(), e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -157,6 +375,7 @@ public class AccountService {
      * @param accountId      The ID of the account to be updated.
      * @return ResponseEntity containing the updated AccountResponse or an error message if the update fails.
      */
+    @Transactional
     public ResponseEntity<?> updateAccountBalance(AccountRequest accountRequest, String accountId) {
         AccountResponse accountResponse = new AccountResponse();
         try {
@@ -165,6 +384,12 @@ public class AccountService {
                 accountResponse.addError(ErrorMessage.BAD_REQUEST);
                 return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
             }
+            // Deltas of a hot account acknowledged before this update are applied before it
+            if (!hotAccountService.flushIfHot(List.of(accountId))) {
+                accountResponse.addError(ErrorMessage.PENDING_BALANCE_CHANGES);
+                return new ResponseEntity<>(accountResponse, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+            shardRouter.useShardOf(accountRequest.getUserId());
             Optional<User> optionalUser = userRepository.findById(accountRequest.getUserId());
             if (optionalUser.isEmpty()) {
                 accountResponse.addError(ErrorMessage.NOT_FOUND);
@@ -185,16 +410,150 @@ public class AccountService {
 
             if (!accountRequest.getBalance().equals(accountToUpdate.getBalance())) {
                 accountToUpdate.setBalance(accountRequest.getBalance());
-                accountRepository.save(accountToUpdate);
+                accountRepository.saveAndFlush(accountToUpdate);
+                recordAccountEvent(accountToUpdate, ChangeEventTypeEnum.UPDATED);
+                balanceHistoryService.record(accountToUpdate.getId(), accountToUpdate.getBalance(), accountToUpdate.getUpdatedAt());
             }
             accountResponse = mapToAccountDto(accountToUpdate);
             return new ResponseEntity<>(accountResponse, HttpStatus.OK);
         } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("An error occurred while creating the account with accountId: {}", accountId, e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Adds an amount to the balance of an account. A hot account only logs the change and leaves it to the next
+     * write-behind flush; any other account is updated directly under a row lock.
+     *
+     * @param userId              The ID of the user owning the account.
+     * @param accountId           The ID of the account.
+     * @param balanceDeltaRequest The BalanceDeltaRequest DTO containing the amount to add.
+     * @param bindingResult       The BindingResult object that holds the result of the validation and binding and contains errors that may have occurred.
+     * @return ResponseEntity containing the updated AccountResponse, status 202 once the change of a hot account is
+     * durable, or an error message if the change fails.
+     */
+    public ResponseEntity<?> addToBalance(String userId, String accountId, BalanceDeltaRequest balanceDeltaRequest,
+                                          BindingResult bindingResult) {
+        AccountResponse accountResponse = new AccountResponse();
+        if (bindingResult.hasErrors()) {
+            bindingResult.getAllErrors().forEach(error -> accountResponse.addError(error.getDefaultMessage()));
+            return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
+        }
+        try {
+            if (userId.isBlank() || accountId.isBlank()) {
+                accountResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
+            }
+            Money amount = balanceDeltaRequest.getAmount();
+
+            if (hotAccountService.isHot(accountId)) {
+                if (!userId.equals(hotAccountService.ownerOf(accountId))) {
+                    accountResponse.addError(ErrorMessage.NOT_FOUND);
+                    return new ResponseEntity<>(accountResponse, HttpStatus.NOT_FOUND);
+                }
+                hotAccountService.addDelta(accountId, amount.minorUnits());
+                accountResponse.setId(accountId);
+                accountResponse.setUserId(userId);
+                accountResponse.addInfo(InfoMessage.BALANCE_CHANGE_ACCEPTED);
+                return new ResponseEntity<>(accountResponse, HttpStatus.ACCEPTED);
+            }
+
+            shardRouter.useShardOf(userId);
+            return transactionTemplate.execute(status -> {
+                List<Account> locked = accountRepository.lockAllByIds(List.of(accountId));
+                if (locked.isEmpty() || !locked.get(0).getUser().getId().equals(userId)) {
+                    accountResponse.addError(ErrorMessage.NOT_FOUND);
+                    return new ResponseEntity<>(accountResponse, HttpStatus.NOT_FOUND);
+                }
+                Account account = locked.get(0);
+                account.setBalance((account.getBalance() != null ? account.getBalance() : Money.ZERO).plus(amount));
+                accountRepository.saveAndFlush(account);
+                recordAccountEvent(account, ChangeEventTypeEnum.UPDATED);
+                balanceHistoryService.record(account.getId(), account.getBalance(), account.getUpdatedAt());
+                return new ResponseEntity<>(mapToAccountDto(account), HttpStatus.OK);
+            });
+        } catch (ArithmeticException e) {
+            accountResponse.addError(ErrorMessage.BAD_REQUEST);
+            return new ResponseEntity<>(accountResponse, HttpStatus.BAD_REQUEST);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while changing the balance of the account with accountId: {}", accountId, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (Exception e) {
+            log.error("An error occurred while changing the balance of the account with accountId: {}", accountId, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Records a change event for an account in the current transaction.
+     *
+     * @param account   The changed Account entity.
+     * @param eventType The kind of change.
+     */
+    private void recordAccountEvent(Account account, ChangeEventTypeEnum eventType) {
+        changeEventService.record(AggregateTypeEnum.ACCOUNT, account.getId(), account.getUser().getId(), eventType,
+                account.getUpdatedAt());
+    }
+
+    /**
+     * Creates the cursor of the page after the given account: the sort, its direction and the account's sort key.
+     *
+     * @param last      The last account of the current page.
+     * @param sort      The sort of the page.
+     * @param direction The direction of the sort.
+     * @return The opaque cursor to pass for the next page.
+     */
+    private String encodeCursor(Account last, AccountSortEnum sort, Sort.Direction direction) {
+        return CursorTools.encode(sort.name(), direction.name(), String.valueOf(sortValue(last, sort)), last.getId());
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static Comparable<Object> sortValue(Account account, AccountSortEnum sort) {
+        Comparable value = switch (sort) {
+            case BALANCE -> account.getBalance();
+            case CREATED_AT -> account.getCreatedAt();
+            case UPDATED_AT -> account.getUpdatedAt();
+        };
+        return value;
+    }
+
+    /**
+     * Restores the keyset position from a cursor. A cursor is only valid for the sort it was created with.
+     *
+     * @return The position after the last account of the previous page, or null if the cursor is invalid.
+     */
+    private KeysetScrollPosition decodeCursor(String cursor, AccountSortEnum sort, Sort.Direction direction) {
+        String[] parts = CursorTools.decode(cursor, 4);
+        if (parts == null || !parts[0].equals(sort.name()) || !parts[1].equals(direction.name())) {
+            return null;
+        }
+        try {
+            Object value = switch (sort) {
+                case BALANCE -> Money.parse(parts[2]);
+                case CREATED_AT, UPDATED_AT -> LocalDateTime.parse(parts[2]);
+            };
+            Map<String, Object> keys = new LinkedHashMap<>();
+            keys.put(sort.getProperty(), value);
+            keys.put("id", parts[3]);
+            return ScrollPosition.forward(keys);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    private AccountResponse mapToAccountDto(ArchivedAccount account) {
+        return AccountResponse.builder()
+                .id(account.getId())
+                .balance(account.getBalance())
+                .userId(account.getUserId())
+                .createdAt(account.getCreatedAt())
+                .updatedAt(account.getUpdatedAt())
+                .build();
+    }
+
     /**
      * Maps an Account entity to an AccountResponse DTO.
      *
@@ -204,7 +563,7 @@ public class AccountService {
     private AccountResponse mapToAccountDto(Account account) {
         return AccountResponse.builder()
                 .id(account.getId())
-                .balance(account.getBalance())
+                .balance(hotAccountService.pendingBalance(account.getId(), account.getBalance()))
                 .userId(account.getUser().getId())
                 .createdAt(account.getCreatedAt())
                 .updatedAt(account.getUpdatedAt())
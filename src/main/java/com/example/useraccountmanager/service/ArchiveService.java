@@ -0,0 +1,154 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.model.User;
+import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.repository.ArchivedAccountRepository;
+import com.example.useraccountmanager.repository.ArchivedUserRepository;
+import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Service that keeps the live {@code users} and {@code accounts} tables small by moving users that have been inactive
+ * for a long time, together with their accounts, into {@code users_archive} and {@code accounts_archive}.
+ * <p>
+ * Archiving runs in the background in chunks, each chunk in its own short transaction: the chunk's users are locked
+ * and re-checked, copied with insert-select and deleted from the live tables. IDs are kept, so balance history and
+ * change events stay valid, and {@link #restore(Collection)} moves users back the same way when they are reactivated.
+ * Archiving records no change events, so the cached responses of moved users are dropped here.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ArchiveService {
+
+    private final UserRepository userRepository;
+    private final AccountRepository accountRepository;
+    private final ArchivedUserRepository archivedUserRepository;
+    private final ArchivedAccountRepository archivedAccountRepository;
+    private final ResponseCacheService responseCacheService;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${archive.enabled:true}")
+    private boolean enabled;
+
+    @Value("${archive.inactive-after:P90D}")
+    private Duration inactiveAfter;
+
+    @Value("${archive.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${archive.max-chunks-per-run:100}")
+    private int maxChunksPerRun;
+
+    /**
+     * Archives users that are inactive and have not been updated for the configured time, chunk by chunk. A run
+     * stops after the configured number of chunks and continues on the next schedule.
+     */
+    @Scheduled(fixedDelayString = "${archive.interval:PT1H}", initialDelayString = "${archive.initial-delay:PT5M}")
+    public void archiveInactiveUsers() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime cutoff = LocalDateTime.now().minus(inactiveAfter);
+        shardRouter.scatter(shard -> {
+            archiveInactiveUsers(shard, cutoff);
+            return null;
+        });
+    }
+
+    /**
+     * Archives the inactive users of one shard. Users are archived on their own shard, so the archive tables are
+     * sharded like the live ones.
+     */
+    private void archiveInactiveUsers(int shard, LocalDateTime cutoff) {
+        String afterId = "";
+        int chunks = 0;
+        int archived = 0;
+        try {
+            List<String> userIds;
+            do {
+                userIds = userRepository.findIdsToArchive(UserStatusEnum.INACTIVE, cutoff, afterId, Limit.of(chunkSize));
+                if (userIds.isEmpty()) {
+                    break;
+                }
+                afterId = userIds.get(userIds.size() - 1);
+                List<String> chunk = userIds;
+                Integer archivedInChunk = transactionTemplate.execute(status -> archiveChunk(chunk, cutoff));
+                archived += archivedInChunk != null ? archivedInChunk : 0;
+                chunks++;
+            } while (userIds.size() == chunkSize && chunks < maxChunksPerRun);
+            if (archived > 0) {
+                log.info("Archived {} inactive users of shard {} in {} chunks", archived, shard, chunks);
+            }
+        } catch (Exception e) {
+            log.error("An error occurred while archiving inactive users of shard {} after {} chunks", shard, chunks, e);
+        }
+    }
+
+    /**
+     * Moves archived users and their accounts back into the live tables. Must be called inside a transaction on the
+     * users' shard.
+     *
+     * @param userIds The IDs of the users to restore.
+     * @return The number of restored users; IDs that are not archived are ignored.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int restore(Collection<String> userIds) {
+        responseCacheService.invalidate(userIds);
+        int restored = archivedUserRepository.restoreUsers(userIds);
+        if (restored > 0) {
+            archivedAccountRepository.restoreAccountsOfUsers(userIds);
+            archivedAccountRepository.deleteByUserIds(userIds);
+            archivedUserRepository.deleteByIds(userIds);
+            log.info("Restored {} users from the archive", restored);
+        }
+        return restored;
+    }
+
+    /**
+     * Permanently deletes archived users and their accounts. Must be called inside a transaction on the users' shard.
+     *
+     * @param userIds The IDs of the users to delete.
+     * @return The number of deleted archived users.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int deleteArchived(Collection<String> userIds) {
+        responseCacheService.invalidate(userIds);
+        archivedAccountRepository.deleteByUserIds(userIds);
+        return archivedUserRepository.deleteByIds(userIds);
+    }
+
+    /**
+     * Archives one chunk. The users are locked and the archiving condition is checked again, so a user reactivated
+     * or updated since the chunk was selected stays live.
+     */
+    private int archiveChunk(List<String> candidateIds, LocalDateTime cutoff) {
+        List<String> userIds = userRepository.lockForArchive(candidateIds, UserStatusEnum.INACTIVE, cutoff).stream()
+                .map(User::getId)
+                .toList();
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        responseCacheService.invalidate(userIds);
+        archivedUserRepository.archiveUsers(userIds, LocalDateTime.now());
+        archivedAccountRepository.archiveAccountsOfUsers(userIds);
+        accountRepository.deleteByUserIds(userIds);
+        return userRepository.deleteByIds(userIds);
+    }
+}
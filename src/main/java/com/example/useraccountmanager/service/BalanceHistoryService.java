@@ -0,0 +1,404 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.BalanceHistoryResponse;
+import com.example.useraccountmanager.dto.response.BalancePointResponse;
+import com.example.useraccountmanager.model.AccountBalanceBlock;
+import com.example.useraccountmanager.repository.AccountBalanceBlockRepository;
+import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.BalanceHistoryCodec;
+import com.example.useraccountmanager.tools.ErrorMessage;
+import com.example.useraccountmanager.tools.Money;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service for account balance history. Every balance change is appended to the account's current tail
+ * {@link AccountBalanceBlock}, which holds only a few points, so a change rewrites a small block under the lock of the
+ * account's history instead of a full one. A new tail block is started for every time partition or when the tail is
+ * full. A scheduled compaction merges the sealed tail blocks of a partition into blocks of up to max-points-per-block
+ * points, once they fill one or their partition is over, so a range query only loads a few blocks overlapping the
+ * requested window. Blocks are stored on the shard of their account.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BalanceHistoryService {
+
+    private final AccountBalanceBlockRepository accountBalanceBlockRepository;
+    private final AccountRepository accountRepository;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${balance-history.block-duration:PT1H}")
+    private Duration blockDuration;
+
+    @Value("${balance-history.max-points-per-block:4096}")
+    private int maxPointsPerBlock;
+
+    @Value("${balance-history.tail-points:32}")
+    private int tailPoints;
+
+    @Value("${balance-history.compaction-batch:500}")
+    private int compactionBatch;
+
+    @Value("${balance-history.max-points:10000}")
+    private int maxPoints;
+
+    @Value("${balance-history.default-range:P30D}")
+    private Duration defaultRange;
+
+    // Account ID each shard's compaction continues after, so every account with sealed tails gets its turn
+    private final Map<Integer, String> compactionCursors = new ConcurrentHashMap<>();
+
+    /**
+     * Records a balance change. Must be called in the transaction that changes the balance.
+     *
+     * @param accountId The ID of the account whose balance changed.
+     * @param balance   The new balance.
+     * @param changedAt When the balance changed.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String accountId, Money balance, LocalDateTime changedAt) {
+        long value = balance.minorUnits();
+        long timestamp = toEpochMillis(changedAt != null ? changedAt : LocalDateTime.now());
+
+        List<AccountBalanceBlock> latest = accountBalanceBlockRepository.findLatestForUpdate(accountId, PageRequest.of(0, 1));
+        AccountBalanceBlock block = latest.isEmpty() ? null : latest.get(0);
+        if (block != null) {
+            // Keep points ordered inside a block even if the clock went backwards
+            timestamp = Math.max(timestamp, block.getLastTimestamp());
+        }
+
+        if (block == null || block.getPointCount() >= tailPoints
+                || partitionOf(block.getFirstTimestamp()) != partitionOf(timestamp)) {
+            block = AccountBalanceBlock.builder()
+                    .accountId(accountId)
+                    .tail(true)
+                    .firstTimestamp(timestamp)
+                    .lastTimestamp(timestamp)
+                    .pointCount(1)
+                    .minValue(value)
+                    .maxValue(value)
+                    .lastValue(value)
+                    .data(BalanceHistoryCodec.append(null, timestamp, 0, timestamp, value))
+                    .build();
+        } else {
+            block.setData(BalanceHistoryCodec.append(block.getData(), block.getLastTimestamp(), block.getLastValue(), timestamp, value));
+            block.setLastTimestamp(timestamp);
+            block.setLastValue(value);
+            block.setPointCount(block.getPointCount() + 1);
+            block.setMinValue(Math.min(block.getMinValue(), value));
+            block.setMaxValue(Math.max(block.getMaxValue(), value));
+        }
+        accountBalanceBlockRepository.save(block);
+    }
+
+    /**
+     * Merges sealed tail blocks into full blocks, a batch of accounts per shard at a time.
+     */
+    @Scheduled(fixedDelayString = "${balance-history.compaction-interval:PT1M}")
+    public void compact() {
+        for (int shard : shardRouter.shards()) {
+            try {
+                int merged = ShardContext.callOn(shard, () -> compactShard(shard));
+                if (merged > 0) {
+                    log.debug("Compacted {} balance history blocks of shard {}", merged, shard);
+                }
+            } catch (Exception e) {
+                log.error("An error occurred while compacting the balance history of shard {}", shard, e);
+            }
+        }
+    }
+
+    private int compactShard(int shard) {
+        String after = compactionCursors.getOrDefault(shard, "");
+        List<String> accountIds = accountBalanceBlockRepository.findAccountsWithSealedTails(after, Limit.of(compactionBatch));
+        compactionCursors.put(shard, accountIds.size() < compactionBatch ? "" : accountIds.get(accountIds.size() - 1));
+        int merged = 0;
+        for (String accountId : accountIds) {
+            merged += transactionTemplate.execute(status -> compactAccount(accountId));
+        }
+        return merged;
+    }
+
+    /**
+     * Merges the sealed tail blocks of an account, in order, into blocks of one partition and up to
+     * max-points-per-block points. A run that could still take more tail blocks is left until its partition is over.
+     *
+     * @return Number of blocks written by the compaction.
+     */
+    private int compactAccount(String accountId) {
+        // Takes the lock record takes, so the history of the account does not change meanwhile
+        List<AccountBalanceBlock> latest = accountBalanceBlockRepository.findLatestForUpdate(accountId, PageRequest.of(0, 1));
+        if (latest.isEmpty()) {
+            return 0;
+        }
+        long openPartition = Math.max(partitionOf(latest.get(0).getFirstTimestamp()), partitionOf(System.currentTimeMillis()));
+        List<AccountBalanceBlock> sealed = accountBalanceBlockRepository.findSealedTails(accountId, latest.get(0).getId());
+
+        int merged = 0;
+        List<AccountBalanceBlock> run = new ArrayList<>();
+        int points = 0;
+        for (int i = 0; i <= sealed.size(); i++) {
+            AccountBalanceBlock block = i < sealed.size() ? sealed.get(i) : null;
+            if (block != null && !run.isEmpty() && points + block.getPointCount() <= maxPointsPerBlock
+                    && partitionOf(block.getFirstTimestamp()) == partitionOf(run.get(0).getFirstTimestamp())) {
+                run.add(block);
+                points += block.getPointCount();
+                continue;
+            }
+            // A run ended by a following block is full or its partition is over
+            if (!run.isEmpty() && (block != null || partitionOf(run.get(0).getFirstTimestamp()) < openPartition)) {
+                merge(run);
+                merged++;
+            }
+            run = new ArrayList<>();
+            points = 0;
+            if (block != null) {
+                run.add(block);
+                points = block.getPointCount();
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * Appends the points of a run of tail blocks to its first block and deletes the others.
+     */
+    private void merge(List<AccountBalanceBlock> run) {
+        AccountBalanceBlock target = run.get(0);
+        byte[] data = target.getData();
+        for (AccountBalanceBlock next : run.subList(1, run.size())) {
+            data = BalanceHistoryCodec.concat(data, target.getLastTimestamp(), target.getLastValue(), next.getData(),
+                    next.getFirstTimestamp());
+            target.setLastTimestamp(next.getLastTimestamp());
+            target.setLastValue(next.getLastValue());
+            target.setPointCount(target.getPointCount() + next.getPointCount());
+            target.setMinValue(Math.min(target.getMinValue(), next.getMinValue()));
+            target.setMaxValue(Math.max(target.getMaxValue(), next.getMaxValue()));
+        }
+        target.setData(data);
+        target.setTail(false);
+        accountBalanceBlockRepository.save(target);
+        if (run.size() > 1) {
+            accountBalanceBlockRepository.deleteAllInBatch(run.subList(1, run.size()));
+        }
+    }
+
+    /**
+     * Removes the history of the given accounts. Must be called in the transaction that deletes the accounts.
+     *
+     * @param accountIds The IDs of the deleted accounts.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteHistory(Collection<String> accountIds) {
+        if (!accountIds.isEmpty()) {
+            accountBalanceBlockRepository.deleteByAccountIds(accountIds);
+        }
+    }
+
+    /**
+     * Removes the history of all accounts of the given users. Must be called in the transaction that deletes the
+     * users, before their accounts are deleted.
+     *
+     * @param userIds The IDs of the deleted users.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void deleteHistoryOfUsers(Collection<String> userIds) {
+        if (!userIds.isEmpty()) {
+            accountBalanceBlockRepository.deleteByUserIds(userIds);
+        }
+    }
+
+    /**
+     * Returns the most recently recorded balance of each account, read from the summary of its newest block.
+     *
+     * @param accountIds The IDs of the accounts.
+     * @return The recorded balance by account ID; accounts without any history are missing from the map.
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Money> getRecordedBalances(Collection<String> accountIds) {
+        Map<String, Money> recordedBalances = new HashMap<>();
+        if (accountIds.isEmpty()) {
+            return recordedBalances;
+        }
+        for (Object[] latest : accountBalanceBlockRepository.findLatestValues(accountIds)) {
+            recordedBalances.put((String) latest[0], toBalance((Long) latest[1]));
+        }
+        return recordedBalances;
+    }
+
+    /**
+     * Retrieves the balance history of an account over a time window.
+     *
+     * @param userId    The ID of the user owning the account.
+     * @param accountId The ID of the account.
+     * @param from      Start of the window, defaults to the configured range before the end.
+     * @param to        End of the window, defaults to now.
+     * @param bucket    Optional bucket size; when present every bucket is reduced to its min, max and last balance.
+     * @return ResponseEntity containing the points in time order, or an error message.
+     */
+    @Transactional(readOnly = true)
+    public ResponseEntity<?> getHistory(String userId, String accountId, LocalDateTime from, LocalDateTime to, Duration bucket) {
+        BalanceHistoryResponse historyResponse = new BalanceHistoryResponse();
+        try {
+            LocalDateTime end = to != null ? to : LocalDateTime.now();
+            LocalDateTime start = from != null ? from : end.minus(defaultRange);
+            if (userId.isBlank() || accountId.isBlank() || start.isAfter(end)
+                    || (bucket != null && (bucket.isNegative() || bucket.isZero()))) {
+                historyResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(historyResponse, HttpStatus.BAD_REQUEST);
+            }
+            shardRouter.useShardOf(userId);
+            if (accountRepository.findByIdAndUserId(accountId, userId).isEmpty()) {
+                historyResponse.addError(ErrorMessage.NOT_FOUND);
+                return new ResponseEntity<>(historyResponse, HttpStatus.NOT_FOUND);
+            }
+
+            long fromMillis = toEpochMillis(start);
+            long toMillis = toEpochMillis(end);
+            List<AccountBalanceBlock> blocks = accountBalanceBlockRepository.findOverlapping(accountId, fromMillis, toMillis);
+            List<BalancePointResponse> points = bucket == null
+                    ? rawPoints(blocks, fromMillis, toMillis, historyResponse)
+                    : downsample(blocks, fromMillis, toMillis, bucket.toMillis());
+
+            historyResponse.setAccountId(accountId);
+            historyResponse.setFrom(start);
+            historyResponse.setTo(end);
+            historyResponse.setBucket(bucket);
+            historyResponse.setData(points);
+            return new ResponseEntity<>(historyResponse, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("An error occurred while retrieving balance history of account with ID: {}", accountId, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private List<BalancePointResponse> rawPoints(List<AccountBalanceBlock> blocks, long from, long to,
+                                                 BalanceHistoryResponse historyResponse) {
+        List<BalancePointResponse> points = new ArrayList<>();
+        for (AccountBalanceBlock block : blocks) {
+            BalanceHistoryCodec.decode(block.getData(), block.getFirstTimestamp(), (timestamp, value) -> {
+                if (timestamp >= from && timestamp <= to && points.size() < maxPoints) {
+                    points.add(BalancePointResponse.builder()
+                            .timestamp(toLocalDateTime(timestamp))
+                            .balance(toBalance(value))
+                            .build());
+                }
+            });
+        }
+        if (points.size() >= maxPoints) {
+            historyResponse.addInfo("Result limited to " + maxPoints + " points, use a bucket to downsample.");
+        }
+        return points;
+    }
+
+    private List<BalancePointResponse> downsample(List<AccountBalanceBlock> blocks, long from, long to, long bucketMillis) {
+        BucketAccumulator accumulator = new BucketAccumulator(from, bucketMillis);
+        for (AccountBalanceBlock block : blocks) {
+            boolean inside = block.getFirstTimestamp() >= from && block.getLastTimestamp() <= to;
+            if (inside && accumulator.sameBucket(block.getFirstTimestamp(), block.getLastTimestamp())) {
+                // The whole block falls into one bucket, use its summary instead of decoding it
+                accumulator.add(block.getFirstTimestamp(), block.getMinValue(), block.getMaxValue(), block.getLastValue());
+            } else {
+                BalanceHistoryCodec.decode(block.getData(), block.getFirstTimestamp(), (timestamp, value) -> {
+                    if (timestamp >= from && timestamp <= to) {
+                        accumulator.add(timestamp, value, value, value);
+                    }
+                });
+            }
+        }
+        return accumulator.finish();
+    }
+
+    private long partitionOf(long timestamp) {
+        return Math.floorDiv(timestamp, blockDuration.toMillis());
+    }
+
+    private static Money toBalance(long minorUnits) {
+        return Money.ofMinorUnits(minorUnits);
+    }
+
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        return dateTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * Reduces points to min, max and last value per bucket. Points must arrive in time order.
+     */
+    private static final class BucketAccumulator {
+        private final long origin;
+        private final long bucketMillis;
+        private final List<BalancePointResponse> buckets = new ArrayList<>();
+        private long currentBucket = Long.MIN_VALUE;
+        private long min;
+        private long max;
+        private long last;
+
+        private BucketAccumulator(long origin, long bucketMillis) {
+            this.origin = origin;
+            this.bucketMillis = bucketMillis;
+        }
+
+        boolean sameBucket(long first, long last) {
+            return bucketOf(first) == bucketOf(last);
+        }
+
+        void add(long timestamp, long minValue, long maxValue, long lastValue) {
+            long bucket = bucketOf(timestamp);
+            if (bucket != currentBucket) {
+                flush();
+                currentBucket = bucket;
+                min = minValue;
+                max = maxValue;
+            } else {
+                min = Math.min(min, minValue);
+                max = Math.max(max, maxValue);
+            }
+            last = lastValue;
+        }
+
+        List<BalancePointResponse> finish() {
+            flush();
+            return buckets;
+        }
+
+        private long bucketOf(long timestamp) {
+            return Math.floorDiv(timestamp - origin, bucketMillis);
+        }
+
+        private void flush() {
+            if (currentBucket != Long.MIN_VALUE) {
+                buckets.add(BalancePointResponse.builder()
+                        .timestamp(toLocalDateTime(origin + currentBucket * bucketMillis))
+                        .balance(toBalance(last))
+                        .min(toBalance(min))
+                        .max(toBalance(max))
+                        .build());
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.BalanceMismatchResponse;
+import com.example.useraccountmanager.dto.response.VerificationReportResponse;
+import com.example.useraccountmanager.model.Account;
+import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.security.LoadShedder;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.ErrorMessage;
+import com.example.useraccountmanager.tools.IdRange;
+import com.example.useraccountmanager.tools.InfoMessage;
+import com.example.useraccountmanager.tools.Money;
+import com.example.useraccountmanager.tools.TokenBucket;
+import com.example.useraccountmanager.tools.enums.JobStatusEnum;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service that verifies that the stored balance of every account agrees with the last balance recorded in its
+ * balance history. A mismatch means a balance was changed without going through the service, or an update was lost.
+ * <p>
+ * A run splits the ID space into ranges by the leading hex digits of the account ID and scans the ranges in parallel
+ * on a dedicated fork-join pool, page by page in key order, each page in its own short read-only transaction. All
+ * workers share one row budget per second, and pause while requests are waiting for database connections, so the job
+ * yields to online traffic. Mismatches are read again in a fresh transaction before they are reported, to drop those
+ * caused by a balance update committing between the two reads. Every range is scanned on each shard in turn.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BalanceVerificationService {
+
+    private final AccountRepository accountRepository;
+    private final BalanceHistoryService balanceHistoryService;
+    private final LoadShedder loadShedder;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${verification.enabled:true}")
+    private boolean enabled;
+
+    @Value("${verification.parallelism:4}")
+    private int parallelism;
+
+    @Value("${verification.prefix-length:2}")
+    private int prefixLength;
+
+    @Value("${verification.page-size:1000}")
+    private int pageSize;
+
+    @Value("${verification.max-rows-per-second:20000}")
+    private long maxRowsPerSecond;
+
+    @Value("${verification.backoff-threshold:PT0.02S}")
+    private Duration backoffThreshold;
+
+    @Value("${verification.backoff-pause:PT1S}")
+    private Duration backoffPause;
+
+    @Value("${verification.max-reported-mismatches:1000}")
+    private int maxReportedMismatches;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private volatile VerificationRun lastRun;
+
+    /**
+     * Starts a full verification in the maintenance window. The run goes to its own worker thread, so it does not
+     * hold the scheduler thread for its whole duration.
+     */
+    @Scheduled(cron = "${verification.cron:0 0 3 * * *}")
+    public void scheduledVerification() {
+        if (enabled && running.compareAndSet(false, true)) {
+            launch(new VerificationRun(IdRange.partition(prefixLength)));
+        }
+    }
+
+    /**
+     * Starts a verification run in the background.
+     *
+     * @return ResponseEntity containing the report of the started run, or an error if a run is in progress.
+     */
+    public ResponseEntity<?> startVerification() {
+        VerificationReportResponse reportResponse = new VerificationReportResponse();
+        if (!running.compareAndSet(false, true)) {
+            reportResponse.addError(ErrorMessage.VERIFICATION_RUNNING);
+            return new ResponseEntity<>(reportResponse, HttpStatus.CONFLICT);
+        }
+        VerificationRun run = new VerificationRun(IdRange.partition(prefixLength));
+        launch(run);
+        reportResponse = toReport(run);
+        reportResponse.addInfo(InfoMessage.SUCCESS);
+        return new ResponseEntity<>(reportResponse, HttpStatus.ACCEPTED);
+    }
+
+    /**
+     * Retrieves the progress or result of the latest verification run.
+     *
+     * @return ResponseEntity containing the report, or an error if no run has been started yet.
+     */
+    public ResponseEntity<?> getReport() {
+        VerificationRun run = lastRun;
+        if (run == null) {
+            VerificationReportResponse reportResponse = new VerificationReportResponse();
+            reportResponse.addError(ErrorMessage.NOT_FOUND);
+            return new ResponseEntity<>(reportResponse, HttpStatus.NOT_FOUND);
+        }
+        return new ResponseEntity<>(toReport(run), HttpStatus.OK);
+    }
+
+    private void launch(VerificationRun run) {
+        lastRun = run;
+        Thread worker = new Thread(() -> verify(run), "balance-verification");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    private void verify(VerificationRun run) {
+        lastRun = run;
+        TokenBucket throttle = new TokenBucket(Math.max(pageSize, maxRowsPerSecond), maxRowsPerSecond);
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            log.info("Balance verification {} started over {} partitions", run.id, run.ranges.size());
+            pool.invoke(new PartitionTask(run, throttle, 0, run.ranges.size()));
+            run.status = JobStatusEnum.COMPLETED;
+            log.info("Balance verification {} scanned {} accounts: {} mismatches, {} without history",
+                    run.id, run.scanned.get(), run.mismatches.get(), run.missingHistory.get());
+        } catch (Exception e) {
+            run.status = JobStatusEnum.FAILED;
+            log.error("An error occurred during balance verification {}", run.id, e);
+        } finally {
+            run.finishedAt = LocalDateTime.now();
+            pool.shutdown();
+            running.set(false);
+        }
+    }
+
+    /**
+     * Scans one ID range on every shard.
+     */
+    private void scanPartition(VerificationRun run, TokenBucket throttle, IdRange range) throws InterruptedException {
+        for (int shard : shardRouter.shards()) {
+            ShardContext.set(shard);
+            try {
+                scanShardPartition(run, throttle, range);
+            } finally {
+                ShardContext.clear();
+            }
+        }
+        run.partitionsDone.incrementAndGet();
+    }
+
+    /**
+     * Scans one ID range of the current shard in pages.
+     */
+    private void scanShardPartition(VerificationRun run, TokenBucket throttle, IdRange range) throws InterruptedException {
+        String afterId = range.afterId();
+        String upperId = range.upperId();
+        List<Account> page;
+        do {
+            yieldToOnlineTraffic();
+            String from = afterId;
+            List<String> suspects = new ArrayList<>();
+            page = transactionTemplate.execute(status -> {
+                List<Account> accounts = accountRepository.findIdRangePage(from, upperId, Limit.of(pageSize));
+                suspects.addAll(findMismatches(accounts).keySet());
+                return accounts;
+            });
+            if (page == null || page.isEmpty()) {
+                break;
+            }
+            // Pay for the rows just read, so the next page waits until the budget allows them
+            throttle.acquire(page.size());
+            run.scanned.addAndGet(page.size());
+            afterId = page.get(page.size() - 1).getId();
+            if (!suspects.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status ->
+                        findMismatches(accountRepository.findAllById(suspects)).values().forEach(run::report));
+            }
+        } while (page.size() == pageSize);
+    }
+
+    private Map<String, BalanceMismatchResponse> findMismatches(List<Account> accounts) {
+        Map<String, BalanceMismatchResponse> mismatches = new HashMap<>();
+        if (accounts.isEmpty()) {
+            return mismatches;
+        }
+        Map<String, Money> recordedBalances = balanceHistoryService.getRecordedBalances(
+                accounts.stream().map(Account::getId).toList());
+        for (Account account : accounts) {
+            Money recorded = recordedBalances.get(account.getId());
+            if (recorded == null || !recorded.equals(account.getBalance())) {
+                mismatches.put(account.getId(), BalanceMismatchResponse.builder()
+                        .accountId(account.getId())
+                        .userId(account.getUser() != null ? account.getUser().getId() : null)
+                        .balance(account.getBalance())
+                        .recordedBalance(recorded)
+                        .build());
+            }
+        }
+        return mismatches;
+    }
+
+    /**
+     * Pauses while online requests wait for pooled connections longer than the configured threshold.
+     */
+    private void yieldToOnlineTraffic() throws InterruptedException {
+        double thresholdMillis = backoffThreshold.toMillis();
+        while (loadShedder.getAverageConnectionWaitMillis() > thresholdMillis) {
+            Thread.sleep(backoffPause.toMillis());
+        }
+    }
+
+    private VerificationReportResponse toReport(VerificationRun run) {
+        return VerificationReportResponse.builder()
+                .runId(run.id)
+                .status(run.status)
+                .startedAt(run.startedAt)
+                .finishedAt(run.finishedAt)
+                .partitions(run.ranges.size())
+                .partitionsDone(run.partitionsDone.get())
+                .accountsScanned(run.scanned.get())
+                .mismatchCount(run.mismatches.get())
+                .missingHistoryCount(run.missingHistory.get())
+                .mismatches(new ArrayList<>(run.reported))
+                .info(new ArrayList<>())
+                .errors(new ArrayList<>())
+                .build();
+    }
+
+    /**
+     * Splits the partition range in halves until a single partition is left.
+     */
+    private final class PartitionTask extends RecursiveAction {
+        private final VerificationRun run;
+        private final TokenBucket throttle;
+        private final int from;
+        private final int to;
+
+        private PartitionTask(VerificationRun run, TokenBucket throttle, int from, int to) {
+            this.run = run;
+            this.throttle = throttle;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PartitionTask(run, throttle, from, middle), new PartitionTask(run, throttle, middle, to));
+                return;
+            }
+            try {
+                scanPartition(run, throttle, run.ranges.get(from));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Balance verification interrupted", e);
+            }
+        }
+    }
+
+    /**
+     * Progress and findings of one run, updated concurrently by the partition workers.
+     */
+    private final class VerificationRun {
+        private final String id = UUID.randomUUID().toString();
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private final List<IdRange> ranges;
+        private final AtomicInteger partitionsDone = new AtomicInteger();
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong mismatches = new AtomicLong();
+        private final AtomicLong missingHistory = new AtomicLong();
+        private final Queue<BalanceMismatchResponse> reported = new ConcurrentLinkedQueue<>();
+        private volatile JobStatusEnum status = JobStatusEnum.RUNNING;
+        private volatile LocalDateTime finishedAt;
+
+        private VerificationRun(List<IdRange> ranges) {
+            this.ranges = ranges;
+        }
+
+        private void report(BalanceMismatchResponse mismatch) {
+            if (mismatch.getRecordedBalance() == null) {
+                missingHistory.incrementAndGet();
+            } else {
+                mismatches.incrementAndGet();
+            }
+            if (mismatches.get() + missingHistory.get() <= maxReportedMismatches) {
+                reported.add(mismatch);
+                log.warn("Balance verification {} found account {} with balance {} but recorded balance {}",
+                        id, mismatch.getAccountId(), mismatch.getBalance(), mismatch.getRecordedBalance());
+            }
+        }
+    }
+}
@@ -0,0 +1,478 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.ChangeEventResponse;
+import com.example.useraccountmanager.model.ChangeEvent;
+import com.example.useraccountmanager.repository.ChangeEventRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.ErrorMessage;
+import com.example.useraccountmanager.tools.SegmentedLog;
+import com.example.useraccountmanager.tools.enums.AggregateTypeEnum;
+import com.example.useraccountmanager.tools.enums.ChangeEventTypeEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Service for the user and account change feed. Mutations record a {@link ChangeEvent} in the outbox table as part
+ * of their own transaction; a scheduled relay copies the outbox in batches into an append-only {@link SegmentedLog}
+ * on local disk, from which consumers read sequentially by offset. The offsets of the most recent events are kept by
+ * eventId, so the change feed can resume a client after the last event it saw.
+ * <p>
+ * Every shard has its own outbox, written in the transactions of its users. The relay reads the shards one after
+ * the other into the one change log, so events of different shards interleave. Within a shard events follow outbox
+ * ID order, except for a row that commits after a higher ID was relayed, which follows when its gap is read again.
+ * A mutation records its event after changing its user or account row, whose lock serializes the transactions
+ * changing it, so the events of one user or one account keep their order. Events of different rows do not, not even
+ * those of the accounts of one user; consumers that need it order them by {@code updatedAt}.
+ * <p>
+ * The relay does not consume the outbox: every instance keeps its own cursor per shard, stored with its change log,
+ * so each instance sees the changes made through all of them. Outbox IDs are assigned at insert but become visible
+ * at commit, so a missing ID below the cursor is looked for again until the gap timeout, in case its transaction
+ * is still running. Rows are deleted once they are older than the outbox retention, whether every instance has
+ * relayed them or not, as the cursors are local to the instances: an instance that is down for longer than the
+ * retention permanently misses the events purged meanwhile, and its consumers have to reload the current state.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChangeEventService {
+
+    /**
+     * Prefix of the change log offsets holding the relay cursors, reserved so consumers cannot overwrite them.
+     */
+    private static final String RELAY_CURSOR_PREFIX = "relay.outbox-";
+
+    private final ChangeEventRepository changeEventRepository;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+    private final ResponseCacheService responseCacheService;
+
+    @Value("${change-log.directory:data/change-log}")
+    private Path directory;
+
+    @Value("${change-log.segment-size:64MB}")
+    private DataSize segmentSize;
+
+    @Value("${change-log.retained-segments:64}")
+    private int retainedSegments;
+
+    @Value("${change-log.relay.batch-size:1000}")
+    private int batchSize;
+
+    @Value("${change-log.relay.gap-timeout:PT1M}")
+    private Duration gapTimeout;
+
+    @Value("${change-log.relay.max-tracked-gap:10000}")
+    private int maxTrackedGap;
+
+    @Value("${change-log.outbox.retention:PT1H}")
+    private Duration outboxRetention;
+
+    @Value("${change-log.read.max-records:1000}")
+    private int maxReadRecords;
+
+    @Value("${change-log.event-index-size:100000}")
+    private int eventIndexSize;
+
+    private final Map<Integer, RelayCursor> relayCursors = new ConcurrentHashMap<>();
+
+    /**
+     * Offsets of the most recent events in the change log by eventId, oldest first.
+     */
+    private final Map<Long, Long> offsetsByEventId = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+            return size() > eventIndexSize;
+        }
+    });
+
+    private SegmentedLog changeLog;
+
+    @PostConstruct
+    void open() throws IOException {
+        changeLog = new SegmentedLog(directory, segmentSize.toBytes(), retainedSegments);
+        for (long offset = Math.max(changeLog.firstOffset(), changeLog.nextOffset() - eventIndexSize);
+             offset < changeLog.nextOffset(); ) {
+            List<ChangeEventResponse> changes = readChanges(offset, maxReadRecords);
+            if (changes.isEmpty()) {
+                break;
+            }
+            changes.forEach(change -> offsetsByEventId.put(change.getEventId(), change.getOffset()));
+            offset = changes.get(changes.size() - 1).getOffset() + 1;
+        }
+        log.info("Change log opened at {} with next offset {}", directory.toAbsolutePath(), changeLog.nextOffset());
+    }
+
+    @PreDestroy
+    void close() throws IOException {
+        changeLog.close();
+    }
+
+    /**
+     * Records a change event. Must be called inside the transaction of the mutation it describes, so the event is
+     * committed or rolled back together with it. The cached responses of the owning user are dropped.
+     *
+     * @param aggregateType Whether a user or an account changed.
+     * @param aggregateId   The ID of the changed user or account.
+     * @param userId        The ID of the owning user.
+     * @param eventType     The kind of change.
+     * @param updatedAt     The updatedAt value of the entity after the change.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(AggregateTypeEnum aggregateType, String aggregateId, String userId,
+                       ChangeEventTypeEnum eventType, LocalDateTime updatedAt) {
+        if (userId != null) {
+            responseCacheService.invalidate(List.of(userId));
+        }
+        changeEventRepository.save(ChangeEvent.builder()
+                .aggregateType(aggregateType)
+                .aggregateId(aggregateId)
+                .userId(userId)
+                .eventType(eventType)
+                .updatedAt(updatedAt)
+                .build());
+    }
+
+    /**
+     * Records the same change for a set of users with a single insert-select, for bulk operations. Must be called
+     * inside the transaction of the mutation, before the users are deleted.
+     *
+     * @param userIds   The IDs of the changed users.
+     * @param eventType The kind of change.
+     * @param updatedAt The updatedAt value of the users after the change.
+     * @param accounts  Whether to record the change for every account of the users as well.
+     * @return The number of recorded events.
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int recordUsers(Collection<String> userIds, ChangeEventTypeEnum eventType, LocalDateTime updatedAt, boolean accounts) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        responseCacheService.invalidate(List.copyOf(userIds));
+        int recorded = accounts ? changeEventRepository.insertAccountEventsOfUsers(userIds, eventType, updatedAt) : 0;
+        return recorded + changeEventRepository.insertUserEvents(userIds, eventType, updatedAt);
+    }
+
+    /**
+     * Copies committed outbox rows to the change log. The cursor is stored only after a batch has been appended and
+     * forced to disk, and restarts from the oldest open gap, so a crash can repeat events but never lose one;
+     * consumers can drop repeats by eventId.
+     */
+    @Scheduled(fixedDelayString = "${change-log.relay.interval:PT0.5S}")
+    public void relay() {
+        for (int shard : shardRouter.shards()) {
+            try {
+                ShardContext.runOn(shard, () -> relayShard(shard));
+            } catch (Exception e) {
+                log.error("An error occurred while relaying change events of shard {} to the change log", shard, e);
+            }
+        }
+    }
+
+    private void relayShard(int shard) {
+        try {
+            RelayCursor cursor = relayCursors.get(shard);
+            if (cursor == null) {
+                cursor = openRelayCursor(shard);
+                relayCursors.put(shard, cursor);
+            }
+
+            // Rows of the gaps whose transactions have committed since
+            long now = System.nanoTime();
+            cursor.gaps.values().removeIf(deadline -> deadline - now < 0);
+            List<ChangeEvent> late = new ArrayList<>();
+            List<Long> gapIds = new ArrayList<>(cursor.gaps.keySet());
+            for (int from = 0; from < gapIds.size(); from += batchSize) {
+                late.addAll(changeEventRepository.findAllById(gapIds.subList(from, Math.min(from + batchSize, gapIds.size()))));
+            }
+
+            List<ChangeEvent> batch;
+            do {
+                batch = changeEventRepository.findAfter(cursor.lastId, Limit.of(batchSize));
+                if (batch.isEmpty() && late.isEmpty()) {
+                    return;
+                }
+                long lastId = cursor.lastId;
+                List<Long> newGaps = new ArrayList<>();
+                List<ChangeEventResponse> changes = new ArrayList<>(late.size() + batch.size());
+                for (ChangeEvent changeEvent : late) {
+                    changes.add(mapToChangeEventDto(changeEvent, shard));
+                }
+                for (ChangeEvent changeEvent : batch) {
+                    // Identity values jump after a database restart, such gaps are not waited for
+                    if (lastId != RelayCursor.UNKNOWN && changeEvent.getId() - lastId - 1 <= maxTrackedGap) {
+                        for (long id = lastId + 1; id < changeEvent.getId(); id++) {
+                            newGaps.add(id);
+                        }
+                    }
+                    lastId = changeEvent.getId();
+                    changes.add(mapToChangeEventDto(changeEvent, shard));
+                }
+                List<byte[]> records = new ArrayList<>(changes.size());
+                for (ChangeEventResponse change : changes) {
+                    records.add(objectMapper.writeValueAsBytes(change));
+                }
+                // Indexed before the append, so that no reader sees an event that cannot be resumed after yet; the
+                // relay is the only writer of the change log, so the events get the offsets from its next offset on
+                long firstOffset = changeLog.nextOffset();
+                for (int i = 0; i < changes.size(); i++) {
+                    offsetsByEventId.put(changes.get(i).getEventId(), firstOffset + i);
+                }
+                changeLog.append(records);
+                changeLog.flush();
+                responseCacheService.invalidate(changedUserIds(late, batch));
+
+                long deadline = System.nanoTime() + gapTimeout.toNanos();
+                for (ChangeEvent changeEvent : late) {
+                    cursor.gaps.remove(changeEvent.getId());
+                }
+                for (long id : newGaps) {
+                    cursor.gaps.put(id, deadline);
+                }
+                cursor.lastId = lastId;
+                changeLog.commitOffset(RELAY_CURSOR_PREFIX + shard, cursor.position());
+                late = List.of();
+            } while (batch.size() == batchSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Set<String> changedUserIds(List<ChangeEvent> late, List<ChangeEvent> batch) {
+        Set<String> userIds = new HashSet<>();
+        for (List<ChangeEvent> changeEvents : List.of(late, batch)) {
+            for (ChangeEvent changeEvent : changeEvents) {
+                if (changeEvent.getUserId() != null) {
+                    userIds.add(changeEvent.getUserId());
+                }
+            }
+        }
+        return userIds;
+    }
+
+    /**
+     * Restores the relay cursor of a shard, or starts a new instance at the oldest retained outbox row. With an empty
+     * outbox the IDs already used are unknown, so the first row relayed opens no gaps.
+     */
+    private RelayCursor openRelayCursor(int shard) throws IOException {
+        RelayCursor cursor = new RelayCursor();
+        OptionalLong committed = changeLog.committedOffset(RELAY_CURSOR_PREFIX + shard);
+        if (committed.isPresent()) {
+            cursor.lastId = committed.getAsLong();
+        } else {
+            Long minId = changeEventRepository.findMinId();
+            cursor.lastId = minId == null ? RelayCursor.UNKNOWN : minId - 1;
+        }
+        return cursor;
+    }
+
+    /**
+     * Deletes the outbox rows older than the retention. Every instance purges, which is idempotent.
+     */
+    @Scheduled(fixedDelayString = "${change-log.outbox.purge-interval:PT1M}")
+    public void purgeOutbox() {
+        LocalDateTime createdBefore = LocalDateTime.now().minus(outboxRetention);
+        for (int shard : shardRouter.shards()) {
+            try {
+                int purged = ShardContext.callOn(shard, () -> changeEventRepository.deleteCreatedBefore(createdBefore));
+                if (purged > 0) {
+                    log.debug("Purged {} outbox rows of shard {} created before {}", purged, shard, createdBefore);
+                }
+            } catch (Exception e) {
+                log.error("An error occurred while purging the outbox of shard {}", shard, e);
+            }
+        }
+    }
+
+    /**
+     * Reads change events from the log.
+     *
+     * @param offset Offset of the first event to read.
+     * @param limit  Maximum number of events to return.
+     * @return ResponseEntity containing the events and the offset to continue from.
+     */
+    public ResponseEntity<?> getChanges(long offset, int limit) {
+        ChangeEventResponse changeEventResponse = new ChangeEventResponse();
+        try {
+            if (offset < 0 || limit <= 0) {
+                changeEventResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(changeEventResponse, HttpStatus.BAD_REQUEST);
+            }
+            List<ChangeEventResponse> changes = readChanges(offset, Math.min(limit, maxReadRecords));
+            changeEventResponse.setData(changes);
+            changeEventResponse.setNextOffset(changes.isEmpty()
+                    ? Math.max(offset, changeLog.firstOffset())
+                    : changes.get(changes.size() - 1).getOffset() + 1);
+            return new ResponseEntity<>(changeEventResponse, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("An error occurred while reading change events from offset: {}", offset, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Retrieves the committed offset of a consumer.
+     *
+     * @param consumerId The name of the consumer.
+     * @return ResponseEntity containing the offset the consumer should continue from.
+     */
+    public ResponseEntity<?> getConsumerOffset(String consumerId) {
+        ChangeEventResponse changeEventResponse = new ChangeEventResponse();
+        try {
+            checkConsumerId(consumerId);
+            OptionalLong committed = changeLog.committedOffset(consumerId);
+            changeEventResponse.setNextOffset(committed.orElse(changeLog.firstOffset()));
+            return new ResponseEntity<>(changeEventResponse, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            changeEventResponse.addError(ErrorMessage.BAD_REQUEST);
+            return new ResponseEntity<>(changeEventResponse, HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("An error occurred while reading offset of consumer: {}", consumerId, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Commits the offset a consumer has processed up to.
+     *
+     * @param consumerId The name of the consumer.
+     * @param offset     The offset of the next event the consumer wants to read.
+     * @return ResponseEntity containing the committed offset.
+     */
+    public ResponseEntity<?> commitConsumerOffset(String consumerId, long offset) {
+        ChangeEventResponse changeEventResponse = new ChangeEventResponse();
+        try {
+            checkConsumerId(consumerId);
+            if (offset < 0 || offset > changeLog.nextOffset()) {
+                changeEventResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(changeEventResponse, HttpStatus.BAD_REQUEST);
+            }
+            changeLog.commitOffset(consumerId, offset);
+            changeEventResponse.setNextOffset(offset);
+            return new ResponseEntity<>(changeEventResponse, HttpStatus.OK);
+        } catch (IllegalArgumentException e) {
+            changeEventResponse.addError(ErrorMessage.BAD_REQUEST);
+            return new ResponseEntity<>(changeEventResponse, HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            log.error("An error occurred while committing offset of consumer: {}", consumerId, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Reads and decodes change events from the log.
+     *
+     * @param offset Offset of the first event to read.
+     * @param limit  Maximum number of events to return.
+     * @return Events in offset order with their offset set.
+     */
+    public List<ChangeEventResponse> readChanges(long offset, int limit) throws IOException {
+        List<SegmentedLog.Entry> entries = changeLog.read(offset, limit);
+        List<ChangeEventResponse> changes = new ArrayList<>(entries.size());
+        for (SegmentedLog.Entry entry : entries) {
+            ChangeEventResponse change = objectMapper.readValue(entry.payload(), ChangeEventResponse.class);
+            change.setOffset(entry.offset());
+            changes.add(change);
+        }
+        return changes;
+    }
+
+    /**
+     * @return Offset the next relayed event will get.
+     */
+    public long nextOffset() {
+        return changeLog.nextOffset();
+    }
+
+    /**
+     * @return Offset of the oldest event still retained in the change log.
+     */
+    public long firstOffset() {
+        return changeLog.firstOffset();
+    }
+
+    /**
+     * Finds the position after an event in the change log of this instance, among the most recent events.
+     *
+     * @param eventId The eventId of the event.
+     * @return The offset of the event after it, or empty if the event is not among the indexed events or no longer
+     * retained.
+     */
+    public OptionalLong offsetAfter(long eventId) {
+        Long offset = offsetsByEventId.get(eventId);
+        return offset != null && offset >= changeLog.firstOffset() ? OptionalLong.of(offset + 1) : OptionalLong.empty();
+    }
+
+    private static void checkConsumerId(String consumerId) {
+        if (consumerId == null || consumerId.startsWith(RELAY_CURSOR_PREFIX)) {
+            throw new IllegalArgumentException("Reserved consumer name: " + consumerId);
+        }
+    }
+
+    /**
+     * Maps a ChangeEvent entity to a ChangeEventResponse DTO. Outbox IDs are only unique within a shard, so the
+     * shard goes into the top 16 bits of the eventId; events of shard 0 keep their outbox ID.
+     *
+     * @param changeEvent The ChangeEvent entity to map.
+     * @param shard       The shard whose outbox held the event.
+     * @return The ChangeEventResponse DTO containing the mapped data.
+     */
+    private ChangeEventResponse mapToChangeEventDto(ChangeEvent changeEvent, int shard) {
+        return ChangeEventResponse.builder()
+                .eventId(((long) shard << 48) | changeEvent.getId())
+                .aggregateType(changeEvent.getAggregateType())
+                .aggregateId(changeEvent.getAggregateId())
+                .userId(changeEvent.getUserId())
+                .eventType(changeEvent.getEventType())
+                .updatedAt(changeEvent.getUpdatedAt())
+                .occurredAt(changeEvent.getCreatedAt())
+                .build();
+    }
+
+    /**
+     * Position of the relay in the outbox of one shard: the highest ID relayed, and the IDs below it that were
+     * missing, each with the time it is given up on.
+     */
+    private static final class RelayCursor {
+        private static final long UNKNOWN = -1;
+
+        private final TreeMap<Long, Long> gaps = new TreeMap<>();
+        private long lastId;
+
+        /**
+         * @return The ID the relay continues after when restarted.
+         */
+        private long position() {
+            return gaps.isEmpty() ? lastId : gaps.firstKey() - 1;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.ChangeEventResponse;
+import com.example.useraccountmanager.tools.ErrorMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Pushes user and account changes to connected clients as Server-Sent Events.
+ * <p>
+ * Clients are held as async {@link SseEmitter}s, so an idle connection costs no thread. A single scheduled fan-out
+ * reads new events from the change log once per cursor position (all clients that are caught up share one read)
+ * and hands the writes to a small fixed pool without waiting for them. A subscriber with a write still in progress
+ * is skipped until it completes, and one whose write takes longer than the send timeout is dropped, so a slow
+ * client never holds the scheduler or the other clients.
+ * <p>
+ * Every event carries its eventId as SSE id, which is the same on every instance, so a client that reconnects with
+ * {@code Last-Event-ID} continues right after that event in the change log of the instance it reaches. Instances
+ * interleave the events of different shards in their own order, so clients drop repeats by eventId. No client misses
+ * events silently: one resuming after an event that is no longer retained or indexed gets a {@code reset} event
+ * telling it to reload the current state, followed by new events, and a subscriber that fell behind the retained
+ * change log gets one before the oldest retained event.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ChangeFeedService {
+
+    private final ChangeEventService changeEventService;
+    private final ObjectMapper objectMapper;
+
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private ExecutorService senders;
+    private volatile long lastHeartbeatNanos = System.nanoTime();
+
+    @Value("${change-feed.emitter-timeout:PT30M}")
+    private Duration emitterTimeout;
+
+    @Value("${change-feed.heartbeat-interval:PT15S}")
+    private Duration heartbeatInterval;
+
+    @Value("${change-feed.batch-size:500}")
+    private int batchSize;
+
+    @Value("${change-feed.sender-threads:4}")
+    private int senderThreads;
+
+    @Value("${change-feed.send-timeout:PT10S}")
+    private Duration sendTimeout;
+
+    /**
+     * Registers a new client.
+     *
+     * @param lastEventId The eventId of the last event the client received, or null to receive only new events.
+     * @return The emitter streaming events to the client.
+     */
+    public SseEmitter subscribe(Long lastEventId) {
+        long head = changeEventService.nextOffset();
+        OptionalLong resumeAt = lastEventId != null ? changeEventService.offsetAfter(lastEventId) : OptionalLong.empty();
+        long cursor = resumeAt.isPresent() ? Math.min(resumeAt.getAsLong(), head) : head;
+        SseEmitter emitter = new SseEmitter(emitterTimeout.toMillis());
+        if (lastEventId != null && resumeAt.isEmpty()) {
+            // Sent before the subscriber is registered, so it precedes every event
+            try {
+                emitter.send(resetEvent());
+            } catch (IOException e) {
+                emitter.completeWithError(e);
+                return emitter;
+            }
+        }
+        Subscriber subscriber = new Subscriber(emitter, cursor);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Starts sending pending events to every subscriber that is behind the head of the change log.
+     */
+    @Scheduled(fixedDelayString = "${change-feed.poll-interval:PT0.25S}")
+    public void broadcast() {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        try {
+            long head = changeEventService.nextOffset();
+            boolean heartbeat = System.nanoTime() - lastHeartbeatNanos >= heartbeatInterval.toNanos();
+            if (heartbeat) {
+                lastHeartbeatNanos = System.nanoTime();
+            }
+
+            // Group subscribers by position so that every position is read from the log only once
+            Map<Long, List<Subscriber>> byCursor = new HashMap<>();
+            long now = System.nanoTime();
+            for (Subscriber subscriber : subscribers) {
+                Future<?> pending = subscriber.pending;
+                if (pending != null && !pending.isDone()) {
+                    if (now - subscriber.sendStartedNanos > sendTimeout.toNanos()) {
+                        drop(subscriber, pending);
+                    }
+                    continue;
+                }
+                if (subscriber.cursor < head || heartbeat) {
+                    byCursor.computeIfAbsent(subscriber.cursor, cursor -> new ArrayList<>()).add(subscriber);
+                }
+            }
+
+            for (Map.Entry<Long, List<Subscriber>> group : byCursor.entrySet()) {
+                long cursor = group.getKey();
+                List<OutgoingEvent> events = cursor < head ? readEvents(cursor) : List.of();
+                // The change log skips the events deleted with their segment
+                boolean expired = !events.isEmpty() ? events.get(0).offset() > cursor
+                        : cursor < changeEventService.firstOffset();
+                for (Subscriber subscriber : group.getValue()) {
+                    subscriber.sendStartedNanos = System.nanoTime();
+                    subscriber.pending = senders().submit(() -> send(subscriber, expired, events, heartbeat));
+                }
+            }
+        } catch (Exception e) {
+            log.error("An error occurred while broadcasting change events", e);
+        }
+    }
+
+    /**
+     * @return Number of connected clients.
+     */
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        if (senders != null) {
+            senders.shutdownNow();
+        }
+    }
+
+    private List<OutgoingEvent> readEvents(long cursor) throws Exception {
+        List<ChangeEventResponse> changes = changeEventService.readChanges(cursor, batchSize);
+        List<OutgoingEvent> events = new ArrayList<>(changes.size());
+        for (ChangeEventResponse change : changes) {
+            // Serialize once per event, not once per subscriber
+            events.add(new OutgoingEvent(change.getOffset(), change.getEventId(), change.getEventType().name(),
+                    objectMapper.writeValueAsString(change)));
+        }
+        return events;
+    }
+
+    private void send(Subscriber subscriber, boolean expired, List<OutgoingEvent> events, boolean heartbeat) {
+        try {
+            if (expired) {
+                log.warn("A change feed subscriber fell behind the retained change log and is told to reload");
+                subscriber.emitter.send(resetEvent());
+            }
+            for (OutgoingEvent event : events) {
+                if (!subscribers.contains(subscriber)) {
+                    return;
+                }
+                subscriber.emitter.send(SseEmitter.event()
+                        .id(Long.toString(event.eventId()))
+                        .name(event.name())
+                        .data(event.json(), MediaType.APPLICATION_JSON));
+                subscriber.cursor = event.offset() + 1;
+            }
+            if (heartbeat && events.isEmpty()) {
+                subscriber.emitter.send(SseEmitter.event().comment("heartbeat"));
+            }
+        } catch (Exception e) {
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * The event telling a client that it missed events and has to reload the current state.
+     */
+    private SseEmitter.SseEventBuilder resetEvent() throws IOException {
+        ChangeEventResponse changeEventResponse = new ChangeEventResponse();
+        changeEventResponse.addError(ErrorMessage.CURSOR_EXPIRED);
+        return SseEmitter.event()
+                .name("reset")
+                .data(objectMapper.writeValueAsString(changeEventResponse), MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Drops a subscriber whose write did not complete within the send timeout. The emitter is completed on a sender
+     * thread, as completing it waits for the write in progress.
+     */
+    private void drop(Subscriber subscriber, Future<?> pending) {
+        if (subscribers.remove(subscriber)) {
+            log.warn("Dropping a change feed subscriber whose write took longer than {}", sendTimeout);
+            pending.cancel(true);
+            senders().execute(() -> subscriber.emitter.completeWithError(
+                    new TimeoutException("Change feed write timed out after " + sendTimeout)));
+        }
+    }
+
+    private synchronized ExecutorService senders() {
+        if (senders == null) {
+            senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+                Thread thread = new Thread(runnable, "change-feed-sender");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return senders;
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private volatile long cursor;
+        private volatile Future<?> pending;
+        private volatile long sendStartedNanos;
+
+        private Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+    }
+
+    private record OutgoingEvent(long offset, long eventId, String name, String json) {
+    }
+}
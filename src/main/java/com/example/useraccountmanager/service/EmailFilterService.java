@@ -0,0 +1,202 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.EmailFilterStatsResponse;
+import com.example.useraccountmanager.repository.ArchivedUserRepository;
+import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.BloomFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a Bloom filter of all user emails so that creating a user with a new email, by far the common case, does not
+ * need a query to check that the email is free. Only a "might exist" answer falls back to the database, and the
+ * unique constraint on the email column stays the final authority.
+ * <p>
+ * The filter is built at startup by streaming the emails from the {@code users} and {@code users_archive} tables, as
+ * archived users keep their email, and kept current on create and update. Deleted emails cannot be removed from it,
+ * so it is rebuilt periodically and whenever its estimated false-positive rate has drifted above the target. Until
+ * the first build completes every email "might exist".
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class EmailFilterService {
+
+    private final UserRepository userRepository;
+    private final ArchivedUserRepository archivedUserRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${email-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${email-filter.expected-insertions:1000000}")
+    private long expectedInsertions;
+
+    @Value("${email-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private volatile BloomFilter filter;
+    private volatile BloomFilter building;
+    private volatile long builtWithEmails;
+
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong definitelyAbsent = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void buildOnStartup() {
+        rebuild();
+    }
+
+    /**
+     * Checks whether an email might already be taken.
+     *
+     * @param email The email to check.
+     * @return False if no user has the email for certain, true if the database has to be asked.
+     */
+    public boolean mightExist(String email) {
+        BloomFilter current = filter;
+        if (email == null || current == null) {
+            return true;
+        }
+        checks.incrementAndGet();
+        if (current.mightContain(normalize(email))) {
+            return true;
+        }
+        definitelyAbsent.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Reports that the database did not have an email the filter said might exist.
+     */
+    public void recordFalsePositive() {
+        falsePositives.incrementAndGet();
+    }
+
+    /**
+     * Adds an email that is being stored. Must be called before the storing transaction commits, so a rebuild running
+     * at the same time cannot miss it.
+     *
+     * @param email The stored email.
+     */
+    public void add(String email) {
+        if (email == null) {
+            return;
+        }
+        String normalized = normalize(email);
+        BloomFilter current = filter;
+        if (current != null) {
+            current.put(normalized);
+        }
+        BloomFilter next = building;
+        if (next != null) {
+            next.put(normalized);
+        }
+    }
+
+    /**
+     * Rebuilds the filter from the database, sized for the current number of users, and swaps it in. All shards are
+     * streamed into the filter in parallel. Emails added while the rebuild is streaming go into both the old and the
+     * new filter.
+     */
+    public synchronized void rebuild() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long startedAt = System.nanoTime();
+            long users = shardRouter.scatter(shard -> userRepository.count() + archivedUserRepository.count()).stream()
+                    .mapToLong(Long::longValue)
+                    .sum();
+            BloomFilter next = new BloomFilter(Math.max(expectedInsertions, users * 2), falsePositiveRate);
+            building = next;
+            AtomicLong emails = new AtomicLong();
+            shardRouter.scatter(shard -> transactionTemplate.execute(status -> {
+                try (Stream<String> stream = Stream.concat(userRepository.streamAllEmails(), archivedUserRepository.streamAllEmails())) {
+                    stream.forEach(email -> {
+                        next.put(normalize(email));
+                        emails.incrementAndGet();
+                    });
+                }
+                return null;
+            }));
+            filter = next;
+            builtWithEmails = emails.get();
+            log.info("Email filter built from {} emails in {} ms: {} bits ({} KiB), {} hash functions, estimated false-positive rate {}",
+                    builtWithEmails, (System.nanoTime() - startedAt) / 1_000_000, next.bitSize(), next.memoryBytes() / 1024,
+                    next.hashFunctions(), String.format(Locale.ROOT, "%.5f", next.expectedFalsePositiveRate()));
+        } catch (Exception e) {
+            log.error("An error occurred while building the email filter", e);
+        } finally {
+            building = null;
+        }
+    }
+
+    /**
+     * Rebuilds the filter on a schedule to forget deleted emails, or earlier when the estimated false-positive rate
+     * is above the target because more emails were added than it was sized for.
+     */
+    @Scheduled(fixedDelayString = "${email-filter.check-interval:PT10M}", initialDelayString = "${email-filter.check-interval:PT10M}")
+    public void rebuildIfNeeded() {
+        BloomFilter current = filter;
+        if (current == null || current.expectedFalsePositiveRate() > falsePositiveRate) {
+            rebuild();
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${email-filter.rebuild-interval:PT6H}", initialDelayString = "${email-filter.rebuild-interval:PT6H}")
+    public void scheduledRebuild() {
+        rebuild();
+    }
+
+    /**
+     * Retrieves the size, memory use and accuracy of the filter.
+     *
+     * @return ResponseEntity containing the filter statistics.
+     */
+    public ResponseEntity<?> getStats() {
+        EmailFilterStatsResponse statsResponse = new EmailFilterStatsResponse();
+        BloomFilter current = filter;
+        if (current == null) {
+            statsResponse.addInfo("The email filter is not built.");
+            return new ResponseEntity<>(statsResponse, HttpStatus.OK);
+        }
+        long totalChecks = checks.get();
+        long absent = definitelyAbsent.get();
+        long observedFalsePositives = falsePositives.get();
+        statsResponse.setBitSize(current.bitSize());
+        statsResponse.setMemoryBytes(current.memoryBytes());
+        statsResponse.setHashFunctions(current.hashFunctions());
+        statsResponse.setBuiltWithEmails(builtWithEmails);
+        statsResponse.setApproximateEmails(current.approximateElementCount());
+        statsResponse.setExpectedFalsePositiveRate(current.expectedFalsePositiveRate());
+        statsResponse.setChecks(totalChecks);
+        statsResponse.setDefinitelyAbsent(absent);
+        statsResponse.setFalsePositives(observedFalsePositives);
+        long negatives = absent + observedFalsePositives;
+        statsResponse.setObservedFalsePositiveRate(negatives == 0 ? 0 : (double) observedFalsePositives / negatives);
+        return new ResponseEntity<>(statsResponse, HttpStatus.OK);
+    }
+
+    /**
+     * Emails are compared case-insensitively, like the default SQL Server collation does.
+     */
+    private static String normalize(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+}
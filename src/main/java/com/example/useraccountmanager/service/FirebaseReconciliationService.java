@@ -0,0 +1,820 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.ReconciliationIssueResponse;
+import com.example.useraccountmanager.dto.response.ReconciliationReportResponse;
+import com.example.useraccountmanager.model.ReconciliationCheckpoint;
+import com.example.useraccountmanager.repository.ArchivedUserRepository;
+import com.example.useraccountmanager.repository.ReconciliationCheckpointRepository;
+import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.ErrorMessage;
+import com.example.useraccountmanager.tools.InfoMessage;
+import com.example.useraccountmanager.tools.TokenBucket;
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import com.example.useraccountmanager.tools.enums.AggregateTypeEnum;
+import com.example.useraccountmanager.tools.enums.ChangeEventTypeEnum;
+import com.example.useraccountmanager.tools.enums.JobStatusEnum;
+import com.example.useraccountmanager.tools.enums.ReconciliationIssueEnum;
+import com.example.useraccountmanager.tools.enums.ReconciliationPhaseEnum;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import com.google.api.core.ApiFuture;
+import com.google.firebase.auth.EmailIdentifier;
+import com.google.firebase.auth.ErrorInfo;
+import com.google.firebase.auth.ExportedUserRecord;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import com.google.firebase.auth.ImportUserRecord;
+import com.google.firebase.auth.ListUsersPage;
+import com.google.firebase.auth.UserIdentifier;
+import com.google.firebase.auth.UserImportResult;
+import com.google.firebase.auth.UserRecord;
+import jakarta.annotation.PostConstruct;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Service that reconciles the users in the database with the users in Firebase Auth, which are changed independently
+ * and drift apart.
+ * <p>
+ * A cycle first merge-joins the Firebase user listing with the linked users of every shard, live and archived, read
+ * in the same Firebase UID order: each Firebase page is joined with the database users up to its last UID, which
+ * are streamed from every shard with keyset paging and merged, so only one page of each source is held at a time.
+ * Firebase users without a database user by UID are looked up among the unlinked users by email. The cycle then
+ * pages through the live users that are still unlinked and looks them up in Firebase by email.
+ * <p>
+ * The database is the source of truth. Missing users, status mismatches (a user is disabled in Firebase unless it is
+ * {@code ACTIVE}) and claim mismatches (the {@code roles} claim lists the role of the user and {@code USER}) are
+ * reported, and with {@code reconciliation.repair} they are fixed once per page: users missing in Firebase are
+ * imported with one batch call, unlinked users are linked in one transaction per shard, and Firebase users are
+ * updated asynchronously under a write budget, from the status and role read again just before. Firebase users
+ * missing in the database are only reported, as deleting an account is not a decision the job should make.
+ * <p>
+ * A scheduled run continues the current cycle for a bounded number of pages and saves a checkpoint on the default
+ * shard after each one, so cycles advance incrementally, survive restarts, and a crash repeats at most one page,
+ * whose repairs are idempotent. Setting {@code FIREBASE_AUTH_EMULATOR_HOST} points the job at the Firebase Auth
+ * emulator or another local fake of its REST API.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FirebaseReconciliationService {
+
+    private static final String JOB_ID = "firebase-users";
+    private static final String ROLES_CLAIM = "roles";
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int LOOKUP_BATCH_SIZE = 100;
+    private static final Pattern COLLATION = Pattern.compile("\\w*");
+
+    private final UserRepository userRepository;
+    private final ArchivedUserRepository archivedUserRepository;
+    private final ReconciliationCheckpointRepository checkpointRepository;
+    private final ChangeEventService changeEventService;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Value("${reconciliation.enabled:true}")
+    private boolean enabled;
+
+    @Value("${reconciliation.repair:false}")
+    private boolean repair;
+
+    @Value("${reconciliation.page-size:1000}")
+    private int pageSize;
+
+    @Value("${reconciliation.pages-per-run:20}")
+    private int pagesPerRun;
+
+    @Value("${reconciliation.cycle-interval:P1D}")
+    private Duration cycleInterval;
+
+    @Value("${reconciliation.max-writes-per-second:20}")
+    private double maxWritesPerSecond;
+
+    @Value("${reconciliation.uid-collation:}")
+    private String uidCollation;
+
+    @Value("${reconciliation.max-reported-issues:1000}")
+    private int maxReportedIssues;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final Queue<ReconciliationIssueResponse> reported = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger reportedCount = new AtomicInteger();
+    private volatile String reportedCycleId;
+
+    /**
+     * A user as read from the database.
+     *
+     * @param archived Whether the user is in the archive table.
+     */
+    private record DatabaseUser(int shard, boolean archived, String id, String email, String firebaseUid,
+                                UserStatusEnum status, UserRoleEnum role) {
+
+        private DatabaseUser(int shard, boolean archived, Object[] row) {
+            this(shard, archived, (String) row[0], (String) row[1], (String) row[2], (UserStatusEnum) row[3],
+                    (UserRoleEnum) row[4]);
+        }
+    }
+
+    @PostConstruct
+    void validate() {
+        if (!COLLATION.matcher(uidCollation).matches()) {
+            throw new IllegalStateException("Invalid reconciliation.uid-collation: " + uidCollation);
+        }
+        pageSize = Math.max(1, Math.min(MAX_PAGE_SIZE, pageSize));
+    }
+
+    /**
+     * Continues the current cycle, or starts a new one once the last finished a cycle interval ago.
+     */
+    @Scheduled(fixedDelayString = "${reconciliation.interval:PT5M}", initialDelayString = "${reconciliation.interval:PT5M}")
+    public void scheduledReconciliation() {
+        if (!enabled || !running.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            ReconciliationCheckpoint checkpoint = loadCheckpoint();
+            if (checkpoint == null || checkpoint.getStatus() != JobStatusEnum.RUNNING) {
+                if (checkpoint != null && checkpoint.getFinishedAt() != null
+                        && checkpoint.getFinishedAt().plus(cycleInterval).isAfter(LocalDateTime.now())) {
+                    return;
+                }
+                checkpoint = startCycle();
+            }
+            runCycle(checkpoint, pagesPerRun);
+        } catch (Exception e) {
+            log.error("An error occurred during Firebase reconciliation", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    /**
+     * Runs the current cycle to its end in the background, or a new cycle if none is in progress.
+     *
+     * @return ResponseEntity containing the report of the cycle, or an error if a run is in progress.
+     */
+    public ResponseEntity<?> startReconciliation() {
+        ReconciliationReportResponse reportResponse = new ReconciliationReportResponse();
+        if (!running.compareAndSet(false, true)) {
+            reportResponse.addError(ErrorMessage.RECONCILIATION_RUNNING);
+            return new ResponseEntity<>(reportResponse, HttpStatus.CONFLICT);
+        }
+        try {
+            ReconciliationCheckpoint loaded = loadCheckpoint();
+            ReconciliationCheckpoint checkpoint = loaded != null && loaded.getStatus() == JobStatusEnum.RUNNING
+                    ? loaded : startCycle();
+            Thread worker = new Thread(() -> {
+                try {
+                    runCycle(checkpoint, Integer.MAX_VALUE);
+                } catch (Exception e) {
+                    log.error("An error occurred during Firebase reconciliation", e);
+                } finally {
+                    running.set(false);
+                }
+            }, "firebase-reconciliation");
+            worker.setDaemon(true);
+            worker.start();
+            reportResponse = toReport(checkpoint);
+            reportResponse.addInfo(InfoMessage.SUCCESS);
+            return new ResponseEntity<>(reportResponse, HttpStatus.ACCEPTED);
+        } catch (Exception e) {
+            running.set(false);
+            log.error("An error occurred while starting Firebase reconciliation", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Retrieves the progress of the current cycle, or the result of the last one. The issues listed are those this
+     * instance found in the cycle, up to the configured number.
+     *
+     * @return ResponseEntity containing the report, or an error if no cycle has been started yet.
+     */
+    public ResponseEntity<?> getReport() {
+        try {
+            ReconciliationCheckpoint checkpoint = loadCheckpoint();
+            if (checkpoint == null) {
+                ReconciliationReportResponse reportResponse = new ReconciliationReportResponse();
+                reportResponse.addError(ErrorMessage.NOT_FOUND);
+                return new ResponseEntity<>(reportResponse, HttpStatus.NOT_FOUND);
+            }
+            return new ResponseEntity<>(toReport(checkpoint), HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("An error occurred while retrieving the Firebase reconciliation report", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    private ReconciliationCheckpoint startCycle() {
+        LocalDateTime now = LocalDateTime.now();
+        ReconciliationCheckpoint checkpoint = saveCheckpoint(ReconciliationCheckpoint.builder()
+                .id(JOB_ID)
+                .cycleId(UUID.randomUUID().toString())
+                .status(JobStatusEnum.RUNNING)
+                .phase(ReconciliationPhaseEnum.MERGE)
+                .afterUid("")
+                .afterId("")
+                .startedAt(now)
+                .build());
+        log.info("Firebase reconciliation cycle {} started, repair {}", checkpoint.getCycleId(), repair ? "on" : "off");
+        return checkpoint;
+    }
+
+    private void runCycle(ReconciliationCheckpoint checkpoint, int maxPages) throws Exception {
+        if (!checkpoint.getCycleId().equals(reportedCycleId)) {
+            reported.clear();
+            reportedCount.set(0);
+            reportedCycleId = checkpoint.getCycleId();
+        }
+        TokenBucket writeThrottle = new TokenBucket((long) Math.max(1, maxWritesPerSecond), maxWritesPerSecond);
+        for (int pages = 0; pages < maxPages && checkpoint.getStatus() == JobStatusEnum.RUNNING; pages++) {
+            Repairs repairs = new Repairs(checkpoint, writeThrottle);
+            try {
+                if (checkpoint.getPhase() == ReconciliationPhaseEnum.MERGE) {
+                    mergePage(checkpoint, repairs);
+                } else {
+                    unlinkedPage(checkpoint, repairs);
+                }
+            } catch (OutOfOrderException e) {
+                checkpoint.setStatus(JobStatusEnum.FAILED);
+                checkpoint.setFinishedAt(LocalDateTime.now());
+                saveCheckpoint(checkpoint);
+                throw e;
+            }
+            repairs.apply();
+            checkpoint = saveCheckpoint(checkpoint);
+        }
+        if (checkpoint.getStatus() == JobStatusEnum.COMPLETED) {
+            log.info("Firebase reconciliation cycle {} compared {} Firebase and {} database users: {} missing in the "
+                            + "database, {} missing in Firebase, {} unlinked, {} status and {} claim mismatches, {} repaired, "
+                            + "{} repairs failed", checkpoint.getCycleId(), checkpoint.getFirebaseUsers(),
+                    checkpoint.getDatabaseUsers(), checkpoint.getMissingInDatabase(), checkpoint.getMissingInFirebase(),
+                    checkpoint.getUnlinked(), checkpoint.getStatusMismatches(), checkpoint.getClaimMismatches(),
+                    checkpoint.getRepaired(), checkpoint.getRepairFailures());
+        }
+    }
+
+    /**
+     * Merge-joins the next Firebase page with the database users in its UID range. The last page also takes the
+     * database users after it.
+     */
+    private void mergePage(ReconciliationCheckpoint checkpoint, Repairs repairs) throws FirebaseAuthException {
+        ListUsersPage page = FirebaseAuth.getInstance().listUsers(checkpoint.getPageToken(), pageSize);
+        List<ExportedUserRecord> firebaseUsers = new ArrayList<>(pageSize);
+        String previousUid = checkpoint.getAfterUid();
+        for (ExportedUserRecord firebaseUser : page.getValues()) {
+            if (firebaseUser.getUid().compareTo(previousUid) <= 0) {
+                throw new OutOfOrderException("Firebase listed user " + firebaseUser.getUid() + " after " + previousUid);
+            }
+            previousUid = firebaseUser.getUid();
+            firebaseUsers.add(firebaseUser);
+        }
+        String upperUid = page.hasNextPage() && !firebaseUsers.isEmpty() ? previousUid : null;
+        checkpoint.setFirebaseUsers(checkpoint.getFirebaseUsers() + firebaseUsers.size());
+
+        LinkedDatabaseUsers databaseUsers = new LinkedDatabaseUsers(checkpoint.getAfterUid(), upperUid);
+        List<UserRecord> unmatched = new ArrayList<>();
+        Iterator<ExportedUserRecord> firebaseIterator = firebaseUsers.iterator();
+        ExportedUserRecord firebaseUser = firebaseIterator.hasNext() ? firebaseIterator.next() : null;
+        DatabaseUser databaseUser = databaseUsers.next();
+        boolean matched = false;
+        while (firebaseUser != null || databaseUser != null) {
+            int order = firebaseUser == null ? 1
+                    : databaseUser == null ? -1 : firebaseUser.getUid().compareTo(databaseUser.firebaseUid());
+            if (order < 0) {
+                if (!matched) {
+                    unmatched.add(firebaseUser);
+                }
+                firebaseUser = firebaseIterator.hasNext() ? firebaseIterator.next() : null;
+                matched = false;
+            } else if (order > 0) {
+                checkpoint.setDatabaseUsers(checkpoint.getDatabaseUsers() + 1);
+                missingInFirebase(databaseUser, databaseUser.firebaseUid(), repairs);
+                databaseUser = databaseUsers.next();
+            } else {
+                // Keep the Firebase user until every database user linked to it has been compared
+                checkpoint.setDatabaseUsers(checkpoint.getDatabaseUsers() + 1);
+                compare(databaseUser, firebaseUser, repairs);
+                databaseUser = databaseUsers.next();
+                matched = true;
+            }
+        }
+        linkByEmail(unmatched, checkpoint, repairs);
+
+        if (upperUid != null) {
+            checkpoint.setPageToken(page.getNextPageToken());
+            checkpoint.setAfterUid(upperUid);
+        } else {
+            checkpoint.setPhase(ReconciliationPhaseEnum.UNLINKED);
+            checkpoint.setPageToken(null);
+            checkpoint.setShard(0);
+            checkpoint.setAfterId("");
+        }
+    }
+
+    /**
+     * Looks up the Firebase users without a database user by UID among the unlinked users of every shard by email.
+     */
+    private void linkByEmail(List<UserRecord> firebaseUsers, ReconciliationCheckpoint checkpoint, Repairs repairs) {
+        Map<String, UserRecord> byEmail = new HashMap<>();
+        for (UserRecord firebaseUser : firebaseUsers) {
+            if (firebaseUser.getEmail() == null) {
+                issue(repairs, ReconciliationIssueEnum.MISSING_IN_DATABASE, null, firebaseUser.getUid(), null, null, null);
+            } else {
+                byEmail.put(firebaseUser.getEmail().toLowerCase(Locale.ROOT), firebaseUser);
+            }
+        }
+        if (byEmail.isEmpty()) {
+            return;
+        }
+        List<List<DatabaseUser>> found = shardRouter.scatterReadOnly(shard -> {
+            List<DatabaseUser> users = new ArrayList<>();
+            userRepository.findUnlinkedDirectoryEntriesByEmail(byEmail.keySet())
+                    .forEach(row -> users.add(new DatabaseUser(shard, false, row)));
+            archivedUserRepository.findUnlinkedDirectoryEntriesByEmail(byEmail.keySet())
+                    .forEach(row -> users.add(new DatabaseUser(shard, true, row)));
+            return users;
+        });
+        for (List<DatabaseUser> shardUsers : found) {
+            for (DatabaseUser databaseUser : shardUsers) {
+                UserRecord firebaseUser = byEmail.remove(databaseUser.email().toLowerCase(Locale.ROOT));
+                if (firebaseUser != null) {
+                    checkpoint.setDatabaseUsers(checkpoint.getDatabaseUsers() + 1);
+                    unlinked(databaseUser, firebaseUser, repairs);
+                }
+            }
+        }
+        byEmail.values().forEach(firebaseUser -> issue(repairs, ReconciliationIssueEnum.MISSING_IN_DATABASE, null,
+                firebaseUser.getUid(), firebaseUser.getEmail(), null, null));
+    }
+
+    /**
+     * Checks the next page of live users that are not linked to a Firebase user, a shard at a time.
+     */
+    private void unlinkedPage(ReconciliationCheckpoint checkpoint, Repairs repairs) throws FirebaseAuthException {
+        int shard = checkpoint.getShard();
+        String afterId = checkpoint.getAfterId();
+        List<DatabaseUser> databaseUsers = ShardContext.callOn(shard, () -> transactionTemplate.execute(status ->
+                userRepository.findUnlinkedDirectoryEntries(afterId, Limit.of(pageSize)).stream()
+                        .map(row -> new DatabaseUser(shard, false, row))
+                        .toList()));
+        if (databaseUsers == null || databaseUsers.isEmpty()) {
+            if (shard + 1 < shardRouter.shardCount()) {
+                checkpoint.setShard(shard + 1);
+                checkpoint.setAfterId("");
+            } else {
+                checkpoint.setStatus(JobStatusEnum.COMPLETED);
+                checkpoint.setFinishedAt(LocalDateTime.now());
+            }
+            return;
+        }
+
+        for (int from = 0; from < databaseUsers.size(); from += LOOKUP_BATCH_SIZE) {
+            List<DatabaseUser> batch = databaseUsers.subList(from, Math.min(databaseUsers.size(), from + LOOKUP_BATCH_SIZE));
+            List<UserIdentifier> identifiers = new ArrayList<>(batch.size());
+            for (DatabaseUser databaseUser : batch) {
+                if (databaseUser.email() != null) {
+                    try {
+                        identifiers.add(new EmailIdentifier(databaseUser.email()));
+                    } catch (IllegalArgumentException e) {
+                        log.debug("Email of user {} is not a valid Firebase email", databaseUser.id());
+                    }
+                }
+            }
+            Map<String, UserRecord> firebaseUsers = new HashMap<>();
+            if (!identifiers.isEmpty()) {
+                for (UserRecord firebaseUser : FirebaseAuth.getInstance().getUsers(identifiers).getUsers()) {
+                    if (firebaseUser.getEmail() != null) {
+                        firebaseUsers.put(firebaseUser.getEmail().toLowerCase(Locale.ROOT), firebaseUser);
+                    }
+                }
+            }
+            for (DatabaseUser databaseUser : batch) {
+                UserRecord firebaseUser = databaseUser.email() != null
+                        ? firebaseUsers.get(databaseUser.email().toLowerCase(Locale.ROOT)) : null;
+                if (firebaseUser == null) {
+                    // A new Firebase user takes the ID of the database user as its UID
+                    checkpoint.setDatabaseUsers(checkpoint.getDatabaseUsers() + 1);
+                    missingInFirebase(databaseUser, databaseUser.id(), repairs);
+                } else if (repair) {
+                    // Linked by the merge unless the Firebase user was created after the merge had passed its UID;
+                    // without repairs the merge has already reported it
+                    checkpoint.setDatabaseUsers(checkpoint.getDatabaseUsers() + 1);
+                    unlinked(databaseUser, firebaseUser, repairs);
+                }
+            }
+        }
+        checkpoint.setAfterId(databaseUsers.get(databaseUsers.size() - 1).id());
+    }
+
+    private void compare(DatabaseUser databaseUser, UserRecord firebaseUser, Repairs repairs) {
+        boolean disabled = isDisabled(databaseUser.status());
+        List<String> roles = rolesOf(databaseUser.role());
+        List<ReconciliationIssueResponse> issues = new ArrayList<>(2);
+        if (firebaseUser.isDisabled() != disabled) {
+            issues.add(issue(repairs, ReconciliationIssueEnum.STATUS_MISMATCH, databaseUser.id(), firebaseUser.getUid(),
+                    firebaseUser.getEmail(), disabled ? "disabled" : "enabled",
+                    firebaseUser.isDisabled() ? "disabled" : "enabled"));
+        }
+        Object claimedRoles = firebaseUser.getCustomClaims().get(ROLES_CLAIM);
+        if (!(claimedRoles instanceof Collection<?> claimed) || claimed.size() != roles.size()
+                || !claimed.stream().map(String::valueOf).toList().containsAll(roles)) {
+            issues.add(issue(repairs, ReconciliationIssueEnum.CLAIMS_MISMATCH, databaseUser.id(), firebaseUser.getUid(),
+                    firebaseUser.getEmail(), roles.toString(), String.valueOf(claimedRoles)));
+        }
+        if (!issues.isEmpty() && repair) {
+            repairs.update(databaseUser, firebaseUser, issues);
+        }
+    }
+
+    private void unlinked(DatabaseUser databaseUser, UserRecord firebaseUser, Repairs repairs) {
+        ReconciliationIssueResponse issue = issue(repairs, ReconciliationIssueEnum.UNLINKED, databaseUser.id(),
+                firebaseUser.getUid(), databaseUser.email(), firebaseUser.getUid(), null);
+        if (repair) {
+            repairs.link(databaseUser, firebaseUser.getUid(), issue);
+        }
+        compare(databaseUser, firebaseUser, repairs);
+    }
+
+    private void missingInFirebase(DatabaseUser databaseUser, String firebaseUid, Repairs repairs) {
+        ReconciliationIssueResponse issue = issue(repairs, ReconciliationIssueEnum.MISSING_IN_FIREBASE, databaseUser.id(),
+                databaseUser.firebaseUid(), databaseUser.email(), null, null);
+        // Archived users are inactive and only kept for restoring, they do not need a Firebase user
+        if (repair && !databaseUser.archived() && databaseUser.email() != null) {
+            repairs.create(databaseUser, firebaseUid, issue);
+        }
+    }
+
+    private ReconciliationIssueResponse issue(Repairs repairs, ReconciliationIssueEnum type, String userId,
+                                              String firebaseUid, String email, String expected, String actual) {
+        ReconciliationCheckpoint checkpoint = repairs.checkpoint;
+        switch (type) {
+            case MISSING_IN_DATABASE -> checkpoint.setMissingInDatabase(checkpoint.getMissingInDatabase() + 1);
+            case MISSING_IN_FIREBASE -> checkpoint.setMissingInFirebase(checkpoint.getMissingInFirebase() + 1);
+            case UNLINKED -> checkpoint.setUnlinked(checkpoint.getUnlinked() + 1);
+            case STATUS_MISMATCH -> checkpoint.setStatusMismatches(checkpoint.getStatusMismatches() + 1);
+            case CLAIMS_MISMATCH -> checkpoint.setClaimMismatches(checkpoint.getClaimMismatches() + 1);
+        }
+        ReconciliationIssueResponse issue = ReconciliationIssueResponse.builder()
+                .type(type)
+                .userId(userId)
+                .firebaseUid(firebaseUid)
+                .email(email)
+                .expected(expected)
+                .actual(actual)
+                .repaired(repair && type != ReconciliationIssueEnum.MISSING_IN_DATABASE ? false : null)
+                .build();
+        if (reportedCount.incrementAndGet() <= maxReportedIssues) {
+            reported.add(issue);
+            log.warn("Firebase reconciliation found {} for user {} with Firebase UID {}: expected {}, found {}",
+                    type, userId, firebaseUid, expected, actual);
+        }
+        return issue;
+    }
+
+    private static boolean isDisabled(UserStatusEnum status) {
+        return status != UserStatusEnum.ACTIVE;
+    }
+
+    /**
+     * The roles a user gets, as granted by {@code DirectoryRoleConverter}: its role, which implies {@code USER}.
+     */
+    private static List<String> rolesOf(UserRoleEnum role) {
+        if (role == null || role == UserRoleEnum.USER) {
+            return List.of(UserRoleEnum.USER.name());
+        }
+        return List.of(role.name(), UserRoleEnum.USER.name());
+    }
+
+    /**
+     * Reads the next page of linked users of one table on one shard, in UID order.
+     */
+    private List<DatabaseUser> findLinkedPage(int shard, boolean archived, String afterUid, String upperUid) {
+        String uid = uidCollation.isEmpty() ? "u.firebaseUid" : "collate(u.firebaseUid as " + uidCollation + ")";
+        String query = "select u.id, u.email, u.firebaseUid, u.userStatus, u.userRole from "
+                + (archived ? "ArchivedUser" : "User") + " u where u.firebaseUid is not null and " + uid + " > :afterUid"
+                + (upperUid != null ? " and " + uid + " <= :upperUid" : "") + " order by " + uid;
+        return ShardContext.callOn(shard, () -> transactionTemplate.execute(status -> {
+            TypedQuery<Object[]> typedQuery = entityManager.createQuery(query, Object[].class)
+                    .setParameter("afterUid", afterUid)
+                    .setMaxResults(pageSize);
+            if (upperUid != null) {
+                typedQuery.setParameter("upperUid", upperUid);
+            }
+            return typedQuery.getResultList().stream()
+                    .map(row -> new DatabaseUser(shard, archived, row))
+                    .toList();
+        }));
+    }
+
+    private ReconciliationCheckpoint loadCheckpoint() {
+        return ShardContext.callOn(ShardContext.DEFAULT_SHARD, () -> checkpointRepository.findById(JOB_ID)).orElse(null);
+    }
+
+    private ReconciliationCheckpoint saveCheckpoint(ReconciliationCheckpoint checkpoint) {
+        return ShardContext.callOn(ShardContext.DEFAULT_SHARD, () -> checkpointRepository.save(checkpoint));
+    }
+
+    private ReconciliationReportResponse toReport(ReconciliationCheckpoint checkpoint) {
+        return ReconciliationReportResponse.builder()
+                .cycleId(checkpoint.getCycleId())
+                .status(checkpoint.getStatus())
+                .phase(checkpoint.getPhase())
+                .startedAt(checkpoint.getStartedAt())
+                .finishedAt(checkpoint.getFinishedAt())
+                .updatedAt(checkpoint.getUpdatedAt())
+                .firebaseUsers(checkpoint.getFirebaseUsers())
+                .databaseUsers(checkpoint.getDatabaseUsers())
+                .missingInDatabase(checkpoint.getMissingInDatabase())
+                .missingInFirebase(checkpoint.getMissingInFirebase())
+                .unlinked(checkpoint.getUnlinked())
+                .statusMismatches(checkpoint.getStatusMismatches())
+                .claimMismatches(checkpoint.getClaimMismatches())
+                .repaired(checkpoint.getRepaired())
+                .repairFailures(checkpoint.getRepairFailures())
+                .issues(checkpoint.getCycleId().equals(reportedCycleId) ? new ArrayList<>(reported) : new ArrayList<>())
+                .info(new ArrayList<>())
+                .errors(new ArrayList<>())
+                .build();
+    }
+
+    /**
+     * Streams the linked users of every shard and table in a UID range, in UID order, holding one page per source.
+     */
+    private final class LinkedDatabaseUsers {
+        private final PriorityQueue<Source> sources = new PriorityQueue<>(
+                Comparator.comparing((Source source) -> source.page.peekFirst().firebaseUid()));
+
+        private LinkedDatabaseUsers(String afterUid, String upperUid) {
+            for (int shard : shardRouter.shards()) {
+                for (boolean archived : new boolean[]{false, true}) {
+                    Source source = new Source(shard, archived, afterUid, upperUid);
+                    if (source.fill()) {
+                        sources.add(source);
+                    }
+                }
+            }
+        }
+
+        private DatabaseUser next() {
+            Source source = sources.poll();
+            if (source == null) {
+                return null;
+            }
+            DatabaseUser next = source.page.pollFirst();
+            if (!source.page.isEmpty() || source.fill()) {
+                sources.add(source);
+            }
+            return next;
+        }
+
+        private final class Source {
+            private final int shard;
+            private final boolean archived;
+            private final String upperUid;
+            private final Deque<DatabaseUser> page = new ArrayDeque<>();
+            private String afterUid;
+            private boolean exhausted;
+
+            private Source(int shard, boolean archived, String afterUid, String upperUid) {
+                this.shard = shard;
+                this.archived = archived;
+                this.afterUid = afterUid;
+                this.upperUid = upperUid;
+            }
+
+            private boolean fill() {
+                if (exhausted) {
+                    return false;
+                }
+                List<DatabaseUser> users = findLinkedPage(shard, archived, afterUid, upperUid);
+                for (DatabaseUser user : users) {
+                    if (user.firebaseUid().compareTo(afterUid) < 0) {
+                        throw new OutOfOrderException("Shard " + shard + " returned Firebase UID " + user.firebaseUid()
+                                + " after " + afterUid + ", the firebase_uid column must sort in binary order "
+                                + "(see reconciliation.uid-collation)");
+                    }
+                    afterUid = user.firebaseUid();
+                }
+                page.addAll(users);
+                exhausted = users.size() < pageSize;
+                return !page.isEmpty();
+            }
+        }
+    }
+
+    /**
+     * Repairs collected while comparing one page, applied together.
+     */
+    private final class Repairs {
+        private final ReconciliationCheckpoint checkpoint;
+        private final TokenBucket writeThrottle;
+        private final List<Link> links = new ArrayList<>();
+        private final List<Link> creations = new ArrayList<>();
+        private final Map<String, Update> updates = new LinkedHashMap<>();
+
+        private record Link(DatabaseUser user, String firebaseUid, ReconciliationIssueResponse issue) {
+        }
+
+        private record Update(DatabaseUser user, UserRecord firebaseUser, List<ReconciliationIssueResponse> issues) {
+        }
+
+        private Repairs(ReconciliationCheckpoint checkpoint, TokenBucket writeThrottle) {
+            this.checkpoint = checkpoint;
+            this.writeThrottle = writeThrottle;
+        }
+
+        private void link(DatabaseUser user, String firebaseUid, ReconciliationIssueResponse issue) {
+            links.add(new Link(user, firebaseUid, issue));
+        }
+
+        private void create(DatabaseUser user, String firebaseUid, ReconciliationIssueResponse issue) {
+            creations.add(new Link(user, firebaseUid, issue));
+        }
+
+        private void update(DatabaseUser user, UserRecord firebaseUser, List<ReconciliationIssueResponse> issues) {
+            updates.merge(firebaseUser.getUid(), new Update(user, firebaseUser, new ArrayList<>(issues)), (current, added) -> {
+                current.issues().addAll(added.issues());
+                return current;
+            });
+        }
+
+        private void apply() throws Exception {
+            createUsers();
+            linkUsers();
+            updateUsers();
+        }
+
+        /**
+         * Imports the users missing in Firebase with one call per thousand users. Users without a UID are linked
+         * to their new Firebase user afterwards.
+         */
+        private void createUsers() throws FirebaseAuthException {
+            for (int from = 0; from < creations.size(); from += MAX_PAGE_SIZE) {
+                List<Link> batch = creations.subList(from, Math.min(creations.size(), from + MAX_PAGE_SIZE));
+                List<ImportUserRecord> records = new ArrayList<>(batch.size());
+                List<Link> imported = new ArrayList<>(batch.size());
+                for (Link creation : batch) {
+                    try {
+                        records.add(ImportUserRecord.builder()
+                                .setUid(creation.firebaseUid())
+                                .setEmail(creation.user().email())
+                                .setDisabled(isDisabled(creation.user().status()))
+                                .putCustomClaim(ROLES_CLAIM, rolesOf(creation.user().role()))
+                                .build());
+                        imported.add(creation);
+                    } catch (IllegalArgumentException e) {
+                        failed(creation.issue(), e.getMessage());
+                    }
+                }
+                if (records.isEmpty()) {
+                    continue;
+                }
+                UserImportResult result = FirebaseAuth.getInstance().importUsers(records);
+                Set<Integer> failedIndexes = new HashSet<>();
+                for (ErrorInfo error : result.getErrors()) {
+                    failedIndexes.add(error.getIndex());
+                    failed(imported.get(error.getIndex()).issue(), error.getReason());
+                }
+                for (int i = 0; i < imported.size(); i++) {
+                    if (failedIndexes.contains(i)) {
+                        continue;
+                    }
+                    Link creation = imported.get(i);
+                    if (creation.user().firebaseUid() == null) {
+                        links.add(creation);
+                    } else {
+                        repaired(creation.issue());
+                    }
+                }
+            }
+        }
+
+        /**
+         * Stores the Firebase UIDs of unlinked users, in one transaction per shard, unless a user was linked in the
+         * meantime.
+         */
+        private void linkUsers() {
+            if (links.isEmpty()) {
+                return;
+            }
+            SortedMap<Integer, List<Link>> linksByShard = new TreeMap<>();
+            links.forEach(link -> linksByShard.computeIfAbsent(link.user().shard(), shard -> new ArrayList<>()).add(link));
+            List<List<Link>> linked = shardRouter.scatter(linksByShard.keySet(), shard -> transactionTemplate.execute(status -> {
+                LocalDateTime now = LocalDateTime.now();
+                List<Link> done = new ArrayList<>();
+                for (Link link : linksByShard.get(shard)) {
+                    int updated = link.user().archived()
+                            ? archivedUserRepository.linkFirebaseUid(link.user().id(), link.firebaseUid())
+                            : userRepository.linkFirebaseUid(link.user().id(), link.firebaseUid(), now);
+                    if (updated > 0) {
+                        changeEventService.record(AggregateTypeEnum.USER, link.user().id(), link.user().id(),
+                                ChangeEventTypeEnum.UPDATED, now);
+                        done.add(link);
+                    }
+                }
+                return done;
+            }));
+            Set<Link> done = Collections.newSetFromMap(new IdentityHashMap<>());
+            linked.forEach(done::addAll);
+            for (Link link : links) {
+                if (done.contains(link)) {
+                    repaired(link.issue());
+                } else {
+                    failed(link.issue(), "user was linked concurrently");
+                }
+            }
+        }
+
+        /**
+         * Sets the disabled flag and the roles claim of Firebase users from the status and role the database has
+         * now, keeping their other claims. Requests run asynchronously, throttled to the write budget.
+         */
+        private void updateUsers() throws InterruptedException {
+            if (updates.isEmpty()) {
+                return;
+            }
+            Map<String, DatabaseUser> current = reread(updates.values());
+            Map<Update, ApiFuture<UserRecord>> futures = new LinkedHashMap<>();
+            for (Update update : updates.values()) {
+                DatabaseUser user = current.get(update.user().id());
+                if (user == null) {
+                    update.issues().forEach(issue -> failed(issue, "user no longer exists"));
+                    continue;
+                }
+                Map<String, Object> claims = new HashMap<>(update.firebaseUser().getCustomClaims());
+                claims.put(ROLES_CLAIM, rolesOf(user.role()));
+                writeThrottle.acquire(1);
+                futures.put(update, FirebaseAuth.getInstance().updateUserAsync(
+                        new UserRecord.UpdateRequest(update.firebaseUser().getUid())
+                                .setDisabled(isDisabled(user.status()))
+                                .setCustomClaims(claims)));
+            }
+            futures.forEach((update, future) -> {
+                try {
+                    future.get();
+                    update.issues().forEach(this::repaired);
+                } catch (Exception e) {
+                    update.issues().forEach(issue -> failed(issue, e.getMessage()));
+                }
+            });
+        }
+
+        private Map<String, DatabaseUser> reread(Collection<Update> toUpdate) {
+            SortedMap<Integer, List<String>> idsByShard = shardRouter.groupByShard(
+                    toUpdate.stream().map(update -> update.user().id()).toList(), Function.identity());
+            Map<String, DatabaseUser> users = new HashMap<>();
+            shardRouter.scatter(idsByShard.keySet(), shard -> transactionTemplate.execute(status -> {
+                List<DatabaseUser> found = new ArrayList<>();
+                userRepository.findDirectoryEntries(idsByShard.get(shard))
+                        .forEach(row -> found.add(new DatabaseUser(shard, false, row)));
+                archivedUserRepository.findDirectoryEntries(idsByShard.get(shard))
+                        .forEach(row -> found.add(new DatabaseUser(shard, true, row)));
+                return found;
+            })).forEach(found -> Objects.requireNonNull(found).forEach(user -> users.put(user.id(), user)));
+            return users;
+        }
+
+        private void repaired(ReconciliationIssueResponse issue) {
+            issue.setRepaired(true);
+            checkpoint.setRepaired(checkpoint.getRepaired() + 1);
+        }
+
+        private void failed(ReconciliationIssueResponse issue, String reason) {
+            checkpoint.setRepairFailures(checkpoint.getRepairFailures() + 1);
+            log.warn("Firebase reconciliation could not repair {} of user {}: {}", issue.getType(), issue.getUserId(), reason);
+        }
+    }
+
+    /**
+     * Thrown when one of the joined streams is not in UID order, which would make the merge report wrong results.
+     */
+    private static class OutOfOrderException extends IllegalStateException {
+        private OutOfOrderException(String message) {
+            super(message);
+        }
+    }
+}
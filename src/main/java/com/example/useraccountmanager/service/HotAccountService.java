@@ -0,0 +1,518 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.model.Account;
+import com.example.useraccountmanager.model.HotAccountCheckpoint;
+import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.repository.HotAccountCheckpointRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.Money;
+import com.example.useraccountmanager.tools.SegmentedLog;
+import com.example.useraccountmanager.tools.enums.AggregateTypeEnum;
+import com.example.useraccountmanager.tools.enums.ChangeEventTypeEnum;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Write-behind balances for designated hot accounts, which take more balance changes than one row lock per change
+ * can serve.
+ * <p>
+ * A delta of a hot account is appended to a write-ahead {@link SegmentedLog}, added to striped counters of the
+ * account and acknowledged once the log is forced to disk. One writer thread group commits the log: each append and
+ * force covers every delta queued since the previous one. A scheduled flush moves the counters into the accounts
+ * table in one transaction per shard, which applies the sum of each account's deltas under a single row lock,
+ * records one change event and one balance history point per account, and stores the flushed epoch in the shard's
+ * {@link HotAccountCheckpoint}.
+ * <p>
+ * Deltas are counted in epochs. Every log record carries the epoch of its delta, and a flush closes the current epoch,
+ * waits for the deltas still being logged in it and takes its counters. After a crash the log is replayed for the
+ * records newer than the checkpoint of the account's shard, so an acknowledged delta is applied exactly once. Log
+ * segments are deleted once all of their records are applied.
+ * <p>
+ * Reads add the pending deltas to the stored balance. Changing a hot account's balance any other way flushes first,
+ * so deltas acknowledged before the change are applied before it.
+ * <p>
+ * A delta is only accepted if the balance stays in range with every delta accepted before it, checked against the
+ * balance the last flush wrote. A delta that still cannot be applied, because the account was deleted or changed
+ * another way meanwhile, is written to a dead-letter log in the flush transaction instead of being dropped.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class HotAccountService {
+
+    // Stored next to the consumer offsets of the write-ahead log
+    private static final String EPOCH = "epoch";
+    private static final int RECOVERY_BATCH = 4096;
+
+    private final AccountRepository accountRepository;
+    private final HotAccountCheckpointRepository hotAccountCheckpointRepository;
+    private final ChangeEventService changeEventService;
+    private final BalanceHistoryService balanceHistoryService;
+    private final ShardRouter shardRouter;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${hot-accounts.ids:}")
+    private Set<String> hotAccountIds;
+
+    @Value("${hot-accounts.wal.directory:data/hot-accounts}")
+    private Path directory;
+
+    @Value("${hot-accounts.wal.segment-size:16MB}")
+    private DataSize segmentSize;
+
+    @Value("${hot-accounts.wal.max-batch:1024}")
+    private int maxBatch;
+
+    private final Map<String, HotAccount> hotAccounts = new HashMap<>();
+    private final LongAdder[] inFlight = {new LongAdder(), new LongAdder()};
+    // Deltas taken from the counters that are not committed yet, including those of shards that failed to flush
+    private final Map<String, Long> flushing = new ConcurrentHashMap<>();
+    // Logged deltas found at startup by account and epoch, until the flush of their shard compared them with its checkpoint
+    private final Map<String, NavigableMap<Long, Long>> recovered = new ConcurrentHashMap<>();
+    private final BlockingQueue<LogWrite> logQueue = new LinkedBlockingQueue<>();
+
+    private volatile long epoch;
+    private volatile boolean closed;
+    private long previousFlushOffset;
+    private SegmentedLog wal;
+    private SegmentedLog deadLetters;
+    private Thread logWriter;
+    private TransactionTemplate flushTransaction;
+    private TransactionTemplate readOnlyTransaction;
+
+    @PostConstruct
+    void open() throws IOException {
+        flushTransaction = new TransactionTemplate(transactionManager);
+        // A flush requested by a request thread must not join the transaction of that request
+        flushTransaction.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        for (String id : hotAccountIds) {
+            if (!id.isBlank()) {
+                hotAccounts.put(id.trim(), new HotAccount());
+            }
+        }
+
+        wal = new SegmentedLog(directory, segmentSize.toBytes(), Integer.MAX_VALUE);
+        deadLetters = new SegmentedLog(directory.resolve("dead-letter"), segmentSize.toBytes(), Integer.MAX_VALUE);
+        long lastEpoch = wal.committedOffset(EPOCH).orElse(0);
+        long records = 0;
+        long offset = wal.firstOffset();
+        List<SegmentedLog.Entry> entries;
+        while (!(entries = wal.read(offset, RECOVERY_BATCH)).isEmpty()) {
+            for (SegmentedLog.Entry entry : entries) {
+                ByteBuffer record = ByteBuffer.wrap(entry.payload());
+                long recordEpoch = record.getLong();
+                long delta = record.getLong();
+                String accountId = StandardCharsets.UTF_8.decode(record).toString();
+                recovered.computeIfAbsent(accountId, id -> new TreeMap<>()).merge(recordEpoch, delta, Long::sum);
+                lastEpoch = Math.max(lastEpoch, recordEpoch);
+            }
+            records += entries.size();
+            offset = entries.get(entries.size() - 1).offset() + 1;
+        }
+        // Epochs keep growing across restarts, so a checkpoint never covers a delta logged after it
+        epoch = lastEpoch + 1;
+        wal.commitOffset(EPOCH, epoch);
+
+        logWriter = new Thread(this::writeLog, "hot-account-wal");
+        logWriter.setDaemon(true);
+        logWriter.start();
+        log.info("Hot account write-behind opened at {} for {} accounts, {} logged deltas to check",
+                directory.toAbsolutePath(), hotAccounts.size(), records);
+    }
+
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        closed = true;
+        logWriter.join();
+        flush();
+        wal.close();
+        deadLetters.close();
+    }
+
+    /**
+     * A delta that could not be applied, kept for an operator to resolve.
+     *
+     * @param accountId  The ID of the account.
+     * @param minorUnits The delta in minor units.
+     * @param reason     Why the delta could not be applied.
+     * @param failedAt   Epoch milliseconds of the flush that gave up on the delta.
+     */
+    public record DeadLetter(String accountId, long minorUnits, String reason, long failedAt) {
+    }
+
+    public boolean isHot(String accountId) {
+        return !hotAccounts.isEmpty() && accountId != null && hotAccounts.containsKey(accountId);
+    }
+
+    /**
+     * Returns the ID of the user owning a hot account, loaded once and kept, as an account never changes its user.
+     *
+     * @param accountId The ID of a hot account.
+     * @return The ID of the user, or null if the account does not exist.
+     */
+    public String ownerOf(String accountId) {
+        HotAccount account = hotAccounts.get(accountId);
+        if (account.userId == null) {
+            account.userId = ShardContext.callOn(shardRouter.shardOf(accountId), () -> readOnlyTransaction.execute(status ->
+                    accountRepository.findById(accountId).map(found -> found.getUser().getId()).orElse(null)));
+        }
+        return account.userId;
+    }
+
+    /**
+     * Adds a delta to the balance of a hot account. Returns once the delta is durable in the write-ahead log; it is
+     * written to the account with the next flush.
+     *
+     * @param accountId  The ID of a hot account.
+     * @param minorUnits The delta in minor units.
+     * @throws ArithmeticException If the balance would be out of range with the deltas accepted so far.
+     */
+    public void addDelta(String accountId, long minorUnits) throws ExecutionException, InterruptedException {
+        HotAccount account = hotAccounts.get(accountId);
+        reserve(accountId, account, minorUnits);
+        boolean logged = false;
+        long current = enterEpoch();
+        try {
+            byte[] id = accountId.getBytes(StandardCharsets.UTF_8);
+            LogWrite write = new LogWrite(ByteBuffer.allocate(2 * Long.BYTES + id.length)
+                    .putLong(current).putLong(minorUnits).put(id).array());
+            logQueue.add(write);
+            if (closed) {
+                write.done.completeExceptionally(new IllegalStateException("The hot account write-ahead log is closed"));
+            }
+            write.done.get();
+            account.pending[(int) (current & 1)].add(minorUnits);
+            logged = true;
+        } finally {
+            inFlight[(int) (current & 1)].decrement();
+            if (!logged) {
+                account.reserved.addAndGet(-minorUnits);
+            }
+        }
+    }
+
+    /**
+     * Accepts a delta if the stored balance plus the deltas accepted and not yet flushed stays in range.
+     */
+    private void reserve(String accountId, HotAccount account, long minorUnits) {
+        long stored = storedBalance(accountId, account);
+        long reserved;
+        do {
+            reserved = account.reserved.get();
+            long projected = Math.addExact(Math.addExact(stored, reserved), minorUnits);
+            if (projected > Money.MAX_MINOR_UNITS || projected < -Money.MAX_MINOR_UNITS) {
+                throw new ArithmeticException("Balance of account " + accountId + " would be out of range");
+            }
+        } while (!account.reserved.compareAndSet(reserved, reserved + minorUnits));
+    }
+
+    private long storedBalance(String accountId, HotAccount account) {
+        Long stored = account.storedMinorUnits;
+        if (stored == null) {
+            stored = ShardContext.callOn(shardRouter.shardOf(accountId), () -> readOnlyTransaction.execute(status ->
+                    accountRepository.findById(accountId)
+                            .map(found -> found.getBalance() != null ? found.getBalance().minorUnits() : 0L)
+                            .orElse(0L)));
+            account.storedMinorUnits = stored;
+        }
+        return stored;
+    }
+
+    /**
+     * Adds the deltas that are not flushed yet to the stored balance of an account.
+     *
+     * @param accountId The ID of the account.
+     * @param balance   The balance stored in the database.
+     * @return The balance including pending deltas, or the stored balance if the account is not hot.
+     */
+    public Money pendingBalance(String accountId, Money balance) {
+        if (!isHot(accountId)) {
+            return balance;
+        }
+        HotAccount account = hotAccounts.get(accountId);
+        long pending = account.pending[0].sum() + account.pending[1].sum() + flushing.getOrDefault(accountId, 0L);
+        if (pending == 0) {
+            return balance;
+        }
+        return (balance != null ? balance : Money.ZERO).plus(Money.ofMinorUnits(pending));
+    }
+
+    /**
+     * Flushes the pending deltas if any of the accounts is hot, before their balances are changed another way.
+     *
+     * @param accountIds The IDs of the accounts about to change.
+     * @return False if pending deltas could not be written, so the change has to wait.
+     */
+    public boolean flushIfHot(Collection<String> accountIds) {
+        boolean flushed = true;
+        for (String accountId : accountIds) {
+            if (isHot(accountId)) {
+                if (flushed) {
+                    flushed = flush();
+                }
+                // The balance is about to change another way, so it is read again for the next delta
+                hotAccounts.get(accountId).storedMinorUnits = null;
+            }
+        }
+        return flushed;
+    }
+
+    @Scheduled(fixedDelayString = "${hot-accounts.flush-interval:PT0.1S}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * Closes the current epoch and writes its deltas, together with those of earlier failed flushes, to the accounts.
+     *
+     * @return True if all pending deltas were written.
+     */
+    public synchronized boolean flush() {
+        try {
+            if (!hasPendingDeltas()) {
+                return true;
+            }
+            long closing = epoch;
+            wal.commitOffset(EPOCH, closing + 1);
+            epoch = closing + 1;
+            LongAdder closingInFlight = inFlight[(int) (closing & 1)];
+            while (closingInFlight.sum() != 0) {
+                LockSupport.parkNanos(50_000);
+            }
+            long flushOffset = wal.nextOffset();
+            hotAccounts.forEach((id, account) -> {
+                long delta = account.pending[(int) (closing & 1)].sumThenReset();
+                if (delta != 0) {
+                    flushing.merge(id, delta, (a, b) -> a + b == 0 ? null : a + b);
+                }
+            });
+
+            Set<String> accountIds = new HashSet<>(flushing.keySet());
+            accountIds.addAll(recovered.keySet());
+            SortedMap<Integer, List<String>> byShard = shardRouter.groupByShard(accountIds, id -> id);
+            List<Boolean> flushed = shardRouter.scatter(byShard.keySet(),
+                    shard -> flushShard(shard, byShard.get(shard), closing));
+            if (flushed.contains(false)) {
+                return false;
+            }
+            // Records before the previous flush offset belong to this epoch or older ones, all of them are applied now
+            wal.deleteBefore(previousFlushOffset);
+            previousFlushOffset = flushOffset;
+            return true;
+        } catch (Exception e) {
+            log.error("An error occurred while flushing hot account deltas", e);
+            return false;
+        }
+    }
+
+    private boolean hasPendingDeltas() {
+        int current = (int) (epoch & 1);
+        if (!flushing.isEmpty() || !recovered.isEmpty() || inFlight[current].sum() != 0) {
+            return true;
+        }
+        for (HotAccount account : hotAccounts.values()) {
+            if (account.pending[current].sum() != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean flushShard(int shard, List<String> accountIds, long closing) {
+        Map<String, Long> deltas = new HashMap<>();
+        for (String accountId : accountIds) {
+            Long delta = flushing.get(accountId);
+            if (delta != null) {
+                deltas.put(accountId, delta);
+            }
+        }
+        Map<String, Long> balances;
+        try {
+            balances = flushTransaction.execute(status -> {
+                HotAccountCheckpoint checkpoint = hotAccountCheckpointRepository.findById(shard)
+                        .orElseGet(() -> HotAccountCheckpoint.builder().shard(shard).build());
+                Map<String, Long> totals = new HashMap<>(deltas);
+                for (String accountId : accountIds) {
+                    NavigableMap<Long, Long> byEpoch = recovered.get(accountId);
+                    if (byEpoch != null) {
+                        byEpoch.tailMap(checkpoint.getEpoch(), false).values()
+                                .forEach(delta -> totals.merge(accountId, delta, Long::sum));
+                    }
+                }
+                Map<String, Long> applied = applyDeltas(totals);
+                checkpoint.setEpoch(closing);
+                checkpoint.setUpdatedAt(LocalDateTime.now());
+                hotAccountCheckpointRepository.save(checkpoint);
+                return applied;
+            });
+        } catch (Exception e) {
+            log.error("An error occurred while flushing hot account deltas to shard {}, retrying with the next flush", shard, e);
+            return false;
+        }
+        // The new balance is published before the flushed deltas are released, so a concurrent check never
+        // undercounts them
+        for (String accountId : accountIds) {
+            HotAccount account = hotAccounts.get(accountId);
+            if (account != null) {
+                account.storedMinorUnits = balances.get(accountId);
+            }
+        }
+        deltas.forEach((accountId, delta) -> {
+            HotAccount account = hotAccounts.get(accountId);
+            if (account != null) {
+                account.reserved.addAndGet(-delta);
+            }
+        });
+        deltas.keySet().forEach(flushing::remove);
+        accountIds.forEach(recovered::remove);
+        return true;
+    }
+
+    /**
+     * Applies the deltas to the locked accounts, and writes those that cannot be applied to the dead-letter log
+     * before the transaction commits. A rolled back flush writes them again with its retry.
+     *
+     * @return The new balance in minor units of every updated account.
+     */
+    private Map<String, Long> applyDeltas(Map<String, Long> totals) {
+        totals.values().removeIf(delta -> delta == 0);
+        Map<String, Long> balances = new HashMap<>();
+        if (totals.isEmpty()) {
+            return balances;
+        }
+        List<Account> updated = new ArrayList<>(totals.size());
+        List<DeadLetter> failed = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for (Account account : accountRepository.lockAllByIds(totals.keySet())) {
+            long delta = totals.remove(account.getId());
+            try {
+                Money balance = account.getBalance() != null ? account.getBalance() : Money.ZERO;
+                account.setBalance(balance.plus(Money.ofMinorUnits(delta)));
+                updated.add(account);
+            } catch (ArithmeticException e) {
+                failed.add(new DeadLetter(account.getId(), delta, "Balance out of range", now));
+            }
+        }
+        totals.forEach((accountId, delta) -> failed.add(new DeadLetter(accountId, delta, "Account deleted", now)));
+        writeDeadLetters(failed);
+        accountRepository.flush();
+        for (Account account : updated) {
+            changeEventService.record(AggregateTypeEnum.ACCOUNT, account.getId(), account.getUser().getId(),
+                    ChangeEventTypeEnum.UPDATED, account.getUpdatedAt());
+            balanceHistoryService.record(account.getId(), account.getBalance(), account.getUpdatedAt());
+            balances.put(account.getId(), account.getBalance().minorUnits());
+        }
+        return balances;
+    }
+
+    private void writeDeadLetters(List<DeadLetter> failed) {
+        if (failed.isEmpty()) {
+            return;
+        }
+        try {
+            List<byte[]> records = new ArrayList<>(failed.size());
+            for (DeadLetter deadLetter : failed) {
+                log.error("Moving hot account delta of {} minor units for account with ID: {} to the dead-letter log: {}",
+                        deadLetter.minorUnits(), deadLetter.accountId(), deadLetter.reason());
+                records.add(objectMapper.writeValueAsBytes(deadLetter));
+            }
+            deadLetters.append(records);
+            deadLetters.flush();
+        } catch (IOException e) {
+            // Rolls the flush back, so the deltas stay pending until they are recorded somewhere
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Registers a delta in the current epoch. A flush that closed the epoch meanwhile is retried with the new one,
+     * so the flush sees every delta of the epoch it closes once the epoch's in-flight count drops to zero.
+     */
+    private long enterEpoch() {
+        while (true) {
+            long current = epoch;
+            LongAdder counter = inFlight[(int) (current & 1)];
+            counter.increment();
+            if (epoch == current) {
+                return current;
+            }
+            counter.decrement();
+        }
+    }
+
+    /**
+     * Group commits queued deltas to the write-ahead log until the service is closed. The thread is never
+     * interrupted, as an interrupt would close the log's file channel.
+     */
+    private void writeLog() {
+        List<LogWrite> batch = new ArrayList<>(maxBatch);
+        while (!closed || !logQueue.isEmpty()) {
+            try {
+                LogWrite first = logQueue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                logQueue.drainTo(batch, maxBatch - 1);
+                // Skip writes already failed because the service was closing
+                batch.removeIf(write -> write.done.isDone());
+                List<byte[]> records = new ArrayList<>(batch.size());
+                for (LogWrite write : batch) {
+                    records.add(write.record);
+                }
+                wal.append(records);
+                wal.flush();
+                batch.forEach(write -> write.done.complete(null));
+            } catch (Exception e) {
+                log.error("An error occurred while writing hot account deltas to the write-ahead log", e);
+                batch.forEach(write -> write.done.completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private static final class HotAccount {
+        // One counter per epoch parity, the counter of a closed epoch is only read by the flush
+        private final LongAdder[] pending = {new LongAdder(), new LongAdder()};
+        // Deltas accepted and not yet flushed, checked together with the stored balance before a delta is logged
+        private final AtomicLong reserved = new AtomicLong();
+        private volatile Long storedMinorUnits;
+        private volatile String userId;
+    }
+
+    private static final class LogWrite {
+        private final byte[] record;
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private LogWrite(byte[] record) {
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.model.IdempotencyRecord;
+import com.example.useraccountmanager.repository.IdempotencyRecordRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.tools.ErrorMessage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Service that makes create endpoints safe to retry. A request carrying an {@code Idempotency-Key} header is executed
+ * at most once per key; later requests with the same key get the stored response replayed, and concurrent duplicates
+ * wait for the first execution instead of running again.
+ * <p>
+ * Completed responses live in an expiring in-memory map backed by the {@code idempotency_keys} table, so a replay
+ * normally costs a map lookup and only falls back to the database after a restart or on another instance. A key is
+ * reserved by inserting a pending row before the action runs, so the same key sent to another instance is rejected
+ * with 409 instead of executing twice. A key reused with a different request is rejected with 422, whether its first
+ * request is still running or has completed. The table is not sharded and lives on the default shard.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class IdempotencyService {
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final String IDEMPOTENT_REPLAY_HEADER = "Idempotent-Replayed";
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private final IdempotencyRecordRepository idempotencyRecordRepository;
+    private final ObjectMapper objectMapper;
+
+    private final ConcurrentHashMap<String, Execution> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Completed responses, oldest first.
+     */
+    private final Map<String, StoredResponse> completed = Collections.synchronizedMap(new LinkedHashMap<>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, StoredResponse> eldest) {
+            return size() > maxInMemoryEntries;
+        }
+    });
+
+    @Value("${idempotency.ttl:PT24H}")
+    private Duration ttl;
+
+    @Value("${idempotency.memory.max-entries:10000}")
+    private int maxInMemoryEntries;
+
+    @Value("${idempotency.wait-timeout:PT30S}")
+    private Duration waitTimeout;
+
+    @Value("${idempotency.reservation-timeout:PT5M}")
+    private Duration reservationTimeout;
+
+    /**
+     * Executes the action once per scoped idempotency key.
+     *
+     * @param scope          Endpoint and principal the key belongs to, so different callers cannot collide.
+     * @param idempotencyKey The client supplied key, or null when the header was not sent.
+     * @param request        The request payload, used to reject reuse of a key with a different body.
+     * @param action         The call to protect.
+     * @return The response of the first execution, either fresh or replayed.
+     */
+    public ResponseEntity<?> execute(String scope, String idempotencyKey, Object request, Supplier<ResponseEntity<?>> action) {
+        if (idempotencyKey == null) {
+            return action.get();
+        }
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            return new ResponseEntity<>(ErrorMessage.BAD_REQUEST, HttpStatus.BAD_REQUEST);
+        }
+        String id = scope + ":" + idempotencyKey;
+        String requestHash = hash(request);
+
+        // Fast path: a completed response is still held in memory
+        StoredResponse cached = completed.get(id);
+        if (cached != null && !cached.isExpired()) {
+            return replay(cached, requestHash);
+        }
+
+        CompletableFuture<StoredResponse> mine = new CompletableFuture<>();
+        Execution execution = new Execution(requestHash, mine);
+        Execution existing = inFlight.putIfAbsent(id, execution);
+        if (existing != null) {
+            if (!existing.requestHash().equals(requestHash)) {
+                return new ResponseEntity<>(ErrorMessage.IDEMPOTENCY_KEY_REUSED, HttpStatus.UNPROCESSABLE_ENTITY);
+            }
+            // Another request with the same key is running, wait for its result instead of executing again
+            try {
+                return replay(existing.result().get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS), requestHash);
+            } catch (Exception e) {
+                log.warn("Waiting for in-flight request with idempotency key {} failed", id, e);
+                return new ResponseEntity<>(HttpStatus.CONFLICT);
+            }
+        }
+
+        boolean reserved = false;
+        try {
+            // Fall back to the database for keys completed before a restart or on another instance
+            Optional<IdempotencyRecord> optionalRecord = ShardContext.callOn(ShardContext.DEFAULT_SHARD,
+                    () -> idempotencyRecordRepository.findById(id));
+            if (optionalRecord.isEmpty() || !optionalRecord.get().getExpiresAt().isAfter(LocalDateTime.now())) {
+                optionalRecord = reserve(id, requestHash);
+            }
+            if (optionalRecord.isPresent()) {
+                IdempotencyRecord record = optionalRecord.get();
+                // A different request is rejected whether the key is still pending or completed
+                if (!record.getRequestHash().equals(requestHash)) {
+                    mine.completeExceptionally(new IllegalStateException("Idempotency key " + id + " is reused"));
+                    return new ResponseEntity<>(ErrorMessage.IDEMPOTENCY_KEY_REUSED, HttpStatus.UNPROCESSABLE_ENTITY);
+                }
+                if (record.getStatusCode() == null) {
+                    // Reserved by another instance that is still executing it
+                    mine.completeExceptionally(new IllegalStateException("Idempotency key " + id + " is in progress"));
+                    return new ResponseEntity<>(HttpStatus.CONFLICT);
+                }
+                StoredResponse stored = new StoredResponse(record.getRequestHash(), record.getStatusCode(),
+                        record.getResponseBody(), record.getExpiresAt());
+                remember(id, stored);
+                mine.complete(stored);
+                return replay(stored, requestHash);
+            }
+            reserved = true;
+
+            ResponseEntity<?> response = action.get();
+            StoredResponse stored = new StoredResponse(requestHash, response.getStatusCode().value(),
+                    response.hasBody() ? objectMapper.writeValueAsString(response.getBody()) : null,
+                    LocalDateTime.now().plus(ttl));
+            // Server errors are not stored so that the client can retry them
+            if (!response.getStatusCode().is5xxServerError()) {
+                // The action may have routed this thread to another shard
+                ShardContext.callOn(ShardContext.DEFAULT_SHARD, () -> idempotencyRecordRepository.complete(id,
+                        stored.statusCode(), stored.body(), stored.expiresAt()));
+                reserved = false;
+                remember(id, stored);
+            }
+            mine.complete(stored);
+            return response;
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+            log.error("An error occurred while executing request with idempotency key {}", id, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        } finally {
+            if (reserved) {
+                release(id);
+            }
+            inFlight.remove(id, execution);
+        }
+    }
+
+    /**
+     * Removes expired keys from memory and from the database.
+     */
+    @Scheduled(fixedDelayString = "${idempotency.cleanup-interval:PT10M}")
+    public void purgeExpired() {
+        try {
+            synchronized (completed) {
+                completed.values().removeIf(StoredResponse::isExpired);
+            }
+            int deleted = ShardContext.callOn(ShardContext.DEFAULT_SHARD,
+                    () -> idempotencyRecordRepository.deleteExpired(LocalDateTime.now()));
+            if (deleted > 0) {
+                log.info("Removed {} expired idempotency keys", deleted);
+            }
+        } catch (Exception e) {
+            log.error("An error occurred while removing expired idempotency keys", e);
+        }
+    }
+
+    private ResponseEntity<?> replay(StoredResponse stored, String requestHash) {
+        if (!stored.requestHash().equals(requestHash)) {
+            return new ResponseEntity<>(ErrorMessage.IDEMPOTENCY_KEY_REUSED, HttpStatus.UNPROCESSABLE_ENTITY);
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(stored.statusCode())
+                .header(IDEMPOTENT_REPLAY_HEADER, "true");
+        if (stored.body() == null) {
+            return builder.build();
+        }
+        return builder.contentType(MediaType.APPLICATION_JSON).body(stored.body());
+    }
+
+    private void remember(String id, StoredResponse stored) {
+        completed.put(id, stored);
+    }
+
+    /**
+     * Inserts a pending record for the key, replacing an expired one.
+     *
+     * @return Empty if the key was reserved, otherwise the live record another instance stored first.
+     */
+    private Optional<IdempotencyRecord> reserve(String id, String requestHash) {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            LocalDateTime now = LocalDateTime.now();
+            ShardContext.callOn(ShardContext.DEFAULT_SHARD, () -> idempotencyRecordRepository.deleteExpired(id, now));
+            try {
+                ShardContext.callOn(ShardContext.DEFAULT_SHARD, () -> idempotencyRecordRepository.reserve(id, requestHash,
+                        now, now.plus(reservationTimeout)));
+                return Optional.empty();
+            } catch (DataIntegrityViolationException e) {
+                log.debug("Idempotency key {} was reserved concurrently by another instance", id);
+            }
+            Optional<IdempotencyRecord> optionalRecord = ShardContext.callOn(ShardContext.DEFAULT_SHARD,
+                    () -> idempotencyRecordRepository.findById(id));
+            if (optionalRecord.isPresent() && optionalRecord.get().getExpiresAt().isAfter(now)) {
+                return optionalRecord;
+            }
+        }
+        throw new IllegalStateException("Unable to reserve idempotency key " + id);
+    }
+
+    private void release(String id) {
+        try {
+            ShardContext.callOn(ShardContext.DEFAULT_SHARD, () -> idempotencyRecordRepository.release(id));
+        } catch (Exception e) {
+            log.error("An error occurred while releasing idempotency key {}", id, e);
+        }
+    }
+
+    private String hash(Object request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(objectMapper.writeValueAsBytes(request)));
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to hash request for idempotency check", e);
+        }
+    }
+
+    /**
+     * A request executing on this instance, with the hash of its body so that a different request reusing the key is
+     * rejected without waiting for it.
+     */
+    private record Execution(String requestHash, CompletableFuture<StoredResponse> result) {
+    }
+
+    private record StoredResponse(String requestHash, int statusCode, String body, LocalDateTime expiresAt) {
+        boolean isExpired() {
+            return expiresAt.isBefore(LocalDateTime.now());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.CoalescingStatsResponse;
+import com.example.useraccountmanager.dto.response.LookupStatsResponse;
+import com.example.useraccountmanager.tools.SingleFlight;
+import com.example.useraccountmanager.tools.enums.LookupEnum;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent lookups of the same user or account. When many clients ask for the same key at once, for
+ * example after a deploy, only the first request queries the database and the others wait for and share its response.
+ * Responses are not cached beyond the load in flight, so no request sees data older than the load it joined.
+ */
+@Service
+public class LookupCoalescingService {
+
+    private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+    @Value("${lookup-coalescing.enabled:true}")
+    private boolean enabled;
+
+    @Value("${lookup-coalescing.max-tracked-keys:10000}")
+    private int maxTrackedKeys;
+
+    @Value("${lookup-coalescing.hot-keys:20}")
+    private int hotKeys;
+
+    private final Map<LookupEnum, SingleFlight<String, ResponseEntity<?>>> flights = new EnumMap<>(LookupEnum.class);
+
+    @PostConstruct
+    void init() {
+        for (LookupEnum lookup : LookupEnum.values()) {
+            flights.put(lookup, new SingleFlight<>(maxTrackedKeys));
+        }
+    }
+
+    /**
+     * Runs a lookup, or joins the identical one already in flight.
+     *
+     * @param lookup The kind of lookup.
+     * @param key    The key identifying the lookup within its kind.
+     * @param loader Performs the lookup.
+     * @return The response of the lookup, shared with every caller that joined it.
+     */
+    public ResponseEntity<?> coalesce(LookupEnum lookup, String key, Supplier<ResponseEntity<?>> loader) {
+        if (!enabled || key == null) {
+            return loader.get();
+        }
+        return flights.get(lookup).execute(key, loader);
+    }
+
+    /**
+     * Retrieves how many lookups were coalesced and how long the coalesced callers waited, in total and for the keys
+     * with the most coalesced callers.
+     *
+     * @return ResponseEntity containing the statistics per lookup.
+     */
+    public ResponseEntity<?> getStats() {
+        CoalescingStatsResponse statsResponse = new CoalescingStatsResponse();
+        List<LookupStatsResponse> lookups = new ArrayList<>();
+        flights.forEach((lookup, flight) -> {
+            List<LookupStatsResponse> keys = flight.topKeys(hotKeys).stream()
+                    .map(stats -> LookupStatsResponse.builder()
+                            .key(stats.key())
+                            .loads(stats.loads())
+                            .coalesced(stats.coalesced())
+                            .averageWaitMillis(averageMillis(stats.waitNanos(), stats.coalesced()))
+                            .maxWaitMillis(stats.maxWaitNanos() / NANOS_PER_MILLI)
+                            .build())
+                    .toList();
+            lookups.add(LookupStatsResponse.builder()
+                    .lookup(lookup)
+                    .loads(flight.loads())
+                    .coalesced(flight.coalesced())
+                    .averageWaitMillis(averageMillis(flight.waitNanos(), flight.coalesced()))
+                    .maxWaitMillis(flight.maxWaitNanos() / NANOS_PER_MILLI)
+                    .inFlight(flight.inFlight())
+                    .hotKeys(keys)
+                    .build());
+        });
+        statsResponse.setEnabled(enabled);
+        statsResponse.setData(lookups);
+        return new ResponseEntity<>(statsResponse, HttpStatus.OK);
+    }
+
+    private static double averageMillis(long totalNanos, long count) {
+        return count == 0 ? 0 : totalNanos / NANOS_PER_MILLI / count;
+    }
+}
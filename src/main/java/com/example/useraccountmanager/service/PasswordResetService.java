@@ -0,0 +1,350 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.UserResponse;
+import com.example.useraccountmanager.tools.ErrorMessage;
+import com.example.useraccountmanager.tools.InfoMessage;
+import com.example.useraccountmanager.tools.SegmentedLog;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.firebase.auth.AuthErrorCode;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseAuthException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.angus.mail.smtp.SMTPAddressFailedException;
+import org.eclipse.angus.mail.smtp.SMTPSendFailedException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Password reset by email. A request only appends the email to a durable {@link SegmentedLog} queue on local disk
+ * and returns, so no request thread waits on Firebase or SMTP. Every well-formed email is queued, registered or not,
+ * and emails without a user are dropped by the dispatcher, so neither the response nor its timing tells them apart.
+ * <p>
+ * A dispatcher on its own thread drains the queue: it generates the Firebase reset link of every queued email and sends the
+ * messages in batches on a small sender pool, each batch over a single SMTP connection. Messages that fail with a
+ * transient error, including a 4xx reply of the mail server, are appended to the retry queue of their attempt count,
+ * with the time of their next attempt growing exponentially up to a cap. Every message of a retry queue waits the same
+ * backoff, so each queue is in due order and the dispatcher stops reading one at its first message that is not due,
+ * while new requests and the other retry queues keep being sent. Repeated requests for the same email in a read batch
+ * are sent once, and rejected recipients and unknown Firebase users are dropped. The consumed offset of a queue is
+ * committed only after a read batch is sent or requeued, so a crash repeats messages but never loses one.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PasswordResetService {
+
+    private static final String CONSUMER = "password-reset-sender";
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    private final JavaMailSender mailSender;
+    private final UserDirectoryService userDirectoryService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${password-reset.queue.directory:data/mail-queue}")
+    private Path directory;
+
+    @Value("${password-reset.queue.segment-size:16MB}")
+    private DataSize segmentSize;
+
+    @Value("${password-reset.queue.retained-segments:8}")
+    private int retainedSegments;
+
+    @Value("${password-reset.sender.threads:2}")
+    private int senderThreads;
+
+    @Value("${password-reset.sender.batch-size:50}")
+    private int batchSize;
+
+    @Value("${password-reset.sender.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${password-reset.sender.initial-backoff:PT1S}")
+    private Duration initialBackoff;
+
+    @Value("${password-reset.sender.max-backoff:PT5M}")
+    private Duration maxBackoff;
+
+    @Value("${password-reset.sender.poll-interval:PT0.5S}")
+    private Duration pollInterval;
+
+    @Value("${password-reset.mail.from:no-reply@localhost}")
+    private String from;
+
+    @Value("${password-reset.mail.subject:Reset your password}")
+    private String subject;
+
+    private SegmentedLog queue;
+    private final List<SegmentedLog> queues = new ArrayList<>();
+    private ExecutorService senders;
+    private ScheduledExecutorService dispatcher;
+
+    /**
+     * One queued reset email.
+     *
+     * @param email       The recipient.
+     * @param attempts    How many sends have failed so far.
+     * @param notBefore   Epoch milliseconds before which the message is not sent.
+     * @param requestedAt Epoch milliseconds of the reset request.
+     */
+    public record QueuedReset(String email, int attempts, long notBefore, long requestedAt) {
+    }
+
+    @PostConstruct
+    void open() throws IOException {
+        queue = new SegmentedLog(directory, segmentSize.toBytes(), retainedSegments);
+        // Level n holds the messages that failed n times, level 0 is the request queue itself
+        queues.add(queue);
+        for (int attempts = 1; attempts < maxAttempts; attempts++) {
+            queues.add(new SegmentedLog(directory.resolve("retry-" + attempts), segmentSize.toBytes(),
+                    retainedSegments));
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        senders = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "password-reset-sender-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "password-reset-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dispatcher.scheduleWithFixedDelay(this::dispatch, pollInterval.toMillis(), pollInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        long pending = 0;
+        for (SegmentedLog level : queues) {
+            pending += level.nextOffset() - level.committedOffset(CONSUMER).orElse(level.firstOffset());
+        }
+        log.info("Password reset queue opened at {} with {} pending messages", directory.toAbsolutePath(), pending);
+    }
+
+    @PreDestroy
+    void close() throws IOException, InterruptedException {
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(30, TimeUnit.SECONDS);
+        senders.shutdown();
+        for (SegmentedLog level : queues) {
+            level.close();
+        }
+        queues.clear();
+    }
+
+    /**
+     * Queues a password reset email. Always queues it and answers the same way, whether or not a user has the email,
+     * so the endpoint cannot be used to find out which emails are registered.
+     *
+     * @param email The email of the user.
+     * @return ResponseEntity with status 202 once the request is queued, or an error message.
+     */
+    public ResponseEntity<?> requestReset(String email) {
+        UserResponse userResponse = new UserResponse();
+        try {
+            if (email == null || !EMAIL.matcher(email).matches()) {
+                userResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            }
+            long now = System.currentTimeMillis();
+            queue.append(objectMapper.writeValueAsBytes(new QueuedReset(email, 0, now, now)));
+            queue.flush();
+            userResponse.addInfo(InfoMessage.PASSWORD_RESET_QUEUED);
+            return new ResponseEntity<>(userResponse, HttpStatus.ACCEPTED);
+        } catch (Exception e) {
+            log.error("An error occurred while queuing a password reset for email: {}", email, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Sends the queued messages that are due, from the request queue and every retry queue. Runs on the dispatcher
+     * thread, so waiting for the senders never holds the scheduler.
+     */
+    private void dispatch() {
+        try {
+            for (SegmentedLog level : queues) {
+                drain(level);
+            }
+        } catch (Exception e) {
+            log.error("An error occurred while sending queued password reset emails", e);
+        }
+    }
+
+    /**
+     * Sends the due messages of one queue, a read batch at a time, up to its first message that is not due.
+     */
+    private void drain(SegmentedLog level) throws Exception {
+        long offset = level.committedOffset(CONSUMER).orElse(level.firstOffset());
+        while (true) {
+            List<SegmentedLog.Entry> entries = level.read(offset, batchSize * senderThreads);
+            List<QueuedReset> due = new ArrayList<>(entries.size());
+            long now = System.currentTimeMillis();
+            for (SegmentedLog.Entry entry : entries) {
+                QueuedReset reset = objectMapper.readValue(entry.payload(), QueuedReset.class);
+                if (reset.notBefore() > now) {
+                    break;
+                }
+                due.add(reset);
+            }
+            if (due.isEmpty()) {
+                return;
+            }
+            List<QueuedReset> retries = sendAll(coalesce(due));
+            requeue(retries);
+            offset = entries.get(due.size() - 1).offset() + 1;
+            level.commitOffset(CONSUMER, offset);
+            if (!retries.isEmpty()) {
+                // Leave the rest of this queue for the next poll
+                return;
+            }
+        }
+    }
+
+    private void requeue(List<QueuedReset> retries) throws IOException {
+        Map<Integer, List<byte[]>> byAttempts = new TreeMap<>();
+        for (QueuedReset retry : retries) {
+            byAttempts.computeIfAbsent(retry.attempts(), attempts -> new ArrayList<>())
+                    .add(objectMapper.writeValueAsBytes(retry));
+        }
+        for (Map.Entry<Integer, List<byte[]>> records : byAttempts.entrySet()) {
+            SegmentedLog level = queues.get(records.getKey());
+            level.append(records.getValue());
+            level.flush();
+        }
+    }
+
+    /**
+     * Keeps one message per recipient, as one reset link is all a user needs. It also keeps the messages of a batch
+     * distinguishable, since the mail sender reports failures keyed by message equality.
+     */
+    private static List<QueuedReset> coalesce(List<QueuedReset> due) {
+        Map<String, QueuedReset> byEmail = new LinkedHashMap<>();
+        for (QueuedReset reset : due) {
+            byEmail.putIfAbsent(reset.email().toLowerCase(Locale.ROOT), reset);
+        }
+        return new ArrayList<>(byEmail.values());
+    }
+
+    /**
+     * Sends the messages in batches on the sender pool.
+     *
+     * @return The messages to try again later.
+     */
+    private List<QueuedReset> sendAll(List<QueuedReset> due) throws Exception {
+        List<Future<List<QueuedReset>>> futures = new ArrayList<>();
+        for (int from = 0; from < due.size(); from += batchSize) {
+            List<QueuedReset> batch = due.subList(from, Math.min(due.size(), from + batchSize));
+            futures.add(senders.submit(() -> sendBatch(batch)));
+        }
+        List<QueuedReset> retries = new ArrayList<>();
+        for (Future<List<QueuedReset>> future : futures) {
+            retries.addAll(future.get());
+        }
+        return retries;
+    }
+
+    private List<QueuedReset> sendBatch(List<QueuedReset> batch) {
+        List<QueuedReset> retries = new ArrayList<>();
+        Map<SimpleMailMessage, QueuedReset> messages = new IdentityHashMap<>();
+        for (QueuedReset reset : batch) {
+            if (userDirectoryService.findByEmail(reset.email()) == null) {
+                log.debug("Dropping password reset for email without a user: {}", reset.email());
+                continue;
+            }
+            try {
+                messages.put(buildMessage(reset.email(),
+                        FirebaseAuth.getInstance().generatePasswordResetLink(reset.email())), reset);
+            } catch (FirebaseAuthException e) {
+                if (e.getAuthErrorCode() == AuthErrorCode.USER_NOT_FOUND || e.getAuthErrorCode() == AuthErrorCode.EMAIL_NOT_FOUND) {
+                    log.info("Dropping password reset for email without a Firebase user: {}", reset.email());
+                } else {
+                    retry(reset, e, retries);
+                }
+            } catch (Exception e) {
+                retry(reset, e, retries);
+            }
+        }
+        if (messages.isEmpty()) {
+            return retries;
+        }
+
+        try {
+            mailSender.send(messages.keySet().toArray(new SimpleMailMessage[0]));
+        } catch (MailSendException e) {
+            e.getFailedMessages().forEach((message, cause) -> {
+                QueuedReset reset = messages.get(message);
+                if (reset == null) {
+                    return;
+                }
+                if (cause instanceof SendFailedException && !isTransient(cause)) {
+                    log.warn("Dropping password reset email rejected by the mail server for: {}", reset.email(), cause);
+                } else {
+                    retry(reset, cause, retries);
+                }
+            });
+        } catch (MailException e) {
+            messages.values().forEach(reset -> retry(reset, e, retries));
+        }
+        return retries;
+    }
+
+    /**
+     * Whether the mail server answered with a 4xx reply, which asks to try again later, rather than rejecting the
+     * message for good.
+     */
+    private static boolean isTransient(Exception failure) {
+        for (Exception e = failure; e != null; e = e instanceof MessagingException m ? m.getNextException() : null) {
+            int returnCode = e instanceof SMTPSendFailedException sendFailed ? sendFailed.getReturnCode()
+                    : e instanceof SMTPAddressFailedException addressFailed ? addressFailed.getReturnCode() : 0;
+            if (returnCode / 100 == 4) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void retry(QueuedReset reset, Exception cause, List<QueuedReset> retries) {
+        int attempts = reset.attempts() + 1;
+        if (attempts >= maxAttempts) {
+            log.error("Giving up on password reset email for: {} after {} attempts", reset.email(), attempts, cause);
+            return;
+        }
+        long backoff = Math.min(maxBackoff.toMillis(), initialBackoff.toMillis() << Math.min(attempts - 1, 30));
+        log.warn("Password reset email for: {} failed, attempt {} of {}, retrying in {} ms: {}",
+                reset.email(), attempts, maxAttempts, backoff, cause.getMessage());
+        retries.add(new QueuedReset(reset.email(), attempts, System.currentTimeMillis() + backoff, reset.requestedAt()));
+    }
+
+    private SimpleMailMessage buildMessage(String email, String link) {
+        SimpleMailMessage message = new SimpleMailMessage();
+        message.setFrom(from);
+        message.setTo(email);
+        message.setSubject(subject);
+        message.setText("A password reset was requested for your account.\n\n"
+                + "Open the following link to choose a new password:\n" + link + "\n\n"
+                + "If you did not request it, you can ignore this email.");
+        return message;
+    }
+}
@@ -0,0 +1,453 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.AccountResponse;
+import com.example.useraccountmanager.dto.response.UserResponse;
+import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.HashTools;
+import com.example.useraccountmanager.tools.MappedSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Caches the responses of single user and account lookups for the working set of users, and keeps that working set
+ * across restarts in a {@link MappedSnapshot} on local disk, so the first reads after a deploy are answered like
+ * every later one instead of all going to the database.
+ * <p>
+ * Every mutation records a change event for the users it touches, and recording one drops the cached responses of
+ * that user, once right away and once when its transaction completes. Changes made through other instances are
+ * dropped when the relay copies their events from the outbox into the local change log. A load caches its response
+ * only if no change of the user was recorded since the load started, so a load that read a row before a concurrent
+ * change committed cannot put the old state back. Whatever the invalidation misses is bounded by the TTL, after
+ * which an entry is loaded again. Past max-users cached users, the users not read since the previous sweep are
+ * evicted.
+ * <p>
+ * The cached responses are written to the snapshot periodically and at shutdown, each with a version stamp taken
+ * from the updatedAt of the account, or for a user from its updatedAt and account IDs. At startup only the entry
+ * headers are read; the stamps are checked against the database in bulk, shard by shard, and only entries whose
+ * stamp still matches are cached. Their payloads stay in the mapping until an entry is first served.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ResponseCacheService {
+
+    private static final int CHANGE_STRIPES = 4096;
+
+    /**
+     * Raise when the serialized form of the cached responses changes without a change of their fields.
+     */
+    private static final int FORMAT = 1;
+
+    private final UserRepository userRepository;
+    private final AccountRepository accountRepository;
+    private final ObjectMapper objectMapper;
+    private final ShardRouter shardRouter;
+
+    @Value("${response-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${response-cache.max-users:50000}")
+    private int maxUsers;
+
+    @Value("${response-cache.ttl:PT5M}")
+    private Duration ttl;
+
+    @Value("${response-cache.snapshot.file:data/response-cache.snapshot}")
+    private Path snapshotFile;
+
+    @Value("${response-cache.snapshot.batch-size:500}")
+    private int batchSize;
+
+    private final ConcurrentHashMap<String, CachedUser> users = new ConcurrentHashMap<>();
+    private final AtomicLongArray changes = new AtomicLongArray(CHANGE_STRIPES);
+    private final AtomicBoolean evicting = new AtomicBoolean();
+    private final long schema = schemaOf(UserResponse.class, AccountResponse.class);
+
+    private volatile boolean restored;
+
+    /**
+     * @return The cached response of the user, or null if it is not cached.
+     */
+    public UserResponse getUser(String userId) {
+        CachedUser cached = enabled && userId != null ? users.get(userId) : null;
+        if (cached == null) {
+            return null;
+        }
+        cached.referenced = true;
+        Slot<UserResponse> slot = cached.user;
+        return slot == null ? null : decode(userId, slot, UserResponse.class);
+    }
+
+    /**
+     * @return The cached response of the account of the user, or null if it is not cached.
+     */
+    public AccountResponse getAccount(String userId, String accountId) {
+        CachedUser cached = enabled && userId != null && accountId != null ? users.get(userId) : null;
+        if (cached == null) {
+            return null;
+        }
+        cached.referenced = true;
+        Slot<AccountResponse> slot = cached.accounts.get(accountId);
+        return slot == null ? null : decode(userId, slot, AccountResponse.class);
+    }
+
+    /**
+     * Takes the change stamp of a user. Must be called before the user is read from the database, and the result
+     * passed on to {@link #putUser} or {@link #putAccount}.
+     */
+    public long stamp(String userId) {
+        return changes.get(stripe(userId));
+    }
+
+    /**
+     * Caches a user loaded from the database, unless a change of the user was recorded since the stamp was taken.
+     *
+     * @param userResponse The response built from the loaded user.
+     * @param stamp        The {@link #stamp} taken before the user was read.
+     */
+    public void putUser(UserResponse userResponse, long stamp) {
+        if (!enabled) {
+            return;
+        }
+        long version = userVersion(userResponse.getUpdatedAt(), userResponse.getAccountIds());
+        Slot<UserResponse> slot = Slot.decoded(version, userResponse);
+        put(userResponse.getId(), stamp, cached -> cached.user = slot);
+    }
+
+    /**
+     * Caches an account loaded from the database, unless a change of its user was recorded since the stamp was taken.
+     *
+     * @param accountResponse The response built from the loaded account.
+     * @param stamp           The {@link #stamp} of the user taken before the account was read.
+     */
+    public void putAccount(AccountResponse accountResponse, long stamp) {
+        if (!enabled) {
+            return;
+        }
+        Slot<AccountResponse> slot = Slot.decoded(version(accountResponse.getUpdatedAt()), accountResponse);
+        put(accountResponse.getUserId(), stamp, cached -> cached.accounts.put(accountResponse.getId(), slot));
+    }
+
+    /**
+     * Drops the cached responses of users that are being changed or were changed through another instance. Inside a
+     * transaction they are dropped again when it completes, so loads that read the users before the change committed
+     * are not served either.
+     *
+     * @param userIds The IDs of the changed users.
+     */
+    public void invalidate(Collection<String> userIds) {
+        userIds.forEach(this::evict);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    userIds.forEach(ResponseCacheService.this::evict);
+                }
+            });
+        }
+    }
+
+    /**
+     * Caches the entries of the snapshot whose version stamps still match the database.
+     */
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void restore() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long startedAt = System.nanoTime();
+            List<MappedSnapshot.Entry> entries = MappedSnapshot.read(snapshotFile, schema);
+            Map<String, List<MappedSnapshot.Entry>> entriesByUser = new HashMap<>();
+            for (MappedSnapshot.Entry entry : entries) {
+                entriesByUser.computeIfAbsent(entry.key(), userId -> new ArrayList<>()).add(entry);
+            }
+            SortedMap<Integer, List<String>> idsByShard = shardRouter.groupByShard(entriesByUser.keySet(), Function.identity());
+            int cached = shardRouter.scatter(idsByShard.keySet(), shard -> restoreShard(idsByShard.get(shard), entriesByUser))
+                    .stream()
+                    .mapToInt(Integer::intValue)
+                    .sum();
+            log.info("Response cache restored {} of {} snapshot entries from {} in {} ms", cached, entries.size(),
+                    snapshotFile.toAbsolutePath(), (System.nanoTime() - startedAt) / 1_000_000);
+        } catch (Exception e) {
+            log.error("An error occurred while restoring the response cache from {}", snapshotFile, e);
+        } finally {
+            restored = true;
+        }
+    }
+
+    /**
+     * Writes the cached responses to the snapshot. Nothing is written until the previous snapshot has been restored,
+     * so a failed startup does not replace it.
+     */
+    @Scheduled(fixedDelayString = "${response-cache.snapshot.interval:PT1M}",
+            initialDelayString = "${response-cache.snapshot.interval:PT1M}")
+    public synchronized void writeSnapshot() {
+        if (!enabled || !restored) {
+            return;
+        }
+        try {
+            long startedAt = System.nanoTime();
+            List<MappedSnapshot.Entry> entries = new ArrayList<>();
+            for (Map.Entry<String, CachedUser> user : users.entrySet()) {
+                Slot<UserResponse> slot = user.getValue().user;
+                if (slot != null && !expired(slot)) {
+                    entries.add(new MappedSnapshot.Entry(user.getKey(), null, slot.version, slot.bytes(objectMapper)));
+                }
+                for (Map.Entry<String, Slot<AccountResponse>> account : user.getValue().accounts.entrySet()) {
+                    if (expired(account.getValue())) {
+                        continue;
+                    }
+                    entries.add(new MappedSnapshot.Entry(user.getKey(), account.getKey(), account.getValue().version,
+                            account.getValue().bytes(objectMapper)));
+                }
+            }
+            MappedSnapshot.write(snapshotFile, schema, entries);
+            log.debug("Response cache wrote {} entries to its snapshot in {} ms", entries.size(),
+                    (System.nanoTime() - startedAt) / 1_000_000);
+        } catch (Exception e) {
+            log.error("An error occurred while writing the response cache snapshot to {}", snapshotFile, e);
+        }
+    }
+
+    @PreDestroy
+    void close() {
+        writeSnapshot();
+    }
+
+    /**
+     * Checks the version stamps of the snapshot entries of users on the current shard, batch by batch, and caches
+     * the entries that match.
+     *
+     * @return The number of cached entries.
+     */
+    private int restoreShard(List<String> userIds, Map<String, List<MappedSnapshot.Entry>> entriesByUser) {
+        int cached = 0;
+        for (int from = 0; from < userIds.size(); from += batchSize) {
+            List<String> batch = userIds.subList(from, Math.min(from + batchSize, userIds.size()));
+            long[] stamps = batch.stream().mapToLong(this::stamp).toArray();
+            Map<String, LocalDateTime> userVersions = new HashMap<>();
+            for (Object[] row : userRepository.findVersions(batch)) {
+                userVersions.put((String) row[0], (LocalDateTime) row[1]);
+            }
+            Map<String, Map<String, LocalDateTime>> accountVersions = new HashMap<>();
+            for (Object[] row : accountRepository.findVersionsByUserIds(batch)) {
+                accountVersions.computeIfAbsent((String) row[0], userId -> new HashMap<>())
+                        .put((String) row[1], (LocalDateTime) row[2]);
+            }
+
+            for (int i = 0; i < batch.size(); i++) {
+                String userId = batch.get(i);
+                if (!userVersions.containsKey(userId)) {
+                    continue;
+                }
+                Map<String, LocalDateTime> accounts = accountVersions.getOrDefault(userId, Map.of());
+                long userVersion = userVersion(userVersions.get(userId), accounts.keySet());
+                CachedUser restoredUser = new CachedUser();
+                restoredUser.referenced = false;
+                int entries = 0;
+                for (MappedSnapshot.Entry entry : entriesByUser.get(userId)) {
+                    if (entry.subKey() == null) {
+                        if (entry.version() == userVersion) {
+                            restoredUser.user = Slot.serialized(entry.version(), entry.payload());
+                            entries++;
+                        }
+                    } else if (accounts.containsKey(entry.subKey())
+                            && entry.version() == version(accounts.get(entry.subKey()))) {
+                        restoredUser.accounts.put(entry.subKey(), Slot.serialized(entry.version(), entry.payload()));
+                        entries++;
+                    }
+                }
+                // Users loaded or changed since the batch was read keep what the live traffic left in the cache
+                long stamp = stamps[i];
+                if (entries > 0 && users.computeIfAbsent(userId,
+                        id -> changes.get(stripe(id)) == stamp ? restoredUser : null) == restoredUser) {
+                    cached += entries;
+                }
+            }
+        }
+        trim();
+        return cached;
+    }
+
+    private void put(String userId, long stamp, Consumer<CachedUser> update) {
+        users.compute(userId, (id, cached) -> {
+            if (changes.get(stripe(id)) != stamp) {
+                return cached;
+            }
+            CachedUser updated = cached == null ? new CachedUser() : cached;
+            update.accept(updated);
+            return updated;
+        });
+        trim();
+    }
+
+    private void evict(String userId) {
+        changes.incrementAndGet(stripe(userId));
+        users.remove(userId);
+    }
+
+    /**
+     * Evicts users not read since the previous sweep until the cache is a tenth below its limit. Every sweep clears
+     * the read marks it passes, so a second sweep always frees enough.
+     */
+    private void trim() {
+        if (users.size() <= maxUsers || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int target = maxUsers - maxUsers / 10;
+            for (int sweep = 0; sweep < 2 && users.size() > target; sweep++) {
+                Iterator<CachedUser> iterator = users.values().iterator();
+                while (iterator.hasNext() && users.size() > target) {
+                    CachedUser cached = iterator.next();
+                    if (cached.referenced) {
+                        cached.referenced = false;
+                    } else {
+                        iterator.remove();
+                    }
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private <T> T decode(String userId, Slot<T> slot, Class<T> type) {
+        if (expired(slot)) {
+            return null;
+        }
+        T response = slot.response;
+        if (response != null) {
+            return response;
+        }
+        ByteBuffer payload = slot.payload;
+        if (payload == null) {
+            return slot.response;
+        }
+        try {
+            response = objectMapper.readValue(new ByteBufferBackedInputStream(payload.duplicate()), type);
+            slot.response = response;
+            slot.payload = null;
+            return response;
+        } catch (IOException e) {
+            log.warn("Dropping the cached responses of user {}, a snapshot entry could not be decoded", userId, e);
+            evict(userId);
+            return null;
+        }
+    }
+
+    private boolean expired(Slot<?> slot) {
+        return System.nanoTime() - slot.cachedAt > ttl.toNanos();
+    }
+
+    private static int stripe(String userId) {
+        int hash = userId.hashCode();
+        return (hash ^ (hash >>> 16)) & (CHANGE_STRIPES - 1);
+    }
+
+    private static long version(LocalDateTime updatedAt) {
+        return updatedAt == null ? 0 : updatedAt.toEpochSecond(ZoneOffset.UTC) * 1_000_000_000L + updatedAt.getNano();
+    }
+
+    /**
+     * The version of a user covers its account IDs as well, as accounts can be added and removed without changing
+     * the user row.
+     */
+    private static long userVersion(LocalDateTime updatedAt, Collection<String> accountIds) {
+        long accounts = 0;
+        if (accountIds != null) {
+            for (String accountId : accountIds) {
+                accounts += HashTools.hash64(accountId);
+            }
+        }
+        return HashTools.mix64(version(updatedAt) ^ accounts);
+    }
+
+    /**
+     * Fingerprints the fields of the cached response types, so a snapshot written by a build with other responses is
+     * ignored.
+     */
+    private static long schemaOf(Class<?>... types) {
+        long hash = FORMAT;
+        for (Class<?> type : types) {
+            Field[] fields = type.getDeclaredFields();
+            Arrays.sort(fields, Comparator.comparing(Field::getName));
+            for (Field field : fields) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    hash = HashTools.mix64(hash * 31 + HashTools.hash64(
+                            type.getName() + "." + field.getName() + ":" + field.getGenericType().getTypeName()));
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static final class CachedUser {
+        private final ConcurrentHashMap<String, Slot<AccountResponse>> accounts = new ConcurrentHashMap<>();
+        private volatile Slot<UserResponse> user;
+        private volatile boolean referenced = true;
+    }
+
+    /**
+     * A cached response, either decoded or still as its serialized payload in the snapshot mapping, with the time it
+     * was loaded or its snapshot entry validated.
+     */
+    private static final class Slot<T> {
+        private final long version;
+        private final long cachedAt = System.nanoTime();
+        private volatile T response;
+        private volatile ByteBuffer payload;
+
+        private Slot(long version) {
+            this.version = version;
+        }
+
+        private static <T> Slot<T> decoded(long version, T response) {
+            Slot<T> slot = new Slot<>(version);
+            slot.response = response;
+            return slot;
+        }
+
+        private static <T> Slot<T> serialized(long version, ByteBuffer payload) {
+            Slot<T> slot = new Slot<>(version);
+            slot.payload = payload;
+            return slot;
+        }
+
+        private ByteBuffer bytes(ObjectMapper objectMapper) throws IOException {
+            ByteBuffer serialized = payload;
+            if (serialized != null) {
+                return serialized.duplicate();
+            }
+            return ByteBuffer.wrap(objectMapper.writeValueAsBytes(response));
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.dto.response.ChangeEventResponse;
+import com.example.useraccountmanager.repository.ArchivedUserRepository;
+import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.UserDirectory;
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import com.example.useraccountmanager.tools.enums.AggregateTypeEnum;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Keeps a {@link UserDirectory} of all users, live and archived, so that the user behind a token and its role can be
+ * resolved by email or Firebase UID without a query.
+ * <p>
+ * The directory is loaded at startup by streaming both user tables of all shards in parallel. It is kept current by tailing the change log:
+ * every user mutation records a change event, and the users named by new events are read again by ID and replaced
+ * or removed. The change log position is taken before loading starts, so mutations committed while the directory is
+ * being loaded are replayed afterwards. Until loading completes every lookup is a miss.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class UserDirectoryService {
+
+    private final UserRepository userRepository;
+    private final ArchivedUserRepository archivedUserRepository;
+    private final ChangeEventService changeEventService;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    @Value("${user-directory.enabled:true}")
+    private boolean enabled;
+
+    @Value("${user-directory.expected-users:100000}")
+    private int expectedUsers;
+
+    @Value("${user-directory.batch-size:500}")
+    private int batchSize;
+
+    @Value("${user-directory.confirmed-keys:10000}")
+    private int maxConfirmedKeys;
+
+    /**
+     * Emails and Firebase UIDs already compared on the stored user, with the ID of that user, least recently used
+     * first.
+     */
+    private final Map<String, String> confirmedKeys = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxConfirmedKeys;
+        }
+    });
+
+    private volatile UserDirectory directory;
+    private volatile long cursor;
+
+    @EventListener(ApplicationStartedEvent.class)
+    public synchronized void load() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long startedAt = System.nanoTime();
+            long offset = changeEventService.nextOffset();
+            long users = shardRouter.scatter(shard -> userRepository.count() + archivedUserRepository.count()).stream()
+                    .mapToLong(Long::longValue)
+                    .sum();
+            UserDirectory next = new UserDirectory((int) Math.min(Integer.MAX_VALUE - 8, Math.max(expectedUsers, users + users / 4)));
+            shardRouter.scatter(shard -> transactionTemplate.execute(status -> {
+                try (Stream<Object[]> stream = Stream.concat(archivedUserRepository.streamDirectoryEntries(),
+                        userRepository.streamDirectoryEntries())) {
+                    stream.forEach(row -> put(next, row));
+                }
+                return null;
+            }));
+            cursor = offset;
+            directory = next;
+            log.info("User directory loaded {} users in {} ms, using {} KiB", next.size(),
+                    (System.nanoTime() - startedAt) / 1_000_000, next.memoryBytes() / 1024);
+        } catch (Exception e) {
+            log.error("An error occurred while loading the user directory", e);
+        }
+    }
+
+    /**
+     * Applies the user changes relayed to the change log since the last call.
+     */
+    @Scheduled(fixedDelayString = "${user-directory.poll-interval:PT0.25S}")
+    public synchronized void applyChanges() {
+        UserDirectory current = directory;
+        if (current == null) {
+            return;
+        }
+        try {
+            while (cursor < changeEventService.nextOffset()) {
+                List<ChangeEventResponse> changes = changeEventService.readChanges(cursor, batchSize);
+                if (changes.isEmpty()) {
+                    break;
+                }
+                Set<String> userIds = new HashSet<>();
+                for (ChangeEventResponse change : changes) {
+                    if (change.getAggregateType() == AggregateTypeEnum.USER) {
+                        userIds.add(change.getAggregateId());
+                    }
+                }
+                refresh(current, userIds);
+                cursor = changes.get(changes.size() - 1).getOffset() + 1;
+            }
+        } catch (Exception e) {
+            log.error("An error occurred while applying changes to the user directory at offset {}", cursor, e);
+        }
+    }
+
+    /**
+     * @param email The email, compared case-insensitively.
+     * @return The user with the email, or null if there is none or the directory is not loaded.
+     */
+    public UserDirectory.Entry findByEmail(String email) {
+        UserDirectory current = directory;
+        return current != null ? current.findByEmail(email) : null;
+    }
+
+    /**
+     * @param firebaseUid The Firebase UID.
+     * @return The user with the Firebase UID, or null if there is none or the directory is not loaded.
+     */
+    public UserDirectory.Entry findByFirebaseUid(String firebaseUid) {
+        UserDirectory current = directory;
+        return current != null ? current.findByFirebaseUid(firebaseUid) : null;
+    }
+
+    /**
+     * Finds the user with a Firebase UID and compares the UID on the stored user, as the directory only keeps its
+     * hash. Only the first lookup of a UID queries the shard of the user.
+     *
+     * @param firebaseUid The Firebase UID.
+     * @return The user with the Firebase UID, or null if there is none, the directory is not loaded or the stored
+     * user has another UID.
+     */
+    public UserDirectory.Entry findConfirmedByFirebaseUid(String firebaseUid) {
+        if (firebaseUid == null) {
+            return null;
+        }
+        return confirm("uid:" + firebaseUid, findByFirebaseUid(firebaseUid), row -> firebaseUid.equals(row[2]));
+    }
+
+    /**
+     * Finds the user with an email and compares the email on the stored user, as the directory only keeps its hash.
+     * Only the first lookup of an email queries the shard of the user.
+     *
+     * @param email The email, compared case-insensitively.
+     * @return The user with the email, or null if there is none, the directory is not loaded or the stored user has
+     * another email.
+     */
+    public UserDirectory.Entry findConfirmedByEmail(String email) {
+        if (email == null) {
+            return null;
+        }
+        String normalized = normalizeEmail(email);
+        return confirm("email:" + normalized, findByEmail(email),
+                row -> row[1] != null && normalized.equals(normalizeEmail((String) row[1])));
+    }
+
+    private UserDirectory.Entry confirm(String key, UserDirectory.Entry entry, Predicate<Object[]> matches) {
+        if (entry == null) {
+            return null;
+        }
+        if (entry.userId().equals(confirmedKeys.get(key))) {
+            return entry;
+        }
+        List<String> userIds = List.of(entry.userId());
+        List<Object[]> rows = ShardContext.callOn(shardRouter.shardOf(entry.userId()), () -> {
+            List<Object[]> found = new ArrayList<>(userRepository.findDirectoryEntries(userIds));
+            found.addAll(archivedUserRepository.findDirectoryEntries(userIds));
+            return found;
+        });
+        if (rows.stream().noneMatch(matches)) {
+            return null;
+        }
+        confirmedKeys.put(key, entry.userId());
+        return entry;
+    }
+
+    private static String normalizeEmail(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private void refresh(UserDirectory current, Set<String> userIds) {
+        if (userIds.isEmpty()) {
+            return;
+        }
+        // Changed users confirm their keys again, their email or UID may belong to someone else now
+        confirmedKeys.values().removeAll(userIds);
+        SortedMap<Integer, List<String>> idsByShard = shardRouter.groupByShard(userIds, Function.identity());
+        List<List<Object[]>> rows = shardRouter.scatter(idsByShard.keySet(), shard -> transactionTemplate.execute(status -> {
+            List<Object[]> found = new ArrayList<>(userRepository.findDirectoryEntries(idsByShard.get(shard)));
+            found.addAll(archivedUserRepository.findDirectoryEntries(idsByShard.get(shard)));
+            return found;
+        }));
+        Set<String> removed = new HashSet<>(userIds);
+        for (List<Object[]> shardRows : rows) {
+            for (Object[] row : Objects.requireNonNull(shardRows)) {
+                put(current, row);
+                removed.remove((String) row[0]);
+            }
+        }
+        removed.forEach(current::remove);
+    }
+
+    private static void put(UserDirectory target, Object[] row) {
+        target.put((String) row[0], (String) row[1], (String) row[2], (UserStatusEnum) row[3], (UserRoleEnum) row[4]);
+    }
+}
@@ -1,27 +1,53 @@
 package com.example.useraccountmanager.service;
 
 import com.example.useraccountmanager.dto.request.AccountRequest;
+import com.example.useraccountmanager.dto.request.BatchGetRequest;
+import com.example.useraccountmanager.dto.request.BulkUserRequest;
 import com.example.useraccountmanager.dto.request.UserRequest;
+import com.example.useraccountmanager.dto.response.AccountResponse;
+import com.example.useraccountmanager.dto.response.BulkOperationResponse;
 import com.example.useraccountmanager.dto.response.UserResponse;
 import com.example.useraccountmanager.model.Account;
+import com.example.useraccountmanager.model.ArchivedAccount;
+import com.example.useraccountmanager.model.ArchivedUser;
 import com.example.useraccountmanager.model.User;
+import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.repository.ArchivedAccountRepository;
+import com.example.useraccountmanager.repository.ArchivedUserRepository;
 import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
 import com.example.useraccountmanager.tools.ErrorMessage;
 import com.example.useraccountmanager.tools.InfoMessage;
+import com.example.useraccountmanager.tools.UserDirectory;
 import com.example.useraccountmanager.tools.UserStatusEnum;
+import com.example.useraccountmanager.tools.enums.AggregateTypeEnum;
+import com.example.useraccountmanager.tools.enums.ChangeEventTypeEnum;
+import com.example.useraccountmanager.tools.enums.LookupEnum;
 import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.firebase.auth.AuthErrorCode;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
 import com.google.firebase.auth.UserRecord;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.validation.BindingResult;
 
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 /**
@@ -34,14 +60,56 @@ import java.util.stream.Collectors;
 public class UserService {
 
     private final UserRepository userRepository;
+    private final AccountRepository accountRepository;
+    private final ArchivedUserRepository archivedUserRepository;
+    private final ArchivedAccountRepository archivedAccountRepository;
+    private final ArchiveService archiveService;
+    private final ChangeEventService changeEventService;
+    private final BalanceHistoryService balanceHistoryService;
+    private final EmailFilterService emailFilterService;
+    private final LookupCoalescingService lookupCoalescingService;
+    private final ResponseCacheService responseCacheService;
+    private final UserDirectoryService userDirectoryService;
+    private final HotAccountService hotAccountService;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
 
     /**
-     * Retrieves a user by their ID.
+     * User fields that can be changed with a merge patch.
+     */
+    private static final Set<String> PATCHABLE_FIELDS = Set.of(
+            "firstName", "lastName", "username", "email", "phoneNumber", "address", "status");
+
+    /**
+     * Email addresses a merge patch may set.
+     */
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    @Value("${user.bulk.chunk-size:500}")
+    private int bulkChunkSize;
+
+    @Value("${batch.max-ids:1000}")
+    private int batchMaxIds;
+
+    @Value("${batch.chunk-size:500}")
+    private int batchChunkSize;
+
+    /**
+     * Retrieves a user by their ID. Users in the response cache are answered without a query, concurrent requests
+     * for the same user otherwise share one database lookup.
      *
      * @param userId The ID of the user to retrieve.
      * @return ResponseEntity containing the UserResponse if found, or an error message if not.
      */
     public ResponseEntity<?> getUser(String userId) {
+        UserResponse cachedResponse = responseCacheService.getUser(userId);
+        if (cachedResponse != null) {
+            return new ResponseEntity<>(cachedResponse, HttpStatus.OK);
+        }
+        return lookupCoalescingService.coalesce(LookupEnum.USER, userId, () -> loadUser(userId));
+    }
+
+    private ResponseEntity<?> loadUser(String userId) {
         UserResponse userResponse = new UserResponse();
         try {
             // Validate userId input
@@ -50,9 +118,20 @@ public class UserService {
                 return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
             }
 
-            // Fetch user from the repository
+            // Fetch user from its shard, falling back to the archive
+            long cacheStamp = responseCacheService.stamp(userId);
+            shardRouter.useShardOf(userId);
             Optional<User> optionalUser = userRepository.findById(userId);
             if (optionalUser.isEmpty()) {
+                Optional<ArchivedUser> optionalArchivedUser = archivedUserRepository.findById(userId);
+                if (optionalArchivedUser.isPresent()) {
+                    List<AccountResponse> accounts = archivedAccountRepository.findAllByUserIds(List.of(userId)).stream()
+                            .map(this::mapToAccountDto)
+                            .toList();
+                    userResponse = mapToUserDto(optionalArchivedUser.get(), accounts);
+                    userResponse.setAccounts(null);
+                    return new ResponseEntity<>(userResponse, HttpStatus.OK);
+                }
                 userResponse.addError(ErrorMessage.NOT_FOUND);
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
@@ -60,6 +139,7 @@ public class UserService {
             // Map User entity to UserResponse DTO
             User user = optionalUser.get();
             userResponse = mapToUserDto(user);
+            responseCacheService.putUser(userResponse, cacheStamp);
             return new ResponseEntity<>(userResponse, HttpStatus.OK);
         } catch (Exception e) {
             log.error("An error occurred while retrieving the user with ID: {}", userId, e);
@@ -68,24 +148,69 @@ public class UserService {
     }
 
     /**
-     * Retrieves all users from the database.
+     * Retrieves the user a token belongs to. The email claim, or without one the Firebase UID in the token subject, is
+     * resolved to the user ID through the user directory, so the user is read by its primary key. Users the directory
+     * does not know yet are looked up in the database.
+     *
+     * @param email       The email claim of the token.
+     * @param firebaseUid The subject of the token.
+     * @return ResponseEntity containing the UserResponse if found, or an error message if not.
+     */
+    public ResponseEntity<?> getCurrentUser(String email, String firebaseUid) {
+        UserResponse userResponse = new UserResponse();
+        try {
+            boolean hasEmail = email != null && !email.isBlank();
+            if (!hasEmail && (firebaseUid == null || firebaseUid.isBlank())) {
+                userResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            }
+
+            UserDirectory.Entry entry = hasEmail
+                    ? userDirectoryService.findByEmail(email)
+                    : userDirectoryService.findByFirebaseUid(firebaseUid);
+            if (entry != null) {
+                ResponseEntity<?> response = getUser(entry.userId());
+                // The directory only keeps key hashes, so make sure the email really belongs to the user
+                if (response.getBody() instanceof UserResponse user && (!hasEmail || email.equalsIgnoreCase(user.getEmail()))) {
+                    return response;
+                }
+            }
+
+            Optional<User> optionalUser = shardRouter.scatter(shard -> hasEmail
+                            ? userRepository.findUserByEmail(email)
+                            : userRepository.findUserByFirebaseUid(firebaseUid)).stream()
+                    .flatMap(Optional::stream)
+                    .findFirst();
+            if (optionalUser.isEmpty()) {
+                userResponse.addError(ErrorMessage.NOT_FOUND);
+                return new ResponseEntity<>(userResponse, HttpStatus.NOT_FOUND);
+            }
+            return getUser(optionalUser.get().getId());
+        } catch (Exception e) {
+            log.error("An error occurred while retrieving the current user with email: {}", email, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Retrieves all users from the database, reading all shards in parallel.
      *
      * @return ResponseEntity containing a list of UserResponse DTOs for all users, or an information message if no users are found.
      */
     public ResponseEntity<?> getAllUsers() {
         UserResponse userResponse = new UserResponse();
         try {
-            // Fetch all users from the repository
-            List<User> users = userRepository.findAll();
-            if (users.isEmpty()) {
+            // Fetch all users of every shard and map each User entity to a UserResponse DTO while its accounts can be loaded
+            List<UserResponse> userResponses = shardRouter.scatterReadOnly(shard -> userRepository.findAll().stream()
+                            .map(this::mapToUserDto)
+                            .toList()).stream()
+                    .flatMap(List::stream)
+                    .toList();
+            if (userResponses.isEmpty()) {
                 userResponse.addInfo("There are no users in the database.");
                 userResponse.setData(new ArrayList<>());
                 return new ResponseEntity<>(HttpStatus.NOT_FOUND);
             }
-            // Map each User entity to a UserResponse DTO
-            List<UserResponse> userResponses = users.stream()
-                    .map(this::mapToUserDto)
-                    .toList();
             userResponse.setData(userResponses);
             return new ResponseEntity<>(userResponse, HttpStatus.OK);
         } catch (Exception e) {
@@ -95,12 +220,99 @@ public class UserService {
     }
 
     /**
-     * Creates a new user.
+     * Retrieves many users with their accounts in one call. IDs are resolved with chunked IN queries, one for the
+     * users and one for their accounts per chunk, instead of a lookup per user. The IDs of each shard are resolved on
+     * that shard, all shards in parallel.
+     *
+     * @param batchGetRequest The IDs of the users to retrieve.
+     * @return ResponseEntity containing one entry per requested ID in request order; IDs that do not exist get an
+     * entry carrying only the ID and a not found error.
+     */
+    public ResponseEntity<?> getUsersBatch(BatchGetRequest batchGetRequest) {
+        UserResponse userResponse = new UserResponse();
+        try {
+            List<String> requestedIds = batchGetRequest.getIds();
+            if (requestedIds == null || requestedIds.isEmpty() || requestedIds.size() > batchMaxIds
+                    || requestedIds.stream().anyMatch(id -> id == null || id.isBlank())) {
+                userResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            }
+
+            // Fetch the users and their accounts shard by shard
+            List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(requestedIds));
+            SortedMap<Integer, List<String>> idsByShard = shardRouter.groupByShard(distinctIds, Function.identity());
+            Map<String, UserResponse> found = new HashMap<>();
+            shardRouter.scatter(idsByShard.keySet(), shard -> findUsers(idsByShard.get(shard)))
+                    .forEach(found::putAll);
+
+            // Answer in request order, marking the IDs that were not found
+            List<UserResponse> userResponses = requestedIds.stream()
+                    .map(id -> found.computeIfAbsent(id, missingId -> {
+                        UserResponse notFound = UserResponse.builder().id(missingId).build();
+                        notFound.addError(ErrorMessage.NOT_FOUND);
+                        return notFound;
+                    }))
+                    .toList();
+            userResponse.setData(userResponses);
+            return new ResponseEntity<>(userResponse, HttpStatus.OK);
+        } catch (Exception e) {
+            log.error("An error occurred while retrieving a batch of users", e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    /**
+     * Fetches users of the current shard with their accounts, chunk by chunk, falling back to the archive.
+     *
+     * @param distinctIds The IDs of the users, without duplicates.
+     * @return The found users by ID.
+     */
+    private Map<String, UserResponse> findUsers(List<String> distinctIds) {
+        Map<String, UserResponse> found = new HashMap<>();
+        for (int from = 0; from < distinctIds.size(); from += batchChunkSize) {
+            List<String> chunk = distinctIds.subList(from, Math.min(from + batchChunkSize, distinctIds.size()));
+            List<User> users = userRepository.findAllById(chunk);
+            if (users.isEmpty()) {
+                continue;
+            }
+            Map<String, List<AccountResponse>> accountsByUser = accountRepository.findAllByUserIds(
+                            users.stream().map(User::getId).toList()).stream()
+                    .collect(Collectors.groupingBy(account -> account.getUser().getId(),
+                            Collectors.mapping(this::mapToAccountDto, Collectors.toList())));
+            for (User user : users) {
+                List<AccountResponse> accounts = accountsByUser.getOrDefault(user.getId(), List.of());
+                found.put(user.getId(), mapToUserDto(user, accounts));
+            }
+        }
+
+        // Look up the remaining IDs in the archive
+        List<String> missingIds = distinctIds.stream().filter(id -> !found.containsKey(id)).toList();
+        for (int from = 0; from < missingIds.size(); from += batchChunkSize) {
+            List<String> chunk = missingIds.subList(from, Math.min(from + batchChunkSize, missingIds.size()));
+            List<ArchivedUser> archivedUsers = archivedUserRepository.findAllById(chunk);
+            if (archivedUsers.isEmpty()) {
+                continue;
+            }
+            Map<String, List<AccountResponse>> accountsByUser = archivedAccountRepository.findAllByUserIds(
+                            archivedUsers.stream().map(ArchivedUser::getId).toList()).stream()
+                    .collect(Collectors.groupingBy(ArchivedAccount::getUserId,
+                            Collectors.mapping(this::mapToAccountDto, Collectors.toList())));
+            for (ArchivedUser archivedUser : archivedUsers) {
+                List<AccountResponse> accounts = accountsByUser.getOrDefault(archivedUser.getId(), List.of());
+                found.put(archivedUser.getId(), mapToUserDto(archivedUser, accounts));
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Creates a new user on a randomly picked shard, with its accounts on the same shard.
      *
      * @param userRequest   The UserRequest DTO containing the new user's data.
      * @param bindingResult The BindingResult object that holds the result of the validation and binding and contains errors that may have occurred.
      * @return ResponseEntity containing the created UserResponse or error message if the creation fails.
      */
+    @Transactional
     public ResponseEntity<?> create(UserRequest userRequest, BindingResult bindingResult) {
         UserResponse userResponse = new UserResponse();
 
@@ -113,11 +325,15 @@ public class UserService {
             return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
         }
         try {
-            // Check if a user with the same email already exists
-            if (userRepository.existsByEmail(userRequest.getEmail())) {
-                userResponse.addError(ErrorMessage.ALREADY_EXIST);
-                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            // Check if a user with the same email already exists, asking the database only if the filter cannot rule it out
+            if (emailFilterService.mightExist(userRequest.getEmail())) {
+                if (emailExists(userRequest.getEmail())) {
+                    userResponse.addError(ErrorMessage.ALREADY_EXIST);
+                    return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+                }
+                emailFilterService.recordFalsePositive();
             }
+            ShardContext.set(shardRouter.shardForNewUser());
 
             // Create new User entity from UserRequest DTO
             User user = new User();
@@ -129,6 +345,7 @@ public class UserService {
             user.setUserStatus(userRequest.getStatus());
             user.setAddress(userRequest.getAddress());
             user.setUserStatus(UserStatusEnum.INACTIVE);
+            user.setUserRole(UserRoleEnum.USER);
             // Map AccountRequests to Account entities and associate them with the user
             if (userRequest.getAccountRequests() != null) {
                 Set<Account> accounts = userRequest.getAccountRequests().stream().map(accountRequest -> {
@@ -140,11 +357,23 @@ public class UserService {
                 user.setAccounts(accounts);
             }
 
-            // Save the new user to the repository
-            userRepository.save(user);
+            // Save the new user to the repository, the unique email constraint catches a concurrent duplicate
+            userRepository.saveAndFlush(user);
+            emailFilterService.add(user.getEmail());
+            recordUserEvent(user, ChangeEventTypeEnum.CREATED);
+            for (Account account : user.getAccounts()) {
+                recordAccountEvent(account, ChangeEventTypeEnum.CREATED);
+                balanceHistoryService.record(account.getId(), account.getBalance(), account.getCreatedAt());
+            }
             userResponse = mapToUserDto(user);
             return new ResponseEntity<>(userResponse, HttpStatus.CREATED);
+        } catch (DataIntegrityViolationException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.warn("User with email {} was created concurrently", userRequest.getEmail());
+            userResponse.addError(ErrorMessage.ALREADY_EXIST);
+            return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("An error occurred while creating user with email {}", userRequest.getEmail(), e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
@@ -157,6 +386,7 @@ public class UserService {
      * @param userRequest The UserRequest DTO containing the updated data for the user.
      * @return ResponseEntity containing the updated UserResponse or error message if the update fails.
      */
+    @Transactional
     public ResponseEntity<?> update(String userId, UserRequest userRequest) {
         UserResponse userResponse = new UserResponse();
         try {
@@ -166,25 +396,152 @@ public class UserService {
                 return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
             }
 
-            // Fetch existing user from the repository
+            // Deltas of hot accounts acknowledged before this update are applied before it
+            if (userRequest.getAccountRequests() != null && !hotAccountService.flushIfHot(userRequest.getAccountRequests()
+                    .stream().map(AccountRequest::getId).filter(Objects::nonNull).toList())) {
+                userResponse.addError(ErrorMessage.PENDING_BALANCE_CHANGES);
+                return new ResponseEntity<>(userResponse, HttpStatus.SERVICE_UNAVAILABLE);
+            }
+
+            // Fetch existing user from its shard
+            shardRouter.useShardOf(userId);
             Optional<User> optionalUser = userRepository.findById(userId);
             if (optionalUser.isEmpty()) {
                 userResponse.addError(ErrorMessage.NOT_FOUND);
                 return new ResponseEntity<>(userResponse, HttpStatus.NOT_FOUND);
             }
 
-            // Update the user fields with the data from UserRequest
+            // Account IDs must belong to this user, and each may be listed only once
             User existingUser = optionalUser.get();
-            updateUserFields(existingUser, userRequest);
-            userRepository.save(existingUser);
+            if (!hasValidAccountIds(existingUser, userRequest.getAccountRequests())) {
+                userResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            }
+
+            // Emails are unique across shards and the archive, which no single unique constraint covers
+            String email = userRequest.getEmail();
+            if (email != null && !email.equals(existingUser.getEmail()) && emailFilterService.mightExist(email)
+                    && emailExists(email)) {
+                userResponse.addError(ErrorMessage.ALREADY_EXIST);
+                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            }
+
+            // Update the user fields and reconcile the accounts with the data from UserRequest
+            boolean userChanged = updateUserFields(existingUser, userRequest);
+            AccountChanges accountChanges = reconcileAccounts(existingUser, userRequest.getAccountRequests());
+            if (!userChanged && accountChanges.isEmpty()) {
+                userResponse = mapToUserDto(existingUser);
+                userResponse.addInfo(InfoMessage.NOT_MODIFIED);
+                return new ResponseEntity<>(userResponse, HttpStatus.OK);
+            }
+            // The user is managed, so flushing persists new accounts in place instead of merging copies of them
+            userRepository.flush();
+            emailFilterService.add(existingUser.getEmail());
+
+            // Record only what actually changed
+            if (userChanged) {
+                recordUserEvent(existingUser, ChangeEventTypeEnum.UPDATED);
+            }
+            for (Account account : accountChanges.created()) {
+                recordAccountEvent(account, ChangeEventTypeEnum.CREATED);
+                balanceHistoryService.record(account.getId(), account.getBalance(), account.getCreatedAt());
+            }
+            for (Account account : accountChanges.updated()) {
+                recordAccountEvent(account, ChangeEventTypeEnum.UPDATED);
+                balanceHistoryService.record(account.getId(), account.getBalance(), account.getUpdatedAt());
+            }
+            LocalDateTime deletedAt = LocalDateTime.now();
+            List<String> deletedAccountIds = accountChanges.removed().stream().map(Account::getId).toList();
+            deletedAccountIds.forEach(accountId -> changeEventService.record(AggregateTypeEnum.ACCOUNT, accountId, userId,
+                    ChangeEventTypeEnum.DELETED, deletedAt));
+            balanceHistoryService.deleteHistory(deletedAccountIds);
             userResponse = mapToUserDto(existingUser);
             return new ResponseEntity<>(userResponse, HttpStatus.OK);
+        } catch (DataIntegrityViolationException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            userResponse.addError(ErrorMessage.ALREADY_EXIST);
+            return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
         } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("An error occurred while updating user with ID: {}", userId, e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Applies a JSON Merge Patch (RFC 7396) to a user. Only the fields present in the patch are considered and only
+     * those that differ from the stored values are changed; the user entity uses dynamic updates, so the UPDATE
+     * statement contains just the changed columns. A patch that changes nothing does not write to the database.
+     *
+     * @param userId The ID of the user to patch.
+     * @param patch  The merge patch; a null member clears the field.
+     * @return ResponseEntity containing the patched UserResponse or an error message.
+     */
+    @Transactional
+    public ResponseEntity<?> patch(String userId, JsonNode patch) {
+        UserResponse userResponse = new UserResponse();
+        try {
+            // Validate and convert the whole patch before touching the managed entity
+            Map<String, Object> changes = parsePatch(patch);
+            if (userId == null || userId.isBlank() || changes == null) {
+                userResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            }
+
+            // Fetch existing user from its shard
+            shardRouter.useShardOf(userId);
+            Optional<User> optionalUser = userRepository.findById(userId);
+            if (optionalUser.isEmpty()) {
+                userResponse.addError(ErrorMessage.NOT_FOUND);
+                return new ResponseEntity<>(userResponse, HttpStatus.NOT_FOUND);
+            }
+            User existingUser = optionalUser.get();
+
+            // parsePatch only accepts a valid, non-null email
+            String email = changes.get("email") instanceof String text ? text : null;
+            if (email != null && !email.equals(existingUser.getEmail()) && emailFilterService.mightExist(email)
+                    && emailExists(email)) {
+                userResponse.addError(ErrorMessage.ALREADY_EXIST);
+                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            }
+
+            boolean changed = false;
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                Object value = change.getValue();
+                changed |= switch (change.getKey()) {
+                    case "firstName" -> setIfChanged(existingUser.getFirstName(), (String) value, existingUser::setFirstName);
+                    case "lastName" -> setIfChanged(existingUser.getLastName(), (String) value, existingUser::setLastName);
+                    case "username" -> setIfChanged(existingUser.getUsername(), (String) value, existingUser::setUsername);
+                    case "email" -> setIfChanged(existingUser.getEmail(), (String) value, existingUser::setEmail);
+                    case "phoneNumber" -> setIfChanged(existingUser.getPhoneNumber(), (Integer) value, existingUser::setPhoneNumber);
+                    case "address" -> setIfChanged(existingUser.getAddress(), (String) value, existingUser::setAddress);
+                    case "status" -> setIfChanged(existingUser.getUserStatus(), (UserStatusEnum) value, existingUser::setUserStatus);
+                    default -> false;
+                };
+            }
+            if (!changed) {
+                userResponse = mapToUserDto(existingUser);
+                userResponse.addInfo(InfoMessage.NOT_MODIFIED);
+                return new ResponseEntity<>(userResponse, HttpStatus.OK);
+            }
+
+            userRepository.flush();
+            emailFilterService.add(existingUser.getEmail());
+            recordUserEvent(existingUser, ChangeEventTypeEnum.UPDATED);
+            userResponse = mapToUserDto(existingUser);
+            return new ResponseEntity<>(userResponse, HttpStatus.OK);
+        } catch (DataIntegrityViolationException e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            userResponse.addError(ErrorMessage.ALREADY_EXIST);
+            return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+        } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.error("An error occurred while patching user with ID: {}", userId, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
+    @Transactional
     public ResponseEntity<?> activate(String userId) {
         UserResponse userResponse = new UserResponse();
 
@@ -195,8 +552,12 @@ public class UserService {
                 return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
             }
 
-            // Fetch existing user from the repository
+            // Fetch existing user from its shard, restoring it from the archive if it was archived
+            shardRouter.useShardOf(userId);
             Optional<User> optionalUser = userRepository.findById(userId);
+            if (optionalUser.isEmpty() && archiveService.restore(List.of(userId)) > 0) {
+                optionalUser = userRepository.findById(userId);
+            }
             if (optionalUser.isEmpty()) {
                 userResponse.addError(ErrorMessage.NOT_FOUND);
                 return new ResponseEntity<>(userResponse, HttpStatus.NOT_FOUND);
@@ -204,15 +565,56 @@ public class UserService {
             User existingUser = optionalUser.get();
 //            updateUserFields(existingUser, userRequest);
             existingUser.setUserStatus(UserStatusEnum.ACTIVE);
-            userRepository.save(existingUser);
+            userRepository.saveAndFlush(existingUser);
+            recordUserEvent(existingUser, ChangeEventTypeEnum.ACTIVATED);
             userResponse = mapToUserDto(existingUser);
             return new ResponseEntity<>(userResponse, HttpStatus.OK);
         } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("An error occurred while activating user with ID: {}", userId, e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Changes the role of a user. Authorization reads roles from the user directory, which picks the change up from
+     * the change log, so the new role applies to the user's requests within seconds and without a new token.
+     *
+     * @param userId The ID of the user.
+     * @param role   The new role.
+     * @return ResponseEntity containing the updated user data or an error message.
+     */
+    @Transactional
+    public ResponseEntity<?> changeRole(String userId, UserRoleEnum role) {
+        UserResponse userResponse = new UserResponse();
+
+        try {
+            if (userId == null || userId.isEmpty() || role == null) {
+                userResponse.addError(ErrorMessage.BAD_REQUEST);
+                return new ResponseEntity<>(userResponse, HttpStatus.BAD_REQUEST);
+            }
+
+            shardRouter.useShardOf(userId);
+            Optional<User> optionalUser = userRepository.findById(userId);
+            if (optionalUser.isEmpty()) {
+                userResponse.addError(ErrorMessage.NOT_FOUND);
+                return new ResponseEntity<>(userResponse, HttpStatus.NOT_FOUND);
+            }
+            User existingUser = optionalUser.get();
+            if (existingUser.getUserRole() != role) {
+                existingUser.setUserRole(role);
+                userRepository.saveAndFlush(existingUser);
+                recordUserEvent(existingUser, ChangeEventTypeEnum.UPDATED);
+            }
+            userResponse = mapToUserDto(existingUser);
+            return new ResponseEntity<>(userResponse, HttpStatus.OK);
+        } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            log.error("An error occurred while changing the role of user with ID: {}", userId, e);
+            return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
+        }
+    }
+
 
 
     /**
@@ -221,6 +623,7 @@ public class UserService {
      * @param userId The ID of the user to delete.
      * @return ResponseEntity with an information message if the deletion is successful or an error message if it fails.
      */
+    @Transactional
     public ResponseEntity<?> deleteUser(String userId) {
         try {
 
@@ -229,21 +632,56 @@ public class UserService {
                 return new ResponseEntity<>(ErrorMessage.BAD_REQUEST, HttpStatus.BAD_REQUEST);
             }
 
-            // Fetch existing user from the repository
-            Optional<User> optionalUser = userRepository.findById(userId);
-            if (optionalUser.isEmpty()) {
-                return new ResponseEntity<>(ErrorMessage.NOT_FOUND, HttpStatus.NOT_FOUND);
+            // Check the user exists without loading it or its accounts, archived users are deleted from the archive
+            shardRouter.useShardOf(userId);
+            if (!userRepository.existsById(userId)) {
+                if (!deleteArchivedUser(userId, LocalDateTime.now())) {
+                    return new ResponseEntity<>(ErrorMessage.NOT_FOUND, HttpStatus.NOT_FOUND);
+                }
+                return new ResponseEntity<>(InfoMessage.DELETED, HttpStatus.OK);
             }
 
-            // Delete the user from the repository
-            userRepository.deleteById(userId);
+            // Delete the user with its accounts
+            deleteUsers(List.of(userId), LocalDateTime.now());
             return new ResponseEntity<>(InfoMessage.DELETED, HttpStatus.OK);
         } catch (Exception e) {
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
             log.error("An error occurred while deleting user with ID: {}", userId, e);
             return new ResponseEntity<>(HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    /**
+     * Deactivates many users, selected by ID list or by filter. Users are processed in chunks, each in its own
+     * transaction, so locks are held only for one chunk at a time.
+     *
+     * @param bulkUserRequest The IDs or the filter selecting the users.
+     * @return ResponseEntity containing the number of selected and deactivated users, or an error message.
+     */
+    public ResponseEntity<?> bulkDeactivate(BulkUserRequest bulkUserRequest) {
+        return runBulk(bulkUserRequest, "deactivating", userIds -> {
+            List<String> changedIds = userRepository.findIdsWithStatusOtherThan(userIds, UserStatusEnum.INACTIVE);
+            if (changedIds.isEmpty()) {
+                return 0;
+            }
+            LocalDateTime updatedAt = LocalDateTime.now();
+            userRepository.updateStatusByIds(changedIds, UserStatusEnum.INACTIVE, updatedAt);
+            changeEventService.recordUsers(changedIds, ChangeEventTypeEnum.DEACTIVATED, updatedAt, false);
+            return changedIds.size();
+        });
+    }
+
+    /**
+     * Deletes many users with their accounts, selected by ID list or by filter. Users are processed in chunks, each
+     * in its own transaction, so locks are held only for one chunk at a time.
+     *
+     * @param bulkUserRequest The IDs or the filter selecting the users.
+     * @return ResponseEntity containing the number of selected and deleted users, or an error message.
+     */
+    public ResponseEntity<?> bulkDelete(BulkUserRequest bulkUserRequest) {
+        return runBulk(bulkUserRequest, "deleting", userIds -> deleteUsers(userIds, LocalDateTime.now()));
+    }
+
     /**
      * Initializes a super admin user if they do not already exist in the system.
      *
@@ -251,43 +689,188 @@ public class UserService {
      */
     public void initSuperAdminIfNotExist(UserRequest userRequest) {
         try {
-            Optional<User> optionalUser = userRepository.findUserByEmail(userRequest.getEmail());
-            if (optionalUser.isPresent()) {
+            if (emailFilterService.mightExist(userRequest.getEmail())
+                    && shardRouter.scatter(shard -> userRepository.findUserByEmail(userRequest.getEmail()).isPresent()).contains(true)) {
                 return;
             }
-            UserRecord userFirebase;
-            try {
-                userFirebase = FirebaseAuth.getInstance().getUserByEmail(userRequest.getEmail());
-            } catch (FirebaseAuthException e) {
-                if (e.getAuthErrorCode() == AuthErrorCode.USER_NOT_FOUND) {
-                    UserRecord.CreateRequest request = new UserRecord.CreateRequest()
-                            .setEmail(userRequest.getEmail())
-                            .setEmailVerified(true)
-                            .setPassword(userRequest.getPassword())
-                            .setDisplayName(userRequest.getUsername())
-                            .setDisabled(userRequest.getStatus().equals(UserStatusEnum.INACTIVE));
-                    userFirebase = FirebaseAuth.getInstance().createUser(request);
-
-                } else {
-                    throw new RuntimeException("Firebase Exception :: " + e.getMessage() + " :: code name :: " + e.getAuthErrorCode().name());
+            ShardContext.runOn(shardRouter.shardForNewUser(), () -> transactionTemplate.executeWithoutResult(status -> {
+                try {
+                    createSuperAdmin(userRequest);
+                } catch (Exception e) {
+                    status.setRollbackOnly();
+                    log.error("An error occurred while initializing the super admin with email: {}", userRequest.getEmail(), e);
                 }
+            }));
+        } catch (Exception e) {
+            log.error("An error occurred while initializing the super admin with email: {}", userRequest.getEmail(), e);
+        }
+    }
+
+    private void createSuperAdmin(UserRequest userRequest) throws FirebaseAuthException {
+        UserRecord userFirebase;
+        try {
+            userFirebase = FirebaseAuth.getInstance().getUserByEmail(userRequest.getEmail());
+        } catch (FirebaseAuthException e) {
+            if (e.getAuthErrorCode() == AuthErrorCode.USER_NOT_FOUND) {
+                UserRecord.CreateRequest request = new UserRecord.CreateRequest()
+                        .setEmail(userRequest.getEmail())
+                        .setEmailVerified(true)
+                        .setPassword(userRequest.getPassword())
+                        .setDisplayName(userRequest.getUsername())
+                        .setDisabled(userRequest.getStatus().equals(UserStatusEnum.INACTIVE));
+                userFirebase = FirebaseAuth.getInstance().createUser(request);
+
+            } else {
+                throw new RuntimeException("Firebase Exception :: " + e.getMessage() + " :: code name :: " + e.getAuthErrorCode().name());
             }
-            FirebaseAuth.getInstance().setCustomUserClaims(userFirebase.getUid(), Map.of("roles",
-                    List.of(UserRoleEnum.ADMIN.name(), UserRoleEnum.USER.name())));
-            User user = userRepository.save(User.builder()
-                    .firstName(userRequest.getFirstName())
-                    .lastName(userRequest.getLastName())
-                    .username(userRequest.getUsername())
-                    .email(userRequest.getEmail())
-                    .userStatus(userRequest.getStatus())
-                    .firebaseUid(userFirebase.getUid())
-                    .build());
-            log.info("SUPER ADMIN INIT DONE, with firebase id: {} and email: {}", user.getFirebaseUid(), user.getEmail());
+        }
+        User user = userRepository.save(User.builder()
+                .firstName(userRequest.getFirstName())
+                .lastName(userRequest.getLastName())
+                .username(userRequest.getUsername())
+                .email(userRequest.getEmail())
+                .userStatus(userRequest.getStatus())
+                .userRole(UserRoleEnum.ADMIN)
+                .firebaseUid(userFirebase.getUid())
+                .build());
+        emailFilterService.add(user.getEmail());
+        recordUserEvent(user, ChangeEventTypeEnum.CREATED);
+        log.info("SUPER ADMIN INIT DONE, with firebase id: {} and email: {}", user.getFirebaseUid(), user.getEmail());
+    }
+
+    /**
+     * Checks whether a live or archived user on any shard has an email. Each shard enforces unique emails only
+     * among its own users.
+     */
+    private boolean emailExists(String email) {
+        return shardRouter.scatter(shard -> userRepository.existsByEmail(email) || archivedUserRepository.existsByEmail(email))
+                .contains(true);
+    }
+
+    /**
+     * Deletes users, their accounts and the accounts' balance history with a fixed number of set-based statements,
+     * independent of how many accounts the users have. Must be called inside a transaction.
+     *
+     * @param userIds   The IDs of the users to delete.
+     * @param deletedAt The time recorded on the change events.
+     * @return The number of deleted users.
+     */
+    private int deleteUsers(Collection<String> userIds, LocalDateTime deletedAt) {
+        changeEventService.recordUsers(userIds, ChangeEventTypeEnum.DELETED, deletedAt, true);
+        balanceHistoryService.deleteHistoryOfUsers(userIds);
+        accountRepository.deleteByUserIds(userIds);
+        return userRepository.deleteByIds(userIds);
+    }
+
+    /**
+     * Deletes an archived user and its accounts. Must be called inside a transaction.
+     *
+     * @param userId    The ID of the archived user.
+     * @param deletedAt The time recorded on the change events.
+     * @return True if the user was archived and is now deleted.
+     */
+    private boolean deleteArchivedUser(String userId, LocalDateTime deletedAt) {
+        if (!archivedUserRepository.existsById(userId)) {
+            return false;
+        }
+        List<String> accountIds = archivedAccountRepository.findAllByUserIds(List.of(userId)).stream()
+                .map(ArchivedAccount::getId)
+                .toList();
+        accountIds.forEach(accountId -> changeEventService.record(AggregateTypeEnum.ACCOUNT, accountId, userId,
+                ChangeEventTypeEnum.DELETED, deletedAt));
+        changeEventService.record(AggregateTypeEnum.USER, userId, userId, ChangeEventTypeEnum.DELETED, deletedAt);
+        balanceHistoryService.deleteHistory(accountIds);
+        archiveService.deleteArchived(List.of(userId));
+        return true;
+    }
+
+    /**
+     * Applies a bulk operation chunk by chunk, one shard after the other. An ID list is grouped by shard and split into
+     * chunks directly; a filter is resolved one chunk at a time by keyset pagination on the user ID, so no chunk query
+     * has to skip already processed rows.
+     *
+     * @param bulkUserRequest The IDs or the filter selecting the users.
+     * @param operation       Description of the operation used in log messages.
+     * @param chunkOperation  Applies the operation to one chunk of user IDs and returns the number of changed users.
+     * @return ResponseEntity containing the totals, or an error message with the progress made before the failure.
+     */
+    private ResponseEntity<?> runBulk(BulkUserRequest bulkUserRequest, String operation,
+                                      Function<List<String>, Integer> chunkOperation) {
+        BulkOperationResponse bulkResponse = new BulkOperationResponse();
+        boolean byIds = bulkUserRequest.getUserIds() != null && !bulkUserRequest.getUserIds().isEmpty();
+        if (byIds == bulkUserRequest.hasFilter()) {
+            bulkResponse.addError(ErrorMessage.BAD_REQUEST);
+            return new ResponseEntity<>(bulkResponse, HttpStatus.BAD_REQUEST);
+        }
+        try {
+            if (byIds) {
+                List<String> distinctIds = new ArrayList<>(new LinkedHashSet<>(bulkUserRequest.getUserIds()));
+                for (Map.Entry<Integer, List<String>> shardIds : shardRouter.groupByShard(distinctIds, Function.identity()).entrySet()) {
+                    List<String> userIds = shardIds.getValue();
+                    ShardContext.runOn(shardIds.getKey(), () -> {
+                        for (int from = 0; from < userIds.size(); from += bulkChunkSize) {
+                            applyChunk(userIds.subList(from, Math.min(from + bulkChunkSize, userIds.size())), chunkOperation, bulkResponse);
+                        }
+                    });
+                }
+            } else {
+                String emailPattern = bulkUserRequest.getEmailDomain() == null || bulkUserRequest.getEmailDomain().isBlank()
+                        ? null : "%@" + bulkUserRequest.getEmailDomain().strip();
+                for (int shard : shardRouter.shards()) {
+                    ShardContext.runOn(shard, () -> {
+                        String afterId = "";
+                        List<String> userIds;
+                        do {
+                            userIds = userRepository.findIdsByFilter(afterId, bulkUserRequest.getStatus(), emailPattern,
+                                    bulkUserRequest.getCreatedBefore(), PageRequest.of(0, bulkChunkSize));
+                            if (userIds.isEmpty()) {
+                                break;
+                            }
+                            afterId = userIds.get(userIds.size() - 1);
+                            applyChunk(userIds, chunkOperation, bulkResponse);
+                        } while (userIds.size() == bulkChunkSize);
+                    });
+                }
+            }
+            log.info("Bulk {} users done: {} selected, {} changed in {} chunks", operation, bulkResponse.getMatched(),
+                    bulkResponse.getAffected(), bulkResponse.getChunks());
+            return new ResponseEntity<>(bulkResponse, HttpStatus.OK);
         } catch (Exception e) {
-            e.printStackTrace();
+            log.error("An error occurred while bulk {} users after {} chunks", operation, bulkResponse.getChunks(), e);
+            bulkResponse.addError("Stopped after " + bulkResponse.getChunks() + " committed chunks.");
+            return new ResponseEntity<>(bulkResponse, HttpStatus.INTERNAL_SERVER_ERROR);
         }
     }
 
+    private void applyChunk(List<String> userIds, Function<List<String>, Integer> chunkOperation,
+                            BulkOperationResponse bulkResponse) {
+        Integer changed = transactionTemplate.execute(status -> chunkOperation.apply(userIds));
+        bulkResponse.setMatched(bulkResponse.getMatched() + userIds.size());
+        bulkResponse.setAffected(bulkResponse.getAffected() + (changed != null ? changed : 0));
+        bulkResponse.setChunks(bulkResponse.getChunks() + 1);
+    }
+
+    /**
+     * Records a change event for a user in the current transaction.
+     *
+     * @param user      The changed User entity.
+     * @param eventType The kind of change.
+     */
+    private void recordUserEvent(User user, ChangeEventTypeEnum eventType) {
+        changeEventService.record(AggregateTypeEnum.USER, user.getId(), user.getId(), eventType, user.getUpdatedAt());
+    }
+
+    /**
+     * Records a change event for an account in the current transaction.
+     *
+     * @param account   The changed Account entity.
+     * @param eventType The kind of change.
+     */
+    private void recordAccountEvent(Account account, ChangeEventTypeEnum eventType) {
+        changeEventService.record(AggregateTypeEnum.ACCOUNT, account.getId(), account.getUser().getId(), eventType,
+                account.getUpdatedAt());
+    }
+
     /**
      * Maps a User entity to a UserResponse DTO.
      *
@@ -304,50 +887,253 @@ public class UserService {
                 .phoneNumber(user.getPhoneNumber())
                 .address(user.getAddress())
                 .status(user.getUserStatus())
+                .role(user.getUserRole())
                 .createdAt(user.getCreatedAt())
                 .updatedAt(user.getUpdatedAt())
                 .accountIds(user.getAccounts().stream().map(account -> account.getId()).collect(Collectors.toSet()))
                 .build();
     }
 
+    /**
+     * Maps a User entity to a UserResponse DTO using accounts that were fetched separately, so the lazy accounts
+     * collection of the user is not initialized.
+     *
+     * @param user     The User entity to map.
+     * @param accounts The user's accounts.
+     * @return The UserResponse DTO containing the mapped data and the accounts.
+     */
+    private UserResponse mapToUserDto(User user, List<AccountResponse> accounts) {
+        return UserResponse.builder()
+                .id(user.getId())
+                .firstName(user.getFirstName())
+                .lastName(user.getLastName())
+                .username(user.getUsername())
+                .email(user.getEmail())
+                .phoneNumber(user.getPhoneNumber())
+                .address(user.getAddress())
+                .status(user.getUserStatus())
+                .role(user.getUserRole())
+                .createdAt(user.getCreatedAt())
+                .updatedAt(user.getUpdatedAt())
+                .accountIds(accounts.stream().map(AccountResponse::getId).collect(Collectors.toSet()))
+                .accounts(accounts)
+                .build();
+    }
+
+    /**
+     * Maps an archived user to a UserResponse DTO, so archived users are returned like live ones.
+     *
+     * @param user     The ArchivedUser entity to map.
+     * @param accounts The user's archived accounts.
+     * @return The UserResponse DTO containing the mapped data and the accounts.
+     */
+    private UserResponse mapToUserDto(ArchivedUser user, List<AccountResponse> accounts) {
+        return UserResponse.builder()
+                .id(user.getId())
+                .firstName(user.getFirstName())
+                .lastName(user.getLastName())
+                .username(user.getUsername())
+                .email(user.getEmail())
+                .phoneNumber(user.getPhoneNumber())
+                .address(user.getAddress())
+                .status(user.getUserStatus())
+                .role(user.getUserRole())
+                .createdAt(user.getCreatedAt())
+                .updatedAt(user.getUpdatedAt())
+                .accountIds(accounts.stream().map(AccountResponse::getId).collect(Collectors.toSet()))
+                .accounts(accounts)
+                .build();
+    }
+
+    private AccountResponse mapToAccountDto(ArchivedAccount account) {
+        return AccountResponse.builder()
+                .id(account.getId())
+                .balance(account.getBalance())
+                .userId(account.getUserId())
+                .createdAt(account.getCreatedAt())
+                .updatedAt(account.getUpdatedAt())
+                .build();
+    }
+
+    /**
+     * Maps an Account entity to an AccountResponse DTO.
+     *
+     * @param account The Account entity to map.
+     * @return The AccountResponse DTO containing the mapped data.
+     */
+    private AccountResponse mapToAccountDto(Account account) {
+        return AccountResponse.builder()
+                .id(account.getId())
+                .balance(hotAccountService.pendingBalance(account.getId(), account.getBalance()))
+                .userId(account.getUser().getId())
+                .createdAt(account.getCreatedAt())
+                .updatedAt(account.getUpdatedAt())
+                .build();
+    }
+
     /**
      * Updates the fields of an existing user entity with the data from a UserRequest DTO.
      *
      * @param existingUser The existing User entity to update.
      * @param userRequest  The UserRequest DTO containing the updated data.
+     * @return True if any field changed.
      */
-    private void updateUserFields(User existingUser, UserRequest userRequest) {
+    private boolean updateUserFields(User existingUser, UserRequest userRequest) {
+        boolean changed = false;
         if (userRequest.getFirstName() != null && !userRequest.getFirstName().equals(existingUser.getFirstName())) {
             existingUser.setFirstName(userRequest.getFirstName());
+            changed = true;
         }
         if (userRequest.getLastName() != null && !userRequest.getLastName().equals(existingUser.getLastName())) {
             existingUser.setLastName(userRequest.getLastName());
+            changed = true;
         }
         if (userRequest.getUsername() != null && !userRequest.getUsername().equals(existingUser.getUsername())) {
             existingUser.setUsername(userRequest.getUsername());
+            changed = true;
         }
         if (userRequest.getEmail() != null && !userRequest.getEmail().equals(existingUser.getEmail())) {
             existingUser.setEmail(userRequest.getEmail());
+            changed = true;
         }
         if (userRequest.getPhoneNumber() != null && !userRequest.getPhoneNumber().equals(existingUser.getPhoneNumber())) {
             existingUser.setPhoneNumber(userRequest.getPhoneNumber());
+            changed = true;
         }
         if (userRequest.getStatus() != null && !userRequest.getStatus().equals(existingUser.getUserStatus())) {
             existingUser.setUserStatus(userRequest.getStatus());
+            changed = true;
         }
         if (userRequest.getAddress() != null && !userRequest.getAddress().equals(existingUser.getAddress())) {
             existingUser.setAddress(userRequest.getAddress());
+            changed = true;
         }
-        if (userRequest.getAccountRequests() != null) {
-            Set<Account> existingAccounts = existingUser.getAccounts();
-            existingAccounts.clear();
-            for (AccountRequest accountRequest : userRequest.getAccountRequests()) {
+        return changed;
+    }
+
+    /**
+     * Converts a merge patch into field values. Email and status cannot be cleared and an email must be well-formed;
+     * unknown fields and values of the wrong type make the whole patch invalid.
+     *
+     * @param patch The merge patch document.
+     * @return The new value of every patched field, null values meaning the field is cleared, or null if the patch
+     * is invalid.
+     */
+    private Map<String, Object> parsePatch(JsonNode patch) {
+        if (patch == null || !patch.isObject()) {
+            return null;
+        }
+        Map<String, Object> changes = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String name = field.getKey();
+            JsonNode value = field.getValue();
+            if (!PATCHABLE_FIELDS.contains(name)) {
+                return null;
+            }
+            if (value.isNull()) {
+                if (name.equals("email") || name.equals("status")) {
+                    return null;
+                }
+                changes.put(name, null);
+            } else if (name.equals("phoneNumber")) {
+                if (!value.canConvertToInt() || !value.isIntegralNumber()) {
+                    return null;
+                }
+                changes.put(name, value.intValue());
+            } else if (name.equals("status")) {
+                if (!value.isTextual() || Arrays.stream(UserStatusEnum.values()).noneMatch(status -> status.name().equals(value.textValue()))) {
+                    return null;
+                }
+                changes.put(name, UserStatusEnum.valueOf(value.textValue()));
+            } else if (name.equals("email")) {
+                if (!value.isTextual() || !EMAIL.matcher(value.textValue()).matches()) {
+                    return null;
+                }
+                changes.put(name, value.textValue());
+            } else {
+                if (!value.isTextual()) {
+                    return null;
+                }
+                changes.put(name, value.textValue());
+            }
+        }
+        return changes;
+    }
+
+    private static <T> boolean setIfChanged(T current, T value, Consumer<T> setter) {
+        if (Objects.equals(current, value)) {
+            return false;
+        }
+        setter.accept(value);
+        return true;
+    }
+
+    /**
+     * Checks that every account ID in the request belongs to the user and appears only once.
+     *
+     * @param existingUser    The user being updated.
+     * @param accountRequests The requested accounts, or null if the accounts are not being updated.
+     * @return True if the account IDs are valid.
+     */
+    private boolean hasValidAccountIds(User existingUser, Set<AccountRequest> accountRequests) {
+        if (accountRequests == null) {
+            return true;
+        }
+        Set<String> existingIds = existingUser.getAccounts().stream().map(Account::getId).collect(Collectors.toSet());
+        Set<String> requestedIds = new HashSet<>();
+        for (AccountRequest accountRequest : accountRequests) {
+            if (accountRequest.getId() != null
+                    && (!existingIds.contains(accountRequest.getId()) || !requestedIds.add(accountRequest.getId()))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reconciles the user's accounts with the requested ones by ID: requested accounts without an ID are created,
+     * existing accounts get a new balance only if it differs, and existing accounts missing from the request are
+     * removed. Accounts are left untouched if the request has no account list.
+     *
+     * @param existingUser    The user being updated.
+     * @param accountRequests The requested accounts, or null to keep the current ones.
+     * @return The accounts that were created, updated and removed.
+     */
+    private AccountChanges reconcileAccounts(User existingUser, Set<AccountRequest> accountRequests) {
+        AccountChanges accountChanges = new AccountChanges(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+        if (accountRequests == null) {
+            return accountChanges;
+        }
+        Map<String, Account> remainingAccounts = existingUser.getAccounts().stream()
+                .collect(Collectors.toMap(Account::getId, account -> account));
+        for (AccountRequest accountRequest : accountRequests) {
+            if (accountRequest.getId() == null) {
                 Account account = new Account();
                 account.setBalance(accountRequest.getBalance());
                 account.setUser(existingUser);
-                existingAccounts.add(account);
+                existingUser.getAccounts().add(account);
+                accountChanges.created().add(account);
+                continue;
+            }
+            Account account = remainingAccounts.remove(accountRequest.getId());
+            if (accountRequest.getBalance() != null
+                    && (account.getBalance() == null || !account.getBalance().equals(accountRequest.getBalance()))) {
+                account.setBalance(accountRequest.getBalance());
+                accountChanges.updated().add(account);
             }
         }
+        existingUser.getAccounts().removeAll(remainingAccounts.values());
+        accountChanges.removed().addAll(remainingAccounts.values());
+        return accountChanges;
+    }
+
+    private record AccountChanges(List<Account> created, List<Account> updated, List<Account> removed) {
+
+        boolean isEmpty() {
+            return created.isEmpty() && updated.isEmpty() && removed.isEmpty();
+        }
     }
 
 
@@ -0,0 +1,17 @@
+package com.example.useraccountmanager.sharding;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Generates a random UUID that {@link ShardRouter#shardOf(String)} maps to the shard the entity is inserted into.
+ */
+@IdGeneratorType(ShardAwareIdGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface ShardAwareId {
+}
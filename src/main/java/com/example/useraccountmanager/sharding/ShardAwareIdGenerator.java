@@ -0,0 +1,47 @@
+package com.example.useraccountmanager.sharding;
+
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.BeforeExecutionGenerator;
+import org.hibernate.generator.EventType;
+import org.hibernate.generator.EventTypeSets;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+import java.util.EnumSet;
+import java.util.UUID;
+
+/**
+ * Draws random UUIDs until one maps to the shard of the current {@link ShardContext}, on average as many draws as
+ * there are shards. The shard of a user or account can then be computed from its ID alone, and the accounts of a
+ * user, inserted on the user's shard, map to the same shard as the user.
+ */
+public class ShardAwareIdGenerator implements BeforeExecutionGenerator {
+
+    private final int shardCount;
+
+    public ShardAwareIdGenerator(ShardAwareId config, Member annotatedMember, CustomIdGeneratorCreationContext context) {
+        Object configured = context.getServiceRegistry().requireService(ConfigurationService.class)
+                .getSettings().get(ShardRouter.SHARD_COUNT_SETTING);
+        this.shardCount = configured != null ? Integer.parseInt(configured.toString()) : 1;
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner, Object currentValue, EventType eventType) {
+        int shard = ShardContext.current();
+        if (shard >= shardCount) {
+            throw new IllegalStateException("Shard " + shard + " does not exist, there are " + shardCount + " shards");
+        }
+        while (true) {
+            String id = UUID.randomUUID().toString();
+            if (ShardRouter.shardOf(id, shardCount) == shard) {
+                return id;
+            }
+        }
+    }
+
+    @Override
+    public EnumSet<EventType> getEventTypes() {
+        return EventTypeSets.INSERT_ONLY;
+    }
+}
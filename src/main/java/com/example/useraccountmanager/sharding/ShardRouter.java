@@ -0,0 +1,190 @@
+package com.example.useraccountmanager.sharding;
+
+import com.example.useraccountmanager.tools.HashTools;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.MDC;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Maps users and accounts to shards and runs work on them.
+ * <p>
+ * The shard of an ID is the jump consistent hash of the ID's 64-bit hash, so it needs no lookup table, and adding a
+ * shard moves only the share of users that the new shard takes over. IDs are generated to map to the shard they are
+ * inserted into (see {@link ShardAwareIdGenerator}), and accounts are inserted on the shard of their user.
+ * <p>
+ * Operations spanning all shards scatter one task per shard onto a shared pool and gather the results in shard
+ * order. With a single shard the work runs on the calling thread.
+ */
+@Component
+public class ShardRouter {
+
+    /**
+     * Hibernate setting carrying the shard count to {@link ShardAwareIdGenerator}.
+     */
+    public static final String SHARD_COUNT_SETTING = "useraccountmanager.shard-count";
+
+    private final int shardCount;
+    private final ExecutorService scatterExecutor;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public ShardRouter(ShardingProperties shardingProperties, PlatformTransactionManager transactionManager) {
+        this.shardCount = shardingProperties.shardCount();
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.scatterExecutor = shardCount == 1 ? null : Executors.newFixedThreadPool(
+                Math.max(shardCount, shardingProperties.getScatterThreads()), runnable -> {
+                    Thread thread = new Thread(runnable, "shard-scatter-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    void close() {
+        if (scatterExecutor != null) {
+            scatterExecutor.shutdown();
+        }
+    }
+
+    public int shardCount() {
+        return shardCount;
+    }
+
+    public List<Integer> shards() {
+        return IntStream.range(0, shardCount).boxed().toList();
+    }
+
+    /**
+     * @param id The ID of a user or account.
+     * @return The shard holding it.
+     */
+    public int shardOf(String id) {
+        return shardOf(id, shardCount);
+    }
+
+    public static int shardOf(String id, int shardCount) {
+        return shardCount == 1 ? 0 : jumpConsistentHash(HashTools.hash64(id), shardCount);
+    }
+
+    /**
+     * Picks the shard a new user is created on, uniformly at random.
+     */
+    public int shardForNewUser() {
+        return shardCount == 1 ? 0 : ThreadLocalRandom.current().nextInt(shardCount);
+    }
+
+    /**
+     * Routes the rest of the current thread's work to the shard of an ID. Must be called before the first statement
+     * of the transaction.
+     */
+    public void useShardOf(String id) {
+        ShardContext.set(shardOf(id));
+    }
+
+    /**
+     * Groups items by the shard of their ID, keeping their order within each shard.
+     */
+    public <T> SortedMap<Integer, List<T>> groupByShard(Collection<T> items, Function<T, String> idOf) {
+        SortedMap<Integer, List<T>> byShard = new TreeMap<>();
+        for (T item : items) {
+            byShard.computeIfAbsent(shardOf(idOf.apply(item)), shard -> new ArrayList<>()).add(item);
+        }
+        return byShard;
+    }
+
+    /**
+     * Runs a task on every shard in parallel.
+     *
+     * @return The results in shard order.
+     */
+    public <T> List<T> scatter(IntFunction<T> task) {
+        return scatter(shards(), task);
+    }
+
+    /**
+     * Runs a task on every shard in parallel, each in a read-only transaction on its shard, so the task can load lazy
+     * associations of the entities it reads.
+     *
+     * @return The results in shard order.
+     */
+    public <T> List<T> scatterReadOnly(IntFunction<T> task) {
+        return scatter(shards(), shard -> readOnlyTransaction.execute(status -> task.apply(shard)));
+    }
+
+    /**
+     * Runs a task on each of the given shards in parallel, with the shard set in the {@link ShardContext} of the
+     * thread running it. A failure on any shard fails the whole operation once all tasks have finished.
+     *
+     * @return The results in the order of the shards.
+     */
+    public <T> List<T> scatter(Collection<Integer> shards, IntFunction<T> task) {
+        if (scatterExecutor == null || shards.size() == 1) {
+            List<T> results = new ArrayList<>(shards.size());
+            for (int shard : shards) {
+                results.add(ShardContext.callOn(shard, () -> task.apply(shard)));
+            }
+            return results;
+        }
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (int shard : shards) {
+            futures.add(scatterExecutor.submit(() -> {
+                if (mdc != null) {
+                    MDC.setContextMap(mdc);
+                }
+                try {
+                    return ShardContext.callOn(shard, () -> task.apply(shard));
+                } finally {
+                    MDC.clear();
+                }
+            }));
+        }
+        List<T> results = new ArrayList<>(futures.size());
+        RuntimeException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause() instanceof RuntimeException runtime ? runtime : new IllegalStateException(e.getCause());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the shards", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * Jump consistent hash (Lamping and Veach): maps a key to one of {@code buckets} buckets so that growing the
+     * number of buckets by one moves only the keys that land in the new bucket.
+     */
+    static int jumpConsistentHash(long key, int buckets) {
+        long bucket = -1;
+        long next = 0;
+        while (next < buckets) {
+            bucket = next;
+            key = key * 2862933555777941757L + 1;
+            next = (long) ((bucket + 1) * ((double) (1L << 31) / (double) ((key >>> 33) + 1)));
+        }
+        return (int) bucket;
+    }
+}
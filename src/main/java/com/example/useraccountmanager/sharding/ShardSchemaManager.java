@@ -0,0 +1,65 @@
+package com.example.useraccountmanager.sharding;
+
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.boot.Metadata;
+import org.hibernate.boot.spi.BootstrapContext;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.integrator.spi.Integrator;
+import org.hibernate.service.spi.SessionFactoryServiceRegistry;
+import org.hibernate.tool.schema.spi.DelayedDropAction;
+import org.hibernate.tool.schema.spi.SchemaManagementToolCoordinator;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies the schema action configured for Hibernate ({@code spring.jpa.hibernate.ddl-auto}) to every shard besides
+ * shard 0, which Hibernate handles itself while building the session factory. Runs once all singletons exist, before
+ * the application serves requests or runs scheduled jobs.
+ */
+@Slf4j
+public class ShardSchemaManager implements Integrator, SmartInitializingSingleton {
+
+    private final int shardCount;
+    private final Map<Integer, DelayedDropAction> dropActions = new ConcurrentHashMap<>();
+
+    private volatile Metadata metadata;
+    private volatile SessionFactoryImplementor sessionFactory;
+
+    public ShardSchemaManager(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    @Override
+    public void integrate(Metadata metadata, BootstrapContext bootstrapContext, SessionFactoryImplementor sessionFactory) {
+        this.metadata = metadata;
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (metadata == null) {
+            return;
+        }
+        for (int shard = 1; shard < shardCount; shard++) {
+            int target = shard;
+            ShardContext.runOn(target, () -> SchemaManagementToolCoordinator.process(metadata,
+                    sessionFactory.getServiceRegistry(), sessionFactory.getProperties(),
+                    action -> dropActions.put(target, action)));
+        }
+        log.info("Schema of {} additional shards prepared", shardCount - 1);
+    }
+
+    @Override
+    public void disintegrate(SessionFactoryImplementor sessionFactory, SessionFactoryServiceRegistry serviceRegistry) {
+        dropActions.forEach((shard, action) -> {
+            try {
+                ShardContext.runOn(shard, () -> action.perform(sessionFactory.getServiceRegistry()));
+            } catch (Exception e) {
+                log.error("An error occurred while dropping the schema of shard {}", shard, e);
+            }
+        });
+        dropActions.clear();
+    }
+}
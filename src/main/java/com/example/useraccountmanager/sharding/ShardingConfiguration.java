@@ -0,0 +1,102 @@
+package com.example.useraccountmanager.sharding;
+
+import com.example.useraccountmanager.security.ConnectionWaitTrackerPostProcessor;
+import com.zaxxer.hikari.HikariDataSource;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.jpa.boot.spi.IntegratorProvider;
+import org.hibernate.jpa.boot.spi.JpaSettings;
+import org.hibernate.resource.jdbc.spi.PhysicalConnectionHandlingMode;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replaces the single {@code spring.datasource} with one connection pool per configured shard when
+ * {@code sharding.enabled} is set.
+ * <p>
+ * JPA sees one datasource that routes every connection to the shard in the {@link ShardContext} of the calling
+ * thread. It is wrapped in a {@link LazyConnectionDataSourceProxy}, so a transaction takes its physical connection at
+ * its first statement and a service can pick the shard after the transaction has begun. Hibernate releases the
+ * connection after every transaction instead of holding it for the whole request, so the transactions of one request
+ * can go to different shards.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "sharding", name = "enabled", havingValue = "true")
+@Slf4j
+public class ShardingConfiguration {
+
+    private final List<HikariDataSource> pools = new ArrayList<>();
+
+    @Bean
+    @Primary
+    public DataSource shardingDataSource(ShardingProperties shardingProperties,
+                                         ConnectionWaitTrackerPostProcessor connectionWaitTracker) {
+        if (shardingProperties.getShards().isEmpty()) {
+            throw new IllegalStateException("Sharding is enabled but no sharding.shards are configured");
+        }
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shardingProperties.getShards().size(); shard++) {
+            ShardingProperties.Shard config = shardingProperties.getShards().get(shard);
+            HikariDataSource pool = DataSourceBuilder.create()
+                    .type(HikariDataSource.class)
+                    .url(config.getUrl())
+                    .username(config.getUsername())
+                    .password(config.getPassword())
+                    .driverClassName(config.getDriverClassName())
+                    .build();
+            pool.setPoolName("shard-" + shard);
+            pool.setMaximumPoolSize(shardingProperties.getMaximumPoolSize());
+            connectionWaitTracker.track(pool);
+            pools.add(pool);
+            targets.put(shard, pool);
+        }
+        ShardRoutingDataSource routingDataSource = new ShardRoutingDataSource();
+        routingDataSource.setTargetDataSources(targets);
+        routingDataSource.setLenientFallback(false);
+        routingDataSource.afterPropertiesSet();
+        log.info("Sharding enabled over {} shards", targets.size());
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+
+    @Bean
+    public ShardSchemaManager shardSchemaManager(ShardingProperties shardingProperties) {
+        return new ShardSchemaManager(shardingProperties.shardCount());
+    }
+
+    @Bean
+    public HibernatePropertiesCustomizer shardingHibernatePropertiesCustomizer(ShardingProperties shardingProperties,
+                                                                               ShardSchemaManager shardSchemaManager) {
+        return properties -> {
+            properties.put(ShardRouter.SHARD_COUNT_SETTING, shardingProperties.shardCount());
+            properties.put(AvailableSettings.CONNECTION_HANDLING,
+                    PhysicalConnectionHandlingMode.DELAYED_ACQUISITION_AND_RELEASE_AFTER_TRANSACTION);
+            properties.put(JpaSettings.INTEGRATOR_PROVIDER, (IntegratorProvider) () -> List.of(shardSchemaManager));
+        };
+    }
+
+    @Bean
+    public FilterRegistrationBean<ShardContextFilter> shardContextFilterRegistration() {
+        FilterRegistrationBean<ShardContextFilter> registration = new FilterRegistrationBean<>(new ShardContextFilter());
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @PreDestroy
+    void closePools() {
+        pools.forEach(HikariDataSource::close);
+    }
+}
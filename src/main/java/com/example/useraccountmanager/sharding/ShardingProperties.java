@@ -0,0 +1,35 @@
+package com.example.useraccountmanager.sharding;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shard datasources, bound from the {@code sharding.*} properties. Without sharding the single
+ * {@code spring.datasource} is the only shard.
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "sharding")
+public class ShardingProperties {
+
+    private boolean enabled = false;
+    private List<Shard> shards = new ArrayList<>();
+    private int maximumPoolSize = 10;
+    private int scatterThreads = 8;
+
+    @Data
+    public static class Shard {
+        private String url;
+        private String username;
+        private String password;
+        private String driverClassName;
+    }
+
+    public int shardCount() {
+        return enabled && !shards.isEmpty() ? shards.size() : 1;
+    }
+}
@@ -0,0 +1,131 @@
+package com.example.useraccountmanager.tools;
+
+import java.util.Arrays;
+
+/**
+ * Encodes balance history points as delta-encoded, zigzag varints. Each point is stored as the difference of its
+ * timestamp (epoch millis) and fixed-point value (minor units) from the previous point of the same block, so a
+ * typical point takes two to four bytes instead of the sixteen of the raw pair.
+ */
+public class BalanceHistoryCodec {
+
+    private BalanceHistoryCodec() {
+    }
+
+    /**
+     * Receives decoded points.
+     */
+    @FunctionalInterface
+    public interface PointConsumer {
+        void accept(long timestamp, long value);
+    }
+
+    /**
+     * Appends one point to an encoded block.
+     *
+     * @param data          The encoded block, or null for an empty block.
+     * @param previousTime  Timestamp of the last point in the block, or the block base for the first point.
+     * @param previousValue Value of the last point in the block, or zero for the first point.
+     * @param timestamp     Timestamp of the new point.
+     * @param value         Value of the new point.
+     * @return The encoded block including the new point.
+     */
+    public static byte[] append(byte[] data, long previousTime, long previousValue, long timestamp, long value) {
+        byte[] scratch = new byte[20];
+        int length = writeVarLong(scratch, 0, zigzag(timestamp - previousTime));
+        length = writeVarLong(scratch, length, zigzag(value - previousValue));
+        int existing = data == null ? 0 : data.length;
+        byte[] result = data == null ? new byte[length] : Arrays.copyOf(data, existing + length);
+        System.arraycopy(scratch, 0, result, existing, length);
+        return result;
+    }
+
+    /**
+     * Appends the points of one encoded block to another. Only the first point of the appended block is encoded
+     * again, relative to the last point of the first block; the rest is copied as is.
+     *
+     * @param data          The encoded block to append to.
+     * @param previousTime  Timestamp of the last point in that block.
+     * @param previousValue Value of the last point in that block.
+     * @param next          The encoded block to append.
+     * @param nextBaseTime  The timestamp the first delta of the appended block is relative to.
+     * @return The encoded block holding the points of both blocks.
+     */
+    public static byte[] concat(byte[] data, long previousTime, long previousValue, byte[] next, long nextBaseTime) {
+        int[] position = {0};
+        long timestamp = nextBaseTime + unzigzag(readVarLong(next, position));
+        long value = unzigzag(readVarLong(next, position));
+        byte[] scratch = new byte[20];
+        int length = writeVarLong(scratch, 0, zigzag(timestamp - previousTime));
+        length = writeVarLong(scratch, length, zigzag(value - previousValue));
+        int rest = next.length - position[0];
+        byte[] result = Arrays.copyOf(data, data.length + length + rest);
+        System.arraycopy(scratch, 0, result, data.length, length);
+        System.arraycopy(next, position[0], result, data.length + length, rest);
+        return result;
+    }
+
+    /**
+     * Decodes all points of a block in order.
+     *
+     * @param data     The encoded block.
+     * @param baseTime The timestamp the first delta is relative to.
+     * @param consumer Receives every point.
+     */
+    public static void decode(byte[] data, long baseTime, PointConsumer consumer) {
+        long timestamp = baseTime;
+        long value = 0;
+        int position = 0;
+        while (position < data.length) {
+            long delta = 0;
+            int shift = 0;
+            byte current;
+            do {
+                current = data[position++];
+                delta |= (long) (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            timestamp += unzigzag(delta);
+
+            delta = 0;
+            shift = 0;
+            do {
+                current = data[position++];
+                delta |= (long) (current & 0x7F) << shift;
+                shift += 7;
+            } while ((current & 0x80) != 0);
+            value += unzigzag(delta);
+
+            consumer.accept(timestamp, value);
+        }
+    }
+
+    private static long readVarLong(byte[] source, int[] position) {
+        long result = 0;
+        int shift = 0;
+        byte current;
+        do {
+            current = source[position[0]++];
+            result |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+        return result;
+    }
+
+    private static int writeVarLong(byte[] target, int position, long value) {
+        while ((value & ~0x7FL) != 0) {
+            target[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        target[position++] = (byte) value;
+        return position;
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.useraccountmanager.tools;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe Bloom filter of strings backed by an {@link AtomicLongArray}. A negative answer from
+ * {@link #mightContain(String)} is definite; a positive one is wrong with roughly the configured probability.
+ * Elements cannot be removed, so a filter is rebuilt from the source of truth when too many have gone away.
+ */
+public class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitSize;
+    private final int hashFunctions;
+
+    /**
+     * Creates a filter sized for the expected number of elements and the target false-positive probability.
+     *
+     * @param expectedInsertions Number of elements the filter is sized for.
+     * @param falsePositiveRate  Target false-positive probability at that size, between 0 and 1.
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions <= 0 || falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("Invalid Bloom filter size: " + expectedInsertions + ", " + falsePositiveRate);
+        }
+        long optimalBits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (optimalBits + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitSize = (long) words * 64;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    /**
+     * Adds an element.
+     *
+     * @param value The element to add.
+     */
+    public void put(String value) {
+        long hash = HashTools.hash64(value);
+        int low = (int) hash;
+        int high = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bit = Integer.toUnsignedLong(low + i * high) % bitSize;
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /**
+     * Checks whether an element may have been added.
+     *
+     * @param value The element to check.
+     * @return False if the element was definitely never added, true if it probably was.
+     */
+    public boolean mightContain(String value) {
+        long hash = HashTools.hash64(value);
+        int low = (int) hash;
+        int high = (int) (hash >>> 32);
+        for (int i = 1; i <= hashFunctions; i++) {
+            long bit = Integer.toUnsignedLong(low + i * high) % bitSize;
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Estimates the current false-positive probability from the share of set bits.
+     *
+     * @return The estimated probability that an absent element is reported as present.
+     */
+    public double expectedFalsePositiveRate() {
+        return Math.pow((double) bitCount() / bitSize, hashFunctions);
+    }
+
+    /**
+     * Estimates the number of distinct elements added, from the share of set bits.
+     *
+     * @return The estimated element count.
+     */
+    public long approximateElementCount() {
+        double fractionSet = (double) bitCount() / bitSize;
+        if (fractionSet >= 1) {
+            return Long.MAX_VALUE;
+        }
+        return Math.round(-Math.log1p(-fractionSet) * bitSize / hashFunctions);
+    }
+
+    public long bitCount() {
+        long count = 0;
+        for (int i = 0; i < bits.length(); i++) {
+            count += Long.bitCount(bits.get(i));
+        }
+        return count;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    public long memoryBytes() {
+        return bitSize / 8;
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.useraccountmanager.tools;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset pagination cursors. A cursor holds the sort values of the last returned row, joined and encoded as
+ * URL-safe base64, so clients pass it back unchanged to get the next page.
+ */
+public class CursorTools {
+
+    private static final String SEPARATOR = "|";
+
+    private CursorTools() {
+    }
+
+    public static String encode(String... parts) {
+        String joined = String.join(SEPARATOR, parts);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(joined.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor created by {@link #encode(String...)}.
+     *
+     * @param cursor The cursor sent by the client.
+     * @param parts  The number of parts the cursor must have.
+     * @return The parts, or null if the cursor is malformed.
+     */
+    public static String[] decode(String cursor, int parts) {
+        try {
+            String joined = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] decoded = joined.split("\\|", -1);
+            return decoded.length == parts ? decoded : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -8,4 +8,10 @@ public class ErrorMessage {
     public static final String ALREADY_EXIST = "Already exist.";
     public static final String NOT_FOUND = "Resource not found.";
     public static final String DELETE_CONSTRAINT = "Unable to delete the resource as it is currently being utilized in another part of the application.";
+    public static final String IDEMPOTENCY_KEY_REUSED = "Idempotency key was already used with a different request.";
+    public static final String VERIFICATION_RUNNING = "A verification run is already in progress.";
+    public static final String EXPORT_RUNNING = "An export is already in progress.";
+    public static final String RECONCILIATION_RUNNING = "A reconciliation run is already in progress.";
+    public static final String CURSOR_EXPIRED = "The position to resume from is no longer retained, reload the current state.";
+    public static final String PENDING_BALANCE_CHANGES = "Pending balance changes of the account could not be applied yet, try again later.";
 }
@@ -0,0 +1,36 @@
+package com.example.useraccountmanager.tools;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Fast non-cryptographic 64-bit hashes for in-memory hash structures.
+ */
+public class HashTools {
+
+    private HashTools() {
+    }
+
+    /**
+     * 64-bit FNV-1a over the UTF-8 bytes, finished with the MurmurHash3 mixer so both halves are well distributed.
+     */
+    public static long hash64(String value) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return mix64(hash);
+    }
+
+    /**
+     * MurmurHash3 finalizer, spreads every input bit over the whole result.
+     */
+    public static long mix64(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb93fe53a20b3L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
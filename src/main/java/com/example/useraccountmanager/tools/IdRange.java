@@ -0,0 +1,40 @@
+package com.example.useraccountmanager.tools;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of the UUID key space, used to split full-table jobs into partitions that can be processed in parallel.
+ * A range holds the IDs greater than {@code afterId} and less than {@code upperId}; a null upper bound means the
+ * range is open-ended.
+ *
+ * @param index   Position of the range, starting at 0.
+ * @param afterId Exclusive lower bound.
+ * @param upperId Exclusive upper bound, or null for the last range.
+ */
+public record IdRange(int index, String afterId, String upperId) {
+
+    /**
+     * Splits the key space by the leading hex digits of the ID. The first range also takes IDs sorting before its
+     * prefix and the last one everything after it, so together the ranges cover every ID exactly once.
+     *
+     * @param prefixLength Number of leading hex digits, giving 16^prefixLength ranges.
+     * @return The ranges in key order.
+     */
+    public static List<IdRange> partition(int prefixLength) {
+        if (prefixLength < 0 || prefixLength > 4) {
+            throw new IllegalArgumentException("Invalid prefix length: " + prefixLength);
+        }
+        int count = 1 << (4 * prefixLength);
+        List<IdRange> ranges = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ranges.add(new IdRange(i, i == 0 ? "" : prefixOf(i, prefixLength),
+                    i == count - 1 ? null : prefixOf(i + 1, prefixLength)));
+        }
+        return ranges;
+    }
+
+    private static String prefixOf(int value, int prefixLength) {
+        return String.format("%0" + prefixLength + "x", value);
+    }
+}
@@ -4,6 +4,10 @@ public class InfoMessage {
 
     public static final String SUCCESS = "Action completed successfully.";
     public static final String DELETED = "Resource deleted successfully.";
+    public static final String NOT_MODIFIED = "Nothing to change, the resource was not modified.";
+    public static final String EXPORT_EXISTS = "The export for this day already exists.";
+    public static final String PASSWORD_RESET_QUEUED = "If an account with this email exists, a password reset email is on its way.";
+    public static final String BALANCE_CHANGE_ACCEPTED = "The balance change is recorded and will be applied to the account shortly.";
 
 
 }
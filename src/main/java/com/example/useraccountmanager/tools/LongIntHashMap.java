@@ -0,0 +1,150 @@
+package com.example.useraccountmanager.tools;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from long keys to non-negative int values, stored in two primitive arrays with linear
+ * probing and backward-shift deletion, so it needs no boxing, no entry objects and no tombstones. Not thread-safe.
+ */
+public class LongIntHashMap {
+
+    public static final int MISSING = -1;
+
+    private static final double MAX_LOAD = 0.6;
+    private static final int FREE = -1;
+
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    /**
+     * @param expectedSize Number of entries the map is sized for without resizing.
+     */
+    public LongIntHashMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * @return The value of the key, or {@link #MISSING}.
+     */
+    public int get(long key) {
+        int slot = slotOf(key);
+        while (values[slot] != FREE) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    /**
+     * Sets the value of a key.
+     *
+     * @param key   The key.
+     * @param value The value, must not be negative.
+     * @return The previous value, or {@link #MISSING}.
+     */
+    public int put(long key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        int slot = slotOf(key);
+        while (values[slot] != FREE) {
+            if (keys[slot] == key) {
+                int previous = values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > MAX_LOAD * keys.length) {
+            resize(keys.length * 2);
+        }
+        return MISSING;
+    }
+
+    /**
+     * Removes a key.
+     *
+     * @return The removed value, or {@link #MISSING}.
+     */
+    public int remove(long key) {
+        int slot = slotOf(key);
+        while (values[slot] != FREE) {
+            if (keys[slot] == key) {
+                int removed = values[slot];
+                shiftBack(slot);
+                size--;
+                return removed;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long memoryBytes() {
+        return (long) keys.length * (Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * Closes the gap left by a removed entry by moving back later entries of the same probe run that would otherwise
+     * no longer be found.
+     */
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            if (values[slot] == FREE) {
+                break;
+            }
+            int home = slotOf(keys[slot]);
+            // Move the entry if its home slot is not between the gap and its current slot, cyclically
+            if (((slot - home) & mask) >= ((slot - gap) & mask)) {
+                keys[gap] = keys[slot];
+                values[gap] = values[slot];
+                gap = slot;
+            }
+        }
+        values[gap] = FREE;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != FREE) {
+                int slot = slotOf(oldKeys[i]);
+                while (values[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, FREE);
+        mask = capacity - 1;
+    }
+
+    private int slotOf(long key) {
+        return (int) HashTools.mix64(key) & mask;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 8) / MAX_LOAD);
+        return (int) Math.min(1 << 30, Long.highestOneBit(needed - 1) << 1);
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.useraccountmanager.tools;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A point-in-time snapshot of keyed, versioned payloads in a single file, written and read through a memory mapping.
+ * <p>
+ * The file is {@code [magic][schema][count][crc32]} followed by the entries, each stored as
+ * {@code [key][subKey][version][length][payload]} with length-prefixed UTF-8 keys. The schema is a fingerprint the
+ * writer chooses for the payload format, so a snapshot written by a different build is ignored instead of decoded.
+ * A snapshot is written to a temporary file and moved over the previous one, so readers never see a partial file.
+ * <p>
+ * Reading only walks the entry headers: every payload is returned as a slice of the mapping and is paged in when the
+ * caller decodes it.
+ */
+public class MappedSnapshot {
+
+    private static final int MAGIC = 0x534e4150;
+    private static final int HEADER_BYTES = 4 + 8 + 4 + 8;
+    private static final int NO_SUB_KEY = -1;
+
+    private MappedSnapshot() {
+    }
+
+    /**
+     * @param key     Key of the entry.
+     * @param subKey  Key of the entry within its key, or null.
+     * @param version Version stamp the payload was taken at.
+     * @param payload The payload, read from its position to its limit.
+     */
+    public record Entry(String key, String subKey, long version, ByteBuffer payload) {
+    }
+
+    /**
+     * Writes the entries to the file, replacing a previous snapshot.
+     *
+     * @param file    The snapshot file.
+     * @param schema  Fingerprint of the payload format.
+     * @param entries The entries, written in order.
+     */
+    public static void write(Path file, long schema, List<Entry> entries) throws IOException {
+        List<byte[]> keys = new ArrayList<>(entries.size() * 2);
+        long size = HEADER_BYTES;
+        for (Entry entry : entries) {
+            byte[] key = entry.key().getBytes(StandardCharsets.UTF_8);
+            byte[] subKey = entry.subKey() == null ? null : entry.subKey().getBytes(StandardCharsets.UTF_8);
+            keys.add(key);
+            keys.add(subKey);
+            size += 4 + key.length + 4 + (subKey == null ? 0 : subKey.length) + 8 + 4 + entry.payload().remaining();
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Snapshot of " + size + " bytes exceeds the size of one mapping");
+        }
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.position(HEADER_BYTES);
+            for (int i = 0; i < entries.size(); i++) {
+                Entry entry = entries.get(i);
+                putBytes(buffer, keys.get(2 * i));
+                putBytes(buffer, keys.get(2 * i + 1));
+                buffer.putLong(entry.version());
+                buffer.putInt(entry.payload().remaining());
+                buffer.put(entry.payload().duplicate());
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.slice(HEADER_BYTES, (int) size - HEADER_BYTES));
+            buffer.putInt(0, MAGIC).putLong(4, schema).putInt(12, entries.size()).putLong(16, crc.getValue());
+            buffer.force();
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps a snapshot and reads its entry headers.
+     *
+     * @param file   The snapshot file.
+     * @param schema Fingerprint of the payload format the caller decodes.
+     * @return The entries with their payloads as read-only slices of the mapping, or an empty list if the file does
+     * not exist or was written with another schema.
+     * @throws IOException If the file cannot be read or is corrupt.
+     */
+    public static List<Entry> read(Path file, long schema) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return List.of();
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot " + file + " has an invalid size of " + size + " bytes");
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException("File " + file + " is not a snapshot");
+        }
+        if (buffer.getLong(4) != schema) {
+            return List.of();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(HEADER_BYTES, buffer.limit() - HEADER_BYTES));
+        if (crc.getValue() != buffer.getLong(16)) {
+            throw new IOException("Snapshot " + file + " is corrupt");
+        }
+
+        int count = buffer.getInt(12);
+        List<Entry> entries = new ArrayList<>(count);
+        buffer.position(HEADER_BYTES);
+        try {
+            for (int i = 0; i < count; i++) {
+                String key = getString(buffer);
+                String subKey = getString(buffer);
+                long version = buffer.getLong();
+                int length = buffer.getInt();
+                entries.add(new Entry(key, subKey, version, buffer.slice(buffer.position(), length).asReadOnlyBuffer()));
+                buffer.position(buffer.position() + length);
+            }
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Snapshot " + file + " is truncated", e);
+        }
+        return entries;
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(NO_SUB_KEY);
+        } else {
+            buffer.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NO_SUB_KEY) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,231 @@
+package com.example.useraccountmanager.tools;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.deser.std.StdScalarDeserializer;
+import com.fasterxml.jackson.databind.ser.std.StdScalarSerializer;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * An amount of money as a fixed-point number of minor units with the currency scale of {@link #SCALE} digits,
+ * matching the {@code DECIMAL(18,2)} balance columns. Comparison, equality and arithmetic work on the raw long, so
+ * two amounts are equal whenever they are numerically equal, and {@link #minorUnits()} gives aggregates a primitive
+ * to accumulate on without creating an instance per step.
+ * <p>
+ * Amounts are exact: parsing rejects more fraction digits than the scale and values outside the column precision
+ * instead of rounding them. In JSON an amount is written as a number with exactly {@link #SCALE} fraction digits.
+ */
+@JsonSerialize(using = Money.Serializer.class)
+@JsonDeserialize(using = Money.Deserializer.class)
+public final class Money implements Comparable<Money>, Serializable {
+
+    public static final int SCALE = 2;
+    public static final int PRECISION = 18;
+    public static final long MAX_MINOR_UNITS = 999_999_999_999_999_999L;
+
+    private static final long MINOR_PER_MAJOR = 100;
+
+    public static final Money ZERO = new Money(0);
+
+    private final long minorUnits;
+
+    private Money(long minorUnits) {
+        this.minorUnits = minorUnits;
+    }
+
+    /**
+     * @param minorUnits The amount in minor units, e.g. cents.
+     * @throws ArithmeticException If the amount does not fit the column precision.
+     */
+    public static Money ofMinorUnits(long minorUnits) {
+        return minorUnits == 0 ? ZERO : new Money(checkRange(minorUnits));
+    }
+
+    /**
+     * Converts a decimal without rounding.
+     *
+     * @throws ArithmeticException If the value has more fraction digits than the scale or does not fit the column
+     *                             precision.
+     */
+    public static Money of(BigDecimal value) {
+        return ofMinorUnits(value.movePointRight(SCALE).longValueExact());
+    }
+
+    /**
+     * Parses a plain decimal such as {@code -12.5} or {@code 1000.00}. Trailing zeros beyond the scale are accepted,
+     * other digits beyond it are not. Exponent notation falls back to {@link BigDecimal}.
+     *
+     * @throws NumberFormatException If the text is not a decimal number.
+     * @throws ArithmeticException   If the value is not exact at the scale or does not fit the column precision.
+     */
+    public static Money parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = false;
+        if (length > 0 && (text.charAt(0) == '-' || text.charAt(0) == '+')) {
+            negative = text.charAt(0) == '-';
+            i++;
+        }
+        long major = 0;
+        int majorDigits = 0;
+        for (; i < length && isDigit(text.charAt(i)); i++, majorDigits++) {
+            major = major * 10 + (text.charAt(i) - '0');
+            if (major > MAX_MINOR_UNITS / MINOR_PER_MAJOR) {
+                throw new ArithmeticException("Amount out of range: " + text);
+            }
+        }
+        long minor = 0;
+        int fractionDigits = 0;
+        if (i < length && text.charAt(i) == '.') {
+            for (i++; i < length && isDigit(text.charAt(i)); i++, fractionDigits++) {
+                int digit = text.charAt(i) - '0';
+                if (fractionDigits < SCALE) {
+                    minor = minor * 10 + digit;
+                } else if (digit != 0) {
+                    throw new ArithmeticException("Amount has more than " + SCALE + " fraction digits: " + text);
+                }
+            }
+        }
+        if (i < length && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            return of(new BigDecimal(text.toString()));
+        }
+        if (i != length || majorDigits + fractionDigits == 0) {
+            throw new NumberFormatException("Not a decimal amount: " + text);
+        }
+        for (int digits = Math.min(fractionDigits, SCALE); digits < SCALE; digits++) {
+            minor *= 10;
+        }
+        long minorUnits = major * MINOR_PER_MAJOR + minor;
+        return ofMinorUnits(negative ? -minorUnits : minorUnits);
+    }
+
+    public long minorUnits() {
+        return minorUnits;
+    }
+
+    public boolean isZero() {
+        return minorUnits == 0;
+    }
+
+    public boolean isNegative() {
+        return minorUnits < 0;
+    }
+
+    /**
+     * @throws ArithmeticException If the result does not fit the column precision.
+     */
+    public Money plus(Money other) {
+        return other.minorUnits == 0 ? this : ofMinorUnits(Math.addExact(minorUnits, other.minorUnits));
+    }
+
+    /**
+     * @throws ArithmeticException If the result does not fit the column precision.
+     */
+    public Money minus(Money other) {
+        return other.minorUnits == 0 ? this : ofMinorUnits(Math.subtractExact(minorUnits, other.minorUnits));
+    }
+
+    public Money negate() {
+        return ofMinorUnits(-minorUnits);
+    }
+
+    public BigDecimal toBigDecimal() {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+
+    /**
+     * Appends the amount as a plain decimal with exactly {@link #SCALE} fraction digits.
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        long units = minorUnits;
+        if (units < 0) {
+            builder.append('-');
+            units = -units;
+        }
+        long minor = units % MINOR_PER_MAJOR;
+        builder.append(units / MINOR_PER_MAJOR).append('.');
+        if (minor < 10) {
+            builder.append('0');
+        }
+        return builder.append(minor);
+    }
+
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(24)).toString();
+    }
+
+    @Override
+    public int compareTo(Money other) {
+        return Long.compare(minorUnits, other.minorUnits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof Money money && minorUnits == money.minorUnits;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(minorUnits);
+    }
+
+    private static long checkRange(long minorUnits) {
+        if (minorUnits > MAX_MINOR_UNITS || minorUnits < -MAX_MINOR_UNITS) {
+            throw new ArithmeticException("Amount out of range: " + minorUnits + " minor units");
+        }
+        return minorUnits;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Writes the amount as a JSON number with its exact decimal digits.
+     */
+    public static class Serializer extends StdScalarSerializer<Money> {
+
+        public Serializer() {
+            super(Money.class);
+        }
+
+        @Override
+        public void serialize(Money value, JsonGenerator generator, SerializerProvider provider) throws IOException {
+            generator.writeNumber(value.toString());
+        }
+    }
+
+    /**
+     * Reads an amount from a JSON number or string from its original text, so it never passes through a double.
+     */
+    public static class Deserializer extends StdScalarDeserializer<Money> {
+
+        public Deserializer() {
+            super(Money.class);
+        }
+
+        @Override
+        public Money deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+            JsonToken token = parser.currentToken();
+            if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT
+                    && token != JsonToken.VALUE_STRING) {
+                return (Money) context.handleUnexpectedToken(Money.class, parser);
+            }
+            String text = parser.getText().trim();
+            try {
+                return parse(text);
+            } catch (ArithmeticException | NumberFormatException e) {
+                return (Money) context.handleWeirdStringValue(Money.class, text, e.getMessage());
+            }
+        }
+    }
+}
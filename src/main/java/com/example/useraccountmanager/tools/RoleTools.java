@@ -1,30 +1,53 @@
 package com.example.useraccountmanager.tools;
 
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.oauth2.jwt.Jwt;
 
 import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Role checks for controllers. Roles are resolved once per request from the user directory when the token is
+ * authenticated (see {@code DirectoryRoleConverter}) and granted as {@code ROLE_} authorities, so a check only looks
+ * at the authorities of the current authentication.
+ */
 public class RoleTools {
 
+    public static final String ROLE_PREFIX = "ROLE_";
+
     public static Boolean hasAccess(Jwt jwt, ArrayList<String> roles) {
-        try {
-            List<String> userRoles = jwt.getClaim("roles");
-            return userRoles.stream().anyMatch(roles::contains);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
+        return getRoles(jwt).stream().anyMatch(roles::contains);
     }
 
 
     public static Boolean hasAccess(Jwt jwt, String role) {
-        try {
-            List<String> userRoles = jwt.getClaim("roles");
-            return userRoles.stream().anyMatch(role::equals);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
+        return getRoles(jwt).contains(role);
+    }
+
+    /**
+     * Returns the roles granted to the given token in the current request.
+     *
+     * @param jwt The token of the current request.
+     * @return The role names, empty if the token is not the one authenticated for the current request.
+     */
+    public static List<String> getRoles(Jwt jwt) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (jwt == null || authentication == null || authentication.getPrincipal() != jwt) {
+            return List.of();
+        }
+        return getRoles(authentication);
+    }
+
+    public static List<String> getRoles(Authentication authentication) {
+        List<String> roles = new ArrayList<>();
+        for (GrantedAuthority authority : authentication.getAuthorities()) {
+            String name = authority.getAuthority();
+            if (name != null && name.startsWith(ROLE_PREFIX)) {
+                roles.add(name.substring(ROLE_PREFIX.length()));
+            }
         }
+        return roles;
     }
 }
@@ -0,0 +1,355 @@
+package com.example.useraccountmanager.tools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only record log split into segment files, written sequentially through {@link FileChannel}.
+ * <p>
+ * Every record gets a monotonically increasing offset. Segments are named after the offset of their first record
+ * and each record is stored as {@code [length][crc32][payload]}, so a torn write at the tail is detected and cut off
+ * when the log is reopened. A segment is forced to disk before the next one is started, so only the last segment can
+ * have a torn tail; a shorter segment anywhere else would leave a hole in the offsets and fails the reopen. Readers use positional reads and only see records up to the last completed append,
+ * which lets one writer and any number of readers work on the log at the same time.
+ * <p>
+ * Consumers keep their position as named offsets stored next to the segments.
+ */
+public class SegmentedLog implements Closeable {
+
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String OFFSETS_DIRECTORY = "offsets";
+    private static final int HEADER_BYTES = 8;
+    private static final int INDEX_INTERVAL = 1024;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int retainedSegments;
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(1 << 20);
+
+    private volatile long nextOffset;
+    private Segment active;
+
+    /**
+     * Opens the log in the given directory, creating it if needed, rebuilding the segment indexes and cutting off a torn tail.
+     *
+     * @throws IOException If a segment other than the last one does not end at the base offset of the next segment.
+     *
+     * @param directory        Directory holding the segment files.
+     * @param segmentBytes     Size after which a new segment is started.
+     * @param retainedSegments Number of segments to keep, older segments are deleted when a new one is started.
+     */
+    public SegmentedLog(Path directory, long segmentBytes, int retainedSegments) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.retainedSegments = Math.max(1, retainedSegments);
+        Files.createDirectories(directory.resolve(OFFSETS_DIRECTORY));
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX)).toList()) {
+                String name = file.getFileName().toString();
+                long baseOffset = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+                segments.put(baseOffset, Segment.open(file, baseOffset));
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(0L, Segment.open(segmentPath(0L), 0L));
+        }
+        long recoveredOffset = segments.firstKey();
+        for (Segment segment : segments.values()) {
+            if (recoveredOffset != segment.baseOffset) {
+                throw new IOException("Segment before " + segment.path + " ends at offset " + recoveredOffset
+                        + ", records up to offset " + segment.baseOffset + " are missing");
+            }
+            recoveredOffset = segment.recover();
+        }
+        this.active = segments.lastEntry().getValue();
+        this.nextOffset = recoveredOffset;
+    }
+
+    /**
+     * Appends records in one sequential write per segment. The records are visible to readers once this returns,
+     * but are only guaranteed to be on disk after {@link #flush()}.
+     *
+     * @param records Payloads to append.
+     * @return Offset assigned to the first record.
+     */
+    public synchronized long append(List<byte[]> records) throws IOException {
+        long firstOffset = nextOffset;
+        for (byte[] record : records) {
+            if (active.size + writeBuffer.position() >= segmentBytes) {
+                writeBuffered();
+                roll();
+            }
+            if (writeBuffer.remaining() < HEADER_BYTES + record.length) {
+                writeBuffered();
+            }
+            active.indexIfNeeded(nextOffset, active.size + writeBuffer.position());
+            if (writeBuffer.capacity() < HEADER_BYTES + record.length) {
+                active.write(encode(record));
+            } else {
+                writeBuffer.put(encode(record));
+            }
+            nextOffset++;
+        }
+        writeBuffered();
+        return firstOffset;
+    }
+
+    public long append(byte[] record) throws IOException {
+        return append(List.of(record));
+    }
+
+    /**
+     * Forces appended records to disk. Segments started by earlier appends were forced when the next one was started.
+     */
+    public synchronized void flush() throws IOException {
+        active.channel.force(false);
+    }
+
+    /**
+     * Reads records starting at the given offset.
+     *
+     * @param fromOffset Offset of the first record to read.
+     * @param maxRecords Maximum number of records to return.
+     * @return Records in offset order, empty if there is nothing at or after the offset.
+     */
+    public List<Entry> read(long fromOffset, int maxRecords) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        long offset = Math.max(fromOffset, firstOffset());
+        long end = nextOffset;
+        while (entries.size() < maxRecords && offset < end) {
+            Map.Entry<Long, Segment> floor = segments.floorEntry(offset);
+            if (floor == null) {
+                break;
+            }
+            Segment segment = floor.getValue();
+            int before = entries.size();
+            segment.read(offset, maxRecords - entries.size(), entries);
+            if (entries.size() == before) {
+                // Nothing left in this segment, continue with the next one
+                Long next = segments.higherKey(floor.getKey());
+                if (next == null) {
+                    break;
+                }
+                offset = next;
+            } else {
+                offset = entries.get(entries.size() - 1).offset() + 1;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return Offset the next appended record will get.
+     */
+    public long nextOffset() {
+        return nextOffset;
+    }
+
+    /**
+     * @return Offset of the oldest record still retained.
+     */
+    public long firstOffset() {
+        return segments.firstKey();
+    }
+
+    /**
+     * Stores the position of a consumer. The file is replaced atomically so a crash never leaves a partial offset.
+     *
+     * @param consumer Name of the consumer.
+     * @param offset   Offset of the next record the consumer wants to read.
+     */
+    public void commitOffset(String consumer, long offset) throws IOException {
+        Path target = offsetPath(consumer);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        Files.writeString(temporary, Long.toString(offset), StandardCharsets.US_ASCII);
+        Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param consumer Name of the consumer.
+     * @return The committed offset of the consumer, or empty if it never committed one.
+     */
+    public OptionalLong committedOffset(String consumer) throws IOException {
+        Path path = offsetPath(consumer);
+        if (!Files.exists(path)) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(Long.parseLong(Files.readString(path, StandardCharsets.US_ASCII).trim()));
+    }
+
+    /**
+     * Deletes the segments holding only records before the given offset, for logs whose records are consumed by
+     * position rather than aged out by segment count. The active segment is always kept.
+     *
+     * @param offset Offset of the oldest record that must be kept.
+     */
+    public synchronized void deleteBefore(long offset) throws IOException {
+        while (segments.size() > 1) {
+            Map.Entry<Long, Segment> oldest = segments.firstEntry();
+            Long nextBaseOffset = segments.higherKey(oldest.getKey());
+            if (nextBaseOffset == null || nextBaseOffset > offset) {
+                return;
+            }
+            segments.remove(oldest.getKey());
+            oldest.getValue().channel.close();
+            Files.deleteIfExists(oldest.getValue().path);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        for (Segment segment : segments.values()) {
+            segment.channel.close();
+        }
+    }
+
+    private void writeBuffered() throws IOException {
+        writeBuffer.flip();
+        if (writeBuffer.hasRemaining()) {
+            active.write(writeBuffer);
+        }
+        writeBuffer.clear();
+    }
+
+    private void roll() throws IOException {
+        // flush() only forces the active segment, so the records written to this one must reach the disk now
+        active.channel.force(false);
+        active = Segment.open(segmentPath(nextOffset), nextOffset);
+        segments.put(nextOffset, active);
+        while (segments.size() > retainedSegments) {
+            Segment oldest = segments.pollFirstEntry().getValue();
+            oldest.channel.close();
+            Files.deleteIfExists(oldest.path);
+        }
+    }
+
+    private static ByteBuffer encode(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + record.length);
+        buffer.putInt(record.length).putInt((int) crc.getValue()).put(record).flip();
+        return buffer;
+    }
+
+    private Path segmentPath(long baseOffset) {
+        return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+    }
+
+    private Path offsetPath(String consumer) {
+        if (!consumer.matches("[A-Za-z0-9._-]+")) {
+            throw new IllegalArgumentException("Invalid consumer name: " + consumer);
+        }
+        return directory.resolve(OFFSETS_DIRECTORY).resolve(consumer);
+    }
+
+    /**
+     * A record together with its offset.
+     */
+    public record Entry(long offset, byte[] payload) {
+    }
+
+    private static final class Segment {
+
+        private final Path path;
+        private final long baseOffset;
+        private final FileChannel channel;
+        // Sparse index from record offset to file position, one entry every INDEX_INTERVAL records
+        private final ConcurrentSkipListMap<Long, Long> index = new ConcurrentSkipListMap<>();
+        private volatile long size;
+
+        private Segment(Path path, long baseOffset, FileChannel channel) {
+            this.path = path;
+            this.baseOffset = baseOffset;
+            this.channel = channel;
+        }
+
+        static Segment open(Path path, long baseOffset) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segment segment = new Segment(path, baseOffset, channel);
+            segment.size = channel.size();
+            return segment;
+        }
+
+        /**
+         * Scans the segment, rebuilds the sparse index and cuts off a torn tail.
+         *
+         * @return Offset following the last valid record.
+         */
+        long recover() throws IOException {
+            long position = 0;
+            long offset = baseOffset;
+            long fileSize = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (position + HEADER_BYTES <= fileSize) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                int length = header.getInt();
+                int checksum = header.getInt();
+                if (length < 0 || position + HEADER_BYTES + length > fileSize) {
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                channel.read(payload, position + HEADER_BYTES);
+                CRC32 crc = new CRC32();
+                crc.update(payload.array());
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                indexIfNeeded(offset, position);
+                position += HEADER_BYTES + length;
+                offset++;
+            }
+            channel.truncate(position);
+            size = position;
+            return offset;
+        }
+
+        void indexIfNeeded(long offset, long position) {
+            if ((offset - baseOffset) % INDEX_INTERVAL == 0) {
+                index.put(offset, position);
+            }
+        }
+
+        void write(ByteBuffer buffer) throws IOException {
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            size = position;
+        }
+
+        void read(long fromOffset, int maxRecords, List<Entry> entries) throws IOException {
+            Map.Entry<Long, Long> start = index.floorEntry(fromOffset);
+            long offset = start == null ? baseOffset : start.getKey();
+            long position = start == null ? 0 : start.getValue();
+            long limit = size;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            int read = 0;
+            while (read < maxRecords && position + HEADER_BYTES <= limit) {
+                header.clear();
+                channel.read(header, position);
+                header.flip();
+                int length = header.getInt();
+                header.getInt();
+                if (offset >= fromOffset) {
+                    ByteBuffer payload = ByteBuffer.allocate(length);
+                    channel.read(payload, position + HEADER_BYTES);
+                    entries.add(new Entry(offset, payload.array()));
+                    read++;
+                }
+                position += HEADER_BYTES + length;
+                offset++;
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.useraccountmanager.tools;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller runs the loader and every caller arriving while it
+ * runs waits for that one result instead of starting its own load. Nothing is cached; once the load completes the
+ * next caller starts a new one.
+ * <p>
+ * Keeps totals and per-key counts of loads, coalesced callers and the time they waited. Per-key counts are kept for
+ * at most {@code maxTrackedKeys} keys, further keys only count towards the totals.
+ *
+ * @param <K> Key type.
+ * @param <V> Result type; the same instance is handed to every coalesced caller, so it must not be modified.
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, KeyCounters> keyCounters = new ConcurrentHashMap<>();
+    private final int maxTrackedKeys;
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param maxTrackedKeys Maximum number of keys to keep per-key counts for.
+     */
+    public SingleFlight(int maxTrackedKeys) {
+        this.maxTrackedKeys = maxTrackedKeys;
+    }
+
+    /**
+     * Returns the result of the load in flight for the key, or runs the loader if there is none.
+     *
+     * @param key    The key being loaded.
+     * @param loader Loads the result; runs on the calling thread of the first caller.
+     * @return The result shared by all callers of the same flight.
+     */
+    public V execute(K key, Supplier<V> loader) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+        KeyCounters counters = countersOf(key);
+        if (existing == null) {
+            loads.increment();
+            if (counters != null) {
+                counters.loads.increment();
+            }
+            try {
+                V result = loader.get();
+                flight.complete(result);
+                return result;
+            } catch (RuntimeException | Error e) {
+                flight.completeExceptionally(e);
+                throw e;
+            } finally {
+                inFlight.remove(key, flight);
+            }
+        }
+
+        long startedAt = System.nanoTime();
+        try {
+            return existing.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        } finally {
+            long waited = System.nanoTime() - startedAt;
+            coalesced.increment();
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+            if (counters != null) {
+                counters.record(waited);
+            }
+        }
+    }
+
+    public long loads() {
+        return loads.sum();
+    }
+
+    public long coalesced() {
+        return coalesced.sum();
+    }
+
+    public long waitNanos() {
+        return waitNanos.sum();
+    }
+
+    public long maxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    public int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Returns the tracked keys with the most coalesced callers.
+     *
+     * @param limit Maximum number of keys to return.
+     * @return Per-key counts, most coalesced first.
+     */
+    public List<KeyStats<K>> topKeys(int limit) {
+        return keyCounters.entrySet().stream()
+                .map(entry -> entry.getValue().snapshot(entry.getKey()))
+                .filter(stats -> stats.coalesced() > 0)
+                .sorted(Comparator.comparingLong(KeyStats<K>::coalesced).reversed())
+                .limit(limit)
+                .toList();
+    }
+
+    private KeyCounters countersOf(K key) {
+        KeyCounters counters = keyCounters.get(key);
+        if (counters == null && keyCounters.size() < maxTrackedKeys) {
+            counters = keyCounters.computeIfAbsent(key, k -> new KeyCounters());
+        }
+        return counters;
+    }
+
+    /**
+     * Counts of one key.
+     *
+     * @param key          The key.
+     * @param loads        Number of loads run for the key.
+     * @param coalesced    Number of callers that waited for a load of another caller.
+     * @param waitNanos    Total time the coalesced callers waited.
+     * @param maxWaitNanos Longest time one coalesced caller waited.
+     */
+    public record KeyStats<K>(K key, long loads, long coalesced, long waitNanos, long maxWaitNanos) {
+    }
+
+    private static final class KeyCounters {
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder waitNanos = new LongAdder();
+        private final AtomicLong maxWaitNanos = new AtomicLong();
+
+        private void record(long waited) {
+            coalesced.increment();
+            waitNanos.add(waited);
+            maxWaitNanos.accumulateAndGet(waited, Math::max);
+        }
+
+        private <K> KeyStats<K> snapshot(K key) {
+            return new KeyStats<>(key, loads.sum(), coalesced.sum(), waitNanos.sum(), maxWaitNanos.get());
+        }
+    }
+}
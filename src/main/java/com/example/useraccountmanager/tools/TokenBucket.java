@@ -0,0 +1,84 @@
+package com.example.useraccountmanager.tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket. Instead of a token count and a refill timestamp the bucket keeps a single
+ * "theoretical arrival time" (the generic cell rate algorithm), so every acquire is one CAS on one long
+ * and concurrent callers never block each other.
+ */
+public class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param capacity        Maximum number of tokens that can be taken in a burst.
+     * @param refillPerSecond Number of tokens added back per second.
+     */
+    public TokenBucket(long capacity, double refillPerSecond) {
+        if (capacity <= 0 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive");
+        }
+        this.nanosPerToken = Math.max(1L, (long) (TimeUnit.SECONDS.toNanos(1) / refillPerSecond));
+        this.burstNanos = nanosPerToken * capacity;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Takes the given number of tokens if they are available.
+     *
+     * @param permits Number of tokens to take.
+     * @return True if the tokens were taken, false if the bucket does not hold enough tokens.
+     */
+    public boolean tryAcquire(int permits) {
+        long now = System.nanoTime();
+        long cost = nanosPerToken * permits;
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long next = Math.max(tat, now) + cost;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Takes the given number of tokens, sleeping until they become available.
+     *
+     * @param permits Number of tokens to take.
+     */
+    public void acquire(int permits) throws InterruptedException {
+        if (nanosPerToken * permits > burstNanos) {
+            throw new IllegalArgumentException("Permits exceed bucket capacity");
+        }
+        while (!tryAcquire(permits)) {
+            TimeUnit.NANOSECONDS.sleep(Math.max(nanosUntilAvailable(permits), TimeUnit.MILLISECONDS.toNanos(1)));
+        }
+    }
+
+    /**
+     * @return Nanoseconds until the given number of tokens can be taken, zero if they can be taken now.
+     */
+    public long nanosUntilAvailable(int permits) {
+        long now = System.nanoTime();
+        long next = Math.max(theoreticalArrival.get(), now) + nanosPerToken * permits;
+        return Math.max(0L, next - now - burstNanos);
+    }
+
+    /**
+     * @return True if the bucket is full again, meaning it can be dropped without changing behaviour.
+     */
+    public boolean isIdle() {
+        return theoreticalArrival.get() - System.nanoTime() <= 0;
+    }
+}
@@ -0,0 +1,244 @@
+package com.example.useraccountmanager.tools;
+
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Compact in-memory directory resolving a user's email or Firebase UID to the user ID, status and role.
+ * <p>
+ * Entries live in parallel primitive arrays: the ID as its two UUID halves, the 64-bit hashes of the email and the
+ * Firebase UID, and the status and role ordinals, about 34 bytes per user. Three {@link LongIntHashMap}s index the entries by
+ * the hash of the ID, the email and the Firebase UID. No strings are kept, so a lookup can in theory return another
+ * user whose key has the same 64-bit hash; callers needing certainty compare the key on the loaded user. IDs that are
+ * not canonical UUIDs cannot be stored and are reported as not present.
+ */
+public class UserDirectory {
+
+    /**
+     * A directory hit.
+     *
+     * @param userId The ID of the user.
+     * @param status The status of the user, or null if it has none.
+     * @param role   The role of the user, or null if it has none.
+     */
+    public record Entry(String userId, UserStatusEnum status, UserRoleEnum role) {
+    }
+
+    private static final byte NONE = -1;
+    private static final UserStatusEnum[] STATUSES = UserStatusEnum.values();
+    private static final UserRoleEnum[] ROLES = UserRoleEnum.values();
+
+    private final StampedLock lock = new StampedLock();
+    private final LongIntHashMap byId;
+    private final LongIntHashMap byEmail;
+    private final LongIntHashMap byFirebaseUid;
+
+    private long[] idHigh;
+    private long[] idLow;
+    private long[] emailHash;
+    private long[] firebaseUidHash;
+    private byte[] status;
+    private byte[] role;
+    private int[] freeEntries = new int[16];
+    private int freeCount;
+    private int entryCount;
+
+    /**
+     * @param expectedUsers Number of users the directory is sized for without resizing.
+     */
+    public UserDirectory(int expectedUsers) {
+        int capacity = Math.max(16, expectedUsers);
+        byId = new LongIntHashMap(capacity);
+        byEmail = new LongIntHashMap(capacity);
+        byFirebaseUid = new LongIntHashMap(capacity);
+        idHigh = new long[capacity];
+        idLow = new long[capacity];
+        emailHash = new long[capacity];
+        firebaseUidHash = new long[capacity];
+        status = new byte[capacity];
+        role = new byte[capacity];
+    }
+
+    /**
+     * Adds a user or replaces its email, Firebase UID, status and role.
+     *
+     * @return False if the ID is not a canonical UUID and the user was not stored.
+     */
+    public boolean put(String userId, String email, String firebaseUid, UserStatusEnum userStatus, UserRoleEnum userRole) {
+        UUID uuid = parseId(userId);
+        if (uuid == null) {
+            return false;
+        }
+        long newEmailHash = email != null ? emailHashOf(email) : 0;
+        long newFirebaseUidHash = firebaseUid != null ? HashTools.hash64(firebaseUid) : 0;
+        long stamp = lock.writeLock();
+        try {
+            int entry = byId.get(idKey(uuid));
+            if (entry == LongIntHashMap.MISSING) {
+                entry = allocateEntry();
+                byId.put(idKey(uuid), entry);
+            } else {
+                unindex(byEmail, emailHash[entry], entry);
+                unindex(byFirebaseUid, firebaseUidHash[entry], entry);
+            }
+            idHigh[entry] = uuid.getMostSignificantBits();
+            idLow[entry] = uuid.getLeastSignificantBits();
+            emailHash[entry] = newEmailHash;
+            firebaseUidHash[entry] = newFirebaseUidHash;
+            status[entry] = userStatus != null ? (byte) userStatus.ordinal() : NONE;
+            role[entry] = userRole != null ? (byte) userRole.ordinal() : NONE;
+            if (email != null) {
+                byEmail.put(newEmailHash, entry);
+            }
+            if (firebaseUid != null) {
+                byFirebaseUid.put(newFirebaseUidHash, entry);
+            }
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes a user.
+     */
+    public void remove(String userId) {
+        UUID uuid = parseId(userId);
+        if (uuid == null) {
+            return;
+        }
+        long stamp = lock.writeLock();
+        try {
+            int entry = byId.remove(idKey(uuid));
+            if (entry != LongIntHashMap.MISSING) {
+                unindex(byEmail, emailHash[entry], entry);
+                unindex(byFirebaseUid, firebaseUidHash[entry], entry);
+                freeEntry(entry);
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return The user with the email, compared case-insensitively, or null.
+     */
+    public Entry findByEmail(String email) {
+        return email == null ? null : find(byEmail, emailHashOf(email));
+    }
+
+    /**
+     * @return The user with the Firebase UID, or null.
+     */
+    public Entry findByFirebaseUid(String firebaseUid) {
+        return firebaseUid == null ? null : find(byFirebaseUid, HashTools.hash64(firebaseUid));
+    }
+
+    /**
+     * @return The user with the ID, or null.
+     */
+    public Entry findById(String userId) {
+        UUID uuid = parseId(userId);
+        return uuid == null ? null : find(byId, idKey(uuid));
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return byId.size();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public long memoryBytes() {
+        long stamp = lock.readLock();
+        try {
+            return byId.memoryBytes() + byEmail.memoryBytes() + byFirebaseUid.memoryBytes()
+                    + (long) idHigh.length * (4 * Long.BYTES + 2) + (long) freeEntries.length * Integer.BYTES;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private Entry find(LongIntHashMap index, long key) {
+        long high;
+        long low;
+        byte userStatus;
+        byte userRole;
+        long stamp = lock.readLock();
+        try {
+            int entry = index.get(key);
+            if (entry == LongIntHashMap.MISSING) {
+                return null;
+            }
+            high = idHigh[entry];
+            low = idLow[entry];
+            userStatus = status[entry];
+            userRole = role[entry];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return new Entry(new UUID(high, low).toString(), userStatus == NONE ? null : STATUSES[userStatus],
+                userRole == NONE ? null : ROLES[userRole]);
+    }
+
+    /**
+     * Removes an index key only if it still points to the entry, as another user may have taken the key since.
+     */
+    private static void unindex(LongIntHashMap index, long key, int entry) {
+        if (index.get(key) == entry) {
+            index.remove(key);
+        }
+    }
+
+    private int allocateEntry() {
+        if (freeCount > 0) {
+            return freeEntries[--freeCount];
+        }
+        if (entryCount == idHigh.length) {
+            int capacity = idHigh.length + (idHigh.length >> 1);
+            idHigh = Arrays.copyOf(idHigh, capacity);
+            idLow = Arrays.copyOf(idLow, capacity);
+            emailHash = Arrays.copyOf(emailHash, capacity);
+            firebaseUidHash = Arrays.copyOf(firebaseUidHash, capacity);
+            status = Arrays.copyOf(status, capacity);
+            role = Arrays.copyOf(role, capacity);
+        }
+        return entryCount++;
+    }
+
+    private void freeEntry(int entry) {
+        if (freeCount == freeEntries.length) {
+            freeEntries = Arrays.copyOf(freeEntries, freeEntries.length * 2);
+        }
+        freeEntries[freeCount++] = entry;
+    }
+
+    private static long idKey(UUID uuid) {
+        return uuid.getMostSignificantBits() ^ Long.rotateLeft(uuid.getLeastSignificantBits(), 32);
+    }
+
+    private static long emailHashOf(String email) {
+        return HashTools.hash64(email.trim().toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * @return The UUID if the ID is its canonical form, otherwise null as the ID could not be restored from it.
+     */
+    private static UUID parseId(String userId) {
+        if (userId == null || userId.length() != 36) {
+            return null;
+        }
+        try {
+            UUID uuid = UUID.fromString(userId);
+            return uuid.toString().equals(userId) ? uuid : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
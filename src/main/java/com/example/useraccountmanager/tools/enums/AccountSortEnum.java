@@ -0,0 +1,15 @@
+package com.example.useraccountmanager.tools.enums;
+
+public enum AccountSortEnum {
+    BALANCE("balance"), CREATED_AT("createdAt"), UPDATED_AT("updatedAt");
+
+    private final String property;
+
+    AccountSortEnum(String property) {
+        this.property = property;
+    }
+
+    public String getProperty() {
+        return property;
+    }
+}
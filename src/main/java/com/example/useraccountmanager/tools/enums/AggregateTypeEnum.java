@@ -0,0 +1,5 @@
+package com.example.useraccountmanager.tools.enums;
+
+public enum AggregateTypeEnum {
+    USER, ACCOUNT
+}
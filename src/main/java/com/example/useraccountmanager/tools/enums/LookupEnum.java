@@ -0,0 +1,5 @@
+package com.example.useraccountmanager.tools.enums;
+
+public enum LookupEnum {
+    USER, ACCOUNT, ACCOUNTS_OF_USER
+}
@@ -0,0 +1,5 @@
+package com.example.useraccountmanager.tools.enums;
+
+public enum ReconciliationIssueEnum {
+    MISSING_IN_DATABASE, MISSING_IN_FIREBASE, UNLINKED, STATUS_MISMATCH, CLAIMS_MISMATCH
+}
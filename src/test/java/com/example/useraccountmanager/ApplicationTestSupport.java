@@ -0,0 +1,86 @@
+package com.example.useraccountmanager;
+
+import com.example.useraccountmanager.sharding.ShardContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.function.Supplier;
+
+/**
+ * Base class of the tests that start the whole application against embedded H2 databases (see
+ * {@code application-test.properties}) and {@link FakeFirebaseAuth}. Every test class gets its own context, so its
+ * databases and data directories start empty.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@DirtiesContext
+public abstract class ApplicationTestSupport {
+
+	protected static final FakeFirebaseAuth FIREBASE = FakeFirebaseAuth.start();
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@DynamicPropertySource
+	static void applicationProperties(DynamicPropertyRegistry registry) throws Exception {
+		registry.add("firebase.credentials-path", () -> FIREBASE.credentialsFile().toString());
+		Path publicKey = writePublicKey();
+		registry.add("spring.security.oauth2.resourceserver.jwt.public-key-location", () -> publicKey.toUri().toString());
+	}
+
+	/**
+	 * Runs a read the way a request does: in one session, which requests get from the open session in view, and with
+	 * the shard context cleared afterwards, which the shard context filter does for requests.
+	 */
+	protected <T> T inRequest(Supplier<T> read) {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		transactionTemplate.setReadOnly(true);
+		try {
+			return transactionTemplate.execute(status -> read.get());
+		} finally {
+			ShardContext.clear();
+		}
+	}
+
+	/**
+	 * Adds {@code count} embedded H2 databases as shards, named uniquely so that test classes do not share them.
+	 */
+	protected static void addShards(DynamicPropertyRegistry registry, int count) {
+		String prefix = "shard-" + Long.toHexString(System.nanoTime());
+		registry.add("sharding.enabled", () -> "true");
+		for (int shard = 0; shard < count; shard++) {
+			String url = "jdbc:h2:mem:" + prefix + "-" + shard + ";MODE=MSSQLServer;DB_CLOSE_DELAY=-1";
+			registry.add("sharding.shards[" + shard + "].url", () -> url);
+			registry.add("sharding.shards[" + shard + "].username", () -> "sa");
+			registry.add("sharding.shards[" + shard + "].password", () -> "");
+			registry.add("sharding.shards[" + shard + "].driver-class-name", () -> "org.h2.Driver");
+		}
+	}
+
+	/**
+	 * The resource server needs a key to start; the tests call the services directly and never present a token.
+	 */
+	private static Path writePublicKey() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		String pem = "-----BEGIN PUBLIC KEY-----\n"
+				+ Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII))
+				.encodeToString(generator.generateKeyPair().getPublic().getEncoded())
+				+ "\n-----END PUBLIC KEY-----\n";
+		Path file = Files.createTempFile("jwt", ".pem");
+		file.toFile().deleteOnExit();
+		Files.writeString(file, pem);
+		return file;
+	}
+}
@@ -0,0 +1,177 @@
+package com.example.useraccountmanager;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal SMTP server for tests, enough for the JavaMail client: it accepts every sender and recipient, records the
+ * messages with the connection they came over, and can hold back its greeting or answer the end of the next messages
+ * with a given reply instead of accepting them.
+ */
+public final class FakeSmtpServer implements AutoCloseable {
+
+	/**
+	 * A message received, or refused at the end of its data.
+	 *
+	 * @param connection The number of the connection it came over, counted from 1.
+	 * @param accepted   Whether it was accepted, or answered with an injected reply.
+	 */
+	public record Message(int connection, String recipient, String data, boolean accepted, long receivedAt) {
+	}
+
+	private final ServerSocket serverSocket;
+	private final AtomicInteger connections = new AtomicInteger();
+	private final List<Message> messages = new CopyOnWriteArrayList<>();
+	private final Deque<String> dataReplies = new ArrayDeque<>();
+	private volatile CountDownLatch greeting = new CountDownLatch(0);
+
+	private FakeSmtpServer(ServerSocket serverSocket) {
+		this.serverSocket = serverSocket;
+	}
+
+	public static FakeSmtpServer start() {
+		try {
+			FakeSmtpServer server = new FakeSmtpServer(new ServerSocket(0, 50, InetAddress.getLoopbackAddress()));
+			Thread acceptor = new Thread(server::accept, "fake-smtp-server");
+			acceptor.setDaemon(true);
+			acceptor.start();
+			return server;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public int port() {
+		return serverSocket.getLocalPort();
+	}
+
+	public int connections() {
+		return connections.get();
+	}
+
+	public List<Message> messages() {
+		return List.copyOf(messages);
+	}
+
+	public List<Message> accepted() {
+		return messages.stream().filter(Message::accepted).toList();
+	}
+
+	public synchronized void reset() {
+		connections.set(0);
+		messages.clear();
+		dataReplies.clear();
+		resume();
+	}
+
+	/**
+	 * Answers the end of the data of the next {@code count} messages with {@code reply}, e.g. {@code 451 Try again}.
+	 */
+	public synchronized void replyToNextMessages(int count, String reply) {
+		for (int i = 0; i < count; i++) {
+			dataReplies.add(reply);
+		}
+	}
+
+	/**
+	 * Accepts connections but holds back the greeting until {@link #resume()}, so clients wait on the server.
+	 */
+	public void pause() {
+		greeting = new CountDownLatch(1);
+	}
+
+	public void resume() {
+		greeting.countDown();
+	}
+
+	@Override
+	public void close() throws IOException {
+		resume();
+		serverSocket.close();
+	}
+
+	private void accept() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				int connection = connections.incrementAndGet();
+				Thread session = new Thread(() -> serve(socket, connection), "fake-smtp-session-" + connection);
+				session.setDaemon(true);
+				session.start();
+			} catch (IOException e) {
+				// Closed
+			}
+		}
+	}
+
+	private void serve(Socket socket, int connection) {
+		try (socket) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+			OutputStream out = socket.getOutputStream();
+			if (!greeting.await(30, TimeUnit.SECONDS)) {
+				return;
+			}
+			reply(out, "220 localhost fake SMTP");
+			String recipient = null;
+			String line;
+			while ((line = in.readLine()) != null) {
+				String command = line.length() < 4 ? line : line.substring(0, 4).toUpperCase(Locale.ROOT);
+				switch (command) {
+					case "EHLO", "HELO" -> reply(out, "250 localhost");
+					case "MAIL" -> {
+						recipient = null;
+						reply(out, "250 OK");
+					}
+					case "RCPT" -> {
+						recipient = line.substring(line.indexOf('<') + 1, line.lastIndexOf('>'));
+						reply(out, "250 OK");
+					}
+					case "DATA" -> {
+						reply(out, "354 End data with <CR><LF>.<CR><LF>");
+						StringBuilder data = new StringBuilder();
+						while ((line = in.readLine()) != null && !line.equals(".")) {
+							data.append(line.startsWith(".") ? line.substring(1) : line).append('\n');
+						}
+						String dataReply;
+						synchronized (this) {
+							dataReply = dataReplies.poll();
+						}
+						messages.add(new Message(connection, recipient, data.toString(), dataReply == null,
+								System.currentTimeMillis()));
+						reply(out, dataReply != null ? dataReply : "250 OK");
+					}
+					case "RSET", "NOOP" -> reply(out, "250 OK");
+					case "QUIT" -> {
+						reply(out, "221 Bye");
+						return;
+					}
+					default -> reply(out, "502 Command not implemented");
+				}
+			}
+		} catch (IOException e) {
+			// The client went away
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void reply(OutputStream out, String reply) throws IOException {
+		out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.flush();
+	}
+}
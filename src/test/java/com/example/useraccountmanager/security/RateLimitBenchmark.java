@@ -0,0 +1,213 @@
+package com.example.useraccountmanager.security;
+
+import com.example.useraccountmanager.tools.TokenBucket;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+/**
+ * Timing harness for {@link TokenBucket} and {@link RateLimitFilter} under contention: from one thread up to the
+ * number of processors, or the number given as argument, every thread takes tokens either from one hot key shared by
+ * all threads or from many keys picked at random. It is not a test, so the build does not run it; run it after
+ * {@code mvn test-compile} with
+ * <pre>
+ * java -cp target/test-classes:target/classes:$(cat classpath.txt) com.example.useraccountmanager.security.RateLimitBenchmark
+ * </pre>
+ * where {@code classpath.txt} is written by {@code mvn dependency:build-classpath -Dmdep.outputFile=classpath.txt}.
+ * The limits are high enough that every request is let through, so each acquire is a successful compare-and-set
+ * and the hot key measures contention on one bucket. Every case is warmed up before it is measured and reports the
+ * best throughput of all threads together and the bytes allocated per operation; the filter cases include the mock
+ * request and response. The results are folded into a checksum that is printed, so the JIT cannot drop the work.
+ */
+public class RateLimitBenchmark {
+
+	private static final int KEYS = 4096;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 5;
+	private static final int OPERATIONS = 1_000_000;
+	private static final int FILTER_OPERATIONS = 100_000;
+	private static final long UNLIMITED = 1_000_000_000L;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static final AtomicLong checksum = new AtomicLong();
+
+	/**
+	 * One measured thread: runs the given number of operations and returns a value folded into the checksum.
+	 */
+	private interface Worker {
+		long run(int operations) throws Exception;
+	}
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+		List<Integer> threadCounts = new ArrayList<>();
+		for (int threads = 1; threads < maxThreads; threads *= 2) {
+			threadCounts.add(threads);
+		}
+		threadCounts.add(maxThreads);
+
+		System.out.printf("%-24s %8s %12s %10s%n", "case", "threads", "Mops/s", "bytes/op");
+		for (int threads : threadCounts) {
+			TokenBucket hot = new TokenBucket(UNLIMITED, UNLIMITED);
+			run("bucket hot key", threads, OPERATIONS, thread -> operations -> {
+				long acquired = 0;
+				for (int i = 0; i < operations; i++) {
+					acquired += hot.tryAcquire() ? 1 : 0;
+				}
+				return acquired;
+			});
+		}
+		for (int threads : threadCounts) {
+			TokenBucket[] buckets = new TokenBucket[KEYS];
+			for (int key = 0; key < KEYS; key++) {
+				buckets[key] = new TokenBucket(UNLIMITED, UNLIMITED);
+			}
+			run("bucket many keys", threads, OPERATIONS, thread -> operations -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long acquired = 0;
+				for (int i = 0; i < operations; i++) {
+					acquired += buckets[random.nextInt(KEYS)].tryAcquire() ? 1 : 0;
+				}
+				return acquired;
+			});
+		}
+		for (int threads : threadCounts) {
+			RateLimitFilter filter = filter();
+			run("filter hot key", threads, FILTER_OPERATIONS, thread -> operations -> {
+				authenticate("hot@bench.test");
+				return filterRequests(filter, operations);
+			});
+		}
+		for (int threads : threadCounts) {
+			RateLimitFilter filter = filter();
+			JwtAuthenticationToken[] principals = new JwtAuthenticationToken[KEYS];
+			for (int key = 0; key < KEYS; key++) {
+				principals[key] = token("user" + key + "@bench.test");
+			}
+			run("filter many keys", threads, FILTER_OPERATIONS, thread -> operations -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				long passed = 0;
+				for (int i = 0; i < operations; i++) {
+					SecurityContextHolder.getContext().setAuthentication(principals[random.nextInt(KEYS)]);
+					passed += filterRequests(filter, 1);
+				}
+				return passed;
+			});
+		}
+
+		System.out.println("checksum " + checksum.get());
+	}
+
+	private static RateLimitFilter filter() {
+		RateLimitProperties.Limit limit = new RateLimitProperties.Limit();
+		limit.setCapacity(UNLIMITED);
+		limit.setRefillPerSecond(UNLIMITED);
+		RateLimitProperties.Rule rule = new RateLimitProperties.Rule();
+		rule.setName("bench");
+		rule.setPattern("/api/v1/bench/**");
+		rule.setDefaultLimit(limit);
+		RateLimitProperties properties = new RateLimitProperties();
+		properties.setRules(List.of(rule));
+		return new RateLimitFilter(properties, new LoadShedder(properties));
+	}
+
+	/**
+	 * @return The number of requests the filter passed on to the chain.
+	 */
+	private static long filterRequests(RateLimitFilter filter, int operations) throws Exception {
+		long passed = 0;
+		for (int i = 0; i < operations; i++) {
+			MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/v1/bench/users");
+			MockFilterChain chain = new MockFilterChain();
+			filter.doFilter(request, new MockHttpServletResponse(), chain);
+			passed += chain.getRequest() != null ? 1 : 0;
+		}
+		return passed;
+	}
+
+	private static void authenticate(String email) {
+		SecurityContextHolder.getContext().setAuthentication(token(email));
+	}
+
+	private static JwtAuthenticationToken token(String email) {
+		Jwt jwt = Jwt.withTokenValue("bench")
+				.header("alg", "none")
+				.subject(email)
+				.claim("email", email)
+				.build();
+		return new JwtAuthenticationToken(jwt, List.of(new SimpleGrantedAuthority("ROLE_USER")));
+	}
+
+	/**
+	 * Runs a case on the given number of threads, started together, and reports the best of the measured rounds.
+	 */
+	private static void run(String name, int threads, int operations, IntFunction<Worker> workers) throws Exception {
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			round(threads, operations, workers);
+		}
+		long bestNanos = Long.MAX_VALUE;
+		long bytes = 0;
+		for (int round = 0; round < MEASURED_ROUNDS; round++) {
+			long[] result = round(threads, operations, workers);
+			bestNanos = Math.min(bestNanos, result[0]);
+			bytes = result[1];
+		}
+		long total = (long) threads * operations;
+		System.out.printf("%-24s %8d %12.2f %10.1f%n", name, threads, total * 1_000.0 / bestNanos, (double) bytes / total);
+	}
+
+	/**
+	 * @return The elapsed nanoseconds from the start of the first thread to the end of the last, and the bytes all
+	 * threads allocated.
+	 */
+	private static long[] round(int threads, int operations, IntFunction<Worker> workers) throws Exception {
+		CountDownLatch ready = new CountDownLatch(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		CountDownLatch done = new CountDownLatch(threads);
+		AtomicLong allocated = new AtomicLong();
+		List<Thread> started = new ArrayList<>(threads);
+		for (int t = 0; t < threads; t++) {
+			Worker worker = workers.apply(t);
+			Thread thread = new Thread(() -> {
+				try {
+					long id = Thread.currentThread().getId();
+					ready.countDown();
+					start.await();
+					long allocatedBefore = THREADS.getThreadAllocatedBytes(id);
+					checksum.addAndGet(worker.run(operations));
+					allocated.addAndGet(THREADS.getThreadAllocatedBytes(id) - allocatedBefore);
+				} catch (Exception e) {
+					throw new IllegalStateException(e);
+				} finally {
+					SecurityContextHolder.clearContext();
+					done.countDown();
+				}
+			}, "bench-" + t);
+			thread.start();
+			started.add(thread);
+		}
+		ready.await();
+		long begin = System.nanoTime();
+		start.countDown();
+		done.await();
+		long elapsed = System.nanoTime() - begin;
+		for (Thread thread : started) {
+			thread.join();
+		}
+		return new long[]{elapsed, allocated.get()};
+	}
+}
@@ -0,0 +1,59 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.ApplicationTestSupport;
+import com.example.useraccountmanager.dto.request.UserRequest;
+import com.example.useraccountmanager.dto.response.ChangeEventResponse;
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.validation.BeanPropertyBindingResult;
+
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Relays changes from the embedded H2 outbox to the change log.
+ */
+class ChangeEventServiceTests extends ApplicationTestSupport {
+
+	@Autowired
+	private ChangeEventService changeEventService;
+
+	@Autowired
+	private UserService userService;
+
+	@Test
+	void relayedEventsCanBeResumedAfterByEventId() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			UserRequest userRequest = UserRequest.builder()
+					.firstName("First")
+					.lastName("Last")
+					.username("user" + i + "@feed.test")
+					.email("user" + i + "@feed.test")
+					.password("secret")
+					.phoneNumber(1)
+					.address("Street 1")
+					.status(UserStatusEnum.ACTIVE)
+					.accountRequests(Set.of())
+					.build();
+			assertEquals(HttpStatus.CREATED, userService.create(userRequest,
+					new BeanPropertyBindingResult(new Object(), "userRequest")).getStatusCode());
+		}
+		long deadline = System.currentTimeMillis() + 15_000;
+		while (changeEventService.nextOffset() < 3) {
+			assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting for the relay");
+			Thread.sleep(50);
+		}
+
+		List<ChangeEventResponse> changes = changeEventService.readChanges(0, 100);
+
+		for (ChangeEventResponse change : changes) {
+			assertEquals(OptionalLong.of(change.getOffset() + 1), changeEventService.offsetAfter(change.getEventId()));
+		}
+		assertEquals(OptionalLong.empty(), changeEventService.offsetAfter(Long.MAX_VALUE));
+	}
+}
@@ -0,0 +1,296 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.ApplicationTestSupport;
+import com.example.useraccountmanager.dto.request.UserRequest;
+import com.example.useraccountmanager.dto.response.ReconciliationIssueResponse;
+import com.example.useraccountmanager.dto.response.ReconciliationReportResponse;
+import com.example.useraccountmanager.dto.response.UserResponse;
+import com.example.useraccountmanager.model.ReconciliationCheckpoint;
+import com.example.useraccountmanager.model.User;
+import com.example.useraccountmanager.repository.ReconciliationCheckpointRepository;
+import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.sharding.ShardContext;
+import com.example.useraccountmanager.sharding.ShardRouter;
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import com.example.useraccountmanager.tools.enums.JobStatusEnum;
+import com.example.useraccountmanager.tools.enums.ReconciliationIssueEnum;
+import com.example.useraccountmanager.tools.enums.ReconciliationPhaseEnum;
+import com.example.useraccountmanager.tools.enums.UserRoleEnum;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.validation.BeanPropertyBindingResult;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs reconciliation cycles over two embedded H2 shards and {@link com.example.useraccountmanager.FakeFirebaseAuth},
+ * with pages of two users and one page per scheduled run.
+ */
+class FirebaseReconciliationServiceTests extends ApplicationTestSupport {
+
+	private static final int PAGE_SIZE = 2;
+	private static final String USER_CLAIMS = "{\"roles\":[\"USER\"]}";
+
+	@Autowired
+	private FirebaseReconciliationService reconciliationService;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private ReconciliationCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private ShardRouter shardRouter;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@DynamicPropertySource
+	static void reconciliation(DynamicPropertyRegistry registry) {
+		addShards(registry, 2);
+		registry.add("reconciliation.enabled", () -> "true");
+		registry.add("reconciliation.interval", () -> "PT1H");
+		registry.add("reconciliation.page-size", () -> String.valueOf(PAGE_SIZE));
+		registry.add("reconciliation.pages-per-run", () -> "1");
+		registry.add("reconciliation.max-writes-per-second", () -> "1000");
+	}
+
+	@BeforeEach
+	void clear() {
+		FIREBASE.reset();
+		shardRouter.scatter(shard -> {
+			userRepository.deleteAll();
+			return null;
+		});
+		ShardContext.runOn(ShardContext.DEFAULT_SHARD, checkpointRepository::deleteAll);
+		ReflectionTestUtils.setField(reconciliationService, "repair", false);
+	}
+
+	@Test
+	void mergeJoinMatchesLinkedUsersOfEveryShardPageByPage() {
+		List<String> uids = List.of("uid-a", "uid-b", "uid-c", "uid-d", "uid-e", "uid-f", "uid-g");
+		for (String uid : uids) {
+			createUser(uid + "@merge.test", UserStatusEnum.ACTIVE, uid);
+			FIREBASE.putUser(uid, uid + "@merge.test", false, USER_CLAIMS);
+		}
+
+		ReconciliationReportResponse report = runCycle();
+
+		assertEquals(JobStatusEnum.COMPLETED, report.getStatus());
+		assertEquals(uids.size(), report.getFirebaseUsers());
+		assertEquals(uids.size(), report.getDatabaseUsers());
+		assertEquals(List.of(), report.getIssues());
+		// Every Firebase page is listed once, the last one without a next page token
+		assertEquals((uids.size() + PAGE_SIZE - 1) / PAGE_SIZE, count("accounts:batchGet"));
+	}
+
+	@Test
+	void reportsMissingUnlinkedStatusAndClaimMismatches() {
+		createUser("linked-only@report.test", UserStatusEnum.ACTIVE, "uid-db-only");
+		FIREBASE.putUser("uid-fb-only", "firebase-only@report.test", false, USER_CLAIMS);
+		createUser("unlinked@report.test", UserStatusEnum.ACTIVE, null);
+		FIREBASE.putUser("uid-unlinked", "unlinked@report.test", false, USER_CLAIMS);
+		createUser("inactive@report.test", UserStatusEnum.INACTIVE, "uid-status");
+		FIREBASE.putUser("uid-status", "inactive@report.test", false, USER_CLAIMS);
+		String adminId = createUser("admin@report.test", UserStatusEnum.ACTIVE, "uid-claims").getId();
+		userService.changeRole(adminId, UserRoleEnum.ADMIN);
+		FIREBASE.putUser("uid-claims", "admin@report.test", false, USER_CLAIMS);
+		String noFirebaseId = createUser("nowhere@report.test", UserStatusEnum.ACTIVE, null).getId();
+
+		ReconciliationReportResponse report = runCycle();
+
+		assertEquals(JobStatusEnum.COMPLETED, report.getStatus());
+		assertEquals(1, report.getMissingInDatabase());
+		assertEquals(2, report.getMissingInFirebase());
+		assertEquals(1, report.getUnlinked());
+		assertEquals(1, report.getStatusMismatches());
+		assertEquals(1, report.getClaimMismatches());
+		assertEquals(0, report.getRepaired());
+
+		assertEquals(Set.of("uid-fb-only"), uidsOf(report, ReconciliationIssueEnum.MISSING_IN_DATABASE));
+		assertEquals(Set.of("uid-db-only", noFirebaseId), userIdsOrUidsOf(report, ReconciliationIssueEnum.MISSING_IN_FIREBASE));
+		assertEquals(Set.of("uid-unlinked"), uidsOf(report, ReconciliationIssueEnum.UNLINKED));
+		ReconciliationIssueResponse status = issuesOf(report, ReconciliationIssueEnum.STATUS_MISMATCH).get(0);
+		assertEquals("uid-status", status.getFirebaseUid());
+		assertEquals("disabled", status.getExpected());
+		assertEquals("enabled", status.getActual());
+		ReconciliationIssueResponse claims = issuesOf(report, ReconciliationIssueEnum.CLAIMS_MISMATCH).get(0);
+		assertEquals("uid-claims", claims.getFirebaseUid());
+		assertEquals("[ADMIN, USER]", claims.getExpected());
+		assertEquals("[USER]", claims.getActual());
+		report.getIssues().forEach(issue -> assertNull(issue.getRepaired()));
+
+		// Without repairs nothing is written, to Firebase or to the database
+		assertEquals(0, count("accounts:update") + count("accounts:batchCreate"));
+		assertFalse(FIREBASE.user("uid-status").orElseThrow().get("disabled").asBoolean());
+		assertNull(userByEmail("unlinked@report.test").getFirebaseUid());
+	}
+
+	@Test
+	void repairsAreAppliedOncePerPage() {
+		ReflectionTestUtils.setField(reconciliationService, "repair", true);
+		List<String> missingIds = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			missingIds.add(createUser("missing" + i + "@repair.test", UserStatusEnum.ACTIVE, null).getId());
+		}
+		createUser("unlinked@repair.test", UserStatusEnum.ACTIVE, null);
+		FIREBASE.putUser("uid-unlinked", "unlinked@repair.test", false, USER_CLAIMS);
+		createUser("inactive@repair.test", UserStatusEnum.INACTIVE, "uid-status");
+		FIREBASE.putUser("uid-status", "inactive@repair.test", false, "{\"roles\":[\"USER\"],\"tenant\":\"t1\"}");
+		createUser("claims@repair.test", UserStatusEnum.ACTIVE, "uid-claims");
+		FIREBASE.putUser("uid-claims", "claims@repair.test", false, "{\"roles\":[\"ADMIN\",\"USER\"]}");
+
+		ReconciliationReportResponse report = runCycle();
+
+		assertEquals(JobStatusEnum.COMPLETED, report.getStatus());
+		assertEquals(missingIds.size(), report.getMissingInFirebase());
+		assertEquals(missingIds.size() + 3, report.getRepaired());
+		assertEquals(0, report.getRepairFailures());
+		report.getIssues().forEach(issue -> assertEquals(Boolean.TRUE, issue.getRepaired(), issue.toString()));
+
+		// The users missing in Firebase are imported with one call per page of unlinked users on each shard
+		Map<Integer, Integer> missingPerShard = new HashMap<>();
+		missingIds.forEach(id -> missingPerShard.merge(shardRouter.shardOf(id), 1, Integer::sum));
+		int unlinkedPages = missingPerShard.values().stream().mapToInt(users -> (users + PAGE_SIZE - 1) / PAGE_SIZE).sum();
+		assertEquals(unlinkedPages, count("accounts:batchCreate"));
+		for (String id : missingIds) {
+			JsonNode created = FIREBASE.user(id).orElseThrow();
+			assertEquals(USER_CLAIMS, created.get("customAttributes").asText());
+			assertEquals(id, ShardContext.callOn(shardRouter.shardOf(id), () -> userRepository.findById(id)).orElseThrow().getFirebaseUid());
+		}
+
+		assertEquals("uid-unlinked", userByEmail("unlinked@repair.test").getFirebaseUid());
+		JsonNode disabled = FIREBASE.user("uid-status").orElseThrow();
+		assertTrue(disabled.get("disabled").asBoolean());
+		assertTrue(disabled.get("customAttributes").asText().contains("\"tenant\":\"t1\""), "other claims are kept");
+		assertEquals(USER_CLAIMS, FIREBASE.user("uid-claims").orElseThrow().get("customAttributes").asText());
+		assertEquals(2, count("accounts:update"));
+
+		// Repaired users are consistent in the next cycle
+		ShardContext.runOn(ShardContext.DEFAULT_SHARD, checkpointRepository::deleteAll);
+		assertEquals(List.of(), runCycle().getIssues());
+	}
+
+	@Test
+	void scheduledRunsResumeTheCycleFromTheCheckpoint() {
+		for (String uid : List.of("uid-a", "uid-b", "uid-c", "uid-d", "uid-e")) {
+			createUser(uid + "@resume.test", UserStatusEnum.ACTIVE, uid);
+			FIREBASE.putUser(uid, uid + "@resume.test", false, USER_CLAIMS);
+		}
+
+		reconciliationService.scheduledReconciliation();
+
+		ReconciliationCheckpoint checkpoint = checkpoint();
+		assertEquals(JobStatusEnum.RUNNING, checkpoint.getStatus());
+		assertEquals(ReconciliationPhaseEnum.MERGE, checkpoint.getPhase());
+		assertEquals("uid-b", checkpoint.getAfterUid());
+		assertNotNull(checkpoint.getPageToken());
+		assertEquals(2, checkpoint.getFirebaseUsers());
+		String cycleId = checkpoint.getCycleId();
+
+		// A user that changes on a page the cycle has passed is not seen again in this cycle
+		FIREBASE.putUser("uid-a", "uid-a@resume.test", true, USER_CLAIMS);
+		reconciliationService.scheduledReconciliation();
+		checkpoint = checkpoint();
+		assertEquals(cycleId, checkpoint.getCycleId());
+		assertEquals("uid-d", checkpoint.getAfterUid());
+		assertEquals(4, checkpoint.getFirebaseUsers());
+
+		ReconciliationReportResponse report = runCycle();
+		assertEquals(cycleId, report.getCycleId());
+		assertEquals(5, report.getFirebaseUsers());
+		assertEquals(5, report.getDatabaseUsers());
+		assertEquals(0, report.getStatusMismatches());
+		assertEquals(3, count("accounts:batchGet"));
+	}
+
+	/**
+	 * Runs the scheduled job until the cycle it continues or starts has ended.
+	 */
+	private ReconciliationReportResponse runCycle() {
+		for (int run = 0; run < 100; run++) {
+			reconciliationService.scheduledReconciliation();
+			ReconciliationReportResponse report = (ReconciliationReportResponse) reconciliationService.getReport().getBody();
+			if (report.getStatus() != JobStatusEnum.RUNNING) {
+				return report;
+			}
+		}
+		return fail("The reconciliation cycle did not end");
+	}
+
+	private UserResponse createUser(String email, UserStatusEnum status, String firebaseUid) {
+		UserRequest userRequest = UserRequest.builder()
+				.firstName("First")
+				.lastName("Last")
+				.username(email)
+				.email(email)
+				.password("secret")
+				.phoneNumber(1)
+				.address("Street 1")
+				.status(status)
+				.accountRequests(Set.of())
+				.build();
+		ResponseEntity<?> response = userService.create(userRequest, new BeanPropertyBindingResult(new Object(), "userRequest"));
+		assertEquals(HttpStatus.CREATED, response.getStatusCode());
+		UserResponse user = (UserResponse) response.getBody();
+		// New users start inactive
+		if (status == UserStatusEnum.ACTIVE) {
+			assertEquals(HttpStatus.OK, userService.activate(user.getId()).getStatusCode());
+		}
+		if (firebaseUid != null) {
+			int updated = ShardContext.callOn(shardRouter.shardOf(user.getId()), () -> transactionTemplate.execute(transaction ->
+					userRepository.linkFirebaseUid(user.getId(), firebaseUid, LocalDateTime.now())));
+			assertEquals(1, updated);
+		}
+		return user;
+	}
+
+	private User userByEmail(String email) {
+		return shardRouter.scatter(shard -> userRepository.findUserByEmail(email)).stream()
+				.flatMap(Optional::stream)
+				.findFirst()
+				.orElseThrow();
+	}
+
+	private ReconciliationCheckpoint checkpoint() {
+		return ShardContext.callOn(ShardContext.DEFAULT_SHARD, () -> checkpointRepository.findAll().get(0));
+	}
+
+	private static long count(String operation) {
+		return FIREBASE.requests().stream().filter(operation::equals).count();
+	}
+
+	private static List<ReconciliationIssueResponse> issuesOf(ReconciliationReportResponse report, ReconciliationIssueEnum type) {
+		return report.getIssues().stream().filter(issue -> issue.getType() == type).toList();
+	}
+
+	private static Set<String> uidsOf(ReconciliationReportResponse report, ReconciliationIssueEnum type) {
+		Set<String> uids = new HashSet<>();
+		issuesOf(report, type).forEach(issue -> uids.add(issue.getFirebaseUid()));
+		return uids;
+	}
+
+	/**
+	 * Users missing in Firebase are reported by Firebase UID when linked and by user ID otherwise.
+	 */
+	private static Set<String> userIdsOrUidsOf(ReconciliationReportResponse report, ReconciliationIssueEnum type) {
+		Set<String> ids = new HashSet<>();
+		issuesOf(report, type).forEach(issue -> ids.add(issue.getFirebaseUid() != null ? issue.getFirebaseUid() : issue.getUserId()));
+		return ids;
+	}
+}
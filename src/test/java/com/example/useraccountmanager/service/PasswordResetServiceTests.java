@@ -0,0 +1,195 @@
+package com.example.useraccountmanager.service;
+
+import com.example.useraccountmanager.ApplicationTestSupport;
+import com.example.useraccountmanager.FakeSmtpServer;
+import com.example.useraccountmanager.dto.request.UserRequest;
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.validation.BeanPropertyBindingResult;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Sends password reset emails through {@link FakeSmtpServer}, with batches of three messages on two senders and
+ * retries after 200 ms, doubling.
+ */
+class PasswordResetServiceTests extends ApplicationTestSupport {
+
+	private static final FakeSmtpServer SMTP = FakeSmtpServer.start();
+	private static final Duration POLL_INTERVAL = Duration.ofMillis(50);
+
+	@Autowired
+	private PasswordResetService passwordResetService;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserDirectoryService userDirectoryService;
+
+	@DynamicPropertySource
+	static void mail(DynamicPropertyRegistry registry) {
+		registry.add("spring.mail.host", () -> "127.0.0.1");
+		registry.add("spring.mail.port", SMTP::port);
+		registry.add("password-reset.sender.threads", () -> "2");
+		registry.add("password-reset.sender.batch-size", () -> "3");
+		registry.add("password-reset.sender.initial-backoff", () -> "PT0.2S");
+		registry.add("password-reset.sender.max-backoff", () -> "PT1S");
+		registry.add("password-reset.sender.poll-interval", POLL_INTERVAL::toString);
+	}
+
+	@AfterAll
+	static void stopSmtp() throws Exception {
+		SMTP.close();
+	}
+
+	@BeforeEach
+	void resetSmtp() {
+		SMTP.reset();
+	}
+
+	@Test
+	void requestIsAcceptedWithoutWaitingForTheMailServer() {
+		String first = createUser("first@accepted.test");
+		String second = createUser("second@accepted.test");
+		SMTP.pause();
+
+		assertEquals(HttpStatus.ACCEPTED, passwordResetService.requestReset(first).getStatusCode());
+		awaitUntil(() -> SMTP.connections() > 0, "the sender to connect");
+		// The sender now waits for the greeting of the mail server, requests are still accepted
+		ResponseEntity<?> response = passwordResetService.requestReset(second);
+
+		assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+		assertEquals(List.of(), SMTP.messages());
+		SMTP.resume();
+		awaitUntil(() -> recipients().containsAll(List.of(first, second)), "both emails to be sent");
+	}
+
+	@Test
+	void messagesAreSentInBatchesOverOneConnectionEach() throws Exception {
+		List<String> emails = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			emails.add(createUser("user" + i + "@batch.test"));
+		}
+
+		whileDispatcherIsStopped(() -> {
+			emails.forEach(passwordResetService::requestReset);
+			// A repeated request in the same read batch is sent once
+			passwordResetService.requestReset(emails.get(0).toUpperCase(Locale.ROOT));
+		});
+		awaitUntil(() -> SMTP.accepted().size() >= emails.size(), "the emails to be sent");
+
+		assertEquals(new HashSet<>(emails), new HashSet<>(recipients()));
+		assertEquals(emails.size(), SMTP.messages().size());
+		assertEquals(2, SMTP.connections());
+		Map<Integer, Long> perConnection = SMTP.messages().stream()
+				.collect(Collectors.groupingBy(FakeSmtpServer.Message::connection, Collectors.counting()));
+		assertEquals(List.of(2L, 3L), perConnection.values().stream().sorted().toList());
+		assertTrue(SMTP.messages().get(0).data().contains("https://reset.example/?email="), "reset link in the message");
+	}
+
+	@Test
+	void transientFailuresAreRetriedWithBackoff() {
+		String email = createUser("retried@retry.test");
+		SMTP.replyToNextMessages(2, "451 4.3.0 Try again later");
+
+		passwordResetService.requestReset(email);
+		awaitUntil(() -> recipients().contains(email), "the email to be sent");
+
+		List<FakeSmtpServer.Message> attempts = SMTP.messages().stream()
+				.filter(message -> message.recipient().equals(email))
+				.toList();
+		assertEquals(List.of(false, false, true), attempts.stream().map(FakeSmtpServer.Message::accepted).toList());
+		assertTrue(attempts.get(1).receivedAt() - attempts.get(0).receivedAt() >= 200, "first backoff");
+		assertTrue(attempts.get(2).receivedAt() - attempts.get(1).receivedAt() >= 400, "second backoff");
+	}
+
+	@Test
+	void queuedRequestsAreSentAfterARestart() throws Exception {
+		String first = createUser("first@restart.test");
+		String second = createUser("second@restart.test");
+
+		passwordResetService.close();
+		ReflectionTestUtils.setField(passwordResetService, "pollInterval", Duration.ofHours(1));
+		passwordResetService.open();
+		assertEquals(HttpStatus.ACCEPTED, passwordResetService.requestReset(first).getStatusCode());
+		assertEquals(HttpStatus.ACCEPTED, passwordResetService.requestReset(second).getStatusCode());
+		passwordResetService.close();
+		assertEquals(0, SMTP.connections());
+
+		ReflectionTestUtils.setField(passwordResetService, "pollInterval", POLL_INTERVAL);
+		passwordResetService.open();
+		awaitUntil(() -> recipients().containsAll(List.of(first, second)), "the queued emails to be sent");
+		assertEquals(2, SMTP.accepted().size());
+	}
+
+	/**
+	 * Runs the requests with the queue reopened without a running dispatcher, so they are all read in one batch once
+	 * it is reopened with its dispatcher.
+	 */
+	private void whileDispatcherIsStopped(Runnable requests) throws Exception {
+		passwordResetService.close();
+		ReflectionTestUtils.setField(passwordResetService, "pollInterval", Duration.ofHours(1));
+		passwordResetService.open();
+		try {
+			requests.run();
+		} finally {
+			passwordResetService.close();
+			ReflectionTestUtils.setField(passwordResetService, "pollInterval", POLL_INTERVAL);
+			passwordResetService.open();
+		}
+	}
+
+	private List<String> recipients() {
+		return SMTP.accepted().stream().map(FakeSmtpServer.Message::recipient).toList();
+	}
+
+	/**
+	 * Creates a user and waits until the user directory, which the dispatcher checks emails against, has it.
+	 */
+	private String createUser(String email) {
+		UserRequest userRequest = UserRequest.builder()
+				.firstName("First")
+				.lastName("Last")
+				.username(email)
+				.email(email)
+				.password("secret")
+				.phoneNumber(1)
+				.address("Street 1")
+				.status(UserStatusEnum.ACTIVE)
+				.accountRequests(Set.of())
+				.build();
+		ResponseEntity<?> response = userService.create(userRequest, new BeanPropertyBindingResult(new Object(), "userRequest"));
+		assertEquals(HttpStatus.CREATED, response.getStatusCode());
+		awaitUntil(() -> userDirectoryService.findByEmail(email) != null, "the user directory to have " + email);
+		return email;
+	}
+
+	private static void awaitUntil(BooleanSupplier condition, String description) {
+		long deadline = System.nanoTime() + Duration.ofSeconds(15).toNanos();
+		while (!condition.getAsBoolean()) {
+			if (System.nanoTime() > deadline) {
+				fail("Timed out waiting for " + description);
+			}
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				fail("Interrupted waiting for " + description);
+			}
+		}
+	}
+}
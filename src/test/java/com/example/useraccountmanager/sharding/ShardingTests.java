@@ -0,0 +1,211 @@
+package com.example.useraccountmanager.sharding;
+
+import com.example.useraccountmanager.ApplicationTestSupport;
+import com.example.useraccountmanager.dto.request.AccountRequest;
+import com.example.useraccountmanager.dto.request.BatchGetRequest;
+import com.example.useraccountmanager.dto.request.UserRequest;
+import com.example.useraccountmanager.dto.response.AccountPageResponse;
+import com.example.useraccountmanager.dto.response.AccountResponse;
+import com.example.useraccountmanager.dto.response.UserResponse;
+import com.example.useraccountmanager.repository.AccountRepository;
+import com.example.useraccountmanager.repository.UserRepository;
+import com.example.useraccountmanager.service.AccountService;
+import com.example.useraccountmanager.service.UserService;
+import com.example.useraccountmanager.tools.Money;
+import com.example.useraccountmanager.tools.UserStatusEnum;
+import com.example.useraccountmanager.tools.enums.AccountSortEnum;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.validation.BeanPropertyBindingResult;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs the user and account services over three embedded H2 databases acting as shards.
+ */
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ShardingTests extends ApplicationTestSupport {
+
+	private static final int SHARDS = 3;
+	private static final int USERS = 15;
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private AccountRepository accountRepository;
+
+	@Autowired
+	private ShardRouter shardRouter;
+
+	private final List<UserResponse> users = new ArrayList<>();
+	private final List<Money> balances = new ArrayList<>();
+
+	@DynamicPropertySource
+	static void shards(DynamicPropertyRegistry registry) {
+		addShards(registry, SHARDS);
+	}
+
+	@BeforeAll
+	void createUsers() {
+		for (int i = 0; i < USERS; i++) {
+			Money first = Money.ofMinorUnits(1_000L * i + 17);
+			Money second = Money.ofMinorUnits(1_000L * i + 503);
+			users.add(createUser("user" + i + "@shards.test", first, second));
+			balances.add(first);
+			balances.add(second);
+		}
+		balances.sort(Comparator.reverseOrder());
+	}
+
+	@Test
+	void usersAreSpreadOverTheShardsAndStoredOnTheShardOfTheirId() {
+		Set<Integer> usedShards = new HashSet<>();
+		for (UserResponse user : users) {
+			int shard = shardRouter.shardOf(user.getId());
+			usedShards.add(shard);
+			for (int other = 0; other < SHARDS; other++) {
+				boolean stored = ShardContext.callOn(other, () -> userRepository.existsById(user.getId()));
+				assertEquals(other == shard, stored, "user " + user.getId() + " on shard " + other);
+			}
+			assertEquals(HttpStatus.OK, inRequest(() -> userService.getUser(user.getId())).getStatusCode());
+		}
+		assertTrue(usedShards.size() > 1, "all users landed on one shard");
+	}
+
+	@Test
+	void accountsAreCreatedOnTheShardOfTheirUser() {
+		for (UserResponse user : users) {
+			int shard = shardRouter.shardOf(user.getId());
+			assertEquals(2, user.getAccountIds().size());
+			for (String accountId : user.getAccountIds()) {
+				assertEquals(shard, shardRouter.shardOf(accountId));
+				assertTrue(ShardContext.callOn(shard, () -> accountRepository.existsById(accountId)));
+			}
+		}
+
+		// An account added later goes to the user's shard as well
+		UserResponse user = users.get(0);
+		AccountRequest accountRequest = new AccountRequest();
+		accountRequest.setUserId(user.getId());
+		accountRequest.setBalance(Money.ZERO);
+		ResponseEntity<?> response = accountService.createAccount(accountRequest,
+				new BeanPropertyBindingResult(accountRequest, "accountRequest"));
+		assertEquals(HttpStatus.CREATED, response.getStatusCode());
+		String accountId = ((AccountResponse) response.getBody()).getId();
+		assertEquals(shardRouter.shardOf(user.getId()), shardRouter.shardOf(accountId));
+	}
+
+	@Test
+	void listAndLookupsGatherUsersFromEveryShard() {
+		UserResponse all = (UserResponse) userService.getAllUsers().getBody();
+		Set<String> listed = new HashSet<>();
+		all.getData().forEach(user -> listed.add(user.getId()));
+		users.forEach(user -> assertTrue(listed.contains(user.getId()), "user missing from the list"));
+
+		BatchGetRequest batchGetRequest = new BatchGetRequest();
+		List<String> ids = new ArrayList<>(users.stream().map(UserResponse::getId).toList());
+		Collections.reverse(ids);
+		batchGetRequest.setIds(ids);
+		UserResponse batch = (UserResponse) userService.getUsersBatch(batchGetRequest).getBody();
+		assertEquals(ids, batch.getData().stream().map(UserResponse::getId).toList());
+
+		for (UserResponse user : users) {
+			ResponseEntity<?> response = inRequest(() -> userService.getCurrentUser(user.getEmail(), null));
+			assertEquals(user.getId(), ((UserResponse) response.getBody()).getId());
+		}
+	}
+
+	@Test
+	void topAccountsAreMergedAcrossShards() {
+		AccountResponse top = (AccountResponse) accountService.getTopAccountsByBalance(7).getBody();
+		assertEquals(balances.subList(0, 7), top.getData().stream().map(AccountResponse::getBalance).toList());
+	}
+
+	@Test
+	void accountPagesAreMergedAcrossShardsInBalanceOrder() {
+		List<Money> paged = new ArrayList<>();
+		String cursor = null;
+		do {
+			AccountPageResponse page = (AccountPageResponse) accountService
+					.getAccountsPage(null, AccountSortEnum.BALANCE, Sort.Direction.DESC, 4, cursor).getBody();
+			page.getData().forEach(account -> paged.add(account.getBalance()));
+			cursor = page.isHasNext() ? page.getNextCursor() : null;
+		} while (cursor != null);
+		// The list also holds accounts created by other tests, with balances below all of these
+		assertEquals(balances, paged.subList(0, balances.size()));
+	}
+
+	@Test
+	void emailIsUniqueAcrossShards() {
+		UserResponse existing = users.get(1);
+		// Each attempt picks a random shard, so most of them land on a shard other than the existing user's
+		for (int attempt = 0; attempt < 10; attempt++) {
+			ResponseEntity<?> response = userService.create(userRequest(existing.getEmail(), Set.of()),
+					new BeanPropertyBindingResult(new Object(), "userRequest"));
+			assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		}
+		long stored = shardRouter.scatter(shard -> userRepository.findUserByEmail(existing.getEmail()).isPresent())
+				.stream()
+				.filter(Boolean::booleanValue)
+				.count();
+		assertEquals(1, stored);
+	}
+
+	@Test
+	void updateRejectsAnEmailTakenOnAnotherShard() {
+		UserResponse existing = users.get(2);
+		UserResponse other = users.stream()
+				.filter(user -> shardRouter.shardOf(user.getId()) != shardRouter.shardOf(existing.getId()))
+				.findFirst()
+				.orElseThrow();
+
+		ResponseEntity<?> response = userService.update(other.getId(), userRequest(existing.getEmail(), null));
+
+		assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+		UserResponse unchanged = (UserResponse) inRequest(() -> userService.getUser(other.getId())).getBody();
+		assertEquals(other.getEmail(), unchanged.getEmail());
+	}
+
+	private UserResponse createUser(String email, Money... balances) {
+		Set<AccountRequest> accountRequests = new HashSet<>();
+		for (Money balance : balances) {
+			AccountRequest accountRequest = new AccountRequest();
+			accountRequest.setBalance(balance);
+			accountRequests.add(accountRequest);
+		}
+		ResponseEntity<?> response = userService.create(userRequest(email, accountRequests),
+				new BeanPropertyBindingResult(new Object(), "userRequest"));
+		assertEquals(HttpStatus.CREATED, response.getStatusCode());
+		return (UserResponse) response.getBody();
+	}
+
+	private static UserRequest userRequest(String email, Set<AccountRequest> accountRequests) {
+		return UserRequest.builder()
+				.firstName("First")
+				.lastName("Last")
+				.username(email)
+				.email(email)
+				.password("secret")
+				.phoneNumber(1)
+				.address("Street 1")
+				.status(UserStatusEnum.ACTIVE)
+				.accountRequests(accountRequests)
+				.build();
+	}
+}
@@ -0,0 +1,42 @@
+package com.example.useraccountmanager.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BalanceHistoryCodecTests {
+
+	@Test
+	void concatenatedBlocksDecodeLikeOneBlock() {
+		long[][] points = {{1_000, 500}, {1_000, -20}, {1_750, 1_000_000_000_000L}, {90_000, 0}, {90_001, -3}, {200_000, 7}};
+		byte[] whole = encode(points, 0, points.length);
+		byte[] head = encode(points, 0, 3);
+		byte[] tail = encode(points, 3, points.length);
+
+		byte[] merged = BalanceHistoryCodec.concat(head, points[2][0], points[2][1], tail, points[3][0]);
+
+		assertEquals(decode(whole, points[0][0]), decode(merged, points[0][0]));
+		assertEquals(points.length, decode(merged, points[0][0]).size());
+	}
+
+	private static byte[] encode(long[][] points, int from, int to) {
+		byte[] data = null;
+		long previousTime = points[from][0];
+		long previousValue = 0;
+		for (int i = from; i < to; i++) {
+			data = BalanceHistoryCodec.append(data, previousTime, previousValue, points[i][0], points[i][1]);
+			previousTime = points[i][0];
+			previousValue = points[i][1];
+		}
+		return data;
+	}
+
+	private static List<String> decode(byte[] data, long baseTime) {
+		List<String> points = new ArrayList<>();
+		BalanceHistoryCodec.decode(data, baseTime, (timestamp, value) -> points.add(timestamp + "=" + value));
+		return points;
+	}
+}
@@ -0,0 +1,165 @@
+package com.example.useraccountmanager.tools;
+
+import java.lang.management.ManagementFactory;
+import java.math.BigDecimal;
+import java.util.Random;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Timing harness comparing {@link Money} with {@link BigDecimal} for the operations balances go through: summing,
+ * a checked transfer, formatting and parsing. It is not a test, so the build does not run it; run it after
+ * {@code mvn test-compile} with
+ * <pre>
+ * java -cp target/test-classes:target/classes com.example.useraccountmanager.tools.MoneyBenchmark
+ * </pre>
+ * Every case is warmed up before it is measured and reports nanoseconds and allocated bytes per operation. The
+ * results are folded into a checksum that is printed, so the JIT cannot drop the measured work.
+ */
+public class MoneyBenchmark {
+
+	private static final int AMOUNTS = 1024;
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int MEASURED_ROUNDS = 5;
+	private static final int OPERATIONS = 1_000_000;
+
+	private static final com.sun.management.ThreadMXBean THREADS =
+			(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+	private static long checksum;
+
+	public static void main(String[] args) {
+		Random random = new Random(42);
+		BigDecimal[] decimals = new BigDecimal[AMOUNTS];
+		Money[] amounts = new Money[AMOUNTS];
+		long[] minorUnits = new long[AMOUNTS];
+		String[] texts = new String[AMOUNTS];
+		for (int i = 0; i < AMOUNTS; i++) {
+			minorUnits[i] = random.nextInt(100_000_000);
+			amounts[i] = Money.ofMinorUnits(minorUnits[i]);
+			decimals[i] = amounts[i].toBigDecimal();
+			texts[i] = amounts[i].toString();
+		}
+		int mask = AMOUNTS - 1;
+
+		System.out.printf("%-32s %10s %10s%n", "case", "ns/op", "bytes/op");
+		run("aggregate BigDecimal.add", operations -> {
+			BigDecimal sum = BigDecimal.ZERO;
+			for (int i = 0; i < operations; i++) {
+				sum = sum.add(decimals[i & mask]);
+			}
+			return sum.unscaledValue().longValue();
+		});
+		run("aggregate Money.plus", operations -> {
+			Money sum = Money.ZERO;
+			for (int i = 0; i < operations; i++) {
+				// Keeps the sum in range over a million additions
+				sum = (i & mask) == 0 ? Money.ZERO : sum.plus(amounts[i & mask]);
+			}
+			return sum.minorUnits();
+		});
+		run("aggregate minorUnits", operations -> {
+			long sum = 0;
+			for (int i = 0; i < operations; i++) {
+				sum += amounts[i & mask].minorUnits();
+			}
+			return sum;
+		});
+
+		run("transfer BigDecimal", operations -> {
+			BigDecimal from = new BigDecimal("1000000000.00");
+			BigDecimal to = BigDecimal.ZERO;
+			for (int i = 0; i < operations; i++) {
+				BigDecimal amount = decimals[i & mask];
+				if (from.compareTo(amount) < 0) {
+					BigDecimal swap = from;
+					from = to;
+					to = swap;
+				}
+				from = from.subtract(amount);
+				to = to.add(amount);
+			}
+			return from.unscaledValue().longValue() ^ to.unscaledValue().longValue();
+		});
+		run("transfer Money", operations -> {
+			Money from = Money.parse("1000000000.00");
+			Money to = Money.ZERO;
+			for (int i = 0; i < operations; i++) {
+				Money amount = amounts[i & mask];
+				if (from.compareTo(amount) < 0) {
+					Money swap = from;
+					from = to;
+					to = swap;
+				}
+				from = from.minus(amount);
+				to = to.plus(amount);
+			}
+			return from.minorUnits() ^ to.minorUnits();
+		});
+		run("transfer minorUnits", operations -> {
+			long from = 100_000_000_000L;
+			long to = 0;
+			for (int i = 0; i < operations; i++) {
+				long amount = minorUnits[i & mask];
+				if (from < amount) {
+					long swap = from;
+					from = to;
+					to = swap;
+				}
+				from = Math.subtractExact(from, amount);
+				to = Math.addExact(to, amount);
+			}
+			return from ^ to;
+		});
+
+		StringBuilder builder = new StringBuilder(24);
+		run("format toPlainString", operations -> {
+			long length = 0;
+			for (int i = 0; i < operations; i++) {
+				length += decimals[i & mask].toPlainString().length();
+			}
+			return length;
+		});
+		run("format Money.appendTo", operations -> {
+			long length = 0;
+			for (int i = 0; i < operations; i++) {
+				builder.setLength(0);
+				length += amounts[i & mask].appendTo(builder).length();
+			}
+			return length;
+		});
+
+		run("parse new BigDecimal", operations -> {
+			long sum = 0;
+			for (int i = 0; i < operations; i++) {
+				sum += new BigDecimal(texts[i & mask]).scale();
+			}
+			return sum;
+		});
+		run("parse Money.parse", operations -> {
+			long sum = 0;
+			for (int i = 0; i < operations; i++) {
+				sum += Money.parse(texts[i & mask]).minorUnits();
+			}
+			return sum;
+		});
+
+		System.out.println("checksum " + checksum);
+	}
+
+	private static void run(String name, IntToLongFunction benchmark) {
+		for (int round = 0; round < WARMUP_ROUNDS; round++) {
+			checksum += benchmark.applyAsLong(OPERATIONS);
+		}
+		long thread = Thread.currentThread().getId();
+		long bestNanos = Long.MAX_VALUE;
+		long bytes = 0;
+		for (int round = 0; round < MEASURED_ROUNDS; round++) {
+			long allocatedBefore = THREADS.getThreadAllocatedBytes(thread);
+			long start = System.nanoTime();
+			checksum += benchmark.applyAsLong(OPERATIONS);
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+			bytes = THREADS.getThreadAllocatedBytes(thread) - allocatedBefore;
+		}
+		System.out.printf("%-32s %10.1f %10.1f%n", name, (double) bestNanos / OPERATIONS, (double) bytes / OPERATIONS);
+	}
+}
@@ -0,0 +1,111 @@
+package com.example.useraccountmanager.tools;
+
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MoneyTests {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	record Holder(Money amount) {
+	}
+
+	@Test
+	void parsePadsAndChecksTheScale() {
+		assertEquals(1250, Money.parse("12.5").minorUnits());
+		assertEquals(1250, Money.parse("12.50").minorUnits());
+		assertEquals(1250, Money.parse("12.5000").minorUnits());
+		assertEquals(1200, Money.parse("12").minorUnits());
+		assertEquals(1200, Money.parse("12.").minorUnits());
+		assertEquals(5, Money.parse(".05").minorUnits());
+		assertThrows(ArithmeticException.class, () -> Money.parse("12.505"));
+		assertThrows(ArithmeticException.class, () -> Money.parse("0.001"));
+	}
+
+	@Test
+	void parseRejectsWhatIsNotADecimal() {
+		for (String text : new String[]{"", ".", "-", "+.", "1.2.3", "12a", "a12", " 12", "1,5", "--1"}) {
+			assertThrows(NumberFormatException.class, () -> Money.parse(text), text);
+		}
+	}
+
+	@Test
+	void parseChecksTheColumnRange() {
+		assertEquals(Money.MAX_MINOR_UNITS, Money.parse("9999999999999999.99").minorUnits());
+		assertEquals(-Money.MAX_MINOR_UNITS, Money.parse("-9999999999999999.99").minorUnits());
+		assertThrows(ArithmeticException.class, () -> Money.parse("10000000000000000"));
+		assertThrows(ArithmeticException.class, () -> Money.parse("-10000000000000000.00"));
+		assertThrows(ArithmeticException.class, () -> Money.parse("99999999999999999999999"));
+		assertThrows(ArithmeticException.class, () -> Money.ofMinorUnits(Money.MAX_MINOR_UNITS + 1));
+		assertThrows(ArithmeticException.class,
+				() -> Money.ofMinorUnits(Money.MAX_MINOR_UNITS).plus(Money.ofMinorUnits(1)));
+		assertThrows(ArithmeticException.class,
+				() -> Money.ofMinorUnits(-Money.MAX_MINOR_UNITS).minus(Money.ofMinorUnits(1)));
+	}
+
+	@Test
+	void parseReadsTheSign() {
+		assertEquals(-1, Money.parse("-0.01").minorUnits());
+		assertEquals(300, Money.parse("+3").minorUnits());
+		assertSame(Money.ZERO, Money.parse("-0.00"));
+		assertEquals("-0.05", Money.parse("-.05").toString());
+	}
+
+	@Test
+	void parseFallsBackToBigDecimalForExponents() {
+		assertEquals(15000, Money.parse("1.5e2").minorUnits());
+		assertEquals(1, Money.parse("1E-2").minorUnits());
+		assertEquals(-250, Money.parse("-25e-1").minorUnits());
+		assertThrows(ArithmeticException.class, () -> Money.parse("1e-3"));
+		assertThrows(ArithmeticException.class, () -> Money.parse("1e20"));
+		assertThrows(NumberFormatException.class, () -> Money.parse("1e"));
+	}
+
+	@Test
+	void equalityIsNumeric() {
+		assertEquals(Money.parse("12.5"), Money.parse("12.50"));
+		assertEquals(Money.parse("12.5").hashCode(), Money.parse("12.50").hashCode());
+		assertEquals(Money.of(new BigDecimal("12.500")), Money.parse("12.5"));
+		assertEquals(new BigDecimal("12.50"), Money.parse("12.5").toBigDecimal());
+	}
+
+	@Test
+	void formatsWithExactlyTheScale() {
+		assertEquals("0.00", Money.ZERO.toString());
+		assertEquals("0.07", Money.ofMinorUnits(7).toString());
+		assertEquals("-12.30", Money.ofMinorUnits(-1230).toString());
+		assertEquals("9999999999999999.99", Money.ofMinorUnits(Money.MAX_MINOR_UNITS).toString());
+	}
+
+	@Test
+	void jsonRoundTripKeepsTheExactAmount() throws Exception {
+		for (String amount : new String[]{"0.00", "0.10", "-12.30", "9999999999999999.99", "-9999999999999999.99"}) {
+			String json = objectMapper.writeValueAsString(new Holder(Money.parse(amount)));
+			assertEquals("{\"amount\":" + amount + "}", json);
+			assertEquals(Money.parse(amount), objectMapper.readValue(json, Holder.class).amount());
+		}
+	}
+
+	@Test
+	void jsonReadsNumbersAndStringsWithoutADouble() throws Exception {
+		assertEquals(10, objectMapper.readValue("{\"amount\":0.1}", Holder.class).amount().minorUnits());
+		assertEquals(1250, objectMapper.readValue("{\"amount\":\" 12.5 \"}", Holder.class).amount().minorUnits());
+		assertEquals(500, objectMapper.readValue("{\"amount\":5}", Holder.class).amount().minorUnits());
+		assertEquals(15000, objectMapper.readValue("{\"amount\":1.5e2}", Holder.class).amount().minorUnits());
+	}
+
+	@Test
+	void jsonRejectsInexactAndInvalidAmounts() {
+		for (String amount : new String[]{"1.234", "\"1.234\"", "\"abc\"", "1e30", "true", "[1]"}) {
+			assertThrows(JsonMappingException.class,
+					() -> objectMapper.readValue("{\"amount\":" + amount + "}", Holder.class), amount);
+		}
+	}
+}
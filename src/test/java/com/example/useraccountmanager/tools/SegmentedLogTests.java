@@ -0,0 +1,90 @@
+package com.example.useraccountmanager.tools;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentedLogTests {
+
+	private static final long SEGMENT_BYTES = 64;
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void batchSpanningSegmentsIsReadBackInOrderAfterReopen() throws IOException {
+		try (SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, Integer.MAX_VALUE)) {
+			log.append(records(0, 20));
+			log.flush();
+		}
+		assertTrue(segmentFiles().size() > 2);
+
+		try (SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, Integer.MAX_VALUE)) {
+			assertEquals(20, log.nextOffset());
+			List<SegmentedLog.Entry> entries = log.read(0, 100);
+			assertEquals(20, entries.size());
+			for (int i = 0; i < entries.size(); i++) {
+				assertEquals(i, entries.get(i).offset());
+				assertEquals("record-" + i, new String(entries.get(i).payload(), StandardCharsets.UTF_8));
+			}
+		}
+	}
+
+	@Test
+	void tornTailOfLastSegmentIsCutOff() throws IOException {
+		try (SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, Integer.MAX_VALUE)) {
+			log.append(records(0, 20));
+			log.flush();
+		}
+		Path last = segmentFiles().get(segmentFiles().size() - 1);
+		try (FileChannel channel = FileChannel.open(last, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		try (SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, Integer.MAX_VALUE)) {
+			assertEquals(19, log.nextOffset());
+			assertEquals(19, log.append("again".getBytes(StandardCharsets.UTF_8)));
+		}
+	}
+
+	@Test
+	void shortSegmentBeforeTheLastFailsTheReopen() throws IOException {
+		try (SegmentedLog log = new SegmentedLog(directory, SEGMENT_BYTES, Integer.MAX_VALUE)) {
+			log.append(records(0, 20));
+			log.flush();
+		}
+		Path first = segmentFiles().get(0);
+		try (FileChannel channel = FileChannel.open(first, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+
+		assertThrows(IOException.class, () -> new SegmentedLog(directory, SEGMENT_BYTES, Integer.MAX_VALUE));
+	}
+
+	private static List<byte[]> records(int from, int to) {
+		List<byte[]> records = new ArrayList<>();
+		for (int i = from; i < to; i++) {
+			records.add(("record-" + i).getBytes(StandardCharsets.UTF_8));
+		}
+		return records;
+	}
+
+	private List<Path> segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(path -> path.getFileName().toString().endsWith(".log")).sorted().toList();
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package com.example.useraccountmanager.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTests {
+
+	private static final int KEYS = 4;
+	private static final int CALLERS_PER_KEY = 50;
+
+	@Test
+	void burstOfConcurrentLookupsLoadsEachKeyOnce() throws Exception {
+		SingleFlight<String, String> singleFlight = new SingleFlight<>(100);
+		ConcurrentHashMap<String, AtomicInteger> queries = new ConcurrentHashMap<>();
+		CountDownLatch allWaiting = new CountDownLatch(KEYS * CALLERS_PER_KEY);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(KEYS * CALLERS_PER_KEY);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < KEYS * CALLERS_PER_KEY; i++) {
+				String key = "user-" + (i % KEYS);
+				results.add(executor.submit(() -> {
+					allWaiting.countDown();
+					return singleFlight.execute(key, () -> {
+						queries.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+						// Hold the load until every caller of the burst has arrived
+						await(release);
+						return "result of " + key;
+					});
+				}));
+			}
+			allWaiting.await(10, TimeUnit.SECONDS);
+			awaitInFlight(singleFlight, KEYS);
+			// Callers past the start latch may still be on their way into execute
+			Thread.sleep(200);
+			release.countDown();
+
+			for (int i = 0; i < results.size(); i++) {
+				assertEquals("result of user-" + (i % KEYS), results.get(i).get(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(KEYS, queries.size());
+		queries.values().forEach(count -> assertEquals(1, count.get()));
+		assertEquals(KEYS, singleFlight.loads());
+		assertEquals(KEYS * (CALLERS_PER_KEY - 1), singleFlight.coalesced());
+		assertEquals(0, singleFlight.inFlight());
+		assertEquals(KEYS, singleFlight.topKeys(10).size());
+		singleFlight.topKeys(10).forEach(stats -> assertEquals(CALLERS_PER_KEY - 1, stats.coalesced()));
+	}
+
+	@Test
+	void nextCallAfterCompletedLoadLoadsAgain() {
+		SingleFlight<String, Object> singleFlight = new SingleFlight<>(100);
+		AtomicInteger queries = new AtomicInteger();
+
+		Object first = singleFlight.execute("user-1", () -> queries.incrementAndGet());
+		Object second = singleFlight.execute("user-1", () -> queries.incrementAndGet());
+
+		assertEquals(1, first);
+		assertEquals(2, second);
+		assertEquals(2, singleFlight.loads());
+		assertEquals(0, singleFlight.coalesced());
+	}
+
+	@Test
+	void failedLoadIsRethrownToEveryWaitingCaller() throws Exception {
+		SingleFlight<String, String> singleFlight = new SingleFlight<>(100);
+		IllegalStateException failure = new IllegalStateException("database unavailable");
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			Future<?> leader = executor.submit(() -> singleFlight.execute("user-1", () -> {
+				await(release);
+				throw failure;
+			}));
+			awaitInFlight(singleFlight, 1);
+			Future<?> follower = executor.submit(() -> singleFlight.execute("user-1", () -> "not called"));
+			Thread.sleep(200);
+			assertFalse(follower.isDone());
+			release.countDown();
+
+			ExecutionException leaderError = assertThrows(ExecutionException.class, () -> leader.get(10, TimeUnit.SECONDS));
+			ExecutionException followerError = assertThrows(ExecutionException.class, () -> follower.get(10, TimeUnit.SECONDS));
+			assertSame(failure, leaderError.getCause());
+			assertSame(failure, followerError.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		assertEquals(0, singleFlight.inFlight());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void awaitInFlight(SingleFlight<?, ?> singleFlight, int flights) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (singleFlight.inFlight() < flights && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.example.useraccountmanager.tools;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTests {
+
+	private static final int THREADS = 16;
+
+	@Test
+	void concurrentCallersTakeExactlyTheBurstWithoutRefill() throws Exception {
+		// One token per thousand seconds, so nothing is added back while the test runs
+		TokenBucket bucket = new TokenBucket(10_000, 0.001);
+		LongAdder granted = new LongAdder();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<?>> callers = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				callers.add(executor.submit(() -> {
+					await(start);
+					for (int attempt = 0; attempt < 2_000; attempt++) {
+						if (bucket.tryAcquire()) {
+							granted.increment();
+						}
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<?> caller : callers) {
+				caller.get(10, TimeUnit.SECONDS);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertEquals(10_000, granted.sum());
+		assertFalse(bucket.tryAcquire());
+	}
+
+	@Test
+	void concurrentCallersNeverTakeMoreThanBurstPlusRefill() throws Exception {
+		TokenBucket bucket = new TokenBucket(500, 2_000);
+		LongAdder granted = new LongAdder();
+		AtomicBoolean stop = new AtomicBoolean();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		long startedAt;
+		long elapsed;
+		try {
+			List<Future<?>> callers = new ArrayList<>();
+			for (int i = 0; i < THREADS; i++) {
+				int permits = 1 + i % 3;
+				callers.add(executor.submit(() -> {
+					await(start);
+					while (!stop.get()) {
+						if (bucket.tryAcquire(permits)) {
+							granted.add(permits);
+						}
+					}
+				}));
+			}
+			startedAt = System.nanoTime();
+			start.countDown();
+			Thread.sleep(500);
+			stop.set(true);
+			for (Future<?> caller : callers) {
+				caller.get(10, TimeUnit.SECONDS);
+			}
+			elapsed = System.nanoTime() - startedAt;
+		} finally {
+			executor.shutdownNow();
+		}
+
+		double refilled = 2_000 * elapsed / 1e9;
+		assertTrue(granted.sum() <= 500 + refilled + 3, "granted " + granted.sum() + " of at most " + (500 + refilled));
+		// Spinning callers take the burst and most of what is added back
+		assertTrue(granted.sum() >= 500 + refilled / 2, "granted " + granted.sum() + " of " + (500 + refilled));
+	}
+
+	@Test
+	void emptyBucketRefillsOverTime() throws Exception {
+		TokenBucket bucket = new TokenBucket(1, 20);
+
+		assertTrue(bucket.tryAcquire());
+		assertFalse(bucket.tryAcquire());
+		assertTrue(bucket.nanosUntilAvailable(1) > 0);
+		Thread.sleep(100);
+		assertTrue(bucket.tryAcquire());
+	}
+
+	@Test
+	void permitsAboveCapacityAreNeverGranted() {
+		TokenBucket bucket = new TokenBucket(5, 1);
+
+		assertFalse(bucket.tryAcquire(6));
+		assertTrue(bucket.tryAcquire(5));
+		assertFalse(bucket.tryAcquire());
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+}